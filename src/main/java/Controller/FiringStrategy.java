@@ -0,0 +1,280 @@
+package Controller;
+
+import Model.BoardIndex;
+import Model.ConstraintPropagator;
+import Model.OpeningBook;
+import Model.RayOutcome;
+import Model.RayTracer;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * How a simulated experimenter picks the rays to fire and the final guess, see
+ * {@link GameSimulator}.
+ *
+ * <p>A strategy gets the rays fired so far and the game's random source on every call and keeps
+ * no state of its own, so one instance plays games on many threads at once.</p>
+ */
+public interface FiringStrategy {
+
+    /**
+     * Branch budget of the {@link ConstraintPropagator} runs made for a simulated game. It is
+     * far below the default, which forces a few more empty cells but costs over a hundred times
+     * as much, too much for millions of games.
+     */
+    int BRANCH_BUDGET = 32;
+
+    /**
+     * Gets the name shown in simulator reports.
+     */
+    String name();
+
+    /**
+     * Picks the next node to fire.
+     *
+     * @param nodes    the nodes fired so far, in the first {@code fired} entries.
+     * @param outcomes the {@link RayOutcome} of each fired node.
+     * @param fired    the number of rays fired so far.
+     * @param atoms    the number of atoms on the board.
+     * @param random   the game's random source.
+     * @return the node, 1 to 54, or 0 to stop firing.
+     */
+    int nextNode(int[] nodes, int[] outcomes, int fired, int atoms, SplittableRandom random);
+
+    /**
+     * Picks the guess once the rays are fired. The default keeps every atom the rays force and
+     * puts the rest on random cells the rays leave open.
+     *
+     * @return the atom mask of the guess.
+     */
+    default long guess(int[] nodes, int[] outcomes, int fired, int atoms, SplittableRandom random) {
+        ConstraintPropagator.Result result = propagate(nodes, outcomes, fired, atoms);
+        int missing = atoms - Long.bitCount(result.forcedAtoms());
+        long free = result.freeCells();
+        if (!result.consistent() || missing < 0 || missing > Long.bitCount(free)) {
+            return BoardIndex.randomLayout(random, atoms);
+        }
+        return result.forcedAtoms() | randomCells(free, missing, random);
+    }
+
+    /**
+     * Runs the fired rays through a {@link ConstraintPropagator} with the {@link #BRANCH_BUDGET}.
+     */
+    static ConstraintPropagator.Result propagate(int[] nodes, int[] outcomes, int fired, int atoms) {
+        return new ConstraintPropagator(BRANCH_BUDGET).propagate(Arrays.copyOf(nodes, fired), Arrays.copyOf(outcomes, fired), atoms);
+    }
+
+    /**
+     * Picks random cells of a mask, uniformly.
+     *
+     * @param cells the cells to pick from.
+     * @param count how many to pick, at most the cells in the mask.
+     * @return the mask of the picked cells.
+     */
+    static long randomCells(long cells, int count, SplittableRandom random) {
+        if (cells == BoardIndex.FULL_MASK) {
+            return BoardIndex.randomLayout(random, count);
+        }
+        // pick positions among the set bits, then map each position to its bit
+        int size = Long.bitCount(cells);
+        long positions = 0L;
+        for (int j = size - count; j < size; j++) {
+            int position = random.nextInt(j + 1);
+            positions |= (positions & (1L << position)) == 0 ? 1L << position : 1L << j;
+        }
+        long mask = 0L;
+        int position = 0;
+        for (long m = cells; m != 0; m &= m - 1, position++) {
+            if ((positions & (1L << position)) != 0) {
+                mask |= Long.lowestOneBit(m);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Checks if a node was already fired.
+     */
+    static boolean isFired(int[] nodes, int fired, int node) {
+        for (int i = 0; i < fired; i++) {
+            if (nodes[i] == node) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Fires the nodes in order, 1, 2, 3 and so on.
+     */
+    final class Sequential implements FiringStrategy {
+
+        @Override
+        public String name() {
+            return "sequential";
+        }
+
+        @Override
+        public int nextNode(int[] nodes, int[] outcomes, int fired, int atoms, SplittableRandom random) {
+            return fired < RayTracer.NODE_COUNT ? fired + 1 : 0;
+        }
+    }
+
+    /**
+     * Fires random nodes, never the same one twice.
+     */
+    final class Random implements FiringStrategy {
+
+        @Override
+        public String name() {
+            return "random";
+        }
+
+        @Override
+        public int nextNode(int[] nodes, int[] outcomes, int fired, int atoms, SplittableRandom random) {
+            if (fired >= RayTracer.NODE_COUNT) {
+                return 0;
+            }
+            int node;
+            do {
+                node = 1 + random.nextInt(RayTracer.NODE_COUNT);
+            } while (isFired(nodes, fired, node));
+            return node;
+        }
+    }
+
+    /**
+     * Fires the node whose outcome is least predictable, which tells the most about the layout.
+     *
+     * <p>The layouts still possible are approximated by a sample of particles: random layouts
+     * that keep the atoms forced by the {@link ConstraintPropagator} and avoid the cells it rules
+     * out, then have their other atoms moved about until they give every outcome seen so far. The next node is the one whose outcome has the
+     * highest entropy over the sample, and the guess is the best guess for the sample (see
+     * {@link ScoreEstimator#bestGuess}). The first rays are looked up in the {@link OpeningBook}
+     * while the game follows it, which picks them the same way from a much larger sample.</p>
+     */
+    final class InformationGain implements FiringStrategy {
+
+        public static final int DEFAULT_PARTICLES = 64;
+
+        // moves tried to repair a particle that does not fit the rays
+        private static final int REPAIR_STEPS = 48;
+
+        private final int particles;
+
+        public InformationGain() {
+            this(DEFAULT_PARTICLES);
+        }
+
+        /**
+         * @param particles the number of sampled layouts per decision.
+         */
+        public InformationGain(int particles) {
+            if (particles < 1) {
+                throw new IllegalArgumentException("Need at least one particle, got " + particles + ".");
+            }
+            this.particles = particles;
+        }
+
+        @Override
+        public String name() {
+            return "information-gain";
+        }
+
+        @Override
+        public int nextNode(int[] nodes, int[] outcomes, int fired, int atoms, SplittableRandom random) {
+            if (fired >= RayTracer.NODE_COUNT) {
+                return 0;
+            }
+            int opening = OpeningBook.get().nextNode(atoms, nodes, outcomes, fired);
+            if (opening != 0) {
+                return opening;
+            }
+            long[] sample = sample(nodes, outcomes, fired, atoms, random);
+            if (sample.length == 0) {
+                return new Random().nextNode(nodes, outcomes, fired, atoms, random);
+            }
+            int[] counts = new int[RayOutcome.COUNT];
+            int best = 0;
+            double bestEntropy = Double.NEGATIVE_INFINITY;
+            for (int node = 1; node <= RayTracer.NODE_COUNT; node++) {
+                if (isFired(nodes, fired, node)) {
+                    continue;
+                }
+                Arrays.fill(counts, 0);
+                for (long layout : sample) {
+                    counts[RayTracer.trace(layout, node)]++;
+                }
+                // sum of -p log p, without the constant log(sample.length) shared by every node
+                double entropy = 0;
+                for (int count : counts) {
+                    if (count > 0) {
+                        entropy -= count * Math.log(count);
+                    }
+                }
+                if (entropy > bestEntropy) {
+                    bestEntropy = entropy;
+                    best = node;
+                }
+            }
+            return best;
+        }
+
+        @Override
+        public long guess(int[] nodes, int[] outcomes, int fired, int atoms, SplittableRandom random) {
+            long[] sample = sample(nodes, outcomes, fired, atoms, random);
+            return sample.length == 0 ? FiringStrategy.super.guess(nodes, outcomes, fired, atoms, random)
+                    : ScoreEstimator.bestGuess(sample, atoms);
+        }
+
+        // random layouts that fit the rays, fewer than asked for if they are hard to find
+        private long[] sample(int[] nodes, int[] outcomes, int fired, int atoms, SplittableRandom random) {
+            long forced = 0L;
+            long free = BoardIndex.FULL_MASK;
+            if (fired > 0) {
+                ConstraintPropagator.Result result = propagate(nodes, outcomes, fired, atoms);
+                if (!result.consistent()) {
+                    return new long[0];
+                }
+                forced = result.forcedAtoms();
+                free = result.freeCells();
+            }
+            int missing = atoms - Long.bitCount(forced);
+            if (missing < 0 || missing > Long.bitCount(free)) {
+                return new long[0];
+            }
+            long[] sample = new long[particles];
+            int size = 0;
+            for (int attempt = 0; attempt < particles * 2 && size < particles; attempt++) {
+                long layout = forced | randomCells(free, missing, random);
+                int conflicts = conflicts(layout, nodes, outcomes, fired);
+                // move one atom at a time to a random open cell, keeping moves that break no more rays
+                for (int step = 0; step < REPAIR_STEPS && conflicts > 0 && missing > 0
+                        && (free & ~layout) != 0; step++) {
+                    long moved = layout ^ randomCells(layout & ~forced, 1, random) ^ randomCells(free & ~layout, 1, random);
+                    int movedConflicts = conflicts(moved, nodes, outcomes, fired);
+                    if (movedConflicts <= conflicts) {
+                        layout = moved;
+                        conflicts = movedConflicts;
+                    }
+                }
+                if (conflicts == 0) {
+                    sample[size++] = layout;
+                }
+            }
+            return Arrays.copyOf(sample, size);
+        }
+
+        // the number of fired rays the layout gives another outcome for
+        private static int conflicts(long layout, int[] nodes, int[] outcomes, int fired) {
+            int conflicts = 0;
+            for (int i = 0; i < fired; i++) {
+                if (RayTracer.trace(layout, nodes[i]) != outcomes[i]) {
+                    conflicts++;
+                }
+            }
+            return conflicts;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package Controller;
+
+import Model.BlackBoxBoard;
+import Model.BoardIndex;
+import Model.RayOutcome;
+import Model.RayTracer;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One Black Box game without any UI: the setter places atoms, the experimenter fires rays and
+ * then guesses, following the same flow as {@link com.example.blackbox.Main}.
+ *
+ * <p>Unlike Main, a session keeps its own atom mask and ray counters instead of a
+ * {@link BlackBoxBoard} and its static counters, and traces rays with {@link RayTracer}, so many
+ * sessions can run side by side and an idle one only costs a few dozen bytes. A session is not
+ * thread safe on its own; {@link SessionActor} serialises the calls made to it.</p>
+ */
+public class GameSession {
+
+    /**
+     * Fewest atoms the setter may place, as on the setter's READY button.
+     */
+    public static final int MIN_ATOMS = 4;
+
+    /**
+     * Most atoms the setter may place, as in AtomGenerator.
+     */
+    public static final int MAX_ATOMS = 6;
+
+    /**
+     * Most rays one game may fire. It keeps the ray log small, and the ray count, markers and
+     * score within the 16 bit fields of the network protocol and the game event log.
+     */
+    public static final int MAX_RAYS = 10_000;
+
+    /**
+     * Steps of a game, in order.
+     */
+    public enum Phase {
+        SETTING, EXPERIMENTING, FINISHED
+    }
+
+    private final long id;
+    private Phase phase = Phase.SETTING;
+    private long atoms;
+    private int rayCount;
+    private int rayMarkers;
+    private byte[] rayLog = new byte[0]; //nodes fired, in order.
+    private long guess;
+    private ScoringEngine.Score score;
+    private SessionCheckpoint checkpoint;
+
+    /**
+     * Creates a session waiting for the setter.
+     *
+     * @param id the session id.
+     */
+    public GameSession(long id) {
+        this.id = id;
+    }
+
+    /**
+     * Places the setter's atoms, like {@link BlackBoxBoard#placeSetterAtoms}.
+     *
+     * @param setterAtoms the positions of the atoms.
+     */
+    public void placeSetterAtoms(List<BlackBoxBoard.Point3D> setterAtoms) {
+        placeSetterAtoms(BoardIndex.maskOf(setterAtoms));
+    }
+
+    /**
+     * Places the setter's atoms.
+     *
+     * @param layout the atom mask of the setter's atoms.
+     */
+    public void placeSetterAtoms(long layout) {
+        requirePhase(Phase.SETTING);
+        int count = Long.bitCount(layout);
+        if (count < MIN_ATOMS || count > MAX_ATOMS || (layout & ~BoardIndex.FULL_MASK) != 0) {
+            throw new IllegalArgumentException("Please place " + MIN_ATOMS + " to " + MAX_ATOMS + " atoms on the board, got " + count + ".");
+        }
+        this.atoms = layout;
+        this.phase = Phase.EXPERIMENTING;
+        save();
+    }
+
+    /**
+     * Fires a ray and updates the ray counters.
+     *
+     * @param node the node to fire from, 1 to 54.
+     * @return the {@link RayOutcome} the experimenter sees.
+     * @throws IllegalStateException if the game already fired {@link #MAX_RAYS} rays.
+     */
+    public int fire(int node) {
+        requirePhase(Phase.EXPERIMENTING);
+        if (node < 1 || node > RayTracer.NODE_COUNT) {
+            throw new IllegalArgumentException("No ray node " + node + ".");
+        }
+        if (rayCount == MAX_RAYS) {
+            throw new IllegalStateException("Session " + id + " already fired the most rays allowed, " + MAX_RAYS + ".");
+        }
+        int outcome = RayTracer.trace(atoms, node);
+        if (rayCount == rayLog.length) {
+            rayLog = Arrays.copyOf(rayLog, Math.max(8, rayCount * 2));
+        }
+        rayLog[rayCount++] = (byte) node;
+        rayMarkers += RayOutcome.markers(outcome);
+        save();
+        return outcome;
+    }
+
+    /**
+     * Takes the experimenter's guess and scores it, ending the game.
+     *
+     * @param guessAtoms the positions the experimenter guessed.
+     * @return the final score.
+     */
+    public ScoringEngine.Score guess(List<BlackBoxBoard.Point3D> guessAtoms) {
+        return guess(BoardIndex.maskOf(guessAtoms));
+    }
+
+    /**
+     * Takes the experimenter's guess and scores it, ending the game.
+     *
+     * @param guessLayout the atom mask of the guess.
+     * @return the final score.
+     */
+    public ScoringEngine.Score guess(long guessLayout) {
+        requirePhase(Phase.EXPERIMENTING);
+        this.guess = guessLayout;
+        this.score = ScoringEngine.score(atoms, guessLayout, rayCount, rayMarkers);
+        this.phase = Phase.FINISHED;
+        save();
+        return score;
+    }
+
+    /**
+     * Rebuilds a session from its saved state, see {@link SessionCheckpoint}.
+     *
+     * @param rayLog the nodes fired, shorter than rayCount if the rest were not saved.
+     */
+    static GameSession restore(long id, Phase phase, long atoms, int rayCount, int rayMarkers, byte[] rayLog, long guess) {
+        GameSession session = new GameSession(id);
+        session.phase = phase;
+        session.atoms = atoms;
+        session.rayCount = rayCount;
+        session.rayMarkers = rayMarkers;
+        // nodes that were not saved come back as 0
+        session.rayLog = Arrays.copyOf(rayLog, rayCount);
+        if (phase == Phase.FINISHED) {
+            session.guess = guess;
+            session.score = ScoringEngine.score(atoms, guess, rayCount, rayMarkers);
+        }
+        return session;
+    }
+
+    /**
+     * Saves every change of this session to a checkpoint from now on, starting with its current state.
+     *
+     * @param checkpoint the checkpoint, or null to stop saving.
+     */
+    public void setCheckpoint(SessionCheckpoint checkpoint) {
+        this.checkpoint = checkpoint;
+        save();
+    }
+
+    private void save() {
+        if (checkpoint != null) {
+            checkpoint.save(this);
+        }
+    }
+
+    // the ray log without a copy, for the checkpoint
+    byte[] rayLogBytes() {
+        return rayLog;
+    }
+
+    private void requirePhase(Phase expected) {
+        if (phase != expected) {
+            throw new IllegalStateException("Session " + id + " is " + phase + ", not " + expected + ".");
+        }
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    /**
+     * Gets the setter's atom mask, 0 before the atoms are placed.
+     */
+    public long getAtoms() {
+        return atoms;
+    }
+
+    public int getRayCount() {
+        return rayCount;
+    }
+
+    public int getRayMarkers() {
+        return rayMarkers;
+    }
+
+    /**
+     * Gets the nodes fired so far, in order.
+     */
+    public int[] getRayLog() {
+        int[] log = new int[rayCount];
+        for (int i = 0; i < rayCount; i++) {
+            log[i] = rayLog[i];
+        }
+        return log;
+    }
+
+    /**
+     * Gets the experimenter's guess, 0 until the game is finished.
+     */
+    public long getGuess() {
+        return guess;
+    }
+
+    /**
+     * Gets the final score, null until the game is finished.
+     */
+    public ScoringEngine.Score getScore() {
+        return score;
+    }
+}
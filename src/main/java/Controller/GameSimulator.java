@@ -0,0 +1,215 @@
+package Controller;
+
+import Model.BoardIndex;
+import Model.RayOutcome;
+import Model.RayTracer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Monte Carlo simulator that plays many full games with a {@link FiringStrategy} to compare
+ * strategies statistically.
+ *
+ * <p>Each game puts a uniformly random layout on the board, lets the strategy fire up to a set
+ * number of rays and guess, and scores the guess like {@link GameState#calcScore} through
+ * {@link ScoringEngine}. The games are split into a fixed number of tasks, each with its own
+ * {@link SplittableRandom} split from the seed, so a seed gives the same totals on any number of
+ * cores. The tasks run on all cores and add their totals to shared {@link LongAdder}s every
+ * few hundred games.</p>
+ *
+ * <p>Usage: {@code GameSimulator [strategy=sequential|random|information-gain|all] [games=N]
+ * [atoms=N] [rays=N] [seed=N] [particles=N]}.</p>
+ */
+public final class GameSimulator {
+
+    /**
+     * Number of tasks the games are split into.
+     */
+    public static final int TASKS = 256;
+
+    // games a task plays between adding its totals to the shared counters
+    private static final int FLUSH_GAMES = 256;
+
+    /**
+     * Settings of a simulation.
+     *
+     * @param atoms the number of atoms per layout.
+     * @param rays  the most rays fired per game.
+     * @param games the number of games.
+     * @param seed  the seed of all layouts and strategy choices.
+     */
+    public record Config(int atoms, int rays, long games, long seed) {
+    }
+
+    /**
+     * Totals of a simulation.
+     *
+     * @param scoreSquares the sum of the squared scores, for the variance.
+     * @param seconds      the wall clock time taken.
+     */
+    public record Result(String strategy, long games, long totalScore, long scoreSquares, long correctAtoms,
+                         long rays, long rayMarkers, double seconds) {
+
+        public double meanScore() {
+            return games == 0 ? 0 : (double) totalScore / games;
+        }
+
+        /**
+         * Gets the sample standard deviation of the score.
+         */
+        public double scoreDeviation() {
+            if (games < 2) {
+                return 0;
+            }
+            double mean = meanScore();
+            return Math.sqrt(Math.max(0, (scoreSquares - games * mean * mean) / (games - 1)));
+        }
+
+        /**
+         * Gets the half width of the 95% confidence interval of the mean score.
+         */
+        public double confidence95() {
+            return games == 0 ? 0 : 1.96 * scoreDeviation() / Math.sqrt(games);
+        }
+
+        public double meanCorrectAtoms() {
+            return games == 0 ? 0 : (double) correctAtoms / games;
+        }
+
+        public double meanRays() {
+            return games == 0 ? 0 : (double) rays / games;
+        }
+
+        public double gamesPerSecond() {
+            return games / seconds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-16s games=%d score=%.3f +/-%.3f (95%%) sd=%.2f correct=%.2f rays=%.1f (%.0f games/s)",
+                    strategy, games, meanScore(), confidence95(), scoreDeviation(), meanCorrectAtoms(), meanRays(),
+                    gamesPerSecond());
+        }
+    }
+
+    private GameSimulator() {
+    }
+
+    public static void main(String[] args) {
+        String strategy = "all";
+        long games = 10_000;
+        int atoms = 6;
+        int rays = 10;
+        long seed = 1;
+        int particles = FiringStrategy.InformationGain.DEFAULT_PARTICLES;
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            switch (kv[0]) {
+                case "strategy" -> strategy = kv[1];
+                case "games" -> games = Long.parseLong(kv[1]);
+                case "atoms" -> atoms = Integer.parseInt(kv[1]);
+                case "rays" -> rays = Integer.parseInt(kv[1]);
+                case "seed" -> seed = Long.parseLong(kv[1]);
+                case "particles" -> particles = Integer.parseInt(kv[1]);
+                default -> throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        List<FiringStrategy> strategies = new ArrayList<>(List.of(new FiringStrategy.Sequential(),
+                new FiringStrategy.Random(), new FiringStrategy.InformationGain(particles)));
+        if (!strategy.equals("all")) {
+            String name = strategy;
+            strategies.removeIf(s -> !s.name().equals(name));
+            if (strategies.isEmpty()) {
+                throw new IllegalArgumentException("Unknown strategy " + name + ".");
+            }
+        }
+        Config config = new Config(atoms, rays, games, seed);
+        for (FiringStrategy s : strategies) {
+            System.out.println(run(s, config));
+        }
+    }
+
+    /**
+     * Plays every game of a simulation on all cores.
+     *
+     * @param strategy the experimenter's strategy.
+     * @param config   the simulation settings.
+     */
+    public static Result run(FiringStrategy strategy, Config config) {
+        if (config.atoms() < 1 || config.atoms() > BoardIndex.CELL_COUNT || config.rays() < 0 || config.games() < 0) {
+            throw new IllegalArgumentException("Invalid simulation " + config + ".");
+        }
+        SplittableRandom root = new SplittableRandom(config.seed());
+        SplittableRandom[] randoms = new SplittableRandom[TASKS];
+        for (int t = 0; t < TASKS; t++) {
+            randoms[t] = root.split();
+        }
+        Totals totals = new Totals();
+        long start = System.nanoTime();
+        IntStream.range(0, TASKS).parallel().forEach(t -> {
+            long games = config.games() / TASKS + (t < config.games() % TASKS ? 1 : 0);
+            play(strategy, config, games, randoms[t], totals);
+        });
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return new Result(strategy.name(), totals.games.sum(), totals.score.sum(), totals.squares.sum(),
+                totals.correct.sum(), totals.rays.sum(), totals.markers.sum(), seconds);
+    }
+
+    // counters shared by all tasks
+    private static final class Totals {
+        final LongAdder games = new LongAdder();
+        final LongAdder score = new LongAdder();
+        final LongAdder squares = new LongAdder();
+        final LongAdder correct = new LongAdder();
+        final LongAdder rays = new LongAdder();
+        final LongAdder markers = new LongAdder();
+    }
+
+    private static void play(FiringStrategy strategy, Config config, long games, SplittableRandom random, Totals totals) {
+        int[] nodes = new int[config.rays()];
+        int[] outcomes = new int[config.rays()];
+        long played = 0;
+        long score = 0;
+        long squares = 0;
+        long correct = 0;
+        long rays = 0;
+        long markers = 0;
+        for (long g = 0; g < games; g++) {
+            long layout = BoardIndex.randomLayout(random, config.atoms());
+            int fired = 0;
+            int rayMarkers = 0;
+            while (fired < config.rays()) {
+                int node = strategy.nextNode(nodes, outcomes, fired, config.atoms(), random);
+                if (node == 0) {
+                    break;
+                }
+                int outcome = RayTracer.trace(layout, node);
+                nodes[fired] = node;
+                outcomes[fired] = outcome;
+                rayMarkers += RayOutcome.markers(outcome);
+                fired++;
+            }
+            long guess = strategy.guess(nodes, outcomes, fired, config.atoms(), random);
+            ScoringEngine.Score result = ScoringEngine.score(layout, guess, fired, rayMarkers);
+            played++;
+            score += result.score();
+            squares += (long) result.score() * result.score();
+            correct += result.correctAtoms();
+            rays += fired;
+            markers += rayMarkers;
+            if (played == FLUSH_GAMES || g == games - 1) {
+                totals.games.add(played);
+                totals.score.add(score);
+                totals.squares.add(squares);
+                totals.correct.add(correct);
+                totals.rays.add(rays);
+                totals.markers.add(markers);
+                played = score = squares = correct = rays = markers = 0;
+            }
+        }
+    }
+}
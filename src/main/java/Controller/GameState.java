@@ -5,8 +5,10 @@ import utils.ReadyButtonClickedListener;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Manages the state and the flow of the game, handling interactions such as
@@ -19,6 +21,7 @@ import java.util.Map;
 public class GameState implements ReadyButtonClickedListener {
     private final List<Point2D> setterAtoms = new ArrayList<>(); //list to store the setter atom positions
     private final List<Point2D> experimenterAtoms = new ArrayList<>(); //list to store experimenter atoms.
+    private final List<int[]> firedRays = new ArrayList<>(); //list of {node, outcome} pairs for the rays fired so far.
 
 
     /**
@@ -84,9 +87,38 @@ public class GameState implements ReadyButtonClickedListener {
 
 
 
+    /**
+     * Records a ray fired by the experimenter.
+     *
+     * @param node The node the ray was fired from.
+     * @param outcome The RayOutcome code the experimenter saw.
+     */
+    public void recordRay(int node, int outcome) {
+        firedRays.add(new int[]{node, outcome});
+    }
+
+    /**
+     * Gets the nodes of the rays fired so far, in firing order.
+     *
+     * @return An array of node numbers.
+     */
+    public int[] getFiredNodes() {
+        return firedRays.stream().mapToInt(ray -> ray[0]).toArray();
+    }
+
+    /**
+     * Gets the outcomes of the rays fired so far, matching getFiredNodes.
+     *
+     * @return An array of RayOutcome codes.
+     */
+    public int[] getFiredOutcomes() {
+        return firedRays.stream().mapToInt(ray -> ray[1]).toArray();
+    }
+
     /**
      * Calculates the score based on the placement of atoms by the setter and experimenter.
      * Scores are calculated based on correct placements and penalties for incorrect placements.
+     * Neither list is changed; see ScoringEngine for scoring atom masks in bulk.
      *
      * @param setterAtoms The list of Point2D from the setter.
      * @param experimenterAtoms The list of Point2D from the experimenter that needs to match the setter's list.
@@ -94,25 +126,16 @@ public class GameState implements ReadyButtonClickedListener {
      * @return A map containing scoring details including correct atom placements and total score.
      */
     public static Map<String, Integer>  calcScore(List<Point2D> setterAtoms, List<Point2D> experimenterAtoms, BlackBoxBoard board) {
-        int correctAtoms = setterAtoms.size();
-
-        // only keep in experimenter atoms list the atoms that match with setter's list
-          experimenterAtoms.retainAll(setterAtoms);
-        int incorrectAtoms = (correctAtoms - experimenterAtoms.size());
-        int score = incorrectAtoms * 5;
-
-        int correctlyPlacedAtoms = experimenterAtoms.size();
-
-        if (correctlyPlacedAtoms > 1) {
-            System.out.println(correctlyPlacedAtoms + " atoms were correctly placed.");
-        } else {
-            System.out.println(correctlyPlacedAtoms + " atom was correctly placed.");
+        // count the setter atoms the experimenter found with a set lookup instead of retainAll on the caller's list
+        Set<Point2D> guessed = new HashSet<>(experimenterAtoms);
+        int correctlyPlacedAtoms = 0;
+        for (Point2D atom : setterAtoms) {
+            if (guessed.contains(atom)) {
+                correctlyPlacedAtoms++;
+            }
         }
-
-
-        System.out.println("Total rays fired: " + board.getRayCount());
-        System.out.println("Total ray markers: " + board.getRayMarkers());
-        score += BlackBoxBoard.rayMarkers;
+        int incorrectAtoms = setterAtoms.size() - correctlyPlacedAtoms;
+        int score = incorrectAtoms * ScoreEstimator.MISSED_ATOM_PENALTY + BlackBoxBoard.rayMarkers;
 
         Map<String, Integer> results = new HashMap<>();
         results.put("score", score);
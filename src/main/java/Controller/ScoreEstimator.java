@@ -0,0 +1,102 @@
+package Controller;
+
+import Model.BoardIndex;
+
+/**
+ * Estimates the final score of an experimenter's guess before the atoms are revealed.
+ *
+ * <p>Every layout that matches the rays fired so far is equally likely, so the expected score
+ * is the average of {@link GameState#calcScore} over those layouts. Guesses and layouts are
+ * atom masks (see {@link BoardIndex}), so a guess is scored against a layout with a single
+ * popcount instead of a {@code retainAll} over Point2D lists.</p>
+ */
+public final class ScoreEstimator {
+
+    /**
+     * Penalty for each atom of the setter that the experimenter did not find, as in calcScore.
+     */
+    public static final int MISSED_ATOM_PENALTY = 5;
+
+    private ScoreEstimator() {
+    }
+
+    /**
+     * Gets the average number of setter atoms the guess would find.
+     *
+     * @param candidates the layouts that match the rays fired.
+     * @param guess      the atom mask of the guess.
+     */
+    public static double expectedCorrect(long[] candidates, long guess) {
+        if (candidates.length == 0) {
+            return 0;
+        }
+        // four independent sums so the popcounts do not wait on each other
+        long s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < candidates.length; i += 4) {
+            s0 += Long.bitCount(candidates[i] & guess);
+            s1 += Long.bitCount(candidates[i + 1] & guess);
+            s2 += Long.bitCount(candidates[i + 2] & guess);
+            s3 += Long.bitCount(candidates[i + 3] & guess);
+        }
+        for (; i < candidates.length; i++) {
+            s0 += Long.bitCount(candidates[i] & guess);
+        }
+        return (double) (s0 + s1 + s2 + s3) / candidates.length;
+    }
+
+    /**
+     * Gets the expected final score of a guess, lower is better.
+     *
+     * @param candidates the layouts that match the rays fired.
+     * @param guess      the atom mask of the guess.
+     * @param atoms      the number of atoms the setter placed.
+     * @param markers    the ray markers used so far.
+     */
+    public static double expectedScore(long[] candidates, long guess, int atoms, int markers) {
+        return MISSED_ATOM_PENALTY * (atoms - expectedCorrect(candidates, guess)) + markers;
+    }
+
+    /**
+     * Gets the probability of each cell holding an atom, indexed by {@link BoardIndex} cell.
+     *
+     * @param candidates the layouts that match the rays fired.
+     */
+    public static double[] cellProbabilities(long[] candidates) {
+        long[] counts = new long[BoardIndex.CELL_COUNT];
+        for (long layout : candidates) {
+            for (long l = layout; l != 0; l &= l - 1) {
+                counts[Long.numberOfTrailingZeros(l)]++;
+            }
+        }
+        double[] probabilities = new double[BoardIndex.CELL_COUNT];
+        for (int c = 0; c < probabilities.length; c++) {
+            probabilities[c] = candidates.length == 0 ? 0 : (double) counts[c] / candidates.length;
+        }
+        return probabilities;
+    }
+
+    /**
+     * Gets the guess of the given number of atoms with the lowest expected score. The expected
+     * number of atoms found is the sum of the cell probabilities, so this is simply the most
+     * likely cells.
+     *
+     * @param candidates the layouts that match the rays fired.
+     * @param atoms      the number of atoms to guess.
+     * @return the atom mask of the best guess.
+     */
+    public static long bestGuess(long[] candidates, int atoms) {
+        double[] probabilities = cellProbabilities(candidates);
+        long guess = 0L;
+        for (int n = 0; n < atoms; n++) {
+            int best = -1;
+            for (int c = 0; c < probabilities.length; c++) {
+                if ((guess >>> c & 1L) == 0 && (best < 0 || probabilities[c] > probabilities[best])) {
+                    best = c;
+                }
+            }
+            guess |= 1L << best;
+        }
+        return guess;
+    }
+}
@@ -0,0 +1,129 @@
+package Controller;
+
+import Model.RayOutcome;
+import Model.RayTracer;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Scores guesses with the same rules as {@link GameState#calcScore}, but on atom masks
+ * (see {@link Model.BoardIndex}), without changing its inputs and without printing.
+ * It can also score a whole tournament round of submissions in parallel.
+ */
+public final class ScoringEngine {
+
+    /**
+     * Score of one game, lower is better.
+     *
+     * @param score        5 for each setter atom the guess missed, plus the ray markers.
+     * @param correctAtoms the number of setter atoms the guess found.
+     * @param rayCount     the number of rays fired.
+     * @param rayMarkers   the number of ray markers used.
+     */
+    public record Score(int score, int correctAtoms, int rayCount, int rayMarkers) {
+    }
+
+    /**
+     * One game to score.
+     *
+     * @param player the player who made the guess.
+     * @param layout the atom mask placed by the setter.
+     * @param guess  the atom mask guessed by the experimenter.
+     * @param rayLog the nodes fired, in order.
+     */
+    public record Submission(String player, long layout, long guess, int[] rayLog) {
+    }
+
+    /**
+     * Totals of all games scored for one player.
+     */
+    public record PlayerTotals(String player, long games, long totalScore, long correctAtoms, long rayCount,
+                               long rayMarkers, int bestScore) {
+
+        /**
+         * Gets the average score per game.
+         */
+        public double averageScore() {
+            return games == 0 ? 0 : (double) totalScore / games;
+        }
+    }
+
+    private ScoringEngine() {
+    }
+
+    /**
+     * Scores a guess when the ray counters are already known.
+     *
+     * @param layout     the atom mask placed by the setter.
+     * @param guess      the atom mask guessed by the experimenter.
+     * @param rayCount   the number of rays fired.
+     * @param rayMarkers the number of ray markers used.
+     */
+    public static Score score(long layout, long guess, int rayCount, int rayMarkers) {
+        int correct = Long.bitCount(layout & guess);
+        int missed = Long.bitCount(layout) - correct;
+        return new Score(missed * ScoreEstimator.MISSED_ATOM_PENALTY + rayMarkers, correct, rayCount, rayMarkers);
+    }
+
+    /**
+     * Scores a guess, working out the ray markers by tracing every fired node through the layout.
+     *
+     * @param layout the atom mask placed by the setter.
+     * @param guess  the atom mask guessed by the experimenter.
+     * @param rayLog the nodes fired.
+     */
+    public static Score score(long layout, long guess, int[] rayLog) {
+        int markers = 0;
+        for (int node : rayLog) {
+            markers += RayOutcome.markers(RayTracer.trace(layout, node));
+        }
+        return score(layout, guess, rayLog.length, markers);
+    }
+
+    /**
+     * Scores a stream of submissions in parallel and adds up the results per player.
+     *
+     * @param submissions the games to score, consumed once.
+     * @return the totals per player, sorted by player name.
+     */
+    public static Map<String, PlayerTotals> scoreAll(Stream<Submission> submissions) {
+        Map<String, Accumulator> accumulators = new ConcurrentHashMap<>();
+        submissions.parallel().forEach(submission -> {
+            Score score = score(submission.layout(), submission.guess(), submission.rayLog());
+            accumulators.computeIfAbsent(submission.player(), player -> new Accumulator()).add(score);
+        });
+
+        Map<String, PlayerTotals> totals = new TreeMap<>();
+        accumulators.forEach((player, acc) -> totals.put(player, acc.totals(player)));
+        return totals;
+    }
+
+    // per-player sums, the adders and accumulator spread concurrent updates over cells instead of one contended field
+    private static final class Accumulator {
+        private final LongAdder games = new LongAdder();
+        private final LongAdder totalScore = new LongAdder();
+        private final LongAdder correctAtoms = new LongAdder();
+        private final LongAdder rayCount = new LongAdder();
+        private final LongAdder rayMarkers = new LongAdder();
+        private final LongAccumulator bestScore = new LongAccumulator(Math::min, Integer.MAX_VALUE);
+
+        void add(Score score) {
+            games.increment();
+            totalScore.add(score.score());
+            correctAtoms.add(score.correctAtoms());
+            rayCount.add(score.rayCount());
+            rayMarkers.add(score.rayMarkers());
+            bestScore.accumulate(score.score());
+        }
+
+        PlayerTotals totals(String player) {
+            return new PlayerTotals(player, games.sum(), totalScore.sum(), correctAtoms.sum(), rayCount.sum(),
+                    rayMarkers.sum(), (int) bestScore.get());
+        }
+    }
+}
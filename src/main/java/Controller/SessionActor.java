@@ -0,0 +1,106 @@
+package Controller;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Runs the calls to one {@link GameSession} one at a time, in the order they were sent.
+ *
+ * <p>Calls wait in a mailbox. When the first one arrives a task is started on the executor
+ * (a virtual thread in {@link SessionManager}) and runs until the mailbox is empty, so an idle
+ * session holds no thread at all.</p>
+ */
+public final class SessionActor {
+
+    private final GameSession session;
+    private final Executor executor;
+    private final Queue<Runnable> mailbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * Creates an actor for a session.
+     *
+     * @param session  the session to run calls on.
+     * @param executor the executor that drains the mailbox.
+     */
+    public SessionActor(GameSession session, Executor executor) {
+        this.session = session;
+        this.executor = executor;
+    }
+
+    /**
+     * Sends a call to the session.
+     *
+     * @param message the call to make on the session.
+     * @return the result, or the exception the session threw.
+     */
+    public <T> CompletableFuture<T> ask(Function<GameSession, T> message) {
+        CompletableFuture<T> reply = new CompletableFuture<>();
+        mailbox.add(() -> {
+            try {
+                reply.complete(message.apply(session));
+            } catch (RuntimeException e) {
+                reply.completeExceptionally(e);
+            } catch (Error e) {
+                reply.completeExceptionally(e);
+                throw e;
+            }
+        });
+        schedule();
+        return reply;
+    }
+
+    /**
+     * Places the setter's atoms, see {@link GameSession#placeSetterAtoms(long)}.
+     */
+    public CompletableFuture<GameSession.Phase> placeSetterAtoms(long layout) {
+        return ask(s -> {
+            s.placeSetterAtoms(layout);
+            return s.getPhase();
+        });
+    }
+
+    /**
+     * Fires a ray, see {@link GameSession#fire(int)}.
+     */
+    public CompletableFuture<Integer> fire(int node) {
+        return ask(s -> s.fire(node));
+    }
+
+    /**
+     * Guesses and ends the game, see {@link GameSession#guess(long)}.
+     */
+    public CompletableFuture<ScoringEngine.Score> guess(long layout) {
+        return ask(s -> s.guess(layout));
+    }
+
+    public long getId() {
+        return session.getId();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            Runnable message;
+            while ((message = mailbox.poll()) != null) {
+                message.run();
+            }
+        } finally {
+            // cleared even when a call throws an Error, so the actor keeps draining later calls
+            scheduled.set(false);
+            // a call may have arrived after the last poll but before the flag was cleared
+            if (!mailbox.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
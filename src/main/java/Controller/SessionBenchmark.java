@@ -0,0 +1,61 @@
+package Controller;
+
+import Model.LayoutRank;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Measures how many headless sessions one JVM can host: the heap used per idle session, and
+ * the time taken to play a full game in each of many active sessions at once.
+ *
+ * <p>Usage: {@code SessionBenchmark [idleSessions] [activeSessions] [raysPerGame]}, by default
+ * 100000 idle and 10000 active sessions firing 10 rays each.</p>
+ */
+public class SessionBenchmark {
+
+    public static void main(String[] args) {
+        int idle = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int active = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int rays = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        SplittableRandom random = new SplittableRandom(32);
+
+        try (SessionManager manager = new SessionManager()) {
+            long before = usedHeap();
+            List<SessionActor> idleSessions = new ArrayList<>(idle);
+            for (int i = 0; i < idle; i++) {
+                idleSessions.add(manager.create());
+            }
+            long after = usedHeap();
+            System.out.printf("%d idle sessions: %.1f MB heap, %d bytes per session%n",
+                    idleSessions.size(), (after - before) / 1e6, (after - before) / Math.max(1, idle));
+
+            long start = System.nanoTime();
+            List<CompletableFuture<ScoringEngine.Score>> games = new ArrayList<>(active);
+            for (int i = 0; i < active; i++) {
+                SessionActor actor = manager.create();
+                long layout = LayoutRank.unrank(random.nextLong(LayoutRank.count(GameSession.MAX_ATOMS)), GameSession.MAX_ATOMS);
+                // all calls are sent at once, the actor runs them in order
+                actor.placeSetterAtoms(layout);
+                for (int r = 0; r < rays; r++) {
+                    actor.fire(1 + random.nextInt(54));
+                }
+                games.add(actor.guess(layout & (layout - 1)));
+            }
+            CompletableFuture.allOf(games.toArray(new CompletableFuture<?>[0])).join();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d active sessions played %d calls in %.3f s (%.0f calls/s), %d sessions hosted%n",
+                    active, (long) active * (rays + 2), seconds, active * (rays + 2) / seconds, manager.size());
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
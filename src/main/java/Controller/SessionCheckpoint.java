@@ -0,0 +1,311 @@
+package Controller;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+/**
+ * Memory-mapped file holding the state of every live {@link GameSession}, so the games survive
+ * a crash of the process and can be picked up again on the next start.
+ *
+ * <p>Each session has a fixed slot in the file with two halves. A save writes the session's
+ * phase, atom mask, guess, ray counters and ray log to the half not holding the latest state,
+ * with a sequence number one higher and a CRC-32C over the whole record. If the process dies in
+ * the middle of a save, that half fails its checksum and the other half still holds the state
+ * before the change. The pages are written back by the operating system, so a save costs a
+ * memory copy and no system call; {@link #force()} flushes them to the disk as well, which is
+ * only needed to survive a power cut.</p>
+ *
+ * <p>Opening the file reads every slot and keeps the sessions found, see {@link #getRecovered()}.
+ * A slot keeps the first {@link #RAY_CAPACITY} nodes of a game's ray log. The ray counters
+ * are always exact, but nodes fired after that come back as 0.</p>
+ *
+ * <p>Sessions on different slots may be saved from different threads at once, but each session
+ * must only be saved by one thread at a time, as its {@link SessionActor} already ensures. The
+ * file is locked while it is open, so a second instance of the game can not write over the
+ * slots of the first; it fails to open the checkpoint instead.</p>
+ */
+public class SessionCheckpoint implements Closeable {
+
+    public static final int MAGIC = 0x42424350;
+    public static final int VERSION = 1;
+
+    /**
+     * Bytes of each half of a slot.
+     */
+    public static final int HALF_BYTES = 1024;
+
+    /**
+     * Slots added each time the file grows.
+     */
+    public static final int REGION_SLOTS = 1024;
+
+    static final int HEADER_BYTES = 64;
+    private static final int SLOT_BYTES = 2 * HALF_BYTES;
+    private static final long REGION_BYTES = (long) REGION_SLOTS * SLOT_BYTES;
+
+    // record fields, the checksum covers everything after it up to the end of the saved ray log
+    private static final int CRC = 0;
+    private static final int SEQUENCE = 4;
+    private static final int ID = 12;
+    private static final int PHASE = 20;
+    private static final int RAY_COUNT = 21;
+    private static final int RAY_MARKERS = 25;
+    private static final int ATOMS = 29;
+    private static final int GUESS = 37;
+    private static final int RAY_LOG = 45;
+
+    /**
+     * Most ray log nodes kept for a game.
+     */
+    public static final int RAY_CAPACITY = HALF_BYTES - RAY_LOG;
+
+    // phase byte of a slot that holds no session
+    private static final byte FREE = 0;
+
+    private static final GameSession.Phase[] PHASES = GameSession.Phase.values();
+
+    // a mapped part of the file and the latest sequence number of each of its slots
+    private record Region(MappedByteBuffer buffer, long[] sequences) {
+    }
+
+    private final FileChannel file;
+    private volatile Region[] regions;
+    private final Map<Long, Integer> slots = new ConcurrentHashMap<>();
+    // free slots, as a stack, guarded by this
+    private int[] free = new int[0];
+    private int freeCount;
+    private final List<GameSession> recovered = new ArrayList<>();
+
+    /**
+     * Opens a checkpoint file, creating it if missing, and recovers the sessions saved in it.
+     *
+     * @param path the checkpoint file.
+     * @throws IOException if the file can not be used, or another checkpoint has it open.
+     */
+    public SessionCheckpoint(Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        this.file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            lock(path);
+            open(path);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    // the lock is released when the file is closed
+    private void lock(Path path) throws IOException {
+        FileLock lock;
+        try {
+            lock = file.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            throw new IOException(path + " is in use by another game.");
+        }
+    }
+
+    private void open(Path path) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        if (file.size() == 0) {
+            header.putInt(MAGIC).putInt(VERSION).putInt(HALF_BYTES).putInt(REGION_SLOTS).clear();
+            file.write(header, 0);
+        } else {
+            file.read(header, 0);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(8) != HALF_BYTES
+                    || header.getInt(12) != REGION_SLOTS) {
+                throw new IOException(path + " is not a session checkpoint.");
+            }
+        }
+        int regionCount = (int) Math.max(1, (file.size() - HEADER_BYTES + REGION_BYTES - 1) / REGION_BYTES);
+        this.regions = new Region[0];
+        for (int r = 0; r < regionCount; r++) {
+            addRegion();
+        }
+        recover();
+    }
+
+    /**
+     * Gets the sessions that were saved in the file when it was opened, in slot order. They keep
+     * their slots, so saving them again updates the same state.
+     */
+    public List<GameSession> getRecovered() {
+        return recovered;
+    }
+
+    /**
+     * Saves a session's current state, giving it a slot if it has none.
+     */
+    public void save(GameSession session) {
+        Integer slot = slots.get(session.getId());
+        if (slot == null) {
+            slot = allocate();
+            slots.put(session.getId(), slot);
+        }
+        byte[] rayLog = session.rayLogBytes();
+        int saved = Math.min(session.getRayCount(), RAY_CAPACITY);
+        write(slot, session.getId(), (byte) (session.getPhase().ordinal() + 1), session.getRayCount(),
+                session.getRayMarkers(), session.getAtoms(), session.getGuess(), rayLog, saved);
+    }
+
+    /**
+     * Forgets a session and frees its slot.
+     *
+     * @param id the session id.
+     * @return true if the session had a slot.
+     */
+    public boolean remove(long id) {
+        Integer slot = slots.remove(id);
+        if (slot == null) {
+            return false;
+        }
+        write(slot, 0, FREE, 0, 0, 0, 0, null, 0);
+        synchronized (this) {
+            push(slot);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the number of sessions with a slot.
+     */
+    public int size() {
+        return slots.size();
+    }
+
+    /**
+     * Writes the saved states through to the disk.
+     */
+    public void force() {
+        for (Region region : regions) {
+            region.buffer.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        file.close();
+    }
+
+    private void write(int slot, long id, byte phase, int rayCount, int rayMarkers, long atoms, long guess,
+                       byte[] rayLog, int saved) {
+        Region region = regions[slot / REGION_SLOTS];
+        int index = slot % REGION_SLOTS;
+        long sequence = region.sequences[index] + 1;
+        // even sequence numbers go to the first half, odd ones to the second
+        int base = index * SLOT_BYTES + (int) (sequence & 1) * HALF_BYTES;
+        ByteBuffer buffer = region.buffer;
+        buffer.putLong(base + SEQUENCE, sequence);
+        buffer.putLong(base + ID, id);
+        buffer.put(base + PHASE, phase);
+        buffer.putInt(base + RAY_COUNT, rayCount);
+        buffer.putInt(base + RAY_MARKERS, rayMarkers);
+        buffer.putLong(base + ATOMS, atoms);
+        buffer.putLong(base + GUESS, guess);
+        if (saved > 0) {
+            buffer.put(base + RAY_LOG, rayLog, 0, saved);
+        }
+        buffer.putInt(base + CRC, checksum(buffer, base, saved));
+        region.sequences[index] = sequence;
+    }
+
+    private static int checksum(ByteBuffer buffer, int base, int saved) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(base + SEQUENCE, RAY_LOG - SEQUENCE + saved));
+        return (int) crc.getValue();
+    }
+
+    // the number of ray log bytes a half claims to hold, or -1 if it can not be a whole record
+    private static int savedRays(ByteBuffer buffer, int base) {
+        int rayCount = buffer.getInt(base + RAY_COUNT);
+        return rayCount < 0 ? -1 : Math.min(rayCount, RAY_CAPACITY);
+    }
+
+    private static boolean isValid(ByteBuffer buffer, int base) {
+        int saved = savedRays(buffer, base);
+        return saved >= 0 && buffer.getInt(base + CRC) == checksum(buffer, base, saved);
+    }
+
+    private void recover() {
+        int slotCount = regions.length * REGION_SLOTS;
+        for (int slot = slotCount - 1; slot >= 0; slot--) {
+            Region region = regions[slot / REGION_SLOTS];
+            int index = slot % REGION_SLOTS;
+            ByteBuffer buffer = region.buffer;
+            int latest = -1;
+            long latestSequence = 0;
+            for (int half = 0; half < 2; half++) {
+                int base = index * SLOT_BYTES + half * HALF_BYTES;
+                long sequence = buffer.getLong(base + SEQUENCE);
+                if ((sequence & 1) == half && isValid(buffer, base) && (latest < 0 || sequence > latestSequence)) {
+                    latest = base;
+                    latestSequence = sequence;
+                }
+            }
+            // the next save goes to the other half, overwriting a torn record if there is one
+            region.sequences[index] = latestSequence;
+            byte phase = latest < 0 ? FREE : buffer.get(latest + PHASE);
+            if (phase <= FREE || phase > PHASES.length) {
+                push(slot);
+                continue;
+            }
+            int saved = savedRays(buffer, latest);
+            byte[] rayLog = new byte[saved];
+            buffer.get(latest + RAY_LOG, rayLog);
+            long id = buffer.getLong(latest + ID);
+            recovered.add(GameSession.restore(id, PHASES[phase - 1], buffer.getLong(latest + ATOMS),
+                    buffer.getInt(latest + RAY_COUNT), buffer.getInt(latest + RAY_MARKERS), rayLog, buffer.getLong(latest + GUESS)));
+            slots.put(id, slot);
+        }
+        Collections.reverse(recovered);
+    }
+
+    private synchronized int allocate() {
+        if (freeCount == 0) {
+            try {
+                addRegion();
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not grow the session checkpoint: " + e.getMessage(), e);
+            }
+            // highest slot first on the stack, so the new region is used from its start
+            for (int slot = regions.length * REGION_SLOTS - 1; slot >= (regions.length - 1) * REGION_SLOTS; slot--) {
+                push(slot);
+            }
+        }
+        return free[--freeCount];
+    }
+
+    private void push(int slot) {
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, Math.max(REGION_SLOTS, freeCount * 2));
+        }
+        free[freeCount++] = slot;
+    }
+
+    private void addRegion() throws IOException {
+        Region[] grown = Arrays.copyOf(regions, regions.length + 1);
+        MappedByteBuffer buffer = file.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + regions.length * REGION_BYTES, REGION_BYTES);
+        grown[regions.length] = new Region(buffer, new long[REGION_SLOTS]);
+        regions = grown;
+    }
+}
@@ -0,0 +1,104 @@
+package Controller;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hosts many headless {@link GameSession}s in one process. Every session gets its own
+ * {@link SessionActor}, whose mailbox is drained on a virtual thread only while it has work.
+ * With a {@link SessionCheckpoint}, every change of a session is saved to it, and the sessions
+ * saved there by an earlier process are hosted again.
+ */
+public class SessionManager implements AutoCloseable {
+
+    private final Map<Long, SessionActor> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final SessionCheckpoint checkpoint;
+
+    /**
+     * Creates a manager that keeps its sessions only in memory.
+     */
+    public SessionManager() {
+        this(null);
+    }
+
+    /**
+     * Creates a manager that saves its sessions to a checkpoint, starting with the sessions
+     * recovered from it.
+     *
+     * @param checkpoint the checkpoint, or null to keep the sessions only in memory.
+     */
+    public SessionManager(SessionCheckpoint checkpoint) {
+        this.checkpoint = checkpoint;
+        if (checkpoint != null) {
+            for (GameSession session : checkpoint.getRecovered()) {
+                session.setCheckpoint(checkpoint);
+                sessions.put(session.getId(), new SessionActor(session, executor));
+                nextId.accumulateAndGet(session.getId() + 1, Math::max);
+            }
+        }
+    }
+
+    /**
+     * Starts a new session waiting for the setter.
+     *
+     * @return the actor for the new session.
+     */
+    public SessionActor create() {
+        long id = nextId.getAndIncrement();
+        GameSession session = new GameSession(id);
+        if (checkpoint != null) {
+            session.setCheckpoint(checkpoint);
+        }
+        SessionActor actor = new SessionActor(session, executor);
+        sessions.put(id, actor);
+        return actor;
+    }
+
+    /**
+     * Gets a session by id.
+     *
+     * @param id the session id.
+     * @return the actor, or null if there is no such session.
+     */
+    public SessionActor get(long id) {
+        return sessions.get(id);
+    }
+
+    /**
+     * Forgets a session, calls already sent to it still run.
+     *
+     * @param id the session id.
+     * @return true if the session existed.
+     */
+    public boolean remove(long id) {
+        SessionActor actor = sessions.remove(id);
+        if (actor != null && checkpoint != null) {
+            // after the calls already sent, so they do not save the session again
+            actor.ask(session -> {
+                session.setCheckpoint(null);
+                return checkpoint.remove(id);
+            });
+        }
+        return actor != null;
+    }
+
+    /**
+     * Gets the number of sessions hosted.
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Stops the executor after the calls already sent have run.
+     */
+    @Override
+    public void close() {
+        executor.close();
+    }
+}
@@ -29,8 +29,11 @@ public class Translation {
     //Method to link the two maps
     public void linkMaps() {
         //retrieving static hex cell map
-        Map<Integer, Point2D> hexCellsMap = HexCellGenerator.getHexCellsMap();
+        linkMaps(HexCellGenerator.getHexCellsMap());
+    }
 
+    //links the board to the centres of a generated grid, in the order the cells were generated.
+    public void linkMaps(Map<Integer, Point2D> hexCellsMap) {
         //check for initialisation and equal size of both maps
         if (blackBoxBoard.getBoardSize() != hexCellsMap.size()) {
             System.out.println("The maps cannot be linked due to size mismatch."); //if size differs
@@ -76,6 +79,9 @@ public class Translation {
     }
 
     public static List<Point2D> get2DAtomMatch(List<Point3D> atomPositions) {
+        if (translationMap == null) {
+            throw new IllegalStateException("No grid is linked to the board yet, generate the hex cells and call linkMaps first.");
+        }
         List<Point2D> point2DSetterAtoms = new ArrayList<>();
 
         for (Map.Entry<Point3D, Point2D> entry : translationMap.entrySet()) {
@@ -2,6 +2,7 @@ package Model;
 import javafx.geometry.Point2D;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Represents the black box game board for the game. This class manages the
@@ -183,6 +184,15 @@ public class BlackBoxBoard {
         }
     }
 
+    /**
+     * Gets the difficulty rating of the atoms on the board, see {@link DifficultyEstimator}.
+     * Ratings are cached, so it is ready at once if the layout has been rated before.
+     * @return the rating, completed once it is known.
+     */
+    public CompletableFuture<DifficultyEstimator.Difficulty> getDifficulty() {
+        return DifficultyEstimator.estimateAsync(BoardIndex.maskOf(this));
+    }
+
     /**
      * Places an atom at a specific point on the board. It also assigns CIPoints.
      * around the placed atom if they fall within valid coordinates.
@@ -240,20 +250,18 @@ public class BlackBoxBoard {
      */
 
     public void placeRandomAtoms(int numberOfAtoms) {
-        randomAtoms = new ArrayList<>();
-        // create a list from the keys of the board HashMap, which are the valid positions
-        List<Point3D> validPoints = new ArrayList<>(board.keySet());
-
-
-        // shuffle the list to randomise the order of points
-        Collections.shuffle(validPoints);
+        placeRandomAtoms(numberOfAtoms, new SplittableRandom());
+    }
 
-        //we can loop through the shuffled list and take the first numberOfAtoms points to place atoms
-        for (int i = 0; i < numberOfAtoms; i++) {
-            Point3D point = validPoints.get(i);
-            //placeAtom(point);
-            randomAtoms.add(point);
-        }
+    /**
+     * Places a specific number of atoms randomly on the board, using a given random source so
+     * the layout can be repeated from a seed.
+     *
+     * @param numberOfAtoms The number of atoms to place.
+     * @param random The random source.
+     */
+    public void placeRandomAtoms(int numberOfAtoms, SplittableRandom random) {
+        randomAtoms = BoardIndex.pointsOf(BoardIndex.randomLayout(random, numberOfAtoms));
     }
 
     public void printCIPoints() {
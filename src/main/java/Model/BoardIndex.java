@@ -0,0 +1,196 @@
+package Model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Numbers the 61 hex cells of the board so a whole atom layout fits into a single 64-bit mask.
+ * Cell indices follow the same order the board map is filled in (row by row, top-down), so
+ * index i is the i-th entry of the board and of the UI's hex cell map.
+ */
+public final class BoardIndex {
+
+    /**
+     * Radius of the hex board in cells, not counting the centre cell.
+     */
+    public static final int RADIUS = 4;
+
+    /**
+     * Number of hex cells on the board.
+     */
+    public static final int CELL_COUNT = 61;
+
+    /**
+     * Number of ray directions, in {@link Direction} ordinal order (YR, YL, XU, XD, ZU, ZD).
+     */
+    public static final int DIRECTIONS = 6;
+
+    /**
+     * Mask with one bit set for every cell of the board.
+     */
+    public static final long FULL_MASK = (1L << CELL_COUNT) - 1;
+
+    // cube coordinate offsets of one step in each direction, same as Ray.calculateNextPosition
+    static final int[][] STEP = {
+            {1, 0, -1},  // YR
+            {-1, 0, 1},  // YL
+            {0, -1, 1},  // XU
+            {0, 1, -1},  // XD
+            {1, -1, 0},  // ZU
+            {-1, 1, 0}   // ZD
+    };
+
+    private static final BlackBoxBoard.Point3D[] POINTS = new BlackBoxBoard.Point3D[CELL_COUNT];
+    // lookup of cell index by (x + 4, y + 4), -1 for coordinates outside the hexagon
+    private static final int[] INDEX = new int[(2 * RADIUS + 1) * (2 * RADIUS + 1)];
+    // neighbouring cell of each cell in each direction, -1 when the step leaves the board
+    private static final int[] NEIGHBOUR = new int[CELL_COUNT * DIRECTIONS];
+    // all on-board neighbours of each cell, i.e. the cells whose atoms give it a CI point
+    private static final long[] NEIGHBOUR_MASK = new long[CELL_COUNT];
+
+    static {
+        java.util.Arrays.fill(INDEX, -1);
+        int cell = 0;
+        for (int y = -RADIUS; y <= RADIUS; y++) {
+            for (int x = -RADIUS; x <= RADIUS; x++) {
+                int z = -x - y;
+                if (z >= -RADIUS && z <= RADIUS) {
+                    POINTS[cell] = new BlackBoxBoard.Point3D(x, y, z);
+                    INDEX[(x + RADIUS) * (2 * RADIUS + 1) + (y + RADIUS)] = cell;
+                    cell++;
+                }
+            }
+        }
+        for (int c = 0; c < CELL_COUNT; c++) {
+            BlackBoxBoard.Point3D p = POINTS[c];
+            for (int d = 0; d < DIRECTIONS; d++) {
+                int n = indexOf(p.x + STEP[d][0], p.y + STEP[d][1], p.z + STEP[d][2]);
+                NEIGHBOUR[c * DIRECTIONS + d] = n;
+                if (n >= 0) {
+                    NEIGHBOUR_MASK[c] |= 1L << n;
+                }
+            }
+        }
+    }
+
+    private BoardIndex() {
+    }
+
+    /**
+     * Gets the index of the cell at the given cube coordinates.
+     *
+     * @return the cell index, or -1 if the coordinates are not on the board.
+     */
+    public static int indexOf(int x, int y, int z) {
+        if (x + y + z != 0 || x < -RADIUS || x > RADIUS || y < -RADIUS || y > RADIUS || z < -RADIUS || z > RADIUS) {
+            return -1;
+        }
+        return INDEX[(x + RADIUS) * (2 * RADIUS + 1) + (y + RADIUS)];
+    }
+
+    /**
+     * Gets the index of the cell at the given point.
+     *
+     * @return the cell index, or -1 if the point is null or not on the board.
+     */
+    public static int indexOf(BlackBoxBoard.Point3D point) {
+        return point == null ? -1 : indexOf(point.x, point.y, point.z);
+    }
+
+    /**
+     * Gets the coordinates of a cell.
+     *
+     * @param cell the cell index.
+     * @return the shared Point3D of that cell.
+     */
+    public static BlackBoxBoard.Point3D pointOf(int cell) {
+        return POINTS[cell];
+    }
+
+    /**
+     * Gets the cell reached by taking one step from a cell in a direction.
+     *
+     * @param cell the cell index.
+     * @param dir  the direction ordinal.
+     * @return the neighbouring cell index, or -1 if the step leaves the board.
+     */
+    public static int neighbour(int cell, int dir) {
+        return NEIGHBOUR[cell * DIRECTIONS + dir];
+    }
+
+    /**
+     * Gets the mask of all on-board neighbours of a cell.
+     */
+    public static long neighbourMask(int cell) {
+        return NEIGHBOUR_MASK[cell];
+    }
+
+    /**
+     * Builds an atom mask from a collection of points. Points off the board are ignored.
+     *
+     * @param points the atom coordinates.
+     * @return the mask with one bit set per atom.
+     */
+    public static long maskOf(Collection<BlackBoxBoard.Point3D> points) {
+        long mask = 0L;
+        for (BlackBoxBoard.Point3D point : points) {
+            int cell = indexOf(point);
+            if (cell >= 0) {
+                mask |= 1L << cell;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Picks a uniformly random layout with Floyd's sampling, one random number per atom.
+     *
+     * @param random the random source, split it for each thread.
+     * @param atoms  the number of atoms.
+     * @return the atom mask.
+     */
+    public static long randomLayout(SplittableRandom random, int atoms) {
+        if (atoms < 0 || atoms > CELL_COUNT) {
+            throw new IllegalArgumentException("Cannot place " + atoms + " atoms on " + CELL_COUNT + " cells.");
+        }
+        long mask = 0L;
+        for (int j = CELL_COUNT - atoms; j < CELL_COUNT; j++) {
+            int cell = random.nextInt(j + 1);
+            mask |= (mask & (1L << cell)) == 0 ? 1L << cell : 1L << j;
+        }
+        return mask;
+    }
+
+    /**
+     * Lists the points of all cells set in a mask, in cell index order.
+     *
+     * @param mask the atom mask.
+     * @return a new list of points.
+     */
+    public static List<BlackBoxBoard.Point3D> pointsOf(long mask) {
+        List<BlackBoxBoard.Point3D> points = new ArrayList<>(Long.bitCount(mask));
+        for (long m = mask; m != 0; m &= m - 1) {
+            points.add(POINTS[Long.numberOfTrailingZeros(m)]);
+        }
+        return points;
+    }
+
+    /**
+     * Reads the atom mask of a board by checking every cell for an atom.
+     *
+     * @param board the board to read.
+     * @return the mask of cells holding an atom.
+     */
+    public static long maskOf(BlackBoxBoard board) {
+        long mask = 0L;
+        for (int c = 0; c < CELL_COUNT; c++) {
+            HexCell cell = board.getCell(POINTS[c]);
+            if (cell != null && cell.hasAtom()) {
+                mask |= 1L << c;
+            }
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,139 @@
+package Model;
+
+/**
+ * The twelve symmetries of the hexagonal board (six rotations, each with or without a mirror)
+ * as tables on cells and ray nodes. Turning or mirroring a layout turns the rays with it, so
+ * the outcome of a node on a layout is the outcome of the mapped node on the mapped layout, with
+ * exit nodes mapped the same way. Searches over layouts use this to look at one layout of each
+ * group of equivalent ones.
+ */
+public final class BoardSymmetry {
+
+    /**
+     * Number of symmetries, symmetry 0 is the identity.
+     */
+    public static final int COUNT = 12;
+
+    // image of each cell and each node (index 0 unused) under each symmetry
+    private static final int[][] CELL = new int[COUNT][BoardIndex.CELL_COUNT];
+    private static final int[][] NODE = new int[COUNT][RayTracer.NODE_COUNT + 1];
+
+    static {
+        for (int s = 0; s < COUNT; s++) {
+            for (int c = 0; c < BoardIndex.CELL_COUNT; c++) {
+                BlackBoxBoard.Point3D p = BoardIndex.pointOf(c);
+                int[] q = transform(s, p.x, p.y, p.z);
+                CELL[s][c] = BoardIndex.indexOf(q[0], q[1], q[2]);
+            }
+            int[] dirs = new int[BoardIndex.DIRECTIONS];
+            for (int d = 0; d < BoardIndex.DIRECTIONS; d++) {
+                int[] step = BoardIndex.STEP[d];
+                int[] q = transform(s, step[0], step[1], step[2]);
+                for (int e = 0; e < BoardIndex.DIRECTIONS; e++) {
+                    if (java.util.Arrays.equals(q, BoardIndex.STEP[e])) {
+                        dirs[d] = e;
+                    }
+                }
+            }
+            for (int n = 1; n <= RayTracer.NODE_COUNT; n++) {
+                int cell = CELL[s][RayTracer.entryCell(n)];
+                int dir = dirs[RayTracer.entryDir(n)];
+                for (int m = 1; m <= RayTracer.NODE_COUNT; m++) {
+                    if (RayTracer.entryCell(m) == cell && RayTracer.entryDir(m) == dir) {
+                        NODE[s][n] = m;
+                    }
+                }
+            }
+        }
+    }
+
+    private BoardSymmetry() {
+    }
+
+    // rotates by 60 degrees (s % 6) times, mirroring first when s >= 6
+    private static int[] transform(int s, int x, int y, int z) {
+        if (s >= 6) {
+            int t = x;
+            x = y;
+            y = t;
+        }
+        for (int r = 0; r < s % 6; r++) {
+            int t = x;
+            x = -y;
+            y = -z;
+            z = -t;
+        }
+        return new int[]{x, y, z};
+    }
+
+    /**
+     * Gets the image of a cell.
+     */
+    public static int cell(int symmetry, int cell) {
+        return CELL[symmetry][cell];
+    }
+
+    /**
+     * Gets the image of a ray node.
+     */
+    public static int node(int symmetry, int node) {
+        return NODE[symmetry][node];
+    }
+
+    /**
+     * Gets the image of a {@link RayOutcome}: exit nodes are mapped, absorptions and reflections
+     * stay as they are.
+     */
+    public static int outcome(int symmetry, int outcome) {
+        return RayOutcome.isExit(outcome) ? NODE[symmetry][outcome] : outcome;
+    }
+
+    /**
+     * Gets the image of an atom mask.
+     */
+    public static long apply(int symmetry, long layout) {
+        int[] cells = CELL[symmetry];
+        long image = 0L;
+        for (long m = layout; m != 0; m &= m - 1) {
+            image |= 1L << cells[Long.numberOfTrailingZeros(m)];
+        }
+        return image;
+    }
+
+    /**
+     * Gets the image of a set of nodes, bit n - 1 standing for node n.
+     */
+    public static long applyToNodes(int symmetry, long nodes) {
+        int[] map = NODE[symmetry];
+        long image = 0L;
+        for (long m = nodes; m != 0; m &= m - 1) {
+            image |= 1L << (map[Long.numberOfTrailingZeros(m) + 1] - 1);
+        }
+        return image;
+    }
+
+    /**
+     * Gets the smallest mask among the images of a layout, the same for every layout that is a
+     * turned or mirrored copy of it.
+     */
+    public static long canonical(long layout) {
+        long best = layout;
+        for (int s = 1; s < COUNT; s++) {
+            best = Math.min(best, apply(s, layout));
+        }
+        return best;
+    }
+
+    /**
+     * Gets the symmetries that leave a layout as it is, bit s standing for symmetry s.
+     */
+    public static int stabiliser(long layout) {
+        int symmetries = 1;
+        for (int s = 1; s < COUNT; s++) {
+            if (apply(s, layout) == layout) {
+                symmetries |= 1 << s;
+            }
+        }
+        return symmetries;
+    }
+}
@@ -0,0 +1,547 @@
+package Model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * Bounded-memory store for the set of candidate layouts that are still consistent with the
+ * rays fired so far. Layouts are kept as packed records of one or more longs (one long is
+ * enough for the 61 cell board, larger variants use more) in off-heap arenas. When the arenas
+ * would grow past the memory budget, their records are sorted and spilled to a temp file as a
+ * sorted run, and the arenas are reused. Once there are more than a few runs they are merged
+ * into one. New observations are applied with {@link #filter},
+ * which filters the arenas and the spilled runs in parallel.
+ *
+ * <p>The store itself is not thread-safe: add, filter and forEach must not run concurrently.</p>
+ */
+public final class CandidateStore implements Closeable {
+
+    /**
+     * Decides whether a candidate record stays in the store.
+     */
+    @FunctionalInterface
+    public interface RecordFilter {
+        /**
+         * @param record the record's words, only valid during the call.
+         * @return true to keep the record.
+         */
+        boolean keep(long[] record);
+    }
+
+    /**
+     * Snapshot of the store's size and memory use.
+     *
+     * @param records          candidates currently held.
+     * @param inMemoryRecords  candidates held in the off-heap arenas.
+     * @param offHeapBytes     bytes allocated for arenas.
+     * @param peakOffHeapBytes highest value offHeapBytes reached.
+     * @param budgetBytes      the off-heap budget the store was created with.
+     * @param spilledBytes     bytes currently held in spilled runs on disk.
+     * @param runs             number of spilled runs on disk.
+     * @param spills           number of times the arenas were spilled.
+     */
+    public record Metrics(long records, long inMemoryRecords, long offHeapBytes, long peakOffHeapBytes,
+                          long budgetBytes, long spilledBytes, int runs, long spills) {
+    }
+
+    /**
+     * Default size of one off-heap arena.
+     */
+    public static final int DEFAULT_ARENA_BYTES = 1 << 20;
+
+    // spilled runs kept before they are merged into one
+    private static final int MAX_RUNS = 16;
+
+    private static final class Arena {
+        final ByteBuffer buffer;
+        int count;
+
+        Arena(int bytes) {
+            this.buffer = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    private record Run(Path file, long count) {
+    }
+
+    private final int words;
+    private final int recordBytes;
+    private final int arenaRecords;
+    private final long budgetBytes;
+    private final Path spillDir;
+    private final List<Arena> arenas = new ArrayList<>();
+    private List<Run> runs = new ArrayList<>();
+    // arena that add() currently fills
+    private int current;
+    private long peakOffHeapBytes;
+    private long spills;
+
+    /**
+     * Creates a store with the default arena size.
+     *
+     * @param words       number of longs per record.
+     * @param budgetBytes the most off-heap memory the arenas may use.
+     * @param spillDir    directory for spilled runs.
+     */
+    public CandidateStore(int words, long budgetBytes, Path spillDir) {
+        this(words, budgetBytes, DEFAULT_ARENA_BYTES, spillDir);
+    }
+
+    /**
+     * Creates a store.
+     *
+     * @param words       number of longs per record.
+     * @param budgetBytes the most off-heap memory the arenas may use, at least one arena.
+     * @param arenaBytes  size of each off-heap arena.
+     * @param spillDir    directory for spilled runs.
+     */
+    public CandidateStore(int words, long budgetBytes, int arenaBytes, Path spillDir) {
+        if (words < 1) {
+            throw new IllegalArgumentException("Records need at least one word.");
+        }
+        this.words = words;
+        this.recordBytes = words * Long.BYTES;
+        this.arenaRecords = arenaBytes / recordBytes;
+        if (arenaRecords < 1 || budgetBytes < (long) arenaRecords * recordBytes) {
+            throw new IllegalArgumentException("The budget must hold at least one arena of at least one record.");
+        }
+        this.budgetBytes = budgetBytes;
+        this.spillDir = spillDir;
+    }
+
+    /**
+     * Creates a store holding every layout of the 61 cell board with a given number of atoms.
+     *
+     * @param atoms       number of atoms per layout.
+     * @param budgetBytes the most off-heap memory the arenas may use.
+     * @param spillDir    directory for spilled runs.
+     * @return the filled store.
+     */
+    public static CandidateStore ofAllLayouts(int atoms, long budgetBytes, Path spillDir) {
+        CandidateStore store = new CandidateStore(1, budgetBytes, spillDir);
+        for (long layout = LayoutRank.first(atoms); layout != 0; layout = LayoutRank.next(layout)) {
+            store.add(layout);
+        }
+        return store;
+    }
+
+    /**
+     * Adds a single word record, i.e. a layout of the 61 cell board.
+     */
+    public void add(long layout) {
+        if (words != 1) {
+            throw new IllegalStateException("Store records have " + words + " words.");
+        }
+        Arena arena = arenaWithSpace();
+        arena.buffer.putLong(arena.count * recordBytes, layout);
+        arena.count++;
+    }
+
+    /**
+     * Adds a record.
+     *
+     * @param record exactly as many longs as the store's record width.
+     */
+    public void add(long[] record) {
+        if (record.length != words) {
+            throw new IllegalArgumentException("Expected " + words + " words, got " + record.length + ".");
+        }
+        Arena arena = arenaWithSpace();
+        int offset = arena.count * recordBytes;
+        for (int w = 0; w < words; w++) {
+            arena.buffer.putLong(offset + w * Long.BYTES, record[w]);
+        }
+        arena.count++;
+    }
+
+    /**
+     * Removes every record the filter rejects. Arenas and spilled runs are filtered in parallel.
+     *
+     * @param filter the filter to apply.
+     */
+    public void filter(RecordFilter filter) {
+        arenas.parallelStream().forEach(arena -> compact(arena, filter));
+        current = 0;
+
+        List<Run> old = runs;
+        List<Run> kept = old.parallelStream().map(run -> filterRun(run, filter)).toList();
+        runs = new ArrayList<>();
+        for (Run run : kept) {
+            if (run.count() > 0) {
+                runs.add(run);
+            } else {
+                delete(run.file());
+            }
+        }
+    }
+
+    /**
+     * Keeps only the layouts for which firing a node gives the observed outcome.
+     *
+     * @param node    the node that was fired.
+     * @param outcome the observed {@link RayOutcome} code.
+     */
+    public void filter(int node, int outcome) {
+        if (words != 1) {
+            throw new IllegalStateException("Ray observations only apply to single word layouts.");
+        }
+        filter(record -> RayTracer.trace(record[0], node) == outcome);
+    }
+
+    /**
+     * Visits every record, in-memory arenas first and then the spilled runs.
+     *
+     * @param action receives each record; the array is reused between calls.
+     */
+    public void forEach(Consumer<long[]> action) {
+        long[] record = new long[words];
+        for (Arena arena : arenas) {
+            for (int i = 0; i < arena.count; i++) {
+                read(arena, i, record);
+                action.accept(record);
+            }
+        }
+        for (Run run : runs) {
+            try (DataInputStream in = openRun(run.file())) {
+                for (long i = 0; i < run.count(); i++) {
+                    for (int w = 0; w < words; w++) {
+                        record[w] = in.readLong();
+                    }
+                    action.accept(record);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of candidates in the store.
+     */
+    public long size() {
+        long size = inMemoryRecords();
+        for (Run run : runs) {
+            size += run.count();
+        }
+        return size;
+    }
+
+    /**
+     * Gets the current size and memory use of the store.
+     */
+    public Metrics getMetrics() {
+        long spilledBytes = 0;
+        for (Run run : runs) {
+            spilledBytes += run.count() * recordBytes;
+        }
+        return new Metrics(size(), inMemoryRecords(), offHeapBytes(), peakOffHeapBytes, budgetBytes,
+                spilledBytes, runs.size(), spills);
+    }
+
+    /**
+     * Deletes all spilled runs and drops the arenas.
+     */
+    @Override
+    public void close() {
+        for (Run run : runs) {
+            delete(run.file());
+        }
+        runs.clear();
+        arenas.clear();
+        current = 0;
+    }
+
+    private long inMemoryRecords() {
+        long count = 0;
+        for (Arena arena : arenas) {
+            count += arena.count;
+        }
+        return count;
+    }
+
+    private long offHeapBytes() {
+        return (long) arenas.size() * arenaRecords * recordBytes;
+    }
+
+    // finds an arena with a free slot, allocating or spilling when all are full
+    private Arena arenaWithSpace() {
+        while (current < arenas.size()) {
+            Arena arena = arenas.get(current);
+            if (arena.count < arenaRecords) {
+                return arena;
+            }
+            current++;
+        }
+        if (offHeapBytes() + (long) arenaRecords * recordBytes <= budgetBytes) {
+            arenas.add(new Arena(arenaRecords * recordBytes));
+            peakOffHeapBytes = Math.max(peakOffHeapBytes, offHeapBytes());
+            return arenas.get(current);
+        }
+        spill();
+        return arenas.get(0);
+    }
+
+    // sorts every arena and merges them into one sorted run on disk, then empties the arenas
+    private void spill() {
+        List<Cursor> cursors = new ArrayList<>();
+        for (Arena arena : arenas) {
+            sort(arena);
+            cursors.add(new ArenaCursor(arena));
+        }
+        long count = inMemoryRecords();
+        try {
+            runs.add(merge(cursors, count));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        for (Arena arena : arenas) {
+            arena.count = 0;
+        }
+        current = 0;
+        spills++;
+        if (runs.size() > MAX_RUNS) {
+            mergeRuns();
+        }
+    }
+
+    // merges all spilled runs into one, so their number stays bounded however often the store spills
+    private void mergeRuns() {
+        List<Cursor> cursors = new ArrayList<>();
+        long count = 0;
+        try {
+            try {
+                for (Run run : runs) {
+                    cursors.add(new RunCursor(run));
+                    count += run.count();
+                }
+                Run merged = merge(cursors, count);
+                for (Run run : runs) {
+                    delete(run.file());
+                }
+                runs = new ArrayList<>(List.of(merged));
+            } finally {
+                for (Cursor cursor : cursors) {
+                    cursor.close();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // k-way merge of sorted sources into a new run, with a heap of the sources' next records
+    private Run merge(List<Cursor> cursors, long count) throws IOException {
+        PriorityQueue<Cursor> heads = new PriorityQueue<>(Math.max(1, cursors.size()),
+                (a, b) -> compare(a.record, b.record));
+        for (Cursor cursor : cursors) {
+            if (cursor.advance()) {
+                heads.add(cursor);
+            }
+        }
+        Path file = Files.createTempFile(spillDir, "candidates", ".run");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            for (long written = 0; written < count; written++) {
+                Cursor cursor = heads.poll();
+                for (long word : cursor.record) {
+                    out.writeLong(word);
+                }
+                if (cursor.advance()) {
+                    heads.add(cursor);
+                }
+            }
+        }
+        return new Run(file, count);
+    }
+
+    // a sorted source of records for merge, holding the record it is at
+    private abstract class Cursor {
+        final long[] record = new long[words];
+
+        // moves to the next record, false when there is none
+        abstract boolean advance() throws IOException;
+
+        void close() throws IOException {
+        }
+    }
+
+    private final class ArenaCursor extends Cursor {
+        private final Arena arena;
+        private int position;
+
+        ArenaCursor(Arena arena) {
+            this.arena = arena;
+        }
+
+        @Override
+        boolean advance() {
+            if (position == arena.count) {
+                return false;
+            }
+            read(arena, position++, record);
+            return true;
+        }
+    }
+
+    private final class RunCursor extends Cursor {
+        private final DataInputStream in;
+        private long remaining;
+
+        RunCursor(Run run) throws IOException {
+            this.in = openRun(run.file());
+            this.remaining = run.count();
+        }
+
+        @Override
+        boolean advance() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            for (int w = 0; w < words; w++) {
+                record[w] = in.readLong();
+            }
+            return true;
+        }
+
+        @Override
+        void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private void compact(Arena arena, RecordFilter filter) {
+        long[] record = new long[words];
+        int kept = 0;
+        for (int i = 0; i < arena.count; i++) {
+            read(arena, i, record);
+            if (filter.keep(record)) {
+                if (kept != i) {
+                    write(arena, kept, record);
+                }
+                kept++;
+            }
+        }
+        arena.count = kept;
+    }
+
+    // streams a run through the filter into a new run, which stays sorted
+    private Run filterRun(Run run, RecordFilter filter) {
+        try {
+            Path file = Files.createTempFile(spillDir, "candidates", ".run");
+            long kept = 0;
+            long[] record = new long[words];
+            try (DataInputStream in = openRun(run.file());
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+                for (long i = 0; i < run.count(); i++) {
+                    for (int w = 0; w < words; w++) {
+                        record[w] = in.readLong();
+                    }
+                    if (filter.keep(record)) {
+                        for (long word : record) {
+                            out.writeLong(word);
+                        }
+                        kept++;
+                    }
+                }
+            }
+            delete(run.file());
+            return new Run(file, kept);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // in-place heap sort of an arena's records, so sorting needs no extra memory
+    private void sort(Arena arena) {
+        long[] a = new long[words];
+        long[] b = new long[words];
+        for (int i = arena.count / 2 - 1; i >= 0; i--) {
+            siftDown(arena, i, arena.count, a, b);
+        }
+        for (int end = arena.count - 1; end > 0; end--) {
+            swap(arena, 0, end, a, b);
+            siftDown(arena, 0, end, a, b);
+        }
+    }
+
+    private void siftDown(Arena arena, int i, int size, long[] a, long[] b) {
+        while (true) {
+            int largest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && compareAt(arena, left, largest, a, b) > 0) {
+                largest = left;
+            }
+            if (right < size && compareAt(arena, right, largest, a, b) > 0) {
+                largest = right;
+            }
+            if (largest == i) {
+                return;
+            }
+            swap(arena, i, largest, a, b);
+            i = largest;
+        }
+    }
+
+    private int compareAt(Arena arena, int i, int j, long[] a, long[] b) {
+        read(arena, i, a);
+        read(arena, j, b);
+        return compare(a, b);
+    }
+
+    private void swap(Arena arena, int i, int j, long[] a, long[] b) {
+        read(arena, i, a);
+        read(arena, j, b);
+        write(arena, i, b);
+        write(arena, j, a);
+    }
+
+    private static int compare(long[] a, long[] b) {
+        for (int w = 0; w < a.length; w++) {
+            int c = Long.compareUnsigned(a[w], b[w]);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    private void read(Arena arena, int index, long[] record) {
+        int offset = index * recordBytes;
+        for (int w = 0; w < words; w++) {
+            record[w] = arena.buffer.getLong(offset + w * Long.BYTES);
+        }
+    }
+
+    private void write(Arena arena, int index, long[] record) {
+        int offset = index * recordBytes;
+        for (int w = 0; w < words; w++) {
+            arena.buffer.putLong(offset + w * Long.BYTES, record[w]);
+        }
+    }
+
+    private static DataInputStream openRun(Path file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package Model;
+
+/**
+ * Derives cells that must hold an atom or must be empty from the rays fired so far, before
+ * any layout is enumerated.
+ *
+ * <p>Each fired ray is traced with partial knowledge of the board. Whenever the trace needs a
+ * cell that is not known yet it branches on both values, and only the branches ending in the
+ * observed outcome are kept. A cell with the same value in every kept branch is forced. This
+ * covers the usual hand rules (a straight pass-through empties every cell on and beside its
+ * line, an edge reflection needs an atom next to the entry cell, a hit needs an atom on the
+ * ray), and works for any deflection pattern. Together with the atom count, the rays are
+ * propagated again until nothing changes.</p>
+ *
+ * <p>The partial traces use the tables of a {@link GridTracer}, so the same propagation works on
+ * any {@link Topology}; the game's hex board is the default.</p>
+ */
+public final class ConstraintPropagator {
+
+    /**
+     * Default number of partial traces allowed per ray and round. A ray with more branches than
+     * this is skipped for that round, which only means fewer cells get forced.
+     */
+    public static final int DEFAULT_BRANCH_BUDGET = 4096;
+
+    /**
+     * Cells forced by the fired rays.
+     *
+     * @param forcedAtoms mask of cells that hold an atom in every consistent layout.
+     * @param forcedEmpty mask of cells that are empty in every consistent layout.
+     * @param consistent  false if no layout with the given number of atoms fits the rays.
+     * @param cells       mask of every cell of the grid.
+     */
+    public record Result(long forcedAtoms, long forcedEmpty, boolean consistent, long cells) {
+
+        /**
+         * Gets the mask of cells that are still undecided.
+         */
+        public long freeCells() {
+            return cells & ~forcedAtoms & ~forcedEmpty;
+        }
+    }
+
+    private final GridTracer tracer;
+    private final int branchBudget;
+
+    /**
+     * Creates a propagator with the default branch budget.
+     */
+    public ConstraintPropagator() {
+        this(DEFAULT_BRANCH_BUDGET);
+    }
+
+    /**
+     * Creates a propagator.
+     *
+     * @param branchBudget the number of partial traces allowed per ray and round.
+     */
+    public ConstraintPropagator(int branchBudget) {
+        this(GridTracer.HEX, branchBudget);
+    }
+
+    /**
+     * Creates a propagator for another grid.
+     *
+     * @param tracer       the tracer of the grid.
+     * @param branchBudget the number of partial traces allowed per ray and round.
+     */
+    public ConstraintPropagator(GridTracer tracer, int branchBudget) {
+        this.tracer = tracer;
+        this.branchBudget = branchBudget;
+    }
+
+    /**
+     * Propagates the fired rays to a fixpoint.
+     *
+     * @param nodes    the fired nodes.
+     * @param outcomes the {@link RayOutcome} observed for each fired node.
+     * @param atoms    the number of atoms on the board.
+     * @return the forced cells.
+     */
+    public Result propagate(int[] nodes, int[] outcomes, int atoms) {
+        long cells = tracer.fullMask();
+        long known = 0L;
+        long empty = 0L;
+        long[] forced = new long[2];
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < nodes.length; i++) {
+                int leaves = explore(nodes[i], outcomes[i], atoms, known, empty, forced);
+                if (leaves == 0) {
+                    return new Result(known, empty, false, cells);
+                }
+                if (leaves > 0 && ((forced[0] & ~known) != 0 || (forced[1] & ~empty) != 0)) {
+                    known |= forced[0];
+                    empty |= forced[1];
+                    changed = true;
+                }
+            }
+
+            // atom count: once all atoms are found the rest is empty, and the other way round
+            long free = cells & ~known & ~empty;
+            int found = Long.bitCount(known);
+            if ((known & empty) != 0 || found > atoms || found + Long.bitCount(free) < atoms) {
+                return new Result(known, empty, false, cells);
+            }
+            if (free != 0 && found == atoms) {
+                empty |= free;
+                changed = true;
+            } else if (free != 0 && found + Long.bitCount(free) == atoms) {
+                known |= free;
+                changed = true;
+            }
+        }
+        return new Result(known, empty, true, cells);
+    }
+
+    /**
+     * Explores every assignment of the cells a ray looks at, given the known cells.
+     *
+     * @param forced receives the cells that are atoms ([0]) and empty ([1]) in every branch
+     *               that ends in the observed outcome.
+     * @return the number of matching branches, or -1 if the branch budget ran out.
+     */
+    private int explore(int node, int outcome, int atoms, long known, long empty, long[] forced) {
+        long[] stackAtoms = new long[tracer.cellCount() + 1];
+        long[] stackEmpty = new long[tracer.cellCount() + 1];
+        int top = 0;
+        stackAtoms[top] = known;
+        stackEmpty[top] = empty;
+        top++;
+
+        long allAtoms = -1L;
+        long allEmpty = -1L;
+        int leaves = 0;
+        int budget = branchBudget;
+        while (top > 0) {
+            top--;
+            long a = stackAtoms[top];
+            long e = stackEmpty[top];
+            if (--budget < 0) {
+                return -1;
+            }
+            int result = traceKnown(a, e, node);
+            if (result < 0) {
+                // the ray needs an unknown cell, try it both ways
+                long bit = 1L << (-result - 1);
+                if (Long.bitCount(a) < atoms) {
+                    stackAtoms[top] = a | bit;
+                    stackEmpty[top] = e;
+                    top++;
+                }
+                long freeAfter = tracer.fullMask() & ~a & ~(e | bit);
+                if (Long.bitCount(a) + Long.bitCount(freeAfter) >= atoms) {
+                    stackAtoms[top] = a;
+                    stackEmpty[top] = e | bit;
+                    top++;
+                }
+            } else if (result == outcome) {
+                allAtoms &= a;
+                allEmpty &= e;
+                leaves++;
+            }
+        }
+        forced[0] = leaves > 0 ? allAtoms : 0L;
+        forced[1] = leaves > 0 ? allEmpty : 0L;
+        return leaves;
+    }
+
+    /**
+     * Traces a ray like {@link GridTracer#trace} while only some cells are known.
+     *
+     * @param atoms cells known to hold an atom.
+     * @param empty cells known to be empty.
+     * @return the outcome if the known cells decide it, otherwise -(cell + 1) for the first
+     * unknown cell the ray needs.
+     */
+    private int traceKnown(long atoms, long empty, int node) {
+        int cell = tracer.entryCell(node);
+        long bit = 1L << cell;
+        if ((atoms & bit) != 0) {
+            return RayOutcome.ABSORBED;
+        }
+        if ((empty & bit) == 0) {
+            return -cell - 1;
+        }
+        long nextTo = tracer.nextToMask(node);
+        if ((atoms & nextTo) != 0) {
+            return RayOutcome.REFLECTED;
+        }
+        long unknownNextTo = nextTo & ~empty;
+        if (unknownNextTo != 0) {
+            return -Long.numberOfTrailingZeros(unknownNextTo) - 1;
+        }
+
+        int dir = tracer.entryDir(node);
+        boolean reversed = false;
+        for (int steps = tracer.maxSteps(); steps > 0; steps--) {
+            int state = GridTracer.state(cell, dir);
+            int combo = 0;
+            for (int k = 0; k < 3; k++) {
+                int front = tracer.frontCell(state, k);
+                if (front >= 0) {
+                    long frontBit = 1L << front;
+                    if ((atoms & frontBit) != 0) {
+                        combo |= 1 << k;
+                    } else if ((empty & frontBit) == 0) {
+                        return -front - 1;
+                    }
+                }
+            }
+            if (combo != 0) {
+                int turn = tracer.turn(dir, combo);
+                if (turn < 0) {
+                    return reversed ? RayOutcome.REFLECTED : RayOutcome.ABSORBED;
+                }
+                if ((combo & 3) == 3) {
+                    reversed = true;
+                }
+                dir = turn;
+                state = GridTracer.state(cell, dir);
+            }
+            int exit = tracer.exitNode(state);
+            if (exit != 0) {
+                return reversed ? RayOutcome.REFLECTED : exit;
+            }
+            cell = tracer.neighbour(cell, dir);
+            if (cell < 0) {
+                throw new IllegalStateException("Ray from node " + node + " left the board without reaching a node.");
+            }
+        }
+        return RayOutcome.LOOPED;
+    }
+}
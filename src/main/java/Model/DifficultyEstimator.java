@@ -0,0 +1,248 @@
+package Model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Rates how hard a layout is to solve, so trivial or unsolvable setups can be flagged before a
+ * game starts.
+ *
+ * <p>A rating combines three measures:</p>
+ * <ul>
+ *     <li>the rays a reference experimenter needs on average before the layout is pinned down
+ *     (see {@link SetterSearch#isDetermined}). The reference experimenter fires unfired nodes in
+ *     a random order, skipping nodes whose outcome an earlier exit already gave away. A few
+ *     such runs are played in parallel, and the rays each one needs are found by a binary search
+ *     over its firing order instead of checking after every ray.</li>
+ *     <li>the ambiguity: how many layouts give the same outcome as this one on all 54 nodes.
+ *     Above 1 the layout can not be solved for sure however many rays are fired.</li>
+ *     <li>the hidden atoms: atoms that are not on the same cell in all those layouts, for
+ *     example atoms shadowed behind others.</li>
+ * </ul>
+ *
+ * <p>Turned and mirrored copies of a layout are equally hard, so the runs are played on the
+ * {@link BoardSymmetry#canonical canonical} copy with a seed taken from it, and ratings are
+ * cached by the canonical mask. A copy of a rated layout is then rated without any work, and
+ * the same layout always gets the same rating.</p>
+ */
+public final class DifficultyEstimator {
+
+    /**
+     * Firing orders played per layout.
+     */
+    public static final int RUNS = 8;
+
+    /**
+     * Average rays at or below which a layout is {@link Level#TRIVIAL}.
+     */
+    public static final double TRIVIAL_RAYS = 11;
+
+    /**
+     * Average rays at or above which a layout is {@link Level#HARD}.
+     */
+    public static final double HARD_RAYS = 30;
+
+    /**
+     * Largest number of remaining layouts counted for the ambiguity, more are reported as -1.
+     */
+    public static final long MAX_AMBIGUITY_SEARCH = 1_000_000;
+
+    // branch budget of the first, cheap propagation of a prefix
+    private static final int QUICK_BRANCH_BUDGET = 32;
+
+    // ratings kept before the cache is cleared
+    private static final int CACHE_SIZE = 4096;
+
+    // points added to the score per hidden atom and per doubling of the ambiguity
+    private static final double HIDDEN_ATOM_POINTS = 5;
+    private static final double AMBIGUITY_POINTS = 3;
+
+    private static final Map<Long, CompletableFuture<Difficulty>> CACHE = new ConcurrentHashMap<>();
+
+    public enum Level {
+        TRIVIAL, NORMAL, HARD, UNSOLVABLE
+    }
+
+    /**
+     * Rating of a layout.
+     *
+     * @param expectedRays the average rays the reference experimenter needs, or
+     *                     {@link RayTracer#NODE_COUNT} if the layout can not be pinned down.
+     * @param ambiguity    the number of layouts with the same outcomes on every node, -1 if too
+     *                     many to count.
+     * @param hiddenAtoms  the atoms whose cell is not known with every ray fired.
+     */
+    public record Difficulty(double expectedRays, long ambiguity, int hiddenAtoms) {
+
+        /**
+         * Gets the overall score: the expected rays, plus points for each hidden atom and each
+         * doubling of the ambiguity. Higher is harder.
+         */
+        public double score() {
+            double ambiguityBits = ambiguity < 0 ? Math.log(MAX_AMBIGUITY_SEARCH) / Math.log(2)
+                    : Math.log(ambiguity) / Math.log(2);
+            return expectedRays + HIDDEN_ATOM_POINTS * hiddenAtoms + AMBIGUITY_POINTS * ambiguityBits;
+        }
+
+        public Level level() {
+            if (ambiguity != 1) {
+                return Level.UNSOLVABLE;
+            }
+            if (expectedRays <= TRIVIAL_RAYS) {
+                return Level.TRIVIAL;
+            }
+            return expectedRays >= HARD_RAYS ? Level.HARD : Level.NORMAL;
+        }
+    }
+
+    private DifficultyEstimator() {
+    }
+
+    /**
+     * Rates a layout, waiting for the rating if it is not cached yet.
+     *
+     * @param layout the atom mask.
+     */
+    public static Difficulty estimate(long layout) {
+        return estimateAsync(layout).join();
+    }
+
+    /**
+     * Starts rating a layout in the background, or gets the cached rating. A rating that fails
+     * is dropped from the cache, so asking again starts a new one.
+     *
+     * @param layout the atom mask.
+     * @return the rating, completed once it is known.
+     */
+    public static CompletableFuture<Difficulty> estimateAsync(long layout) {
+        if (layout == 0 || (layout & ~BoardIndex.FULL_MASK) != 0) {
+            throw new IllegalArgumentException("No layout to rate in 0x" + Long.toHexString(layout) + ".");
+        }
+        long canonical = BoardSymmetry.canonical(layout);
+        CompletableFuture<Difficulty> cached = CACHE.get(canonical);
+        if (cached != null) {
+            return cached;
+        }
+        if (CACHE.size() >= CACHE_SIZE) {
+            CACHE.clear();
+        }
+        CompletableFuture<Difficulty> started = new CompletableFuture<>();
+        cached = CACHE.putIfAbsent(canonical, started);
+        if (cached != null) {
+            return cached;
+        }
+        CompletableFuture.supplyAsync(() -> compute(canonical)).whenComplete((difficulty, e) -> {
+            if (e != null) {
+                CACHE.remove(canonical, started);
+                started.completeExceptionally(e);
+            } else {
+                started.complete(difficulty);
+            }
+        });
+        return started;
+    }
+
+    /**
+     * Rates a layout without the cache.
+     *
+     * @param layout the atom mask.
+     */
+    static Difficulty compute(long layout) {
+        int atoms = Long.bitCount(layout);
+        int[] outcomes = new int[RayTracer.NODE_COUNT + 1];
+        int[] all = new int[RayTracer.NODE_COUNT];
+        int[] allOutcomes = new int[RayTracer.NODE_COUNT];
+        for (int node = 1; node <= RayTracer.NODE_COUNT; node++) {
+            outcomes[node] = RayTracer.trace(layout, node);
+            all[node - 1] = node;
+            allOutcomes[node - 1] = outcomes[node];
+        }
+        LayoutSolver solver = new LayoutSolver(all, allOutcomes, atoms);
+        long ambiguity;
+        long common;
+        if (solver.searchSpace() <= MAX_AMBIGUITY_SEARCH) {
+            LongAdder matching = new LongAdder();
+            LongAccumulator shared = new LongAccumulator((a, b) -> a & b, BoardIndex.FULL_MASK);
+            solver.forEach(other -> {
+                matching.increment();
+                shared.accumulate(other);
+            });
+            ambiguity = matching.sum();
+            common = shared.get() & layout;
+        } else {
+            ambiguity = -1;
+            common = solver.getPropagation().forcedAtoms() & layout;
+        }
+        if (ambiguity != 1) {
+            return new Difficulty(RayTracer.NODE_COUNT, ambiguity, atoms - Long.bitCount(common));
+        }
+
+        SplittableRandom root = new SplittableRandom(layout);
+        SplittableRandom[] randoms = new SplittableRandom[RUNS];
+        for (int r = 0; r < RUNS; r++) {
+            randoms[r] = root.split();
+        }
+        int total = IntStream.range(0, RUNS).parallel()
+                .map(r -> raysNeeded(layout, atoms, outcomes, randoms[r]))
+                .sum();
+        return new Difficulty((double) total / RUNS, 1, 0);
+    }
+
+    // tries a cheap propagation first, most prefixes far from or past the answer are settled by it
+    private static boolean isDetermined(int[] nodes, int[] outcomes, int atoms) {
+        ConstraintPropagator.Result quick = new ConstraintPropagator(QUICK_BRANCH_BUDGET).propagate(nodes, outcomes, atoms);
+        if (SetterSearch.isDetermined(quick, atoms, nodes, outcomes)) {
+            return true;
+        }
+        ConstraintPropagator.Result full = new ConstraintPropagator(SetterSearch.BRANCH_BUDGET).propagate(nodes, outcomes, atoms);
+        return SetterSearch.isDetermined(full, atoms, nodes, outcomes);
+    }
+
+    // rays a random firing order needs before the layout is pinned down
+    private static int raysNeeded(long layout, int atoms, int[] outcomes, SplittableRandom random) {
+        int[] order = new int[RayTracer.NODE_COUNT];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i + 1;
+        }
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+        // fire in that order, skipping the nodes an earlier ray has already exited from
+        boolean[] known = new boolean[RayTracer.NODE_COUNT + 1];
+        int[] nodes = new int[RayTracer.NODE_COUNT];
+        int[] fired = new int[RayTracer.NODE_COUNT];
+        int count = 0;
+        for (int node : order) {
+            if (!known[node]) {
+                nodes[count] = node;
+                fired[count] = outcomes[node];
+                count++;
+                known[node] = true;
+                if (RayOutcome.isExit(outcomes[node])) {
+                    known[outcomes[node]] = true;
+                }
+            }
+        }
+        // more rays only pin the layout down further, so search for the shortest prefix that pins it
+        int low = 1;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (isDetermined(Arrays.copyOf(nodes, middle), Arrays.copyOf(fired, middle), atoms)) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+}
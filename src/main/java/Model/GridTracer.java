@@ -0,0 +1,409 @@
+package Model;
+
+import java.nio.IntBuffer;
+
+/**
+ * Allocation-free ray tracer for any {@link Topology}, working on atom masks.
+ *
+ * <p>The topology's tables are copied into flat arrays when the tracer is created, one entry
+ * per state (a cell and a direction, see {@link #state}), so tracing a ray is only
+ * array lookups and never calls the topology. {@link #HEX} traces the game's board exactly like
+ * {@link Ray}, and {@link #SQUARE} the classic 8 by 8 grid. Outcomes use the {@link RayOutcome}
+ * codes on every grid.</p>
+ *
+ * <p>Every trace is bounded by {@link #maxSteps()}. A ray is only ever in one of the grid's
+ * states, and is reversed at most once, so a ray still on the grid after more steps than that
+ * has been in some state twice: it is going round in a loop, which a deterministic ray never
+ * leaves. It is reported as {@link RayOutcome#LOOPED} instead of hanging the caller. The budget
+ * needs no memory, so the tracer stays allocation-free.</p>
+ *
+ * <p>A caller that wants the path as well passes its own {@link IntBuffer} to
+ * {@link #trace(long, int, IntBuffer)}, which gets one {@link #state} per cell. The buffer can be
+ * cleared and used again for the next ray, so paths cost no allocation either.</p>
+ */
+public final class GridTracer {
+
+    /**
+     * Tracer of the game's hex board, the one behind {@link RayTracer}.
+     */
+    public static final GridTracer HEX = new GridTracer(HexTopology.INSTANCE);
+
+    /**
+     * Tracer of the classic 8 by 8 square grid.
+     */
+    public static final GridTracer SQUARE = new GridTracer(SquareTopology.INSTANCE);
+
+    // marker in the turn table for a ray that is absorbed
+    private static final int ABSORB = -1;
+
+    // bits of a state holding the direction, states are spaced by a power of two whatever the grid
+    private static final int DIRECTION_BITS = 3;
+
+    private final int cellCount;
+    private final int directions;
+    private final int nodeCount;
+    private final long fullMask;
+    private final int maxSteps;
+
+    // neighbouring cell for each state, -1 when the step leaves the grid
+    private final int[] neighbour;
+    // the three cells in front of the ray for each state, -1 when off the grid
+    private final int[] front;
+    // mask of the front cells of each state
+    private final long[] frontMask;
+    // front cells of every state on the straight run from each state to the edge, and the node it leaves through
+    // (all cells and LOOPED for a run that never reaches a node)
+    private final long[] run;
+    private final int[] runExit;
+    // new direction for each direction and combination of front atoms
+    private final int[] turn;
+    // node a ray leaves through for each state, 0 if it stays on the grid
+    private final int[] exitNode;
+    private final int[] entryCell;
+    private final int[] entryDir;
+    // cells that reflect a ray fired from each node before it moves
+    private final long[] nextToMask;
+    private final InfluenceZones zones;
+
+    /**
+     * Creates a tracer, reading every table of the topology once.
+     *
+     * @param topology the grid to trace on.
+     */
+    public GridTracer(Topology topology) {
+        this.cellCount = topology.cellCount();
+        this.directions = topology.directions();
+        this.nodeCount = topology.nodeCount();
+        if (cellCount < 1 || cellCount > Long.SIZE || directions > 1 << DIRECTION_BITS
+                || nodeCount < 1 || nodeCount > RayTracer.NODE_COUNT) {
+            throw new IllegalArgumentException("A grid of " + cellCount + " cells and " + nodeCount + " nodes does not fit a mask tracer.");
+        }
+        this.fullMask = cellCount == Long.SIZE ? -1L : (1L << cellCount) - 1;
+        this.maxSteps = 2 * cellCount * directions;
+
+        int states = cellCount << DIRECTION_BITS;
+        this.neighbour = new int[states];
+        this.front = new int[states * 3];
+        this.frontMask = new long[states];
+        this.exitNode = new int[states];
+        for (int c = 0; c < cellCount; c++) {
+            for (int d = 0; d < directions; d++) {
+                int state = state(c, d);
+                neighbour[state] = topology.neighbour(c, d);
+                exitNode[state] = topology.exitNode(c, d);
+                for (int k = 0; k < 3; k++) {
+                    int cell = topology.frontCell(c, d, k);
+                    front[state * 3 + k] = cell;
+                    if (cell >= 0) {
+                        frontMask[state] |= 1L << cell;
+                    }
+                }
+            }
+        }
+        this.run = new long[states];
+        this.runExit = new int[states];
+        buildRuns();
+        this.turn = new int[directions * 8];
+        for (int d = 0; d < directions; d++) {
+            turn[d * 8] = d;
+            for (int combo = 1; combo < 8; combo++) {
+                turn[d * 8 + combo] = topology.turn(d, combo);
+            }
+        }
+        this.entryCell = new int[nodeCount + 1];
+        this.entryDir = new int[nodeCount + 1];
+        this.nextToMask = new long[nodeCount + 1];
+        for (int node = 1; node <= nodeCount; node++) {
+            entryCell[node] = topology.entryCell(node);
+            entryDir[node] = topology.entryDir(node);
+            nextToMask[node] = topology.nextToMask(node);
+        }
+        this.zones = new InfluenceZones(this);
+    }
+
+    // a run ends where the ray leaves the grid, so fill the states nearest the edge first
+    private void buildRuns() {
+        boolean[] done = new boolean[run.length];
+        int total = cellCount * directions;
+        for (int filled = 0; filled < total; ) {
+            int before = filled;
+            for (int c = 0; c < cellCount; c++) {
+                for (int d = 0; d < directions; d++) {
+                    int state = state(c, d);
+                    if (done[state]) {
+                        continue;
+                    }
+                    if (exitNode[state] != 0) {
+                        run[state] = frontMask[state];
+                        runExit[state] = exitNode[state];
+                    } else {
+                        int next = neighbour[state] < 0 ? -1 : state(neighbour[state], d);
+                        if (next < 0 || !done[next]) {
+                            continue;
+                        }
+                        run[state] = frontMask[state] | run[next];
+                        runExit[state] = runExit[next];
+                    }
+                    done[state] = true;
+                    filled++;
+                }
+            }
+            if (filled == before) {
+                // the other runs go round the grid forever: never skip them, and on an empty run they loop
+                for (int c = 0; c < cellCount; c++) {
+                    for (int d = 0; d < directions; d++) {
+                        if (!done[state(c, d)]) {
+                            run[state(c, d)] = -1L;
+                            runExit[state(c, d)] = RayOutcome.LOOPED;
+                        }
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    public int cellCount() {
+        return cellCount;
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Gets the most steps a ray can take without repeating a state: one per state, before and
+     * after it is reversed.
+     */
+    public int maxSteps() {
+        return maxSteps;
+    }
+
+    /**
+     * Gets the mask with one bit set for every cell of the grid.
+     */
+    public long fullMask() {
+        return fullMask;
+    }
+
+    /**
+     * Gets the influence zones of the rays on this grid.
+     */
+    public InfluenceZones zones() {
+        return zones;
+    }
+
+    /**
+     * Traces a ray fired from a node through a layout of atoms.
+     *
+     * @param atoms the atom mask of the grid.
+     * @param node  the entry node number, 1 to {@link #nodeCount()}.
+     * @return the {@link RayOutcome} code the experimenter would see, or
+     * {@link RayOutcome#LOOPED} if the ray takes more than {@link #maxSteps()} steps.
+     */
+    public int trace(long atoms, int node) {
+        int cell = entryCell[node];
+
+        // ray entering straight into an atom on the edge, or reflected by an atom next to the entry cell
+        if ((atoms >>> cell & 1L) != 0) {
+            return RayOutcome.ABSORBED;
+        }
+        if ((atoms & nextToMask[node]) != 0) {
+            return RayOutcome.REFLECTED;
+        }
+
+        // locals, so the loop does not reload the tables from the tracer
+        int[] front = this.front;
+        int[] turn = this.turn;
+        int[] exitNode = this.exitNode;
+        int[] neighbour = this.neighbour;
+        long[] run = this.run;
+        int dir = entryDir[node];
+        boolean reversed = false;
+        for (int steps = maxSteps; steps > 0; steps--) {
+            int state = cell << DIRECTION_BITS | dir;
+            // nothing left on the straight run, so the ray goes all the way to the edge
+            if ((atoms & run[state]) == 0) {
+                return reversed ? RayOutcome.REFLECTED : runExit[state];
+            }
+            int combo = 0;
+            for (int k = 0; k < 3; k++) {
+                int c = front[state * 3 + k];
+                if (c >= 0 && (atoms >>> c & 1L) != 0) {
+                    combo |= 1 << k;
+                }
+            }
+            if (combo != 0) {
+                int next = turn[dir * 8 + combo];
+                if (next == ABSORB) {
+                    return reversed ? RayOutcome.REFLECTED : RayOutcome.ABSORBED;
+                }
+                if ((combo & 3) == 3) {
+                    reversed = true;
+                }
+                dir = next;
+                state = cell << DIRECTION_BITS | dir;
+            }
+
+            int exit = exitNode[state];
+            if (exit != 0) {
+                return reversed ? RayOutcome.REFLECTED : exit;
+            }
+            cell = neighbour[state];
+            if (cell < 0) {
+                throw new IllegalStateException("Ray from node " + node + " left the grid without reaching a node.");
+            }
+        }
+        return RayOutcome.LOOPED;
+    }
+
+    /**
+     * Traces a ray like {@link #trace(long, int)}, writing its path into a caller's buffer: the
+     * state of each cell the ray is in, in order, with the direction it moved into the cell in
+     * (see {@link #stateCell} and {@link #stateDir}). That is the entry cell, then every cell
+     * stepped into, and for an absorbed ray the cell of the atom, the same cells as
+     * {@link Ray#getPath()}. A path has at most {@link #maxSteps()} + 2 entries.
+     *
+     * @param atoms the atom mask of the grid.
+     * @param node  the entry node number, 1 to {@link #nodeCount()}.
+     * @param path  receives the path from its position on, or null to skip it.
+     * @return the {@link RayOutcome} code.
+     * @throws java.nio.BufferOverflowException if the path does not fit in the buffer.
+     */
+    public int trace(long atoms, int node, IntBuffer path) {
+        if (path == null) {
+            return trace(atoms, node);
+        }
+        int cell = entryCell[node];
+        int dir = entryDir[node];
+        path.put(state(cell, dir));
+        if ((atoms >>> cell & 1L) != 0) {
+            return RayOutcome.ABSORBED;
+        }
+        if ((atoms & nextToMask[node]) != 0) {
+            return RayOutcome.REFLECTED;
+        }
+
+        boolean reversed = false;
+        for (int steps = maxSteps; steps > 0; steps--) {
+            int state = state(cell, dir);
+            int combo = frontAtoms(atoms, state);
+            if (combo != 0) {
+                int next = turn[dir * 8 + combo];
+                if (next == ABSORB) {
+                    // the atom straight ahead
+                    path.put(state(front[state * 3 + 2], dir));
+                    return reversed ? RayOutcome.REFLECTED : RayOutcome.ABSORBED;
+                }
+                if ((combo & 3) == 3) {
+                    reversed = true;
+                }
+                dir = next;
+                state = state(cell, dir);
+            }
+            if (exitNode[state] != 0) {
+                return reversed ? RayOutcome.REFLECTED : exitNode[state];
+            }
+            cell = neighbour[state];
+            if (cell < 0) {
+                throw new IllegalStateException("Ray from node " + node + " left the grid without reaching a node.");
+            }
+            path.put(state(cell, dir));
+        }
+        return RayOutcome.LOOPED;
+    }
+
+    /**
+     * Traces every node for a layout, writing the outcome of node n into {@code out[n - 1]}.
+     *
+     * @param atoms the atom mask of the grid.
+     * @param out   array of at least {@link #nodeCount()} entries receiving the outcome codes.
+     */
+    public void signature(long atoms, byte[] out) {
+        for (int node = 1; node <= nodeCount; node++) {
+            out[node - 1] = (byte) trace(atoms, node);
+        }
+    }
+
+    /**
+     * Packs a cell and a direction into a state, the index of the tracer's tables and the entries
+     * of a path.
+     */
+    public static int state(int cell, int dir) {
+        return cell << DIRECTION_BITS | dir;
+    }
+
+    /**
+     * Gets the cell of a state.
+     */
+    public static int stateCell(int state) {
+        return state >>> DIRECTION_BITS;
+    }
+
+    /**
+     * Gets the direction of a state.
+     */
+    public static int stateDir(int state) {
+        return state & (1 << DIRECTION_BITS) - 1;
+    }
+
+    // bit pattern of the atoms in the three cells in front of the ray
+    private int frontAtoms(long atoms, int state) {
+        int combo = 0;
+        for (int k = 0; k < 3; k++) {
+            int c = front[state * 3 + k];
+            if (c >= 0 && (atoms >>> c & 1L) != 0) {
+                combo |= 1 << k;
+            }
+        }
+        return combo;
+    }
+
+    // table lookups for the solvers, which trace rays with partial knowledge
+
+    int directions() {
+        return directions;
+    }
+
+    int entryCell(int node) {
+        return entryCell[node];
+    }
+
+    int entryDir(int node) {
+        return entryDir[node];
+    }
+
+    long nextToMask(int node) {
+        return nextToMask[node];
+    }
+
+    int neighbour(int cell, int dir) {
+        return neighbour[state(cell, dir)];
+    }
+
+    // cell k in front of the ray, -1 if off the grid
+    int frontCell(int state, int k) {
+        return front[state * 3 + k];
+    }
+
+    // new direction for a combination of front atoms, -1 if the ray is absorbed
+    int turn(int dir, int combo) {
+        return turn[dir * 8 + combo];
+    }
+
+    int exitNode(int state) {
+        return exitNode[state];
+    }
+
+    long frontMask(int state) {
+        return frontMask[state];
+    }
+
+    long run(int state) {
+        return run[state];
+    }
+
+    int runExit(int state) {
+        return runExit[state];
+    }
+}
@@ -0,0 +1,131 @@
+package Model;
+
+import java.util.List;
+
+/**
+ * The hex board of the game: the 61 cells of {@link BoardIndex}, the six {@link Direction}s and
+ * the 54 nodes of {@link RayNode}, with the front cells and turns of {@link Ray#newPath}.
+ */
+public final class HexTopology implements Topology {
+
+    /**
+     * The one hex board, see {@link GridTracer#HEX} for its tracer.
+     */
+    public static final HexTopology INSTANCE = new HexTopology();
+
+    // {green, orange, pink} cube offsets of the cells in front of the ray per direction, copied from Ray.newPath
+    static final int[][][] FRONT_OFFSETS = {
+            {{1, -1, 0}, {0, 1, -1}, {1, 0, -1}},   // YR
+            {{0, -1, 1}, {-1, 1, 0}, {-1, 0, 1}},   // YL
+            {{1, -1, 0}, {-1, 0, 1}, {0, -1, 1}},   // XU
+            {{1, 0, -1}, {-1, 1, 0}, {0, 1, -1}},   // XD
+            {{0, -1, 1}, {1, 0, -1}, {1, -1, 0}},   // ZU
+            {{-1, 0, 1}, {0, 1, -1}, {-1, 1, 0}}    // ZD
+    };
+
+    // {reverse, green + pink, orange + pink, green, orange} results per direction, copied from Ray.newPath
+    private static final Direction[][] TURNS = {
+            {Direction.YL, Direction.ZD, Direction.XU, Direction.XD, Direction.ZU},  // YR
+            {Direction.YR, Direction.XD, Direction.ZU, Direction.ZD, Direction.XU},  // YL
+            {Direction.XD, Direction.ZD, Direction.YR, Direction.YL, Direction.ZU},  // XU
+            {Direction.XU, Direction.YL, Direction.ZU, Direction.ZD, Direction.YR},  // XD
+            {Direction.ZD, Direction.XD, Direction.YL, Direction.YR, Direction.XU},  // ZU
+            {Direction.ZU, Direction.YR, Direction.XU, Direction.XD, Direction.YL}   // ZD
+    };
+
+    private final int[] exitNodes = new int[BoardIndex.CELL_COUNT * BoardIndex.DIRECTIONS];
+    private final int[] entryCells = new int[RayTracer.NODE_COUNT + 1];
+    private final int[] entryDirs = new int[RayTracer.NODE_COUNT + 1];
+    private final long[] nextToMasks = new long[RayTracer.NODE_COUNT + 1];
+
+    private HexTopology() {
+        Direction[] dirs = Direction.values();
+        for (int c = 0; c < BoardIndex.CELL_COUNT; c++) {
+            BlackBoxBoard.Point3D p = BoardIndex.pointOf(c);
+            for (int d = 0; d < BoardIndex.DIRECTIONS; d++) {
+                exitNodes[c * BoardIndex.DIRECTIONS + d] = Math.max(RayNode.getNodeNumber(p, dirs[d]), 0);
+            }
+        }
+        for (int node = 1; node <= RayTracer.NODE_COUNT; node++) {
+            BlackBoxBoard.Point3D entry = RayNode.getNodeCoordinates(node);
+            entryCells[node] = BoardIndex.indexOf(entry);
+            entryDirs[node] = RayNode.getRevDir(RayNode.getNodeDirection(node)).ordinal();
+            // all of these are neighbours of the entry cell, so an atom in one also gives it the
+            // CI point Ray checks for before Ray.isRayReflectedAtEdge
+            List<BlackBoxBoard.Point3D> nextTo = Ray.getNextTo(entry);
+            nextToMasks[node] = BoardIndex.maskOf(nextTo);
+        }
+    }
+
+    @Override
+    public int cellCount() {
+        return BoardIndex.CELL_COUNT;
+    }
+
+    @Override
+    public int directions() {
+        return BoardIndex.DIRECTIONS;
+    }
+
+    @Override
+    public int nodeCount() {
+        return RayTracer.NODE_COUNT;
+    }
+
+    @Override
+    public int neighbour(int cell, int dir) {
+        return BoardIndex.neighbour(cell, dir);
+    }
+
+    @Override
+    public int frontCell(int cell, int dir, int k) {
+        BlackBoxBoard.Point3D p = BoardIndex.pointOf(cell);
+        int[] o = FRONT_OFFSETS[dir][k];
+        return BoardIndex.indexOf(p.x + o[0], p.y + o[1], p.z + o[2]);
+    }
+
+    @Override
+    public int turn(int dir, int combo) {
+        Direction[] t = TURNS[dir];
+        boolean green = (combo & 1) != 0;
+        boolean orange = (combo & 2) != 0;
+        boolean pink = (combo & 4) != 0;
+        Direction result;
+        if (green && orange) {
+            result = t[0];
+        } else if (green && pink) {
+            result = t[1];
+        } else if (orange && pink) {
+            result = t[2];
+        } else if (green) {
+            result = t[3];
+        } else if (orange) {
+            result = t[4];
+        } else if (pink) {
+            result = null;
+        } else {
+            result = Direction.values()[dir];
+        }
+        return result == null ? -1 : result.ordinal();
+    }
+
+    @Override
+    public int exitNode(int cell, int dir) {
+        return exitNodes[cell * BoardIndex.DIRECTIONS + dir];
+    }
+
+    @Override
+    public int entryCell(int node) {
+        return entryCells[node];
+    }
+
+    @Override
+    public int entryDir(int node) {
+        return entryDirs[node];
+    }
+
+    @Override
+    public long nextToMask(int node) {
+        return nextToMasks[node];
+    }
+}
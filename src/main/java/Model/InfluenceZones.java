@@ -0,0 +1,111 @@
+package Model;
+
+/**
+ * Influence zones of the rays: the cells whose atoms can change where a ray goes.
+ *
+ * <p>A ray only ever looks at the three cells in front of it (see {@link RayTracer}), plus the
+ * cells next to its entry cell for an edge reflection. The zone of a ray traced through a layout
+ * is the set of all cells it looked at. Any layout that agrees with it on those cells sends the
+ * ray along the same path, so the outcome and the zone stay the same: a change to a layout
+ * outside a ray's zone never needs the ray traced again.</p>
+ *
+ * <p>For each state a ray can be in (a cell and a direction), the table holds the cells it looks
+ * at when it carries on straight to the edge, and the node it leaves through. A ray that has
+ * been deflected some number of times and is now in that state continues along exactly that run
+ * unless an atom sits in it, so these masks are the zones of every deflection prefix of every
+ * node. They are the run tables each {@link GridTracer} builds for its grid, which also let it
+ * skip a straight run in one step.</p>
+ */
+public final class InfluenceZones {
+
+    private final GridTracer tracer;
+    // zone of each node on an empty grid
+    private final long[] emptyZone;
+
+    InfluenceZones(GridTracer tracer) {
+        this.tracer = tracer;
+        this.emptyZone = new long[tracer.nodeCount() + 1];
+        for (int node = 1; node <= tracer.nodeCount(); node++) {
+            emptyZone[node] = entryMask(node) | tracer.run(GridTracer.state(tracer.entryCell(node), tracer.entryDir(node)));
+        }
+    }
+
+    /**
+     * Gets the cells a ray in a cell, heading in a direction, looks at on its way straight to the
+     * edge. An atom in any of them deflects, reflects or absorbs it; with none the ray leaves
+     * through {@link #runExit}.
+     *
+     * @param cell the cell index.
+     * @param dir  the direction ordinal.
+     */
+    public long runZone(int cell, int dir) {
+        return tracer.run(GridTracer.state(cell, dir));
+    }
+
+    /**
+     * Gets the node a ray in a cell, heading in a direction, leaves through when nothing is in
+     * its {@link #runZone}.
+     */
+    public int runExit(int cell, int dir) {
+        return tracer.runExit(GridTracer.state(cell, dir));
+    }
+
+    /**
+     * Gets the zone of a node on an empty grid: the cells whose atoms decide whether the ray
+     * comes straight through.
+     */
+    public long emptyZone(int node) {
+        return emptyZone[node];
+    }
+
+    /**
+     * Gets the zone of a ray traced through a layout: every cell whose atom would change the
+     * ray's path. The ray gives the same outcome, and has the same zone, on every layout that
+     * agrees with this one on these cells.
+     *
+     * @param atoms the atom mask of the grid.
+     * @param node  the entry node number.
+     */
+    public long zone(long atoms, int node) {
+        int cell = tracer.entryCell(node);
+        long zone = entryMask(node);
+        if ((atoms & zone) != 0) {
+            return (atoms >>> cell & 1L) != 0 ? 1L << cell : zone;
+        }
+        int dir = tracer.entryDir(node);
+        for (int steps = tracer.maxSteps(); steps > 0; steps--) {
+            int state = GridTracer.state(cell, dir);
+            long run = tracer.run(state);
+            if ((atoms & run) == 0) {
+                return zone | run;
+            }
+            zone |= tracer.frontMask(state);
+            int combo = 0;
+            for (int k = 0; k < 3; k++) {
+                int c = tracer.frontCell(state, k);
+                if (c >= 0 && (atoms >>> c & 1L) != 0) {
+                    combo |= 1 << k;
+                }
+            }
+            if (combo != 0) {
+                int turn = tracer.turn(dir, combo);
+                if (turn < 0) {
+                    return zone;
+                }
+                dir = turn;
+                state = GridTracer.state(cell, dir);
+            }
+            if (tracer.exitNode(state) != 0) {
+                return zone;
+            }
+            cell = tracer.neighbour(cell, dir);
+        }
+        // a looping ray has looked at every cell of its loop by now
+        return zone;
+    }
+
+    // cells checked before the ray moves: its entry cell and the edge reflection cells
+    private long entryMask(int node) {
+        return 1L << tracer.entryCell(node) | tracer.nextToMask(node);
+    }
+}
@@ -0,0 +1,105 @@
+package Model;
+
+/**
+ * Ranks atom layouts, i.e. k-subsets of the board's cells held as masks, with the combinatorial
+ * number system. Rank r of k atoms is the r-th layout in increasing mask order, so ranks run
+ * from 0 to C(61, k) - 1 and {@link #next(long)} walks them in rank order.
+ */
+public final class LayoutRank {
+
+    // Pascal's triangle up to 64 so every subset of a 64 bit mask can be ranked
+    private static final long[][] BINOMIAL = new long[65][65];
+
+    static {
+        for (int n = 0; n <= 64; n++) {
+            BINOMIAL[n][0] = 1;
+            for (int k = 1; k <= n; k++) {
+                BINOMIAL[n][k] = BINOMIAL[n - 1][k - 1] + BINOMIAL[n - 1][k];
+            }
+        }
+    }
+
+    private LayoutRank() {
+    }
+
+    /**
+     * Gets the binomial coefficient C(n, k), or 0 when k is out of range.
+     */
+    public static long binomial(int n, int k) {
+        if (k < 0 || n < 0 || k > n) {
+            return 0;
+        }
+        return BINOMIAL[n][k];
+    }
+
+    /**
+     * Gets the number of layouts with a given number of atoms.
+     *
+     * @param atoms the number of atoms.
+     * @return C(61, atoms).
+     */
+    public static long count(int atoms) {
+        return binomial(BoardIndex.CELL_COUNT, atoms);
+    }
+
+    /**
+     * Gets the rank of a layout among all layouts with the same number of atoms.
+     *
+     * @param layout the atom mask.
+     * @return the rank, from 0 to count(bitCount(layout)) - 1.
+     */
+    public static long rank(long layout) {
+        long rank = 0;
+        int i = 1;
+        for (long m = layout; m != 0; m &= m - 1) {
+            rank += BINOMIAL[Long.numberOfTrailingZeros(m)][i++];
+        }
+        return rank;
+    }
+
+    /**
+     * Gets the layout with the given rank.
+     *
+     * @param rank  the rank of the layout.
+     * @param atoms the number of atoms in the layout.
+     * @return the atom mask.
+     * @throws IllegalArgumentException if the rank is out of range.
+     */
+    public static long unrank(long rank, int atoms) {
+        if (rank < 0 || rank >= count(atoms)) {
+            throw new IllegalArgumentException("Rank " + rank + " out of range for " + atoms + " atoms.");
+        }
+        long layout = 0L;
+        int cell = BoardIndex.CELL_COUNT - 1;
+        for (int i = atoms; i >= 1; i--) {
+            // highest cell whose binomial still fits into the remaining rank
+            while (BINOMIAL[cell][i] > rank) {
+                cell--;
+            }
+            layout |= 1L << cell;
+            rank -= BINOMIAL[cell][i];
+            cell--;
+        }
+        return layout;
+    }
+
+    /**
+     * Gets the first layout (rank 0) with a given number of atoms.
+     */
+    public static long first(int atoms) {
+        return atoms == 0 ? 0L : (-1L >>> (64 - atoms));
+    }
+
+    /**
+     * Gets the layout following the given one in rank order (Gosper's hack).
+     *
+     * @param layout a non-empty atom mask.
+     * @return the next layout with the same number of atoms, or 0 after the last one.
+     */
+    public static long next(long layout) {
+        long lowest = layout & -layout;
+        long ripple = layout + lowest;
+        long next = (((ripple ^ layout) >>> 2) / lowest) | ripple;
+        return (next & ~BoardIndex.FULL_MASK) != 0 || ripple == 0 ? 0L : next;
+    }
+}
@@ -0,0 +1,236 @@
+package Model;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Finds every atom layout that matches the rays fired so far.
+ *
+ * <p>The rays are first run through the {@link ConstraintPropagator}, so the enumeration only
+ * places the atoms that are still missing, and only on the cells that are still free. Each
+ * remaining layout is then checked with the {@link GridTracer} of the grid, the game's hex
+ * board unless another one is given, except that rays whose
+ * {@link InfluenceZones influence zone} misses every cell a branch of the enumeration still has
+ * to fill are checked once for the whole branch.</p>
+ */
+public final class LayoutSolver {
+
+    private static final BooleanSupplier NEVER = () -> false;
+
+    private final GridTracer tracer;
+    private final InfluenceZones zones;
+    private final int[] nodes;
+    private final int[] outcomes;
+    private final int atoms;
+    private final ConstraintPropagator.Result propagation;
+    // free cells in board order, the enumeration works on positions in this array
+    private final int[] freeCells;
+    // mask of the free cells at positions below each position
+    private final long[] openCells;
+
+    /**
+     * Creates a solver for a set of observations.
+     *
+     * @param nodes    the fired nodes.
+     * @param outcomes the {@link RayOutcome} observed for each fired node.
+     * @param atoms    the number of atoms on the board.
+     */
+    public LayoutSolver(int[] nodes, int[] outcomes, int atoms) {
+        this(GridTracer.HEX, nodes, outcomes, atoms);
+    }
+
+    /**
+     * Creates a solver for a set of observations on another grid.
+     *
+     * @param tracer   the tracer of the grid.
+     * @param nodes    the fired nodes.
+     * @param outcomes the {@link RayOutcome} observed for each fired node.
+     * @param atoms    the number of atoms on the grid.
+     */
+    public LayoutSolver(GridTracer tracer, int[] nodes, int[] outcomes, int atoms) {
+        if (nodes.length != outcomes.length) {
+            throw new IllegalArgumentException("Got " + nodes.length + " nodes but " + outcomes.length + " outcomes.");
+        }
+        this.tracer = tracer;
+        this.zones = tracer.zones();
+        this.nodes = nodes.clone();
+        this.outcomes = outcomes.clone();
+        this.atoms = atoms;
+        this.propagation = new ConstraintPropagator(tracer, ConstraintPropagator.DEFAULT_BRANCH_BUDGET).propagate(this.nodes, this.outcomes, atoms);
+
+        long free = propagation.freeCells();
+        this.freeCells = new int[Long.bitCount(free)];
+        for (int i = 0; i < freeCells.length; i++) {
+            freeCells[i] = Long.numberOfTrailingZeros(free);
+            free &= free - 1;
+        }
+        this.openCells = new long[freeCells.length + 1];
+        for (int i = 0; i < freeCells.length; i++) {
+            openCells[i + 1] = openCells[i] | 1L << freeCells[i];
+        }
+    }
+
+    /**
+     * Gets the cells forced by the pre-pass.
+     */
+    public ConstraintPropagator.Result getPropagation() {
+        return propagation;
+    }
+
+    /**
+     * Gets the number of layouts the enumeration has to check after the pre-pass.
+     */
+    public long searchSpace() {
+        if (!propagation.consistent()) {
+            return 0;
+        }
+        int missing = atoms - Long.bitCount(propagation.forcedAtoms());
+        return LayoutRank.binomial(freeCells.length, missing);
+    }
+
+    /**
+     * Counts the layouts that match every observation.
+     */
+    public long count() {
+        AtomicLong total = new AtomicLong();
+        forEach(layout -> total.incrementAndGet());
+        return total.get();
+    }
+
+    /**
+     * Gets the layouts that match every observation, sorted by mask.
+     */
+    public long[] candidates() {
+        return candidates(NEVER);
+    }
+
+    /**
+     * Gets the layouts that match every observation, sorted by mask, giving up once cancelled.
+     *
+     * @param cancelled checked between branches of the enumeration, from any of its threads.
+     * @throws CancellationException if the search was cancelled before it finished.
+     */
+    public long[] candidates(BooleanSupplier cancelled) {
+        LongList found = new LongList();
+        forEach(layout -> {
+            synchronized (found) {
+                found.add(layout);
+            }
+        }, cancelled);
+        long[] result = Arrays.copyOf(found.values, found.size);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Calls the consumer for every matching layout. The work is split across threads by the
+     * highest free position used, so the consumer must be thread safe.
+     *
+     * @param consumer receives the atom mask of each matching layout.
+     */
+    public void forEach(LongConsumer consumer) {
+        forEach(consumer, NEVER);
+    }
+
+    /**
+     * Calls the consumer for every matching layout, like {@link #forEach(LongConsumer)}, giving
+     * up once cancelled. The consumer may already have seen some of the layouts.
+     *
+     * @param consumer  receives the atom mask of each matching layout.
+     * @param cancelled checked between branches of the enumeration, from any of its threads.
+     * @throws CancellationException if the search was cancelled before it finished.
+     */
+    public void forEach(LongConsumer consumer, BooleanSupplier cancelled) {
+        if (!propagation.consistent()) {
+            return;
+        }
+        long base = propagation.forcedAtoms();
+        int missing = atoms - Long.bitCount(base);
+        int[] all = IntStream.range(0, nodes.length).toArray();
+        if (missing == 0) {
+            if (matches(base, all, all.length)) {
+                consumer.accept(base);
+            }
+            return;
+        }
+
+        IntStream.range(missing - 1, freeCells.length).parallel().forEach(top -> {
+            // top is the highest position used, the other positions come from the ones below it
+            int[][] scratch = new int[missing][nodes.length];
+            search(base | 1L << freeCells[top], top, missing - 1, all, all.length, scratch, 0, consumer, cancelled);
+        });
+        if (cancelled.getAsBoolean()) {
+            throw new CancellationException("Layout search was cancelled.");
+        }
+    }
+
+    /**
+     * Places the remaining atoms on free positions below {@code open}, highest first. Before
+     * going deeper, every ray whose influence zone misses the open positions is checked once:
+     * its outcome is the same on the whole branch, so a mismatch cuts the branch and a match
+     * drops the ray from the checks below.
+     */
+    private void search(long layout, int open, int rest, int[] rays, int count, int[][] scratch, int depth,
+                        LongConsumer consumer, BooleanSupplier cancelled) {
+        if (cancelled.getAsBoolean()) {
+            return;
+        }
+        if (rest == 0) {
+            if (matches(layout, rays, count)) {
+                consumer.accept(layout);
+            }
+            return;
+        }
+        int[] unsettled = scratch[depth];
+        int kept = 0;
+        for (int r = 0; r < count; r++) {
+            int i = rays[r];
+            if ((zones.zone(layout, nodes[i]) & openCells[open]) != 0) {
+                unsettled[kept++] = i;
+            } else if (tracer.trace(layout, nodes[i]) != outcomes[i]) {
+                return;
+            }
+        }
+        if (rest == 1) {
+            for (int position = 0; position < open; position++) {
+                long candidate = layout | 1L << freeCells[position];
+                if (matches(candidate, unsettled, kept)) {
+                    consumer.accept(candidate);
+                }
+            }
+            return;
+        }
+        for (int position = open - 1; position >= rest - 1; position--) {
+            search(layout | 1L << freeCells[position], position, rest - 1, unsettled, kept, scratch, depth + 1, consumer,
+                    cancelled);
+        }
+    }
+
+    // checks the first count of the given rays
+    private boolean matches(long layout, int[] rays, int count) {
+        for (int r = 0; r < count; r++) {
+            int i = rays[r];
+            if (tracer.trace(layout, nodes[i]) != outcomes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // growable list of masks, avoids boxing every candidate
+    private static final class LongList {
+        private long[] values = new long[64];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
@@ -1,66 +1,278 @@
 package Model;
 
-//import Controller.ViewModel;
-//import javafx.geometry.Point2D;
-//import Model.BlackBoxBoard.Point3D;
-//import com.example.blackbox.Main;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+/**
+ * Headless batch runner: reads scenarios of an atom layout and the nodes to fire, fires every
+ * ray with {@link RayTracer} and writes one JSON line of outcomes per scenario. It only uses the
+ * model, so it runs without JavaFX.
+ *
+ * <p>A scenario is one line of up to three fields separated by {@code ;}: an optional id (the
+ * line number if left out), the atoms, and the nodes. Atoms are cube coordinates {@code x,y,z}
+ * separated by spaces, or a {@link BoardIndex} mask written as {@code 0x...}. Nodes are
+ * numbers 1 to 54 separated by spaces or commas. Empty lines and lines starting with {@code #}
+ * are skipped.</p>
+ * <pre>
+ * opening-1; 0,0,0 2,-1,-1 -3,3,0 1,2,-3; 1 7 13 35
+ * 0x1000000400201; 1,2,3
+ * </pre>
+ * <p>gives</p>
+ * <pre>
+ * {"id":"opening-1","layout":"0x...","nodes":[1,7,13,35],"outcomes":[...],"rays":4,"markers":6}
+ * </pre>
+ * <p>Outcomes are {@link RayOutcome} codes: 0 absorbed, 55 reflected, 56 looped, otherwise the exit node.
+ * A scenario that can not be read gives {@code {"id":...,"error":"..."}} and the run goes on.</p>
+ *
+ * <p>Lines are read in batches that worker threads evaluate, and the results are written in
+ * input order. At most a few batches per worker are in flight, so memory stays bounded however
+ * long the input is.</p>
+ *
+ * <p>Usage: {@code ModelMain [in=<file>,...] [out=<file>] [threads=N] [batch=N]}, reading
+ * standard input and writing standard output by default.</p>
+ */
 public class ModelMain {
-    public static void main(String[] args) {
 
+    public static final int DEFAULT_BATCH = 2048;
 
-        BlackBoxBoard blackBoxBoard = new BlackBoxBoard();
-        //System.out.println("Before placing atoms:");
-        // blackBoxBoard.printBoard();
+    public static void main(String[] args) throws IOException, InterruptedException {
+        List<Path> inputs = new ArrayList<>();
+        Path output = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int batch = DEFAULT_BATCH;
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            switch (kv[0]) {
+                case "in" -> {
+                    for (String file : kv[1].split(",")) {
+                        inputs.add(Path.of(file));
+                    }
+                }
+                case "out" -> output = Path.of(kv[1]);
+                case "threads" -> threads = Integer.parseInt(kv[1]);
+                case "batch" -> batch = Integer.parseInt(kv[1]);
+                default -> throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
 
-        // Place atoms randomly
-        //blackBoxBoard.placeRandomAtoms(6);
-        //System.out.println("After placing atoms:");
-
-        //blackBoxBoard.printCIPoints();
-
-
-        // testing ray paths with specific atom placements
-
-
-        /*
-        BlackBoxBoard.Point3D atom = new BlackBoxBoard.Point3D(0,0,0);
-        blackBoxBoard.placeAtom(atom);
-        atom = new BlackBoxBoard.Point3D(-3,4,-1);
-        blackBoxBoard.placeAtom(atom);
-        atom = new BlackBoxBoard.Point3D(0,1,-1);
-        blackBoxBoard.placeAtom(atom);
-        atom = new BlackBoxBoard.Point3D(2,-1,-1);
-        blackBoxBoard.placeAtom(atom);
-        atom = new BlackBoxBoard.Point3D(-1,0,1);
-        blackBoxBoard.placeAtom(atom);
-        atom = new BlackBoxBoard.Point3D(3,-1,-2);
-        blackBoxBoard.placeAtom(atom);
-         */
+        long start = System.nanoTime();
+        long scenarios = 0;
+        Writer out = output == null
+                ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16)
+                : Files.newBufferedWriter(output);
+        try {
+            if (inputs.isEmpty()) {
+                scenarios = run(new InputStreamReader(System.in, StandardCharsets.UTF_8), out, threads, batch);
+            }
+            for (Path input : inputs) {
+                try (Reader in = Files.newBufferedReader(input)) {
+                    scenarios += run(in, out, threads, batch);
+                }
+            }
+        } finally {
+            if (output == null) {
+                out.flush();
+            } else {
+                out.close();
+            }
+        }
+        System.err.printf("Evaluated %d scenarios in %.2f s%n", scenarios, (System.nanoTime() - start) / 1e9);
+    }
 
-        //blackBoxBoard.printBoard();
+    /**
+     * Evaluates every scenario of an input and writes the results in input order.
+     *
+     * @param in        the scenario lines.
+     * @param out       receives one JSON line per scenario.
+     * @param threads   worker threads.
+     * @param batchSize lines handed to a worker at a time.
+     * @return the number of scenarios written.
+     */
+    public static long run(Reader in, Writer out, int threads, int batchSize) throws IOException, InterruptedException {
+        if (threads < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("Threads and batch size must be positive.");
+        }
+        BufferedReader reader = in instanceof BufferedReader buffered ? buffered : new BufferedReader(in, 1 << 16);
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        // batches in flight, oldest first
+        Queue<Future<Batch>> pending = new ArrayDeque<>();
+        long scenarios = 0;
+        long lineNumber = 0;
+        try {
+            while (true) {
+                List<String> lines = new ArrayList<>(batchSize);
+                String line;
+                while (lines.size() < batchSize && (line = reader.readLine()) != null) {
+                    lines.add(line);
+                }
+                if (lines.isEmpty()) {
+                    break;
+                }
+                long first = lineNumber + 1;
+                lineNumber += lines.size();
+                pending.add(workers.submit(() -> evaluate(lines, first)));
+                if (pending.size() >= 2 * threads) {
+                    scenarios += write(pending.remove(), out);
+                }
+            }
+            while (!pending.isEmpty()) {
+                scenarios += write(pending.remove(), out);
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        return scenarios;
+    }
 
-        RayNode.initializeNodes();
-        RayNode.printRayNodes();
+    // JSON lines of a batch and how many scenarios they hold
+    private record Batch(StringBuilder json, int scenarios) {
+    }
 
-        // Define an entry point for the ray. Choose an edge coordinate.
-        // Create a ray with the entry point
-        Ray ray = new Ray(blackBoxBoard, 35);
-        //Ray.printRayInfo(ray);
+    private static int write(Future<Batch> result, Writer out) throws IOException, InterruptedException {
+        try {
+            Batch batch = result.get();
+            out.append(batch.json);
+            return batch.scenarios;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Scenario worker failed.", e.getCause());
+        }
+    }
 
-        // Create a ray with the entry point
-        //ray = new Ray(blackBoxBoard, 46);
-        //Ray.printRayInfo(ray);
+    private static Batch evaluate(List<String> lines, long firstLine) {
+        StringBuilder json = new StringBuilder(lines.size() * 96);
+        int scenarios = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            if (evaluate(lines.get(i), firstLine + i, json)) {
+                scenarios++;
+            }
+        }
+        return new Batch(json, scenarios);
+    }
 
-        System.out.println("Ray markers: " + blackBoxBoard.getRayMarkers());
-        System.out.println("Total rays fired: " + blackBoxBoard.getRayCount());
-        //System.out.println("The score is: " + GameState.calcScore());
-        //System.out.println("Edge cells: " + BlackBoxBoard.edgeCells);
+    /**
+     * Evaluates one scenario line.
+     *
+     * @param line       the scenario.
+     * @param lineNumber the line number, used as the id when the line has none.
+     * @param json       receives the JSON line.
+     * @return false if the line is empty or a comment and nothing was written.
+     */
+    static boolean evaluate(String line, long lineNumber, StringBuilder json) {
+        String trimmed = line.strip();
+        if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+            return false;
+        }
+        String[] fields = trimmed.split(";", -1);
+        String id = fields.length == 3 ? fields[0].strip() : Long.toString(lineNumber);
+        int mark = json.length();
+        try {
+            if (fields.length < 2 || fields.length > 3) {
+                throw new IllegalArgumentException("Expected [id;] atoms; nodes but found " + fields.length + " fields.");
+            }
+            long layout = parseLayout(fields[fields.length - 2]);
+            int[] nodes = parseNodes(fields[fields.length - 1]);
+            json.append("{\"id\":");
+            appendString(json, id);
+            json.append(",\"layout\":\"0x").append(Long.toHexString(layout)).append("\",\"nodes\":[");
+            for (int i = 0; i < nodes.length; i++) {
+                json.append(i == 0 ? "" : ",").append(nodes[i]);
+            }
+            json.append("],\"outcomes\":[");
+            int markers = 0;
+            for (int i = 0; i < nodes.length; i++) {
+                int outcome = RayTracer.trace(layout, nodes[i]);
+                markers += RayOutcome.markers(outcome);
+                json.append(i == 0 ? "" : ",").append(outcome);
+            }
+            json.append("],\"rays\":").append(nodes.length).append(",\"markers\":").append(markers).append("}\n");
+        } catch (IllegalArgumentException e) {
+            json.setLength(mark);
+            json.append("{\"id\":");
+            appendString(json, id);
+            json.append(",\"error\":");
+            appendString(json, e.getMessage());
+            json.append("}\n");
+        }
+        return true;
+    }
 
-        //System.out.println("Node Coordinates: " + RayNode.getNodeCoordinates(18));
-        //System.out.println("Node Direction: " + RayNode.getNodeDirection(18));
-        //System.out.println("Node: " + RayNode.getNodeNumber((new BlackBoxBoard.Point3D(-4, 4, 0)), Direction.YL));
+    private static long parseLayout(String field) {
+        String text = field.strip();
+        if (text.startsWith("0x") || text.startsWith("0X")) {
+            long layout = Long.parseUnsignedLong(text.substring(2), 16);
+            if ((layout & ~BoardIndex.FULL_MASK) != 0) {
+                throw new IllegalArgumentException("Layout " + text + " has cells outside the board.");
+            }
+            return layout;
+        }
+        long layout = 0;
+        for (String atom : text.split("\\s+")) {
+            if (atom.isEmpty()) {
+                continue;
+            }
+            String[] xyz = atom.split(",");
+            if (xyz.length != 3) {
+                throw new IllegalArgumentException("Atom " + atom + " is not x,y,z.");
+            }
+            int cell = BoardIndex.indexOf(Integer.parseInt(xyz[0]), Integer.parseInt(xyz[1]), Integer.parseInt(xyz[2]));
+            if (cell < 0) {
+                throw new IllegalArgumentException("Atom " + atom + " is not on the board.");
+            }
+            layout |= 1L << cell;
+        }
+        return layout;
+    }
 
+    private static int[] parseNodes(String field) {
+        String text = field.strip();
+        if (text.isEmpty()) {
+            return new int[0];
+        }
+        String[] parts = text.split("[\\s,]+");
+        int[] nodes = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            nodes[i] = Integer.parseInt(parts[i]);
+            if (nodes[i] < 1 || nodes[i] > RayTracer.NODE_COUNT) {
+                throw new IllegalArgumentException("No ray node " + nodes[i] + ".");
+            }
+        }
+        return nodes;
     }
 
+    private static void appendString(StringBuilder json, String text) {
+        json.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        json.append('"');
+    }
 }
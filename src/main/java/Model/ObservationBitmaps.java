@@ -0,0 +1,132 @@
+package Model;
+
+import utils.CompressedBitmap;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+/**
+ * Precomputed compressed bitmaps of layout ranks, one per (node, outcome) pair, for all layouts
+ * with a fixed number of atoms. Bitmap (n, o) holds the rank of every layout for which firing
+ * node n gives outcome o, so the layouts consistent with a set of fired rays are just the
+ * intersection of the matching bitmaps. Ranks follow {@link LayoutRank}, which keeps layouts
+ * sharing their highest cells next to each other, so the bitmaps are mostly long runs.
+ */
+public final class ObservationBitmaps {
+
+    private static final CompressedBitmap EMPTY = new CompressedBitmap();
+
+    private final int atoms;
+    private final int layouts;
+    // bitmap of node n and outcome o at (n - 1) * RayOutcome.COUNT + o, null when no layout gives it
+    private final CompressedBitmap[] bitmaps;
+
+    private ObservationBitmaps(int atoms, int layouts, CompressedBitmap[] bitmaps) {
+        this.atoms = atoms;
+        this.layouts = layouts;
+        this.bitmaps = bitmaps;
+    }
+
+    /**
+     * Traces every node for every layout with the given number of atoms and builds the bitmaps.
+     * Each node is handled by its own parallel task.
+     *
+     * @param atoms the number of atoms per layout.
+     * @return the built bitmaps.
+     */
+    public static ObservationBitmaps build(int atoms) {
+        long count = LayoutRank.count(atoms);
+        if (count == 0 || count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cannot build bitmaps for " + atoms + " atoms.");
+        }
+        CompressedBitmap[] bitmaps = new CompressedBitmap[RayTracer.NODE_COUNT * RayOutcome.COUNT];
+        IntStream.rangeClosed(1, RayTracer.NODE_COUNT).parallel().forEach(node -> {
+            int base = (node - 1) * RayOutcome.COUNT;
+            int rank = 0;
+            for (long layout = LayoutRank.first(atoms); layout != 0; layout = LayoutRank.next(layout), rank++) {
+                int outcome = RayTracer.trace(layout, node);
+                CompressedBitmap bitmap = bitmaps[base + outcome];
+                if (bitmap == null) {
+                    bitmap = new CompressedBitmap();
+                    bitmaps[base + outcome] = bitmap;
+                }
+                bitmap.add(rank);
+            }
+            for (int o = 0; o < RayOutcome.COUNT; o++) {
+                if (bitmaps[base + o] != null) {
+                    bitmaps[base + o].runOptimize();
+                }
+            }
+        });
+        return new ObservationBitmaps(atoms, (int) count, bitmaps);
+    }
+
+    /**
+     * Gets the number of atoms of the indexed layouts.
+     */
+    public int getAtoms() {
+        return atoms;
+    }
+
+    /**
+     * Gets the number of indexed layouts.
+     */
+    public int getLayoutCount() {
+        return layouts;
+    }
+
+    /**
+     * Gets the ranks of all layouts for which a node gives an outcome.
+     *
+     * @return the shared bitmap, which must not be modified.
+     */
+    public CompressedBitmap get(int node, int outcome) {
+        CompressedBitmap bitmap = bitmaps[(node - 1) * RayOutcome.COUNT + outcome];
+        return bitmap == null ? EMPTY : bitmap;
+    }
+
+    /**
+     * Gets a new bitmap of every layout rank.
+     */
+    public CompressedBitmap all() {
+        return CompressedBitmap.range(0, layouts);
+    }
+
+    /**
+     * Gets the ranks of the layouts consistent with all observations, intersecting the
+     * smallest bitmaps first.
+     *
+     * @param nodes    the fired nodes.
+     * @param outcomes the outcome observed for each fired node.
+     * @return a new bitmap of the consistent layout ranks.
+     */
+    public CompressedBitmap candidates(int[] nodes, int[] outcomes) {
+        if (nodes.length == 0) {
+            return all();
+        }
+        CompressedBitmap[] selected = new CompressedBitmap[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            selected[i] = get(nodes[i], outcomes[i]);
+        }
+        Arrays.sort(selected, Comparator.comparingLong(CompressedBitmap::cardinality));
+        CompressedBitmap result = selected[0].copy();
+        for (int i = 1; i < selected.length && !result.isEmpty(); i++) {
+            result = result.and(selected[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Gets an estimate of the memory held by all bitmaps, in bytes.
+     */
+    public long sizeInBytes() {
+        long bytes = 0;
+        for (CompressedBitmap bitmap : bitmaps) {
+            if (bitmap != null) {
+                bytes += bitmap.sizeInBytes();
+            }
+        }
+        return bytes;
+    }
+}
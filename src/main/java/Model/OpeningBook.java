@@ -0,0 +1,330 @@
+package Model;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.IntStream;
+
+/**
+ * Precomputed first rays of a game: for each atom count, a tree giving the ray to fire first,
+ * and after each outcome seen the ray to fire next, a few rays deep.
+ *
+ * <p>Each ray is the one whose outcome has the highest entropy over the layouts still possible,
+ * which tells the most about the layout on average. The possible layouts are estimated by a
+ * large uniform sample of random layouts, filtered by the outcomes along the way. Branches
+ * whose outcome fewer than {@link #MIN_SAMPLES} sampled layouts give are left out, so the book
+ * only covers the openings that come up often enough to matter.</p>
+ *
+ * <p>The trees are built offline with {@link #main} and shipped as the {@code /openings.bin}
+ * resource, which is read on the first call to {@link #get()}. The resource starts with a
+ * header of {@link #MAGIC}, {@link #VERSION} and the number of trees. Each tree is its atom
+ * count, depth, sample size and entry count, followed by its entries of {@link #ENTRY_BYTES}:
+ * the outcome leading to the entry, the node to fire, the number of children and the index of
+ * the first child. The root is entry 0 and the children of an entry are stored next to each
+ * other, so a lookup walks at most one entry per ray fired and scans at most one entry per
+ * outcome, and never runs a recommender.</p>
+ *
+ * <p>Usage: {@code OpeningBook [atoms=4,5,6] [depth=N] [samples=N] [seed=N] [out=<file>]}.</p>
+ */
+public final class OpeningBook {
+
+    public static final int MAGIC = 0x42424f42; // "BBOB"
+    public static final int VERSION = 1;
+    public static final String RESOURCE = "/openings.bin";
+
+    public static final int DEFAULT_DEPTH = 5;
+    public static final int DEFAULT_SAMPLES = 1_000_000;
+
+    /**
+     * Fewest sampled layouts that must give an outcome for the book to have a reply to it.
+     */
+    public static final int MIN_SAMPLES = 200;
+
+    static final int ENTRY_BYTES = 7;
+
+    // entry fields
+    private static final int OUTCOME = 0;
+    private static final int NODE = 1;
+    private static final int CHILDREN = 2;
+    private static final int FIRST_CHILD = 3;
+
+    private static final OpeningBook EMPTY = new OpeningBook(new ByteBuffer[0], new int[0]);
+
+    // the book shipped with the game, loaded by the first call to get()
+    private static final class Shipped {
+        static final OpeningBook BOOK = load();
+    }
+
+    // entries of the tree for each atom count, null if there is none
+    private final ByteBuffer[] trees;
+    private final int[] depths;
+
+    private OpeningBook(ByteBuffer[] trees, int[] depths) {
+        this.trees = trees;
+        this.depths = depths;
+    }
+
+    /**
+     * Gets the book shipped with the game, reading it on the first call. The book is empty if the
+     * resource is missing.
+     */
+    public static OpeningBook get() {
+        return Shipped.BOOK;
+    }
+
+    private static OpeningBook load() {
+        try (InputStream in = OpeningBook.class.getResourceAsStream(RESOURCE)) {
+            return in == null ? EMPTY : read(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the opening book.", e);
+        }
+    }
+
+    /**
+     * Reads a book written by {@link #write}.
+     */
+    public static OpeningBook read(InputStream in) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(in.readAllBytes());
+        if (buffer.remaining() < 12 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Not an opening book.");
+        }
+        ByteBuffer[] trees = new ByteBuffer[BoardIndex.CELL_COUNT + 1];
+        int[] depths = new int[BoardIndex.CELL_COUNT + 1];
+        int count = buffer.getInt();
+        for (int t = 0; t < count; t++) {
+            int atoms = buffer.get();
+            int depth = buffer.get();
+            buffer.getInt(); // sample size, only kept for reference
+            int entries = buffer.getInt();
+            if (atoms < 1 || atoms > BoardIndex.CELL_COUNT || entries < 1 || entries > buffer.remaining() / ENTRY_BYTES) {
+                throw new IOException("Corrupt opening book tree " + t + ".");
+            }
+            trees[atoms] = buffer.slice(buffer.position(), entries * ENTRY_BYTES);
+            depths[atoms] = depth;
+            buffer.position(buffer.position() + entries * ENTRY_BYTES);
+        }
+        return new OpeningBook(trees, depths);
+    }
+
+    /**
+     * Checks if the book has a tree for an atom count.
+     */
+    public boolean covers(int atoms) {
+        return atoms >= 0 && atoms < trees.length && trees[atoms] != null;
+    }
+
+    /**
+     * Gets the number of rays deep the tree for an atom count goes, 0 if there is none.
+     */
+    public int depth(int atoms) {
+        return covers(atoms) ? depths[atoms] : 0;
+    }
+
+    /**
+     * Gets the book's next ray for the rays fired so far.
+     *
+     * @param atoms    the number of atoms on the board.
+     * @param nodes    the fired nodes, in the first {@code fired} entries.
+     * @param outcomes the {@link RayOutcome} of each fired node.
+     * @param fired    the number of rays fired.
+     * @return the node to fire next, or 0 if the game has left the book.
+     */
+    public int nextNode(int atoms, int[] nodes, int[] outcomes, int fired) {
+        if (!covers(atoms)) {
+            return 0;
+        }
+        ByteBuffer tree = trees[atoms];
+        int entry = 0;
+        for (int i = 0; i < fired; i++) {
+            int base = entry * ENTRY_BYTES;
+            if (tree.get(base + NODE) != nodes[i]) {
+                return 0;
+            }
+            int first = tree.getInt(base + FIRST_CHILD);
+            int children = tree.get(base + CHILDREN);
+            entry = -1;
+            for (int c = first; c < first + children; c++) {
+                if ((tree.get(c * ENTRY_BYTES + OUTCOME) & 0xFF) == outcomes[i]) {
+                    entry = c;
+                    break;
+                }
+            }
+            if (entry < 0) {
+                return 0;
+            }
+        }
+        return tree.get(entry * ENTRY_BYTES + NODE);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int[] atomCounts = {4, 5, 6};
+        int depth = DEFAULT_DEPTH;
+        int samples = DEFAULT_SAMPLES;
+        long seed = 1;
+        Path out = Path.of("src", "main", "resources", "openings.bin");
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            switch (kv[0]) {
+                case "atoms" -> atomCounts = Arrays.stream(kv[1].split(",")).mapToInt(Integer::parseInt).toArray();
+                case "depth" -> depth = Integer.parseInt(kv[1]);
+                case "samples" -> samples = Integer.parseInt(kv[1]);
+                case "seed" -> seed = Long.parseLong(kv[1]);
+                case "out" -> out = Path.of(kv[1]);
+                default -> throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        long start = System.nanoTime();
+        try (OutputStream stream = Files.newOutputStream(out)) {
+            write(stream, atomCounts, depth, samples, seed, ForkJoinPool.commonPool());
+        }
+        System.out.printf("Wrote %s (%d bytes) in %.2f s%n", out, Files.size(out), (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Builds a tree for each atom count and writes the book.
+     *
+     * @param out        receives the book.
+     * @param atomCounts the atom counts to cover.
+     * @param depth      the number of rays each tree goes deep.
+     * @param samples    the random layouts sampled per atom count.
+     * @param seed       the seed of the samples.
+     * @param pool       the pool the trees are built on.
+     */
+    public static void write(OutputStream out, int[] atomCounts, int depth, int samples, long seed,
+                             ForkJoinPool pool) throws IOException {
+        if (depth < 1 || depth > RayTracer.NODE_COUNT || samples < 1) {
+            throw new IllegalArgumentException("Invalid opening book of depth " + depth + " over " + samples + " samples.");
+        }
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(atomCounts.length);
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int atoms : atomCounts) {
+            SplittableRandom sampler = random.split();
+            long[] layouts = new long[samples];
+            for (int i = 0; i < samples; i++) {
+                layouts[i] = BoardIndex.randomLayout(sampler, atoms);
+            }
+            Branch root = pool.invoke(new BranchTask(layouts, 0L, depth, RayOutcome.ABSORBED));
+            List<Branch> entries = new ArrayList<>();
+            entries.add(root);
+            // breadth first, so the children of each entry end up next to each other
+            List<Integer> firsts = new ArrayList<>();
+            for (int e = 0; e < entries.size(); e++) {
+                firsts.add(entries.size());
+                entries.addAll(entries.get(e).children);
+            }
+            data.writeByte(atoms);
+            data.writeByte(depth);
+            data.writeInt(samples);
+            data.writeInt(entries.size());
+            for (int e = 0; e < entries.size(); e++) {
+                Branch branch = entries.get(e);
+                data.writeByte(branch.outcome);
+                data.writeByte(branch.node);
+                data.writeByte(branch.children.size());
+                data.writeInt(firsts.get(e));
+            }
+        }
+        data.flush();
+    }
+
+    // a tree entry while the book is built
+    private record Branch(int outcome, int node, List<Branch> children) {
+    }
+
+    // picks the ray for one set of sampled layouts and builds the replies to each outcome; never serialized
+    @SuppressWarnings("serial")
+    private static final class BranchTask extends RecursiveTask<Branch> {
+        private final long[] layouts;
+        private final long fired;
+        private final int depth;
+        private final int outcome;
+
+        BranchTask(long[] layouts, long fired, int depth, int outcome) {
+            this.layouts = layouts;
+            this.fired = fired;
+            this.depth = depth;
+            this.outcome = outcome;
+        }
+
+        @Override
+        protected Branch compute() {
+            int node = bestNode(layouts, fired);
+            List<Branch> children = new ArrayList<>();
+            if (depth > 1) {
+                int[] counts = new int[RayOutcome.COUNT];
+                byte[] outcomes = new byte[layouts.length];
+                for (int i = 0; i < layouts.length; i++) {
+                    outcomes[i] = (byte) RayTracer.trace(layouts[i], node);
+                    counts[outcomes[i]]++;
+                }
+                List<BranchTask> tasks = new ArrayList<>();
+                for (int o = 0; o < RayOutcome.COUNT; o++) {
+                    if (counts[o] < MIN_SAMPLES) {
+                        continue;
+                    }
+                    long[] matching = new long[counts[o]];
+                    int size = 0;
+                    for (int i = 0; i < layouts.length; i++) {
+                        if (outcomes[i] == o) {
+                            matching[size++] = layouts[i];
+                        }
+                    }
+                    tasks.add(new BranchTask(matching, fired | 1L << (node - 1), depth - 1, o));
+                }
+                for (BranchTask task : invokeAll(tasks)) {
+                    children.add(task.join());
+                }
+            }
+            return new Branch(outcome, node, children);
+        }
+    }
+
+    /**
+     * Gets the unfired node whose outcome has the highest entropy over a set of layouts, the
+     * lowest such node on a tie.
+     *
+     * @param fired the fired nodes, bit n - 1 standing for node n.
+     */
+    static int bestNode(long[] layouts, long fired) {
+        double[] entropies = new double[RayTracer.NODE_COUNT + 1];
+        IntStream.rangeClosed(1, RayTracer.NODE_COUNT).parallel().forEach(node -> {
+            if ((fired & 1L << (node - 1)) != 0) {
+                entropies[node] = Double.NEGATIVE_INFINITY;
+                return;
+            }
+            int[] counts = new int[RayOutcome.COUNT];
+            for (long layout : layouts) {
+                counts[RayTracer.trace(layout, node)]++;
+            }
+            double entropy = 0;
+            for (int count : counts) {
+                if (count > 0) {
+                    double p = (double) count / layouts.length;
+                    entropy -= p * Math.log(p);
+                }
+            }
+            entropies[node] = entropy;
+        });
+        int best = 1;
+        for (int node = 2; node <= RayTracer.NODE_COUNT; node++) {
+            if (entropies[node] > entropies[best]) {
+                best = node;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,311 @@
+package Model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Compact form of a ray's path on the hex board: its entry node and one 3-bit turn code per
+ * step, instead of a list of cells. The cells are only worked out again when they are asked for,
+ * so a stored path costs a few bytes rather than a {@link BlackBoxBoard.Point3D} per cell.
+ *
+ * <p>The path starts in the entry cell of the node, heading in its entry direction. Each code
+ * turns the ray in the cell it is in and moves it one cell on, the same as {@link Ray} does, so
+ * the decoded cells are exactly {@link Ray#getPath()}. Turns are measured in the order YR, ZU, XU,
+ * YL, ZD, XD, going round the board anticlockwise: left is the next direction in that order and
+ * right the one before.</p>
+ */
+public final class PathCode {
+
+    /**
+     * The ray moves on without turning.
+     */
+    public static final int STRAIGHT = 0;
+
+    /**
+     * The ray is deflected 60 degrees to the left.
+     */
+    public static final int LEFT_60 = 1;
+
+    /**
+     * The ray is deflected 60 degrees to the right.
+     */
+    public static final int RIGHT_60 = 2;
+
+    /**
+     * The ray is deflected 120 degrees to the left.
+     */
+    public static final int LEFT_120 = 3;
+
+    /**
+     * The ray is deflected 120 degrees to the right.
+     */
+    public static final int RIGHT_120 = 4;
+
+    /**
+     * The ray is sent back the way it came.
+     */
+    public static final int REVERSE = 5;
+
+    /**
+     * The ray moves on into the atom that absorbs it, always the last code of a path.
+     */
+    public static final int ABSORBED = 6;
+
+    private static final int CODE_BITS = 3;
+    private static final int CODES_PER_WORD = Long.SIZE / CODE_BITS;
+
+    // directions going round the board, and the position of each direction in that order
+    private static final Direction[] ROTATION = {
+            Direction.YR, Direction.ZU, Direction.XU, Direction.YL, Direction.ZD, Direction.XD
+    };
+    private static final int[] POSITION = new int[BoardIndex.DIRECTIONS];
+    // steps round the board of each code, and the code of each number of steps
+    private static final int[] TURN_STEPS = {0, 1, 5, 2, 4, 3, 0};
+    private static final int[] STEP_CODES = {STRAIGHT, LEFT_60, LEFT_120, REVERSE, RIGHT_120, RIGHT_60};
+
+    static {
+        for (int i = 0; i < ROTATION.length; i++) {
+            POSITION[ROTATION[i].ordinal()] = i;
+        }
+    }
+
+    private final int node;
+    // number of codes, one less than the number of cells
+    private final int length;
+    // the first codes, and the rest packed in the same way for longer paths
+    private final long head;
+    private final long[] tail;
+
+    private PathCode(int node, int length, long head, long[] tail) {
+        this.node = node;
+        this.length = length;
+        this.head = head;
+        this.tail = tail;
+    }
+
+    /**
+     * Encodes a path written by {@link GridTracer#trace(long, int, IntBuffer)} on the hex board.
+     *
+     * @param node  the entry node of the ray.
+     * @param path  the states of the path, read from its position to its limit.
+     * @param atoms the atom mask the path was traced on, which tells an absorbed ray's last step.
+     * @return the encoded path.
+     * @throws IllegalArgumentException if the path does not start at the node or has a step that
+     *                                  is not to a neighbouring cell.
+     */
+    public static PathCode encode(int node, IntBuffer path, long atoms) {
+        Encoder encoder = new Encoder(node);
+        while (path.hasRemaining()) {
+            int state = path.get();
+            int cell = GridTracer.stateCell(state);
+            encoder.add(cell, GridTracer.stateDir(state),
+                    !path.hasRemaining() && encoder.length >= 0 && (atoms >>> cell & 1L) != 0);
+        }
+        return encoder.finish();
+    }
+
+    /**
+     * Traces a ray on the hex board and encodes its path.
+     *
+     * @param atoms the atom mask of the board.
+     * @param node  the entry node number, 1 to 54.
+     * @return the encoded path.
+     */
+    public static PathCode trace(long atoms, int node) {
+        return trace(atoms, node, IntBuffer.allocate(GridTracer.HEX.maxSteps() + 2));
+    }
+
+    /**
+     * Traces all 54 nodes for a layout, putting the path of node n into entry n - 1.
+     *
+     * @param atoms the atom mask of the board.
+     * @return the encoded paths, one buffer being used for all of the tracing.
+     */
+    public static PathCode[] traceAll(long atoms) {
+        IntBuffer buffer = IntBuffer.allocate(GridTracer.HEX.maxSteps() + 2);
+        PathCode[] paths = new PathCode[RayTracer.NODE_COUNT];
+        for (int node = 1; node <= RayTracer.NODE_COUNT; node++) {
+            paths[node - 1] = trace(atoms, node, buffer);
+        }
+        return paths;
+    }
+
+    private static PathCode trace(long atoms, int node, IntBuffer buffer) {
+        buffer.clear();
+        RayTracer.trace(atoms, node, buffer);
+        buffer.flip();
+        return encode(node, buffer, atoms);
+    }
+
+    /**
+     * Gets the node the ray was fired from.
+     */
+    public int node() {
+        return node;
+    }
+
+    /**
+     * Gets the number of cells on the path, counting the entry cell.
+     */
+    public int cellCount() {
+        return length + 1;
+    }
+
+    /**
+     * Gets the code of a step: the turn the ray makes before moving into cell i of the path.
+     *
+     * @param i the step, 1 to {@link #cellCount()} - 1.
+     * @return one of the turn codes of this class.
+     */
+    public int code(int i) {
+        if (i < 1 || i > length) {
+            throw new IndexOutOfBoundsException("Step " + i + " of a path with " + length + " steps");
+        }
+        int index = i - 1;
+        long word = index < CODES_PER_WORD ? head : tail[index / CODES_PER_WORD - 1];
+        return (int) (word >>> index % CODES_PER_WORD * CODE_BITS) & (1 << CODE_BITS) - 1;
+    }
+
+    /**
+     * Reconstructs the path into a caller's buffer as the states of
+     * {@link GridTracer#trace(long, int, IntBuffer)}.
+     *
+     * @param out receives the {@link #cellCount()} states from its position on.
+     */
+    public void decodeTo(IntBuffer out) {
+        int cell = RayTracer.entryCell(node);
+        int dir = RayTracer.entryDir(node);
+        out.put(GridTracer.state(cell, dir));
+        for (int i = 1; i <= length; i++) {
+            dir = turn(dir, code(i));
+            cell = BoardIndex.neighbour(cell, dir);
+            out.put(GridTracer.state(cell, dir));
+        }
+    }
+
+    /**
+     * Writes the path to a stream in the format of {@link Ray#getPath()}.
+     *
+     * @param out the stream receiving the path.
+     * @throws IOException if writing to the stream fails.
+     */
+    public void appendTo(Appendable out) throws IOException {
+        int cell = RayTracer.entryCell(node);
+        int dir = RayTracer.entryDir(node);
+        appendCell(out, cell);
+        for (int i = 1; i <= length; i++) {
+            dir = turn(dir, code(i));
+            cell = BoardIndex.neighbour(cell, dir);
+            out.append(" -> ");
+            appendCell(out, cell);
+        }
+    }
+
+    private static void appendCell(Appendable out, int cell) throws IOException {
+        BlackBoxBoard.Point3D point = BoardIndex.pointOf(cell);
+        out.append("(")
+                .append(String.valueOf(point.x)).append(", ")
+                .append(String.valueOf(point.y)).append(", ")
+                .append(String.valueOf(point.z))
+                .append(")");
+    }
+
+    // direction after a turn
+    private static int turn(int dir, int code) {
+        return ROTATION[(POSITION[dir] + TURN_STEPS[code]) % ROTATION.length].ordinal();
+    }
+
+    /**
+     * Gets the path in the format of {@link Ray#getPath()}.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        try {
+            appendTo(sb);
+        } catch (IOException e) {
+            // a StringBuilder never throws
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof PathCode other && node == other.node && length == other.length
+                && head == other.head && Arrays.equals(tail, other.tail);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(node, length, head) * 31 + Arrays.hashCode(tail);
+    }
+
+    /**
+     * Builds a path code one cell at a time, for {@link Ray} and {@link #encode}.
+     */
+    static final class Encoder {
+
+        private final int node;
+        // codes so far, -1 before the entry cell
+        private int length = -1;
+        private int cell;
+        private int dir;
+        private long head;
+        private long[] tail;
+
+        Encoder(int node) {
+            this.node = node;
+        }
+
+        /**
+         * Adds the next cell of the path and the direction the ray moved into it in.
+         *
+         * @param absorbed true if the ray is absorbed by an atom in the cell.
+         */
+        void add(int nextCell, int nextDir, boolean absorbed) {
+            if (length < 0) {
+                if (nextCell != RayTracer.entryCell(node)) {
+                    throw new IllegalArgumentException("Path of node " + node + " starts in cell " + nextCell + ".");
+                }
+                length = 0;
+            } else {
+                if (BoardIndex.neighbour(cell, nextDir) != nextCell) {
+                    throw new IllegalArgumentException("Path of node " + node + " jumps from cell " + cell
+                            + " to cell " + nextCell + ".");
+                }
+                int steps = (POSITION[nextDir] - POSITION[dir] + ROTATION.length) % ROTATION.length;
+                put(absorbed ? ABSORBED : STEP_CODES[steps]);
+            }
+            cell = nextCell;
+            dir = nextDir;
+        }
+
+        private void put(int code) {
+            int index = length++;
+            if (index < CODES_PER_WORD) {
+                head |= (long) code << index * CODE_BITS;
+                return;
+            }
+            int word = index / CODES_PER_WORD - 1;
+            if (tail == null) {
+                tail = new long[4];
+            } else if (word == tail.length) {
+                tail = Arrays.copyOf(tail, tail.length * 2);
+            }
+            tail[word] |= (long) code << index % CODES_PER_WORD * CODE_BITS;
+        }
+
+        PathCode finish() {
+            if (length < 0) {
+                throw new IllegalArgumentException("Path of node " + node + " has no cells.");
+            }
+            long[] words = length <= CODES_PER_WORD ? null
+                    : Arrays.copyOf(tail, (length - 1) / CODES_PER_WORD);
+            return new PathCode(node, length, head, words);
+        }
+    }
+}
@@ -1,6 +1,10 @@
 package Model;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Objects;
 //import java.util.Objects;
@@ -18,13 +22,19 @@ import static Model.Direction.ZD;
 
 
 public class Ray {
+    // most steps a ray can take without repeating a (cell, direction, reversed) state
+    private static final int MAX_STEPS = 2 * BoardIndex.CELL_COUNT * BoardIndex.DIRECTIONS;
+
     //reference to the game board for path and check for atoms
     private final BlackBoxBoard board;
     //entry point of ray on the game board
     private final BlackBoxBoard.Point3D entryPoint;
-    //we will store the path ray takes using a list
+    //we will store the path ray takes as a compact PathCode, built while the ray moves
     private final BlackBoxBoard.Point3D exitPoint;
-    private final List<BlackBoxBoard.Point3D> path;
+    private final PathCode path;
+    private PathCode.Encoder pathEncoder;
+    //caller's buffer receiving the path as GridTracer states, used instead of the list
+    private final IntBuffer pathBuffer;
 
     //to check whether ray is absorbed by an atom
     private boolean isAbsorbed;
@@ -35,6 +45,9 @@ public class Ray {
 
     private boolean rayReversed;
 
+    //to check whether the ray went round in a loop and was stopped
+    private boolean looped;
+
 
     Direction newDir;
     Direction entryDir;
@@ -50,11 +63,31 @@ public class Ray {
      */
 
     public Ray(BlackBoxBoard board, int node){
+        this(board, node, true, null);
+    }
+
+    /**
+     * Constructs a Ray that writes its path into a caller's buffer instead of keeping it, so a
+     * batch of rays can reuse one buffer. Each cell on the path is written as
+     * {@link GridTracer#state} of its {@link BoardIndex} cell and the ordinal of the ray's
+     * direction, the same entries as {@link GridTracer#trace(long, int, IntBuffer)}.
+     * {@link #getPath()} is empty for such a ray.
+     *
+     * @param board      The game board the ray will interact with.
+     * @param node       The entry node number where the ray enters the board.
+     * @param pathBuffer receives the path from its position on, or null to not record it at all.
+     */
+    public Ray(BlackBoxBoard board, int node, IntBuffer pathBuffer){
+        this(board, node, false, pathBuffer);
+    }
+
+    private Ray(BlackBoxBoard board, int node, boolean keepPath, IntBuffer pathBuffer){
 
         this.board = board; //board ref
         this.entryPoint = RayNode.getNodeCoordinates(node); //starting point
         this.entryDir = RayNode.getRevDir(Objects.requireNonNull(RayNode.getNodeDirection(node)));
-        this.path = new ArrayList<>();
+        this.pathEncoder = keepPath ? new PathCode.Encoder(node) : null;
+        this.pathBuffer = pathBuffer;
         this.isAbsorbed = false; //at the start ray is not absorbed
         rayReversed = false;
         deflected60 = false;
@@ -62,6 +95,8 @@ public class Ray {
         //call method to make sure every time a ray object is created its path is calculated immediately
 
         this.exitPoint = calculatePath();
+        this.path = keepPath ? pathEncoder.finish() : null;
+        this.pathEncoder = null;
     }
 
     /**
@@ -98,6 +133,14 @@ public class Ray {
 
     public boolean isRayReversed() { return this.rayReversed; }
 
+    /**
+     * Returns true if the ray went round in a loop and was stopped before reaching an edge.
+     * The game's rules never do this, see {@link RayOutcome#LOOPED}.
+     *
+     * @return true if looped, otherwise false.
+     */
+    public boolean isLooped() { return this.looped; }
+
     /**
      * Gets the exit point of the ray if it exits the board.
      *
@@ -147,7 +190,7 @@ public class Ray {
 
             if (cell != null && cell.hasAtom()) {
                 isAbsorbed = true;
-                path.add(entryPoint);
+                addToPath(entryPoint, dir);
                 BlackBoxBoard.rayCount += 1;
                 BlackBoxBoard.rayMarkers += 1;
                 return entryPoint;
@@ -157,7 +200,7 @@ public class Ray {
                 //if it has a CI we will find the cells on the edge its next to and find out if these cells have atoms o n edge
                 if(isRayReflectedAtEdge(entryPoint)){
                     rayReversed = true;
-                    path.add(entryPoint);
+                    addToPath(entryPoint, dir);
                     BlackBoxBoard.rayCount += 1;
                     BlackBoxBoard.rayMarkers += 1;
                     return entryPoint; //end method early since the ray is reflected
@@ -170,7 +213,7 @@ public class Ray {
 
         //if ray is not immediately reflected
         //start path at entry point
-        this.path.add(this.entryPoint);
+        addToPath(this.entryPoint, dir);
 
         // initialize list to store cells visited by the ray
         //List<BlackBoxBoard.Point3D> visitedCells = new ArrayList<>();
@@ -179,6 +222,10 @@ public class Ray {
         // current position of the ray
         BlackBoxBoard.Point3D currentPosition = this.entryPoint;
 
+        // states the ray has been in, a ray in the same state twice would repeat itself forever
+        BitSet visited = new BitSet(MAX_STEPS);
+        int steps = 0;
+
         // iterate until the ray is absorbed or reaches edge of board
         // edge of board argument included in the end so the loop
         // doesn't break due to the entry point being on edge of board
@@ -186,6 +233,17 @@ public class Ray {
             // Calculate the next position based on the current position and direction
             BlackBoxBoard.Point3D nextPosition;
 
+            int cellIndex = BoardIndex.indexOf(currentPosition);
+            int state = (cellIndex * BoardIndex.DIRECTIONS + dir.ordinal()) * 2 + (rayReversed ? 1 : 0);
+            if (++steps > MAX_STEPS || (cellIndex >= 0 && visited.get(state))) {
+                looped = true;
+                BlackBoxBoard.rayMarkers += 1;
+                break;
+            }
+            if (cellIndex >= 0) {
+                visited.set(state);
+            }
+
             HexCell cell = board.getCell(currentPosition);
 
             if (cell !=null && cell.hasCIPoint()) {
@@ -195,7 +253,7 @@ public class Ray {
                 if (result == Direction.Absorbed) {
                     isAbsorbed = true;
                     nextPosition = calculateNextPosition(currentPosition, dir);
-                    this.path.add(nextPosition);
+                    addToPath(nextPosition, dir, true);
                     BlackBoxBoard.rayMarkers += 1;
                     break;
                 }
@@ -206,9 +264,6 @@ public class Ray {
                 }
 
                 else {
-                    if (rayReversed) {
-                        BlackBoxBoard.rayMarkers += 1;
-                    }
                     dir = result;
                 }
             }
@@ -216,16 +271,16 @@ public class Ray {
             // check if ray is on edge of board and break loop if true
             if (hasReachedBoardEdge(currentPosition, dir)) {
                 exitPoint = currentPosition;
-                if (!isRayReversed()) {
-                    BlackBoxBoard.rayMarkers += 2;
-                }
+                // a reflected ray comes back out of its entry node and takes a single marker,
+                // however many atoms it passed, the same as RayOutcome.markers
+                BlackBoxBoard.rayMarkers += isRayReversed() ? 1 : 2;
                 break;
             }
 
             nextPosition = calculateNextPosition(currentPosition, dir);
 
             // Add the next position to the path
-            this.path.add(nextPosition);
+            addToPath(nextPosition, dir);
 
             // Update current position
             currentPosition = nextPosition;
@@ -720,7 +775,10 @@ public class Ray {
         System.out.println("Ray entered at: " + entryPoint);
         System.out.println("Ray's entry node: " + entryNodeNumber);
         // Check if the ray is absorbed and print the result
-        if (ray.isAbsorbed()) {
+        if (ray.isLooped()) {
+            System.out.println("Ray went round in a loop and was stopped.");
+        }
+        else if (ray.isAbsorbed()) {
             System.out.println("Ray absorbed.");
         }
         else if (ray.isRayReversed()) {
@@ -737,7 +795,7 @@ public class Ray {
     }
 
     // Function to calculate and store  edge cells next to entry point of a ray to determine if ray is reversed
-    private List<BlackBoxBoard.Point3D> getNextTo(BlackBoxBoard.Point3D point) {
+    static List<BlackBoxBoard.Point3D> getNextTo(BlackBoxBoard.Point3D point) {
         List<BlackBoxBoard.Point3D> nextTo = new ArrayList<>();
 
         // Handle corner conditions
@@ -801,28 +859,53 @@ public class Ray {
 
 
 
-    // string representation of rays path
-    public String getPath() {
-        StringBuilder sb = new StringBuilder();
+    // records a cell of the path in the path code or the caller's buffer
+    private void addToPath(BlackBoxBoard.Point3D point, Direction dir) {
+        addToPath(point, dir, false);
+    }
 
-        // Iterate over points in the path list
-        for (int i = 0; i < this.path.size(); i++) {
-            BlackBoxBoard.Point3D point = this.path.get(i);
+    private void addToPath(BlackBoxBoard.Point3D point, Direction dir, boolean absorbed) {
+        if (pathEncoder != null) {
+            pathEncoder.add(BoardIndex.indexOf(point), dir.ordinal(), absorbed);
+        } else if (pathBuffer != null) {
+            pathBuffer.put(GridTracer.state(BoardIndex.indexOf(point), dir.ordinal()));
+        }
+    }
 
-            // Append the coordinates of the point
-            sb.append("(")
-                    .append(point.x).append(", ")
-                    .append(point.y).append(", ")
-                    .append(point.z)
-                    .append(")");
+    /**
+     * Returns the ray's path in its compact form, or null for a ray that did not keep its path.
+     *
+     * @return the path code of the ray.
+     */
+    public PathCode getPathCode() {
+        return this.path;
+    }
 
-            // Append separator "->" if not the last point
-            if (i < this.path.size() - 1) {
-                sb.append(" -> ");
-            }
+    // string representation of rays path
+    public String getPath() {
+        StringBuilder sb = new StringBuilder();
+        try {
+            appendPathTo(sb);
+        } catch (IOException e) {
+            // a StringBuilder never throws
+            throw new UncheckedIOException(e);
         }
         return sb.toString();
     }
 
+    /**
+     * Writes the ray's path to a stream in the format of {@link #getPath()}, without building the
+     * string first. Writes nothing for a ray that did not keep its path.
+     *
+     * @param out the stream receiving the path.
+     * @throws IOException if writing to the stream fails.
+     */
+    public void appendPathTo(Appendable out) throws IOException {
+        // the cells are worked out again from the path code
+        if (this.path != null) {
+            this.path.appendTo(out);
+        }
+    }
+
 
 }
\ No newline at end of file
@@ -1,6 +1,4 @@
 package Model;
-import java.util.HashMap;
-import java.util.Map;
 
 import static Model.BlackBoxBoard.edgeCells;
 import static Model.Direction.XU;
@@ -10,19 +8,40 @@ import static Model.Direction.YL;
 import static Model.Direction.ZU;
 import static Model.Direction.ZD;
 
-// Ray Node class to store each individual ray node and its specific direction and coordinates in 3D map
+/**
+ * Ray node class to store each individual ray node and its specific direction and coordinates in
+ * the 3D map.
+ *
+ * <p>The 54 nodes are worked out once, when the class is loaded, into arrays that are never
+ * changed again. Class loading publishes them safely to every thread, so concurrent games can look
+ * nodes up without locking, and both lookups are a single array access.</p>
+ */
 public class RayNode {
-    public int nodeNumber;
-    public BlackBoxBoard.Point3D coordinates;
-    public Direction direction;
-    static Map<Integer, RayNode> rayNodeMap = new HashMap<>();
-    public static boolean turn; // for dealing with adjacent nodes for corner cells
+    public final int nodeNumber;
+    public final BlackBoxBoard.Point3D coordinates;
+    public final Direction direction;
+
+    // node by node number, entry 0 unused
+    private static final RayNode[] NODES = new RayNode[RayTracer.NODE_COUNT + 1];
+    // node number by BoardIndex cell * DIRECTIONS + direction ordinal, 0 where there is no node
+    private static final int[] NODE_NUMBERS = new int[BoardIndex.CELL_COUNT * BoardIndex.DIRECTIONS];
+
+    static {
+        buildNodes();
+        for (int node = 1; node <= RayTracer.NODE_COUNT; node++) {
+            RayNode rayNode = NODES[node];
+            int key = BoardIndex.indexOf(rayNode.coordinates) * BoardIndex.DIRECTIONS + rayNode.direction.ordinal();
+            if (NODE_NUMBERS[key] != 0) {
+                throw new IllegalStateException("Ray nodes " + NODE_NUMBERS[key] + " and " + node + " are the same.");
+            }
+            NODE_NUMBERS[key] = node;
+        }
+    }
 
     // method to print all the ray nodes in the map
     public static void printRayNodes() {
-        for (Map.Entry<Integer, RayNode> entry : rayNodeMap.entrySet()) {
-            int key = entry.getKey();
-            RayNode value = entry.getValue();
+        for (int key = 1; key <= RayTracer.NODE_COUNT; key++) {
+            RayNode value = NODES[key];
             System.out.println("Ray Node " + key + ": " + value);
             System.out.println("Coordinates: " + value.coordinates + ", Direction: " + value.direction + "\n");
         }
@@ -30,7 +49,7 @@ public class RayNode {
 
     // Getter method to retrieve the coordinates of a ray node by its key value
     public static BlackBoxBoard.Point3D getNodeCoordinates(int nodeNumber) {
-        RayNode rayNode = rayNodeMap.get(nodeNumber);
+        RayNode rayNode = getNode(nodeNumber);
         if (rayNode != null) {
             return rayNode.coordinates;
         } else {
@@ -41,7 +60,7 @@ public class RayNode {
 
     // Getter method to retrieve the direction of a ray node by its key value
     public static Direction getNodeDirection(int nodeNumber) {
-        RayNode rayNode = rayNodeMap.get(nodeNumber);
+        RayNode rayNode = getNode(nodeNumber);
         if (rayNode != null) {
             return rayNode.direction;
         } else {
@@ -50,39 +69,46 @@ public class RayNode {
         }
     }
 
+    private static RayNode getNode(int nodeNumber) {
+        return nodeNumber >= 1 && nodeNumber <= RayTracer.NODE_COUNT ? NODES[nodeNumber] : null;
+    }
+
     // Getter method to retrieve the node number by the coordinates and direction
     public static int getNodeNumber(BlackBoxBoard.Point3D coordinates, Direction direction) {
-        // Traverse through the ray node map and find match
-        for (Map.Entry<Integer, RayNode> entry : rayNodeMap.entrySet()) {
-            RayNode rayNode = entry.getValue();
-            if (rayNode.coordinates.equals(coordinates) && rayNode.direction == direction) {
-                return entry.getKey();
-            }
+        int cell = BoardIndex.indexOf(coordinates);
+        if (cell < 0 || direction == null || direction.ordinal() >= BoardIndex.DIRECTIONS) {
+            return -1;
         }
+        int node = NODE_NUMBERS[cell * BoardIndex.DIRECTIONS + direction.ordinal()];
         // If no matching node is found, return -1
-        return -1;
+        return node == 0 ? -1 : node;
     }
 
+    /**
+     * Used to fill the node map, which had to be done before the first ray. The nodes are now
+     * built when the class is loaded, so this does nothing.
+     *
+     * @deprecated the node table is always ready, there is no need to call this.
+     */
+    @Deprecated
     public static void initializeNodes() {
+    }
+
+    // walks round the edge cells once, numbering the nodes the way the board shows them
+    private static void buildNodes() {
 
         // initialize nodes 1, 2, and 54 because currently it's easiest to implement
         // the generation method with these nodes already set
         // otherwise it'll be complicated to figure out the edge cases
         BlackBoxBoard.Point3D coordinates = new BlackBoxBoard.Point3D(0, -4, 4);
-        BlackBoxBoard.Point3D prevCoords;
-        Direction direction = Direction.YL;
-        RayNode rayNode = new RayNode(2, coordinates, direction);
-        rayNodeMap.put(2, rayNode);
-
-        direction = Direction.XU;
-        rayNode = new RayNode(1, coordinates, direction);
-        rayNodeMap.put(1, rayNode);
-
-        direction = Direction.ZU;
-        rayNode = new RayNode(54, coordinates, direction);
-        rayNodeMap.put(54, rayNode);
+        NODES[2] = new RayNode(2, coordinates, Direction.YL);
+        NODES[1] = new RayNode(1, coordinates, Direction.XU);
+        Direction direction = Direction.ZU;
+        NODES[54] = new RayNode(54, coordinates, direction);
 
         Direction prevDir = direction;
+        // for dealing with adjacent nodes for corner cells
+        boolean turn = false;
 
         int cell = 1;
         // initialize nodes 53 until 3
@@ -94,9 +120,8 @@ public class RayNode {
             // getting adjacent direction for SAME cell
             if (HexCell.isCornerCell(coordinates)) {
                 for (int k = 0; k < 3; k ++) {
-                    prevDir = getAdjDir(prevDir, coordinates);
-                    rayNode = new RayNode(node, coordinates, prevDir);
-                    rayNodeMap.put(node, rayNode);
+                    prevDir = getAdjDir(prevDir, coordinates, turn);
+                    NODES[node] = new RayNode(node, coordinates, prevDir);
                     // only decrement node twice bc it'll be decremented at the end of each loop anyway
                     if (k < 2) {
                         node -= 1;
@@ -110,9 +135,8 @@ public class RayNode {
             // all other cells have 2 nodes so loop twice
             else {
                 for (int m = 0; m < 2; m++) {
-                    prevDir = getAdjDir(prevDir, coordinates);
-                    rayNode = new RayNode(node, coordinates, prevDir);
-                    rayNodeMap.put(node, rayNode);
+                    prevDir = getAdjDir(prevDir, coordinates, turn);
+                    NODES[node] = new RayNode(node, coordinates, prevDir);
                     // only decrement node once bc it'll be decremented at the end of each loop anyway
                     if (m < 1) {
                         node -= 1;
@@ -154,6 +178,11 @@ public class RayNode {
 
     // returns the adjacent direction
     public static Direction getAdjDir (Direction dir, BlackBoxBoard.Point3D cell) {
+        return getAdjDir(dir, cell, false);
+    }
+
+    // returns the adjacent direction, turn is set for the third node of a corner cell
+    private static Direction getAdjDir (Direction dir, BlackBoxBoard.Point3D cell, boolean turn) {
         Direction adjDir = Direction.Error;
 
         int x = cell.x;
@@ -0,0 +1,86 @@
+package Model;
+
+/**
+ * Integer codes for what the experimenter observes after firing a ray.
+ * Codes 1 to 54 are the exit node of a ray that left the board, the other values are
+ * the special outcomes below. Every code fits into 6 bits.
+ */
+public final class RayOutcome {
+
+    /**
+     * The ray hit an atom (black ray marker).
+     */
+    public static final int ABSORBED = 0;
+
+    /**
+     * The ray was reversed and came back out of its entry node (white ray marker).
+     */
+    public static final int REFLECTED = 55;
+
+    /**
+     * The ray went round in a loop and would never have left the board. The game's rules can
+     * not do this, so it points to a rules variant or a bug, and tracers report it instead of
+     * spinning forever.
+     */
+    public static final int LOOPED = 56;
+
+    /**
+     * Number of distinct outcome codes.
+     */
+    public static final int COUNT = 57;
+
+    private RayOutcome() {
+    }
+
+    /**
+     * Checks if an outcome is an exit through one of the 54 ray nodes.
+     */
+    public static boolean isExit(int outcome) {
+        return outcome >= 1 && outcome <= 54;
+    }
+
+    /**
+     * Gets the number of ray markers an outcome puts on the board: one for a hit or a
+     * reflection, two for an entry and exit pair.
+     */
+    public static int markers(int outcome) {
+        return isExit(outcome) ? 2 : 1;
+    }
+
+    /**
+     * Converts a traced Ray into its outcome code, reading it the same way the experimenter
+     * screen colours the ray markers.
+     *
+     * @param ray the traced ray.
+     * @return the outcome code.
+     */
+    public static int of(Ray ray) {
+        if (ray.isLooped()) {
+            return LOOPED;
+        }
+        if (ray.isRayReversed()) {
+            return REFLECTED;
+        }
+        int exitNode = ray.getExitPoint() == null ? -1 : RayNode.getNodeNumber(ray.getExitPoint(), ray.getExitDir());
+        if (ray.isAbsorbed() || exitNode == -1) {
+            return ABSORBED;
+        }
+        return exitNode;
+    }
+
+    /**
+     * Gets a readable name for an outcome code.
+     */
+    public static String toString(int outcome) {
+        if (outcome == ABSORBED) {
+            return "ABSORBED";
+        }
+        if (outcome == REFLECTED) {
+            return "REFLECTED";
+        }
+        if (outcome == LOOPED) {
+            return "LOOPED";
+        }
+        return "EXIT " + outcome;
+    }
+}
@@ -0,0 +1,75 @@
+package Model;
+
+import java.nio.IntBuffer;
+
+/**
+ * Allocation-free ray tracer working on atom masks (see {@link BoardIndex}).
+ * It follows exactly the same rules as {@link Ray}, but looks everything up in tables built
+ * once when the class is loaded, so it can trace millions of rays without touching the
+ * HexCell map or creating Point3D objects. It does not update the board's ray counters.
+ *
+ * <p>The tables are those of {@link GridTracer#HEX}; this class keeps the static entry points
+ * the rest of the game uses for its hex board.</p>
+ */
+public final class RayTracer {
+
+    /**
+     * Number of ray nodes around the board.
+     */
+    public static final int NODE_COUNT = 54;
+
+    private static final GridTracer HEX = GridTracer.HEX;
+
+    private RayTracer() {
+    }
+
+    /**
+     * Traces a ray fired from a node through a layout of atoms.
+     *
+     * @param atoms the atom mask of the board.
+     * @param node  the entry node number, 1 to 54.
+     * @return the {@link RayOutcome} code the experimenter would see.
+     */
+    public static int trace(long atoms, int node) {
+        return HEX.trace(atoms, node);
+    }
+
+    /**
+     * Traces a ray and writes its path into a caller's buffer, see
+     * {@link GridTracer#trace(long, int, IntBuffer)}.
+     *
+     * @param path receives the state of each cell on the path, or null to skip it.
+     */
+    public static int trace(long atoms, int node, IntBuffer path) {
+        return HEX.trace(atoms, node, path);
+    }
+
+    /**
+     * Traces all 54 nodes for a layout, writing the outcome of node n into {@code out[n - 1]}.
+     *
+     * @param atoms the atom mask of the board.
+     * @param out   array of at least 54 entries receiving the outcome codes.
+     */
+    public static void signature(long atoms, byte[] out) {
+        HEX.signature(atoms, out);
+    }
+
+    // table lookups for the other solvers in this package, which trace rays with partial knowledge
+
+    static int entryCell(int node) {
+        return HEX.entryCell(node);
+    }
+
+    static int entryDir(int node) {
+        return HEX.entryDir(node);
+    }
+
+    static long nextToMask(int node) {
+        return HEX.nextToMask(node);
+    }
+
+    // new direction for a combination of front atoms, -1 if the ray is absorbed
+    static int turn(int dir, int combo) {
+        return HEX.turn(dir, combo);
+    }
+}
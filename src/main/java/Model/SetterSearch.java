@@ -0,0 +1,305 @@
+package Model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * Adversarial search for hard puzzles: atom layouts that need as many rays as possible before
+ * the layout is pinned down.
+ *
+ * <p>The search plays both sides. For a layout, the experimenter side looks for the shortest
+ * firing sequence after which only the layout itself fits the rays: the
+ * {@link ConstraintPropagator} forces every atom, or leaves so few layouts open that they are
+ * checked one by one. It runs a best-first search over sets of fired nodes. Sets that pin more
+ * cells are expanded first, so a short sequence is found early and longer branches are cut. A
+ * transposition table of the sets already reached stops the search from expanding the same set
+ * fired in another order, and sets that are turned or mirrored copies of each other on a
+ * symmetric layout count as one (see {@link BoardSymmetry}). The experimenter side sees the outcomes of the layout it searches,
+ * so its sequence is the fewest rays any experimenter could get away with; with a limited
+ * number of expansions the search finds an upper bound on that.</p>
+ *
+ * <p>The setter side climbs from random layouts, moving one atom at a time and keeping moves that
+ * do not make the layout easier. Climbs run in parallel and share one table of evaluated layouts,
+ * keyed by the {@link BoardSymmetry#canonical canonical} copy, so each group of equivalent
+ * layouts is evaluated once. Layouts that keep an atom hidden even with all 54 rays fired have
+ * no unique solution and are left out.</p>
+ *
+ * <p>Usage: {@code SetterSearch [atoms=N] [climbs=N] [steps=N] [expansions=N] [top=N] [seed=N]}.</p>
+ */
+public final class SetterSearch {
+
+    public static final int DEFAULT_EXPANSIONS = 128;
+
+    /**
+     * Branch budget of the propagator runs made while searching firing sequences. It is well
+     * below the default, so a layout is evaluated in about a tenth of a second, but high enough
+     * to pin the layouts that need long propagation chains.
+     */
+    public static final int BRANCH_BUDGET = 256;
+
+    // most layouts left open by the propagator that are checked one by one for a unique fit
+    private static final long EXACT_LAYOUTS = 4096;
+
+    /**
+     * A layout and the shortest firing sequence found that pins it down.
+     *
+     * @param layout   the atom mask.
+     * @param sequence the nodes to fire, in order.
+     */
+    public record Ranked(long layout, int[] sequence) {
+
+        /**
+         * Gets the number of rays needed, the length of the sequence.
+         */
+        public int rays() {
+            return sequence.length;
+        }
+
+        @Override
+        public String toString() {
+            return "0x" + Long.toHexString(layout) + " rays=" + sequence.length + " " + Arrays.toString(sequence);
+        }
+    }
+
+    // an open set of fired nodes, its resolved cell count and the order the nodes were fired in
+    private record State(long fired, int resolved, int[] path) {
+    }
+
+    private SetterSearch() {
+    }
+
+    public static void main(String[] args) {
+        int atoms = 6;
+        int climbs = 8;
+        int steps = 12;
+        int expansions = DEFAULT_EXPANSIONS;
+        int top = 10;
+        long seed = 1;
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            switch (kv[0]) {
+                case "atoms" -> atoms = Integer.parseInt(kv[1]);
+                case "climbs" -> climbs = Integer.parseInt(kv[1]);
+                case "steps" -> steps = Integer.parseInt(kv[1]);
+                case "expansions" -> expansions = Integer.parseInt(kv[1]);
+                case "top" -> top = Integer.parseInt(kv[1]);
+                case "seed" -> seed = Long.parseLong(kv[1]);
+                default -> throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        long start = System.nanoTime();
+        List<Ranked> ranked = rank(atoms, climbs, steps, expansions, seed);
+        for (Ranked layout : ranked.subList(0, Math.min(top, ranked.size()))) {
+            System.out.println(layout);
+        }
+        System.out.printf("Evaluated %d layouts in %.2f s%n", ranked.size(), (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Searches for hard layouts.
+     *
+     * @param atoms      the number of atoms per layout.
+     * @param climbs     the number of hill climbs, run in parallel.
+     * @param steps      the moves tried by each climb.
+     * @param expansions the firing sets expanded per layout evaluated.
+     * @param seed       the seed of the starting layouts and moves.
+     * @return every solvable layout evaluated, in canonical form, hardest first.
+     */
+    public static List<Ranked> rank(int atoms, int climbs, int steps, int expansions, long seed) {
+        if (atoms < 1 || atoms > BoardIndex.CELL_COUNT - 1 || climbs < 0 || steps < 0 || expansions < 1) {
+            throw new IllegalArgumentException("Invalid setter search for " + atoms + " atoms.");
+        }
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] randoms = new SplittableRandom[climbs];
+        for (int c = 0; c < climbs; c++) {
+            randoms[c] = root.split();
+        }
+        // evaluated layouts by canonical mask, null rays for layouts with no unique solution
+        Map<Long, Ranked> evaluated = new ConcurrentHashMap<>();
+        IntStream.range(0, climbs).parallel().forEach(c -> {
+            SplittableRandom random = randoms[c];
+            long current = BoardSymmetry.canonical(BoardIndex.randomLayout(random, atoms));
+            int currentRays = rays(evaluated, current, expansions);
+            for (int step = 0; step < steps; step++) {
+                long moved = BoardSymmetry.canonical(current ^ pick(current, random) ^ pick(BoardIndex.FULL_MASK & ~current, random));
+                int movedRays = rays(evaluated, moved, expansions);
+                if (movedRays >= currentRays) {
+                    current = moved;
+                    currentRays = movedRays;
+                }
+            }
+        });
+        List<Ranked> ranked = new ArrayList<>();
+        for (Ranked layout : evaluated.values()) {
+            if (layout.sequence() != null) {
+                ranked.add(layout);
+            }
+        }
+        ranked.sort(Comparator.comparingInt(Ranked::rays).reversed().thenComparingLong(Ranked::layout));
+        return ranked;
+    }
+
+    private static int rays(Map<Long, Ranked> evaluated, long layout, int expansions) {
+        // searched outside the map so other climbs are not held up on its bin, two climbs reaching
+        // the same layout at once only repeat the search
+        Ranked result = evaluated.get(layout);
+        if (result == null) {
+            Ranked searched = new Ranked(layout, shortestSequence(layout, expansions));
+            result = evaluated.putIfAbsent(layout, searched);
+            if (result == null) {
+                result = searched;
+            }
+        }
+        return result.sequence() == null ? -1 : result.rays();
+    }
+
+    // a uniformly random cell of a mask
+    private static long pick(long cells, SplittableRandom random) {
+        long m = cells;
+        for (int skip = random.nextInt(Long.bitCount(cells)); skip > 0; skip--) {
+            m &= m - 1;
+        }
+        return Long.lowestOneBit(m);
+    }
+
+    /**
+     * Searches for the shortest firing sequence that pins down a layout.
+     *
+     * @param layout     the atom mask.
+     * @param expansions the most firing sets to expand.
+     * @return the shortest sequence found, or null if even all 54 rays leave more than one
+     * layout possible.
+     */
+    public static int[] shortestSequence(long layout, int expansions) {
+        int atoms = Long.bitCount(layout);
+        int[] outcomes = new int[RayTracer.NODE_COUNT + 1];
+        int[] all = new int[RayTracer.NODE_COUNT];
+        int[] allOutcomes = new int[RayTracer.NODE_COUNT];
+        for (int node = 1; node <= RayTracer.NODE_COUNT; node++) {
+            outcomes[node] = RayTracer.trace(layout, node);
+            all[node - 1] = node;
+            allOutcomes[node - 1] = outcomes[node];
+        }
+        if (!pinned(new ConstraintPropagator().propagate(all, allOutcomes, atoms), atoms)) {
+            return null;
+        }
+        // firing every node is always enough, the search looks for something shorter
+        int[] best = all;
+        int stabiliser = BoardSymmetry.stabiliser(layout);
+        Set<Long> reached = new HashSet<>();
+        PriorityQueue<State> open = new PriorityQueue<>(Comparator.comparingInt(State::resolved).reversed()
+                .thenComparingInt(s -> s.path().length));
+        open.add(new State(0L, 0, new int[0]));
+        ConstraintPropagator propagator = new ConstraintPropagator(BRANCH_BUDGET);
+        for (int expanded = 0; expanded < expansions && !open.isEmpty(); expanded++) {
+            State state = open.poll();
+            int rays = state.path().length + 1;
+            if (rays >= best.length) {
+                continue;
+            }
+            long implied = implied(state.fired(), outcomes);
+            for (int node = 1; node <= RayTracer.NODE_COUNT; node++) {
+                long bit = 1L << (node - 1);
+                if (((state.fired() | implied) & bit) != 0) {
+                    continue;
+                }
+                long fired = state.fired() | bit;
+                if (!reached.add(canonicalFired(fired, stabiliser))) {
+                    continue;
+                }
+                int[] path = Arrays.copyOf(state.path(), rays);
+                path[rays - 1] = node;
+                int[] pathOutcomes = new int[rays];
+                for (int i = 0; i < rays; i++) {
+                    pathOutcomes[i] = outcomes[path[i]];
+                }
+                ConstraintPropagator.Result result = propagator.propagate(path, pathOutcomes, atoms);
+                if (isDetermined(result, atoms, path, pathOutcomes)) {
+                    best = path;
+                    break;
+                }
+                if (rays + 1 < best.length) {
+                    int resolved = Long.bitCount(result.forcedAtoms()) * BoardIndex.CELL_COUNT
+                            + Long.bitCount(result.forcedEmpty());
+                    open.add(new State(fired, resolved, path));
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Checks if a layout is pinned down by the rays fired: the propagator forced every atom, or
+     * left at most {@value #EXACT_LAYOUTS} layouts open and only one of them fits the rays.
+     *
+     * @param result   the propagation of the rays.
+     * @param atoms    the number of atoms.
+     * @param nodes    the fired nodes.
+     * @param outcomes the outcome of each fired node.
+     */
+    static boolean isDetermined(ConstraintPropagator.Result result, int atoms, int[] nodes, int[] outcomes) {
+        return pinned(result, atoms) || unique(result, atoms, nodes, outcomes);
+    }
+
+    private static boolean pinned(ConstraintPropagator.Result result, int atoms) {
+        return result.consistent() && Long.bitCount(result.forcedAtoms()) == atoms;
+    }
+
+    // checks every layout the propagator leaves open when there are only a few of them
+    private static boolean unique(ConstraintPropagator.Result result, int atoms, int[] nodes, int[] outcomes) {
+        int missing = atoms - Long.bitCount(result.forcedAtoms());
+        return result.consistent() && LayoutRank.binomial(Long.bitCount(result.freeCells()), missing) <= EXACT_LAYOUTS
+                && countFitting(result.forcedAtoms(), result.freeCells(), missing, nodes, outcomes) == 1;
+    }
+
+    // layouts made of the base and some of the free cells that fit the rays, counting at most to 2
+    private static int countFitting(long base, long free, int missing, int[] nodes, int[] outcomes) {
+        if (missing == 0) {
+            for (int i = 0; i < nodes.length; i++) {
+                if (RayTracer.trace(base, nodes[i]) != outcomes[i]) {
+                    return 0;
+                }
+            }
+            return 1;
+        }
+        int count = 0;
+        for (long m = free; Long.bitCount(m) >= missing && count < 2; ) {
+            long cell = Long.lowestOneBit(m);
+            m ^= cell;
+            count += countFitting(base | cell, m, missing - 1, nodes, outcomes);
+        }
+        return count;
+    }
+
+    // nodes whose outcome is already known: a ray leaving at a node comes back the same way
+    private static long implied(long fired, int[] outcomes) {
+        long implied = 0L;
+        for (long m = fired; m != 0; m &= m - 1) {
+            int outcome = outcomes[Long.numberOfTrailingZeros(m) + 1];
+            if (RayOutcome.isExit(outcome)) {
+                implied |= 1L << (outcome - 1);
+            }
+        }
+        return implied;
+    }
+
+    // the smallest image of a set of fired nodes under the symmetries that keep the layout
+    private static long canonicalFired(long fired, int stabiliser) {
+        long best = fired;
+        for (int s = 1; s < BoardSymmetry.COUNT; s++) {
+            if ((stabiliser & (1 << s)) != 0) {
+                best = Math.min(best, BoardSymmetry.applyToNodes(s, fired));
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,384 @@
+package Model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Sorted, memory-mapped index from the full ray signature of a layout (the outcome of all 54
+ * nodes) to the ranks of every layout producing it. Post-game analysis can then answer
+ * "which layouts give exactly these observations" with a binary search instead of tracing
+ * every layout again.
+ *
+ * <p>The file holds a small header followed by fixed-size records sorted by signature. Each
+ * record is the signature packed at 6 bits per node and the layout rank as an unsigned int.
+ * It is built with an external sort: sorted runs of a bounded size are spilled to temp files
+ * and then merged, so the full dataset is never held in the heap.</p>
+ */
+public final class SignatureIndex implements Closeable {
+
+    /**
+     * Bytes of a packed signature, 54 outcomes at 6 bits each.
+     */
+    public static final int SIGNATURE_BYTES = (RayTracer.NODE_COUNT * 6 + 7) / 8;
+
+    static final int RECORD_BYTES = SIGNATURE_BYTES + Integer.BYTES;
+
+    private static final int MAGIC = 0x42425349; // "BBSI"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+    // layouts evaluated by one parallel task while a run is being filled
+    private static final int SLICE = 4096;
+    // records per mapped chunk, a chunk has to stay below 2GB
+    private static final int CHUNK_RECORDS = (1 << 30) / RECORD_BYTES;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] chunks;
+    private final int atoms;
+    private final long size;
+
+    private SignatureIndex(FileChannel channel, int atoms, long size) throws IOException {
+        this.channel = channel;
+        this.atoms = atoms;
+        this.size = size;
+        int chunkCount = (int) ((size + CHUNK_RECORDS - 1) / CHUNK_RECORDS);
+        this.chunks = new MappedByteBuffer[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            long first = (long) i * CHUNK_RECORDS;
+            long records = Math.min(CHUNK_RECORDS, size - first);
+            chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + first * RECORD_BYTES, records * RECORD_BYTES);
+        }
+    }
+
+    /**
+     * Evaluates every layout with the given number of atoms and writes the sorted index.
+     *
+     * @param file       the index file to create (overwritten if it exists).
+     * @param atoms      the number of atoms per layout.
+     * @param runRecords the maximum number of records sorted in memory at once.
+     * @throws IOException if the index or its temporary runs cannot be written.
+     */
+    public static void build(Path file, int atoms, int runRecords) throws IOException {
+        long total = LayoutRank.count(atoms);
+        if (total == 0 || total > 0xFFFFFFFFL) {
+            throw new IllegalArgumentException("Cannot index layouts of " + atoms + " atoms.");
+        }
+        if (runRecords < 1) {
+            throw new IllegalArgumentException("runRecords must be positive.");
+        }
+        Path dir = file.toAbsolutePath().getParent();
+        List<Path> runs = new ArrayList<>();
+        try {
+            byte[] buffer = new byte[(int) Math.min(runRecords, total) * RECORD_BYTES];
+            for (long start = 0; start < total; start += runRecords) {
+                int count = (int) Math.min(runRecords, total - start);
+                fillRun(buffer, start, count, atoms);
+                int[] order = sortRecords(buffer, count);
+                Path run = Files.createTempFile(dir, "signatures", ".run");
+                runs.add(run);
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(run), 1 << 16)) {
+                    for (int i = 0; i < count; i++) {
+                        out.write(buffer, order[i] * RECORD_BYTES, RECORD_BYTES);
+                    }
+                }
+            }
+            mergeRuns(runs, file, atoms, total);
+        } finally {
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+        }
+    }
+
+    /**
+     * Opens an index file and maps it into memory.
+     *
+     * @param file the index file written by {@link #build}.
+     * @return the opened index, to be closed by the caller.
+     * @throws IOException if the file cannot be read or is not a signature index.
+     */
+    public static SignatureIndex open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(12) != RECORD_BYTES) {
+                throw new IOException("Not a signature index: " + file);
+            }
+            int atoms = header.getInt(8);
+            long size = header.getLong(16);
+            if (channel.size() != HEADER_BYTES + size * RECORD_BYTES) {
+                throw new IOException("Truncated signature index: " + file);
+            }
+            return new SignatureIndex(channel, atoms, size);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the number of atoms of the indexed layouts.
+     */
+    public int getAtoms() {
+        return atoms;
+    }
+
+    /**
+     * Gets the number of records, which is the number of indexed layouts.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Finds the ranks of all layouts whose rays produce exactly the given outcomes.
+     *
+     * @param outcomes the outcome code of node n at index n - 1, for all 54 nodes.
+     * @return the matching layout ranks in increasing order, empty if there are none.
+     */
+    public long[] lookupRanks(byte[] outcomes) {
+        byte[] key = new byte[SIGNATURE_BYTES];
+        pack(outcomes, key);
+
+        // binary search for the first record not below the key
+        long low = 0;
+        long high = size;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (compare(mid, key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        long end = low;
+        while (end < size && compare(end, key) == 0) {
+            end++;
+        }
+        long[] ranks = new long[(int) (end - low)];
+        for (long i = low; i < end; i++) {
+            MappedByteBuffer chunk = chunks[(int) (i / CHUNK_RECORDS)];
+            int offset = (int) (i % CHUNK_RECORDS) * RECORD_BYTES;
+            ranks[(int) (i - low)] = chunk.getInt(offset + SIGNATURE_BYTES) & 0xFFFFFFFFL;
+        }
+        return ranks;
+    }
+
+    /**
+     * Finds all layouts whose rays produce exactly the given outcomes.
+     *
+     * @param outcomes the outcome code of node n at index n - 1, for all 54 nodes.
+     * @return the matching atom masks in rank order.
+     */
+    public long[] lookupLayouts(byte[] outcomes) {
+        long[] ranks = lookupRanks(outcomes);
+        for (int i = 0; i < ranks.length; i++) {
+            ranks[i] = LayoutRank.unrank(ranks[i], atoms);
+        }
+        return ranks;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Packs 54 outcome codes into 6 bit fields, most significant bits first, so the unsigned
+     * byte order of packed signatures is the node by node order of the outcomes.
+     *
+     * @param outcomes the outcome codes.
+     * @param packed   array of at least {@link #SIGNATURE_BYTES} receiving the packed bits.
+     */
+    static void pack(byte[] outcomes, byte[] packed) {
+        Arrays.fill(packed, 0, SIGNATURE_BYTES, (byte) 0);
+        for (int n = 0; n < RayTracer.NODE_COUNT; n++) {
+            int value = outcomes[n] & 0x3F;
+            for (int b = 5; b >= 0; b--) {
+                int bit = n * 6 + (5 - b);
+                if ((value >>> b & 1) != 0) {
+                    packed[bit >>> 3] |= (byte) (0x80 >>> (bit & 7));
+                }
+            }
+        }
+    }
+
+    private int compare(long record, byte[] key) {
+        MappedByteBuffer chunk = chunks[(int) (record / CHUNK_RECORDS)];
+        int offset = (int) (record % CHUNK_RECORDS) * RECORD_BYTES;
+        for (int i = 0; i < SIGNATURE_BYTES; i++) {
+            int diff = (chunk.get(offset + i) & 0xFF) - (key[i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return 0;
+    }
+
+    // traces a block of consecutive ranks in parallel and writes their records into the buffer
+    private static void fillRun(byte[] buffer, long start, int count, int atoms) {
+        int slices = (count + SLICE - 1) / SLICE;
+        IntStream.range(0, slices).parallel().forEach(slice -> {
+            byte[] outcomes = new byte[RayTracer.NODE_COUNT];
+            byte[] packed = new byte[SIGNATURE_BYTES];
+            int from = slice * SLICE;
+            int to = Math.min(count, from + SLICE);
+            long layout = LayoutRank.unrank(start + from, atoms);
+            for (int i = from; i < to; i++) {
+                RayTracer.signature(layout, outcomes);
+                pack(outcomes, packed);
+                int offset = i * RECORD_BYTES;
+                System.arraycopy(packed, 0, buffer, offset, SIGNATURE_BYTES);
+                writeInt(buffer, offset + SIGNATURE_BYTES, (int) (start + i));
+                layout = LayoutRank.next(layout);
+            }
+        });
+    }
+
+    // bottom-up merge sort of record positions, comparing whole records as unsigned bytes
+    private static int[] sortRecords(byte[] buffer, int count) {
+        int[] order = new int[count];
+        int[] scratch = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        for (int width = 1; width < count; width *= 2) {
+            for (int low = 0; low < count; low += 2 * width) {
+                int mid = Math.min(low + width, count);
+                int high = Math.min(low + 2 * width, count);
+                int i = low;
+                int j = mid;
+                int k = low;
+                while (i < mid && j < high) {
+                    scratch[k++] = compareRecords(buffer, order[i], buffer, order[j]) <= 0 ? order[i++] : order[j++];
+                }
+                while (i < mid) {
+                    scratch[k++] = order[i++];
+                }
+                while (j < high) {
+                    scratch[k++] = order[j++];
+                }
+            }
+            int[] swap = order;
+            order = scratch;
+            scratch = swap;
+        }
+        return order;
+    }
+
+    private static int compareRecords(byte[] a, int recordA, byte[] b, int recordB) {
+        int offsetA = recordA * RECORD_BYTES;
+        int offsetB = recordB * RECORD_BYTES;
+        return Arrays.compareUnsigned(a, offsetA, offsetA + RECORD_BYTES, b, offsetB, offsetB + RECORD_BYTES);
+    }
+
+    // k-way merge of the sorted runs into the final index file
+    private static void mergeRuns(List<Path> runs, Path file, int atoms, long total) throws IOException {
+        int n = runs.size();
+        DataInputStream[] inputs = new DataInputStream[n];
+        byte[][] heads = new byte[n][RECORD_BYTES];
+        int[] heap = new int[n];
+        int heapSize = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(atoms);
+            out.writeInt(RECORD_BYTES);
+            out.writeLong(total);
+
+            for (int i = 0; i < n; i++) {
+                InputStream in = new BufferedInputStream(Files.newInputStream(runs.get(i)), 1 << 16);
+                inputs[i] = new DataInputStream(in);
+                if (readRecord(inputs[i], heads[i])) {
+                    heap[heapSize] = i;
+                    siftUp(heap, heapSize++, heads);
+                }
+            }
+            long written = 0;
+            while (heapSize > 0) {
+                int run = heap[0];
+                out.write(heads[run]);
+                written++;
+                if (!readRecord(inputs[run], heads[run])) {
+                    heap[0] = heap[--heapSize];
+                }
+                siftDown(heap, heapSize, heads);
+            }
+            if (written != total) {
+                throw new IOException("Merged " + written + " records, expected " + total + ".");
+            }
+        } finally {
+            for (DataInputStream in : inputs) {
+                if (in != null) {
+                    in.close();
+                }
+            }
+        }
+    }
+
+    private static boolean readRecord(DataInputStream in, byte[] record) throws IOException {
+        try {
+            in.readFully(record);
+            return true;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    private static void siftUp(int[] heap, int i, byte[][] heads) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (compareRecords(heads[heap[i]], 0, heads[heap[parent]], 0) >= 0) {
+                return;
+            }
+            int swap = heap[i];
+            heap[i] = heap[parent];
+            heap[parent] = swap;
+            i = parent;
+        }
+    }
+
+    private static void siftDown(int[] heap, int size, byte[][] heads) {
+        int i = 0;
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && compareRecords(heads[heap[left]], 0, heads[heap[smallest]], 0) < 0) {
+                smallest = left;
+            }
+            if (right < size && compareRecords(heads[heap[right]], 0, heads[heap[smallest]], 0) < 0) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            int swap = heap[i];
+            heap[i] = heap[smallest];
+            heap[smallest] = swap;
+            i = smallest;
+        }
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+}
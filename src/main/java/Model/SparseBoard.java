@@ -0,0 +1,386 @@
+package Model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hex board of any radius that only stores its atoms, for research boards far bigger than the
+ * 61 cells of {@link BlackBoxBoard}.
+ *
+ * <p>The atoms are kept in an open-addressing hash of packed axial coordinates (x in the high
+ * half of a long, y in the low half), with linear probing and at most half the slots in use, so
+ * memory grows with the number of atoms and not with the area of the board. Nothing else is
+ * stored per cell: a cell has a CI point when one of the six cells around it, the same offsets
+ * {@link BlackBoxBoard#placeAtom} marks, holds an atom, and that is looked up when needed.</p>
+ *
+ * <p>Rays follow the same rules as {@link RayTracer}, each step looking up the three cells in
+ * front of the ray in the hash. Ray nodes are numbered the way {@link RayNode} numbers them,
+ * 1 at the top left corner going anticlockwise, {@code 2 * radius + 1} nodes per side, and are
+ * worked out from the node number instead of being stored. On a board of radius
+ * {@link BoardIndex#RADIUS} every node and every outcome is the same as on the normal board.</p>
+ */
+public final class SparseBoard {
+
+    /**
+     * Largest radius, so packed coordinates and node numbers stay in range.
+     */
+    public static final int MAX_RADIUS = 1 << 20;
+
+    // marks a free slot, no cell packs to it
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final int MIN_CAPACITY = 16;
+
+    // per side of the hexagon, in node order: the corner it starts at (times the radius), the
+    // direction to the next edge cell and the outward directions of the two nodes of each cell
+    private static final int[][] SIDES = {
+            {0, -1, 1, Direction.ZD.ordinal(), Direction.XU.ordinal(), Direction.YL.ordinal()},
+            {-1, 0, 1, Direction.XD.ordinal(), Direction.YL.ordinal(), Direction.ZD.ordinal()},
+            {-1, 1, 0, Direction.YR.ordinal(), Direction.ZD.ordinal(), Direction.XD.ordinal()},
+            {0, 1, -1, Direction.ZU.ordinal(), Direction.XD.ordinal(), Direction.YR.ordinal()},
+            {1, 0, -1, Direction.XU.ordinal(), Direction.YR.ordinal(), Direction.ZU.ordinal()},
+            {1, -1, 0, Direction.YL.ordinal(), Direction.ZU.ordinal(), Direction.XU.ordinal()}
+    };
+
+    private final int radius;
+    private long[] keys;
+    private int shift;
+    private int size;
+
+    /**
+     * Creates an empty board.
+     *
+     * @param radius the radius in cells, not counting the centre cell.
+     */
+    public SparseBoard(int radius) {
+        if (radius < 1 || radius > MAX_RADIUS) {
+            throw new IllegalArgumentException("Invalid board radius " + radius + ".");
+        }
+        this.radius = radius;
+        allocate(MIN_CAPACITY);
+    }
+
+    /**
+     * Copies the atoms of a normal board onto a sparse board of the same radius.
+     */
+    public static SparseBoard of(BlackBoxBoard board) {
+        SparseBoard sparse = new SparseBoard(BoardIndex.RADIUS);
+        for (BlackBoxBoard.Point3D point : BoardIndex.pointsOf(BoardIndex.maskOf(board))) {
+            sparse.placeAtom(point);
+        }
+        return sparse;
+    }
+
+    public int getRadius() {
+        return radius;
+    }
+
+    /**
+     * Gets the number of cells on the board.
+     */
+    public long getCellCount() {
+        return 3L * radius * (radius + 1) + 1;
+    }
+
+    /**
+     * Gets the number of ray nodes around the board.
+     */
+    public int getNodeCount() {
+        return 6 * (2 * radius + 1);
+    }
+
+    /**
+     * Gets the outcome code of a reflected ray, one past the last node. Absorbed rays give
+     * {@link RayOutcome#ABSORBED} and rays that come out give their exit node, as on the normal
+     * board.
+     */
+    public int getReflected() {
+        return getNodeCount() + 1;
+    }
+
+    /**
+     * Gets the outcome code of a ray that goes round in a loop, one past {@link #getReflected()}
+     * like {@link RayOutcome#LOOPED} on the normal board.
+     */
+    public int getLooped() {
+        return getNodeCount() + 2;
+    }
+
+    public int getAtomCount() {
+        return size;
+    }
+
+    /**
+     * Checks if cube coordinates are on the board.
+     */
+    public boolean isValidCoordinate(int x, int y, int z) {
+        return x + y + z == 0 && Math.abs(x) <= radius && Math.abs(y) <= radius && Math.abs(z) <= radius;
+    }
+
+    /**
+     * Places an atom, doing nothing if the cell already has one.
+     *
+     * @throws IllegalArgumentException if the point is not on the board.
+     */
+    public void placeAtom(BlackBoxBoard.Point3D point) {
+        placeAtom(point.x, point.y, point.z);
+    }
+
+    /**
+     * Places an atom, doing nothing if the cell already has one.
+     *
+     * @throws IllegalArgumentException if the coordinates are not on the board.
+     */
+    public void placeAtom(int x, int y, int z) {
+        checkCoordinate(x, y, z);
+        long key = pack(x, y);
+        int slot = slot(key);
+        if (keys[slot] == key) {
+            return;
+        }
+        if (2 * (size + 1) > keys.length) {
+            grow();
+            slot = slot(key);
+        }
+        keys[slot] = key;
+        size++;
+    }
+
+    /**
+     * Removes an atom, doing nothing if the cell has none.
+     *
+     * @throws IllegalArgumentException if the coordinates are not on the board.
+     */
+    public void removeAtom(int x, int y, int z) {
+        checkCoordinate(x, y, z);
+        int mask = keys.length - 1;
+        int hole = slot(pack(x, y));
+        if (keys[hole] == EMPTY) {
+            return;
+        }
+        // shift later keys of the same probe run back into the hole so lookups still find them
+        for (int j = (hole + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+            int home = home(keys[j]);
+            boolean between = hole <= j ? hole < home && home <= j : hole < home || home <= j;
+            if (!between) {
+                keys[hole] = keys[j];
+                hole = j;
+            }
+        }
+        keys[hole] = EMPTY;
+        size--;
+    }
+
+    /**
+     * Checks if a cell holds an atom. Coordinates off the board never do.
+     */
+    public boolean hasAtom(int x, int y, int z) {
+        return isValidCoordinate(x, y, z) && keys[slot(pack(x, y))] != EMPTY;
+    }
+
+    /**
+     * Checks if a cell has a CI point, i.e. an atom in one of the six cells around it.
+     */
+    public boolean hasCIPoint(int x, int y, int z) {
+        for (int[] step : BoardIndex.STEP) {
+            if (hasAtom(x + step[0], y + step[1], z + step[2])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Lists the atoms, in no particular order.
+     */
+    public List<BlackBoxBoard.Point3D> getAtoms() {
+        List<BlackBoxBoard.Point3D> atoms = new ArrayList<>(size);
+        for (long key : keys) {
+            if (key != EMPTY) {
+                int x = (int) (key >> 32);
+                int y = (int) key;
+                atoms.add(new BlackBoxBoard.Point3D(x, y, -x - y));
+            }
+        }
+        return atoms;
+    }
+
+    /**
+     * Gets the edge cell of a node.
+     *
+     * @param node the node number, 1 to {@link #getNodeCount()}.
+     */
+    public BlackBoxBoard.Point3D getNodeCoordinates(int node) {
+        checkNode(node);
+        int perSide = 2 * radius + 1;
+        int[] side = SIDES[(node - 1) / perSide];
+        int i = (node - 1) % perSide / 2;
+        int[] step = BoardIndex.STEP[side[3]];
+        return new BlackBoxBoard.Point3D(side[0] * radius + i * step[0], side[1] * radius + i * step[1],
+                side[2] * radius + i * step[2]);
+    }
+
+    /**
+     * Gets the direction of a node, pointing out of the board as in {@link RayNode}. Rays fired
+     * from the node travel the other way.
+     *
+     * @param node the node number, 1 to {@link #getNodeCount()}.
+     */
+    public Direction getNodeDirection(int node) {
+        checkNode(node);
+        int perSide = 2 * radius + 1;
+        int[] side = SIDES[(node - 1) / perSide];
+        return Direction.values()[(node - 1) % perSide % 2 == 0 ? side[4] : side[5]];
+    }
+
+    /**
+     * Gets the node a ray leaves through when it is in an edge cell heading off the board.
+     *
+     * @param dir the direction ordinal, pointing out of the board.
+     * @return the node number, or 0 if the step stays on the board.
+     */
+    public int getNodeNumber(int x, int y, int z, int dir) {
+        int[] step = BoardIndex.STEP[dir];
+        if (!isValidCoordinate(x, y, z) || isValidCoordinate(x + step[0], y + step[1], z + step[2])) {
+            return 0;
+        }
+        int perSide = 2 * radius + 1;
+        for (int s = 0; s < SIDES.length; s++) {
+            int[] side = SIDES[s];
+            if (side[4] != dir && side[5] != dir) {
+                continue;
+            }
+            // position along the side, from the coordinate that changes along it
+            int[] along = BoardIndex.STEP[side[3]];
+            int i = along[0] != 0 ? (x - side[0] * radius) * along[0]
+                    : (y - side[1] * radius) * along[1];
+            if (i < 0 || i > radius || x != side[0] * radius + i * along[0] || y != side[1] * radius + i * along[1]) {
+                continue;
+            }
+            if (side[4] == dir) {
+                return s * perSide + 2 * i + 1;
+            }
+            if (i < radius) {
+                return s * perSide + 2 * i + 2;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Traces a ray fired from a node.
+     *
+     * @param node the entry node number, 1 to {@link #getNodeCount()}.
+     * @return {@link RayOutcome#ABSORBED}, the exit node, {@link #getReflected()}, or
+     * {@link #getLooped()} if the ray takes more steps than there are states, once before and
+     * once after it is reversed, which means it repeated one.
+     */
+    public int trace(int node) {
+        BlackBoxBoard.Point3D entry = getNodeCoordinates(node);
+        int x = entry.x;
+        int y = entry.y;
+        int z = entry.z;
+
+        // ray entering straight into an atom on the edge, or reflected by an atom next to it along the edge
+        if (hasAtom(x, y, z)) {
+            return RayOutcome.ABSORBED;
+        }
+        for (int[] step : BoardIndex.STEP) {
+            int nx = x + step[0];
+            int ny = y + step[1];
+            int nz = z + step[2];
+            if (isEdge(nx, ny, nz) && hasAtom(nx, ny, nz)) {
+                return getReflected();
+            }
+        }
+
+        int dir = RayNode.getRevDir(getNodeDirection(node)).ordinal();
+        boolean reversed = false;
+        for (long steps = 2L * BoardIndex.DIRECTIONS * getCellCount(); steps > 0; steps--) {
+            int combo = 0;
+            for (int k = 0; k < 3; k++) {
+                int[] o = HexTopology.FRONT_OFFSETS[dir][k];
+                if (hasAtom(x + o[0], y + o[1], z + o[2])) {
+                    combo |= 1 << k;
+                }
+            }
+            if (combo != 0) {
+                int turn = RayTracer.turn(dir, combo);
+                if (turn < 0) {
+                    return reversed ? getReflected() : RayOutcome.ABSORBED;
+                }
+                if ((combo & 3) == 3) {
+                    reversed = true;
+                }
+                dir = turn;
+            }
+
+            int[] step = BoardIndex.STEP[dir];
+            if (!isValidCoordinate(x + step[0], y + step[1], z + step[2])) {
+                return reversed ? getReflected() : getNodeNumber(x, y, z, dir);
+            }
+            x += step[0];
+            y += step[1];
+            z += step[2];
+        }
+        return getLooped();
+    }
+
+    /**
+     * Gets the number of slots in the hash, for checking that memory follows the atom count.
+     */
+    int getCapacity() {
+        return keys.length;
+    }
+
+    private boolean isEdge(int x, int y, int z) {
+        return isValidCoordinate(x, y, z) && Math.max(Math.abs(x), Math.max(Math.abs(y), Math.abs(z))) == radius;
+    }
+
+    private void checkCoordinate(int x, int y, int z) {
+        if (!isValidCoordinate(x, y, z)) {
+            throw new IllegalArgumentException("(" + x + ", " + y + ", " + z + ") is not on a board of radius " + radius + ".");
+        }
+    }
+
+    private void checkNode(int node) {
+        if (node < 1 || node > getNodeCount()) {
+            throw new IllegalArgumentException("Invalid node " + node + " on a board of radius " + radius + ".");
+        }
+    }
+
+    private static long pack(int x, int y) {
+        return (long) x << 32 | (y & 0xFFFFFFFFL);
+    }
+
+    // preferred slot of a key
+    private int home(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    // slot holding the key, or the free slot where it would go
+    private int slot(long key) {
+        int mask = keys.length - 1;
+        int i = home(key);
+        while (keys[i] != EMPTY && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    private void grow() {
+        long[] old = keys;
+        allocate(old.length * 2);
+        for (long key : old) {
+            if (key != EMPTY) {
+                keys[slot(key)] = key;
+            }
+        }
+    }
+}
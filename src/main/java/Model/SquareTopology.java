@@ -0,0 +1,136 @@
+package Model;
+
+/**
+ * The classic square Black Box: an 8 by 8 grid with 32 nodes, rays moving along rows and
+ * columns.
+ *
+ * <p>Cell {@code row * 8 + column}, row 0 at the top. Directions are right, left, up and down.
+ * Nodes 1 to 8 are along the top from left to right, 9 to 16 down the right side, 17 to 24
+ * along the bottom from right to left and 25 to 32 up the left side. An atom straight ahead
+ * absorbs the ray, an atom diagonally ahead turns it away and atoms on both diagonals send it
+ * back. A ray fired next to an atom on the edge is reflected.</p>
+ */
+public final class SquareTopology implements Topology {
+
+    /**
+     * The 8 by 8 grid, see {@link GridTracer#SQUARE} for its tracer.
+     */
+    public static final SquareTopology INSTANCE = new SquareTopology();
+
+    public static final int SIZE = 8;
+
+    public static final int RIGHT = 0;
+    public static final int LEFT = 1;
+    public static final int UP = 2;
+    public static final int DOWN = 3;
+
+    private static final int[] ROW_STEP = {0, 0, -1, 1};
+    private static final int[] COLUMN_STEP = {1, -1, 0, 0};
+    // direction on the left and on the right of each direction
+    private static final int[] LEFT_OF = {UP, DOWN, LEFT, RIGHT};
+    private static final int[] RIGHT_OF = {DOWN, UP, RIGHT, LEFT};
+    private static final int[] REVERSE = {LEFT, RIGHT, DOWN, UP};
+    // side of the grid each node group leaves through, in node order
+    private static final int[] SIDES = {UP, RIGHT, DOWN, LEFT};
+
+    private SquareTopology() {
+    }
+
+    /**
+     * Gets the index of the cell at a row and column.
+     *
+     * @return the cell index, or -1 off the grid.
+     */
+    public static int cellOf(int row, int column) {
+        return row < 0 || row >= SIZE || column < 0 || column >= SIZE ? -1 : row * SIZE + column;
+    }
+
+    @Override
+    public int cellCount() {
+        return SIZE * SIZE;
+    }
+
+    @Override
+    public int directions() {
+        return 4;
+    }
+
+    @Override
+    public int nodeCount() {
+        return 4 * SIZE;
+    }
+
+    @Override
+    public int neighbour(int cell, int dir) {
+        return cellOf(cell / SIZE + ROW_STEP[dir], cell % SIZE + COLUMN_STEP[dir]);
+    }
+
+    @Override
+    public int frontCell(int cell, int dir, int k) {
+        int row = cell / SIZE + ROW_STEP[dir];
+        int column = cell % SIZE + COLUMN_STEP[dir];
+        if (k == 0) {
+            return cellOf(row + ROW_STEP[LEFT_OF[dir]], column + COLUMN_STEP[LEFT_OF[dir]]);
+        }
+        if (k == 1) {
+            return cellOf(row + ROW_STEP[RIGHT_OF[dir]], column + COLUMN_STEP[RIGHT_OF[dir]]);
+        }
+        return cellOf(row, column);
+    }
+
+    @Override
+    public int turn(int dir, int combo) {
+        if ((combo & 4) != 0) {
+            return -1;
+        }
+        if (combo == 3) {
+            return REVERSE[dir];
+        }
+        return combo == 1 ? RIGHT_OF[dir] : LEFT_OF[dir];
+    }
+
+    @Override
+    public int exitNode(int cell, int dir) {
+        if (neighbour(cell, dir) >= 0) {
+            return 0;
+        }
+        int row = cell / SIZE;
+        int column = cell % SIZE;
+        return switch (dir) {
+            case UP -> 1 + column;
+            case RIGHT -> SIZE + 1 + row;
+            case DOWN -> 3 * SIZE - column;
+            default -> 4 * SIZE - row;
+        };
+    }
+
+    @Override
+    public int entryCell(int node) {
+        int i = (node - 1) % SIZE;
+        return switch (SIDES[(node - 1) / SIZE]) {
+            case UP -> cellOf(0, i);
+            case RIGHT -> cellOf(i, SIZE - 1);
+            case DOWN -> cellOf(SIZE - 1, SIZE - 1 - i);
+            default -> cellOf(SIZE - 1 - i, 0);
+        };
+    }
+
+    @Override
+    public int entryDir(int node) {
+        return REVERSE[SIDES[(node - 1) / SIZE]];
+    }
+
+    @Override
+    public long nextToMask(int node) {
+        int cell = entryCell(node);
+        int dir = entryDir(node);
+        long mask = 0L;
+        for (int side : new int[]{LEFT_OF[dir], RIGHT_OF[dir]}) {
+            int beside = neighbour(cell, side);
+            if (beside >= 0) {
+                mask |= 1L << beside;
+            }
+        }
+        return mask;
+    }
+}
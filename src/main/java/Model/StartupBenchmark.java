@@ -0,0 +1,50 @@
+package Model;
+
+/**
+ * Measures the time to the first ray in a fresh JVM: loading the {@link RayNode} table, firing
+ * the first {@link Ray} and the first {@link RayTracer} trace, which builds the tracer tables.
+ * Each step only pays for the classes the steps before it did not load, so the numbers are only
+ * meaningful on the first run in a JVM. It then times node lookups once everything is loaded.
+ *
+ * <p>Usage: {@code StartupBenchmark [lookups=N]}, by default 10000000 lookups each way.</p>
+ */
+public final class StartupBenchmark {
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        long start = System.nanoTime();
+        int lookups = 10_000_000;
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            switch (kv[0]) {
+                case "lookups" -> lookups = Integer.parseInt(kv[1]);
+                default -> throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+
+        long t0 = System.nanoTime();
+        BlackBoxBoard.Point3D entry = RayNode.getNodeCoordinates(1);
+        long t1 = System.nanoTime();
+        Ray ray = new Ray(new BlackBoxBoard(), 1);
+        long t2 = System.nanoTime();
+        int outcome = RayTracer.trace(0L, 1);
+        long t3 = System.nanoTime();
+        System.out.printf("node table %.3f ms, first Ray %.3f ms, first trace %.3f ms, %.3f ms since main%n",
+                (t1 - t0) / 1e6, (t2 - t1) / 1e6, (t3 - t2) / 1e6, (t3 - start) / 1e6);
+        System.out.println("node 1 at " + entry + " exits " + RayOutcome.toString(RayOutcome.of(ray))
+                + ", traced " + RayOutcome.toString(outcome));
+
+        // lookups by node number and back, the sum keeps the loop from being optimised away
+        long sum = 0;
+        long t4 = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            int node = 1 + i % RayTracer.NODE_COUNT;
+            sum += RayNode.getNodeNumber(RayNode.getNodeCoordinates(node), RayNode.getNodeDirection(node));
+        }
+        double seconds = (System.nanoTime() - t4) / 1e9;
+        System.out.printf("%d round-trip lookups in %.3f s (%.1f M/s), checksum %d%n",
+                lookups, seconds, lookups / seconds / 1e6, sum);
+    }
+}
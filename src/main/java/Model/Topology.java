@@ -0,0 +1,78 @@
+package Model;
+
+/**
+ * Geometry of a Black Box grid: its cells, the directions a ray moves in, the cells a ray looks
+ * at before each step and the ray nodes around the edge.
+ *
+ * <p>A topology is only asked for its tables once, by {@link GridTracer}, which copies them into
+ * flat arrays. The tracer, the {@link ConstraintPropagator} and the {@link LayoutSolver} then
+ * work on those arrays, so the same code runs on any grid without calling back into the
+ * topology while tracing.</p>
+ *
+ * <p>Every grid follows the same rules. A ray in a cell looks at the three cells in front of it
+ * (two beside the next cell, bits 1 and 2 of the front combination, and the next cell itself,
+ * bit 4) and turns, reverses or is absorbed as {@link #turn} says. Seeing atoms in both cells
+ * beside the next cell reverses the ray, and a reversed ray is reported as
+ * {@link RayOutcome#REFLECTED}. A ray fired into an atom is absorbed, and a ray fired next to an
+ * atom in one of the {@link #nextToMask} cells is reflected before it moves.</p>
+ */
+public interface Topology {
+
+    /**
+     * Gets the number of cells, at most 64 so a layout fits into a long mask.
+     */
+    int cellCount();
+
+    /**
+     * Gets the number of directions a ray can move in.
+     */
+    int directions();
+
+    /**
+     * Gets the number of ray nodes, at most {@link RayTracer#NODE_COUNT} so outcomes keep their
+     * {@link RayOutcome} codes.
+     */
+    int nodeCount();
+
+    /**
+     * Gets the cell one step from a cell in a direction, -1 off the grid.
+     */
+    int neighbour(int cell, int dir);
+
+    /**
+     * Gets front cell k of a ray in a cell heading in a direction, -1 off the grid.
+     *
+     * @param k 0 and 1 for the cells beside the next cell, 2 for the next cell.
+     */
+    int frontCell(int cell, int dir, int k);
+
+    /**
+     * Gets the direction a ray turns to for the atoms in front of it.
+     *
+     * @param combo the front cells holding an atom, bit k for front cell k, never 0.
+     * @return the new direction, or -1 if the ray is absorbed.
+     */
+    int turn(int dir, int combo);
+
+    /**
+     * Gets the node a ray leaves through when it is in a cell heading in a direction.
+     *
+     * @return the node number, or 0 if the ray stays on the grid.
+     */
+    int exitNode(int cell, int dir);
+
+    /**
+     * Gets the cell a ray fired from a node enters.
+     */
+    int entryCell(int node);
+
+    /**
+     * Gets the direction a ray fired from a node moves in.
+     */
+    int entryDir(int node);
+
+    /**
+     * Gets the cells whose atoms reflect a ray fired from a node before it moves.
+     */
+    long nextToMask(int node);
+}
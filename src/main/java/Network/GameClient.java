@@ -0,0 +1,167 @@
+package Network;
+
+import Controller.ScoringEngine;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Blocking client for a {@link GameServer}, for one player on one connection.
+ * Calls the server rejects throw an {@link IllegalStateException} with the server's message.
+ */
+public class GameClient implements Closeable {
+
+    /**
+     * Most FIRE requests sent before reading their results, so neither side's buffers fill up.
+     */
+    public static final int PIPELINE_WINDOW = 4096;
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final SocketChannel channel;
+    private final ByteBuffer out = ByteBuffer.allocate(BUFFER_BYTES);
+    private final ByteBuffer in = ByteBuffer.allocate(BUFFER_BYTES).flip(); //kept in read mode
+
+    private GameClient(SocketChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Connects to a server.
+     *
+     * @param address the server's address.
+     */
+    public static GameClient connect(InetSocketAddress address) throws IOException {
+        SocketChannel channel = SocketChannel.open(address);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        return new GameClient(channel);
+    }
+
+    /**
+     * Starts a new game.
+     *
+     * @return the id to share with the other player.
+     */
+    public long newGame() throws IOException {
+        Protocol.writeNewGame(out);
+        flush();
+        expect(Protocol.SESSION);
+        return in.getLong();
+    }
+
+    /**
+     * Places the setter's atoms.
+     *
+     * @param id     the game id.
+     * @param layout the atom mask.
+     */
+    public void place(long id, long layout) throws IOException {
+        Protocol.writePlace(out, id, layout);
+        flush();
+        expect(Protocol.PLACED);
+        in.getLong();
+    }
+
+    /**
+     * Fires one ray and waits for the result.
+     *
+     * @param id   the game id.
+     * @param node the node to fire from.
+     * @return the {@link Model.RayOutcome} code.
+     */
+    public int fire(long id, int node) throws IOException {
+        return fire(id, new int[]{node})[0];
+    }
+
+    /**
+     * Fires several rays, sending the requests without waiting for each result.
+     *
+     * @param id    the game id.
+     * @param nodes the nodes to fire from, in order.
+     * @return the {@link Model.RayOutcome} code of each ray.
+     */
+    public int[] fire(long id, int[] nodes) throws IOException {
+        int[] outcomes = new int[nodes.length];
+        IllegalStateException rejected = null;
+        for (int start = 0; start < nodes.length; start += PIPELINE_WINDOW) {
+            int end = Math.min(nodes.length, start + PIPELINE_WINDOW);
+            for (int i = start; i < end; i++) {
+                if (out.remaining() < 16) {
+                    flush();
+                }
+                Protocol.writeFire(out, id, nodes[i]);
+            }
+            flush();
+            for (int i = start; i < end; i++) {
+                // keep reading after a rejected ray so the answers stay in step with the requests
+                try {
+                    expect(Protocol.RESULT);
+                } catch (IllegalStateException e) {
+                    rejected = rejected == null ? e : rejected;
+                    continue;
+                }
+                in.getLong();
+                in.get();
+                outcomes[i] = in.get() & 0xFF;
+            }
+        }
+        if (rejected != null) {
+            throw rejected;
+        }
+        return outcomes;
+    }
+
+    /**
+     * Sends the experimenter's guess, ending the game.
+     *
+     * @param id    the game id.
+     * @param guess the atom mask guessed.
+     * @return the final score.
+     */
+    public ScoringEngine.Score guess(long id, long guess) throws IOException {
+        Protocol.writeGuess(out, id, guess);
+        flush();
+        expect(Protocol.SCORE);
+        in.getLong();
+        return Protocol.readScore(in);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void flush() throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    // reads the next frame and leaves the input positioned after its type byte
+    private void expect(byte type) throws IOException {
+        while (Protocol.frameLength(in) < 0) {
+            in.compact();
+            int read = channel.read(in);
+            in.flip();
+            if (read < 0) {
+                throw new EOFException("Server closed the connection.");
+            }
+        }
+        in.getShort();
+        byte actual = in.get();
+        if (actual == Protocol.ERROR) {
+            in.getLong();
+            throw new IllegalStateException(Protocol.readError(in));
+        }
+        if (actual != type) {
+            throw new IOException("Expected frame type " + type + " but got " + actual + ".");
+        }
+    }
+}
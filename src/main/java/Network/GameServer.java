@@ -0,0 +1,362 @@
+package Network;
+
+import Controller.GameSession;
+import Controller.ScoringEngine;
+import Replay.GameEventLog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Non-blocking TCP server hosting {@link GameSession}s for remote setters and experimenters,
+ * speaking the {@link Protocol}.
+ *
+ * <p>Connections are spread over a few selector loops. A loop answers every complete request
+ * it has read in one go, and writes all the answers with one socket write, so pipelined
+ * FIRE requests come back as a batch of RESULT frames. Games are short calls on a mask, so they
+ * run right on the loop without handing off to another thread.</p>
+ *
+ * <p>A game belongs to the connection that asked for it with NEW_GAME: other connections may
+ * play it, but it is dropped when its connection closes, and one connection can only hold
+ * {@link #MAX_GAMES_PER_CONNECTION} unfinished games at a time. A request the server can not
+ * make sense of is answered with an ERROR frame, and anything else going wrong with a connection
+ * only closes that connection.</p>
+ */
+public class GameServer implements Closeable {
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+    // room kept free in a connection's output buffer for the largest answer
+    private static final int MAX_ANSWER_BYTES = 2 * 1024;
+    // output waiting for a slow client before the server stops reading its requests
+    private static final int MAX_PENDING_BYTES = 1024 * 1024;
+
+    /**
+     * Most unfinished games one connection may have started.
+     */
+    public static final int MAX_GAMES_PER_CONNECTION = 1024;
+
+    private final Map<Long, GameSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final ServerSocketChannel server;
+    private final Loop[] loops;
+    private final Thread acceptor;
+    private final GameEventLog eventLog;
+    private volatile boolean running = true;
+
+    /**
+     * Opens the server socket, call {@link #start()} to begin serving.
+     *
+     * @param address the address to listen on, port 0 picks a free port.
+     * @param threads the number of selector loops.
+     */
+    public GameServer(InetSocketAddress address, int threads) throws IOException {
+        this(address, threads, null);
+    }
+
+    /**
+     * Opens the server socket, call {@link #start()} to begin serving.
+     *
+     * @param address  the address to listen on, port 0 picks a free port.
+     * @param threads  the number of selector loops.
+     * @param eventLog the log every layout, ray and guess is written to, or null for none.
+     */
+    public GameServer(InetSocketAddress address, int threads, GameEventLog eventLog) throws IOException {
+        this.eventLog = eventLog;
+        this.server = ServerSocketChannel.open();
+        server.bind(address, 1024);
+        this.loops = new Loop[threads];
+        for (int i = 0; i < threads; i++) {
+            loops[i] = new Loop(i);
+        }
+        this.acceptor = new Thread(this::acceptLoop, "game-server-accept");
+    }
+
+    /**
+     * Starts accepting connections.
+     */
+    public void start() {
+        for (Loop loop : loops) {
+            loop.thread.start();
+        }
+        acceptor.start();
+    }
+
+    /**
+     * Gets the port the server listens on.
+     */
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) server.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Gets the number of games in progress.
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        server.close();
+        for (Loop loop : loops) {
+            loop.selector.wakeup();
+        }
+        try {
+            acceptor.join();
+            for (Loop loop : loops) {
+                loop.thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void acceptLoop() {
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel channel = server.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                loops[next++ % loops.length].add(channel);
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                System.out.println("Could not accept connection: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Answers one request frame.
+     *
+     * @param in         a buffer holding exactly one frame, so reads can not run into the next one.
+     * @param connection the connection the frame came from, which receives the answer.
+     */
+    private void handle(ByteBuffer in, Connection connection) {
+        ByteBuffer out = connection.out;
+        if (in.remaining() < Protocol.HEADER_BYTES) {
+            Protocol.writeError(out, 0, "Frame without a type.");
+            return;
+        }
+        in.getShort();
+        byte type = in.get();
+        long id = 0;
+        try {
+            switch (type) {
+                case Protocol.NEW_GAME -> {
+                    if (connection.games.size() >= MAX_GAMES_PER_CONNECTION) {
+                        // games finished since, possibly by another connection, no longer count
+                        connection.games.removeIf(game -> !sessions.containsKey(game));
+                    }
+                    if (connection.games.size() >= MAX_GAMES_PER_CONNECTION) {
+                        throw new IllegalStateException("This connection already has " + MAX_GAMES_PER_CONNECTION + " unfinished games.");
+                    }
+                    id = nextId.getAndIncrement();
+                    sessions.put(id, new GameSession(id));
+                    connection.games.add(id);
+                    Protocol.writeSession(out, id);
+                }
+                case Protocol.PLACE -> {
+                    id = in.getLong();
+                    long layout = in.getLong();
+                    GameSession session = session(id);
+                    synchronized (session) {
+                        session.placeSetterAtoms(layout);
+                        if (eventLog != null) {
+                            eventLog.logLayout(id, layout);
+                        }
+                    }
+                    Protocol.writePlaced(out, id);
+                }
+                case Protocol.FIRE -> {
+                    id = in.getLong();
+                    int node = in.get() & 0xFF;
+                    GameSession session = session(id);
+                    int outcome;
+                    synchronized (session) {
+                        outcome = session.fire(node);
+                        // logged under the session's lock so each game's events keep their order
+                        if (eventLog != null) {
+                            eventLog.logFire(id, node, outcome);
+                        }
+                    }
+                    Protocol.writeResult(out, id, node, outcome);
+                }
+                case Protocol.GUESS -> {
+                    id = in.getLong();
+                    long guess = in.getLong();
+                    GameSession session = session(id);
+                    ScoringEngine.Score score;
+                    synchronized (session) {
+                        score = session.guess(guess);
+                        if (eventLog != null) {
+                            eventLog.logGuess(id, guess, score);
+                        }
+                    }
+                    sessions.remove(id);
+                    Protocol.writeScore(out, id, score);
+                }
+                default -> Protocol.writeError(out, id, "Unknown frame type " + type + ".");
+            }
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            Protocol.writeError(out, id, e.getMessage());
+        } catch (BufferUnderflowException e) {
+            Protocol.writeError(out, id, "Frame of type " + type + " is too short.");
+        }
+    }
+
+    private GameSession session(long id) {
+        GameSession session = sessions.get(id);
+        if (session == null) {
+            throw new IllegalStateException("No game with id " + id + ".");
+        }
+        return session;
+    }
+
+    // buffers of one client connection, only touched by its loop
+    private static final class Connection {
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocate(BUFFER_BYTES);
+        ByteBuffer out = ByteBuffer.allocate(BUFFER_BYTES);
+        // games this connection started, dropped when it closes
+        final Set<Long> games = new HashSet<>();
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private final class Loop implements Runnable {
+        final Selector selector;
+        final Thread thread;
+        final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+
+        Loop(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "game-server-" + index);
+        }
+
+        void add(SocketChannel channel) {
+            pending.add(channel);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    SocketChannel channel;
+                    while ((channel = pending.poll()) != null) {
+                        channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+                    }
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        try {
+                            if (key.isValid() && key.isReadable()) {
+                                read(key);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                flush(key);
+                            }
+                        } catch (IOException e) {
+                            close(key);
+                        } catch (RuntimeException e) {
+                            // a bug or a bad client only costs its own connection, not the loop
+                            System.out.println("Closing connection after error: " + e);
+                            close(key);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                System.out.println("Game server loop stopped: " + e.getMessage());
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    close(key);
+                }
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        private void read(SelectionKey key) throws IOException {
+            Connection connection = (Connection) key.attachment();
+            ByteBuffer in = connection.in;
+            if (connection.channel.read(in) < 0) {
+                close(key);
+                return;
+            }
+            in.flip();
+            int length;
+            while ((length = Protocol.frameLength(in)) > 0) {
+                int end = in.position() + length;
+                if (connection.out.remaining() < MAX_ANSWER_BYTES) {
+                    ByteBuffer bigger = ByteBuffer.allocate(connection.out.capacity() * 2);
+                    connection.out.flip();
+                    connection.out = bigger.put(connection.out);
+                }
+                handle(in.slice(in.position(), length), connection);
+                in.position(end);
+            }
+            in.compact();
+            if (!in.hasRemaining()) {
+                // a request can never fill the buffer, the client is not speaking the protocol
+                close(key);
+                return;
+            }
+            flush(key);
+        }
+
+        private void flush(SelectionKey key) throws IOException {
+            Connection connection = (Connection) key.attachment();
+            ByteBuffer out = connection.out;
+            out.flip();
+            connection.channel.write(out);
+            out.compact();
+            if (out.position() == 0) {
+                key.interestOps(SelectionKey.OP_READ);
+            } else if (out.position() > MAX_PENDING_BYTES) {
+                key.interestOps(SelectionKey.OP_WRITE);
+            } else {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        }
+
+        private void close(SelectionKey key) {
+            if (key.attachment() instanceof Connection connection) {
+                for (long game : connection.games) {
+                    sessions.remove(game);
+                }
+                connection.games.clear();
+            }
+            key.cancel();
+            try {
+                key.channel().close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package Network;
+
+import Model.LayoutRank;
+import Model.RayTracer;
+import Replay.GameEventLog;
+import utils.LatencyHistogram;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plays many simulated games against a {@link GameServer} and reports latency and throughput.
+ *
+ * <p>Each bot is one connection on a virtual thread playing full games: new game, setter
+ * placement, a number of rays fired one at a time, and a guess. The load is ramped up in stages,
+ * doubling the bots each stage up to the maximum, and every stage reports p50/p99/p999 latency per
+ * operation and games and rays per second.</p>
+ *
+ * <p>Usage: {@code LoadGenerator [key=value ...]} with keys {@code host} and {@code port} (an
+ * in-process server is started when no port is given), {@code bots} (default 64), {@code seconds}
+ * per stage (default 5), {@code rays} per game (default 10), {@code atoms} (default 6) and
+ * {@code script}, a comma separated list of nodes fired in order instead of random nodes, and
+ * {@code log}, a directory the in-process server writes its {@link GameEventLog} to.</p>
+ */
+public class LoadGenerator {
+
+    /**
+     * Settings of a load run.
+     *
+     * @param maxBots       bots in the last stage.
+     * @param stageMillis   how long each stage runs.
+     * @param raysPerGame   rays fired per game.
+     * @param atoms         atoms placed per game.
+     * @param script        nodes fired in order, or null to fire random nodes.
+     */
+    public record Config(int maxBots, long stageMillis, int raysPerGame, int atoms, int[] script) {
+    }
+
+    /**
+     * Results of one stage.
+     */
+    public record StageReport(int bots, double seconds, long games, long rays, LatencyHistogram newGame,
+                              LatencyHistogram place, LatencyHistogram fire, LatencyHistogram guess) {
+
+        public double gamesPerSecond() {
+            return games / seconds;
+        }
+
+        public double raysPerSecond() {
+            return rays / seconds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("bots=%d games=%d (%.0f/s) rays=%d (%.0f/s)%n  new   %s%n  place %s%n  fire  %s%n  guess %s",
+                    bots, games, gamesPerSecond(), rays, raysPerSecond(), newGame.toMicrosString(),
+                    place.toMicrosString(), fire.toMicrosString(), guess.toMicrosString());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String host = InetAddress.getLoopbackAddress().getHostAddress();
+        int port = 0;
+        int bots = 64;
+        long seconds = 5;
+        int rays = 10;
+        int atoms = 6;
+        int[] script = null;
+        Path logDirectory = null;
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            switch (kv[0]) {
+                case "host" -> host = kv[1];
+                case "port" -> port = Integer.parseInt(kv[1]);
+                case "bots" -> bots = Integer.parseInt(kv[1]);
+                case "seconds" -> seconds = Long.parseLong(kv[1]);
+                case "rays" -> rays = Integer.parseInt(kv[1]);
+                case "atoms" -> atoms = Integer.parseInt(kv[1]);
+                case "script" -> script = Arrays.stream(kv[1].split(",")).mapToInt(Integer::parseInt).toArray();
+                case "log" -> logDirectory = Path.of(kv[1]);
+                default -> throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        Config config = new Config(bots, seconds * 1000, rays, atoms, script);
+
+        GameServer server = null;
+        GameEventLog eventLog = logDirectory != null && port == 0 ? new GameEventLog(logDirectory) : null;
+        if (port == 0) {
+            server = new GameServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                    Math.max(1, Runtime.getRuntime().availableProcessors() / 2), eventLog);
+            server.start();
+            port = server.getPort();
+            System.out.println("Started in-process server on port " + port);
+        }
+        try {
+            for (StageReport report : run(new InetSocketAddress(host, port), config)) {
+                System.out.println(report);
+            }
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+            if (eventLog != null) {
+                eventLog.close();
+                System.out.println(eventLog.getEventCount() + " events logged to " + logDirectory);
+            }
+        }
+    }
+
+    /**
+     * Runs every stage of a load test.
+     *
+     * @param address the server to play against.
+     * @param config  the settings.
+     * @return one report per stage.
+     */
+    public static List<StageReport> run(InetSocketAddress address, Config config) throws InterruptedException {
+        List<StageReport> reports = new ArrayList<>();
+        for (int bots = 1; ; bots = Math.min(bots * 2, config.maxBots())) {
+            reports.add(runStage(address, config, bots));
+            if (bots == config.maxBots()) {
+                return reports;
+            }
+        }
+    }
+
+    private static StageReport runStage(InetSocketAddress address, Config config, int bots) throws InterruptedException {
+        long deadline = System.nanoTime() + config.stageMillis() * 1_000_000;
+        List<Bot> players = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        AtomicLong failures = new AtomicLong();
+        long start = System.nanoTime();
+        for (int i = 0; i < bots; i++) {
+            Bot bot = new Bot(address, config, deadline, new SplittableRandom(bots * 1000L + i));
+            players.add(bot);
+            threads.add(Thread.ofVirtual().start(() -> {
+                try {
+                    bot.play();
+                } catch (IOException | RuntimeException e) {
+                    failures.incrementAndGet();
+                    System.out.println("Bot stopped: " + e);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        LatencyHistogram newGame = new LatencyHistogram();
+        LatencyHistogram place = new LatencyHistogram();
+        LatencyHistogram fire = new LatencyHistogram();
+        LatencyHistogram guess = new LatencyHistogram();
+        long games = 0;
+        long rays = 0;
+        for (Bot bot : players) {
+            games += bot.games;
+            rays += bot.rays;
+            newGame.add(bot.newGame);
+            place.add(bot.place);
+            fire.add(bot.fire);
+            guess.add(bot.guess);
+        }
+        if (failures.get() > 0) {
+            System.out.println(failures.get() + " of " + bots + " bots failed");
+        }
+        return new StageReport(bots, seconds, games, rays, newGame, place, fire, guess);
+    }
+
+    // one simulated player, its histograms are only touched by its own thread until it finishes
+    private static final class Bot {
+        final InetSocketAddress address;
+        final Config config;
+        final long deadline;
+        final SplittableRandom random;
+        final LatencyHistogram newGame = new LatencyHistogram();
+        final LatencyHistogram place = new LatencyHistogram();
+        final LatencyHistogram fire = new LatencyHistogram();
+        final LatencyHistogram guess = new LatencyHistogram();
+        long games;
+        long rays;
+
+        Bot(InetSocketAddress address, Config config, long deadline, SplittableRandom random) {
+            this.address = address;
+            this.config = config;
+            this.deadline = deadline;
+            this.random = random;
+        }
+
+        void play() throws IOException {
+            try (GameClient client = GameClient.connect(address)) {
+                while (System.nanoTime() < deadline) {
+                    long layout = LayoutRank.unrank(random.nextLong(LayoutRank.count(config.atoms())), config.atoms());
+
+                    long t = System.nanoTime();
+                    long id = client.newGame();
+                    newGame.record(System.nanoTime() - t);
+
+                    t = System.nanoTime();
+                    client.place(id, layout);
+                    place.record(System.nanoTime() - t);
+
+                    for (int r = 0; r < config.raysPerGame(); r++) {
+                        int node = config.script() != null
+                                ? config.script()[r % config.script().length]
+                                : 1 + random.nextInt(RayTracer.NODE_COUNT);
+                        t = System.nanoTime();
+                        client.fire(id, node);
+                        fire.record(System.nanoTime() - t);
+                    }
+                    rays += config.raysPerGame();
+
+                    t = System.nanoTime();
+                    client.guess(id, layout & random.nextLong());
+                    guess.record(System.nanoTime() - t);
+                    games++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package Network;
+
+import Controller.ScoringEngine;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary frames spoken between {@link GameClient} and {@link GameServer}.
+ *
+ * <p>Every frame is a big-endian unsigned short with the number of bytes that follow, a type
+ * byte and the payload. Requests carry the session id, so the setter and the experimenter can
+ * play the same game over different connections. The server answers every request with
+ * exactly one frame, in the order the requests arrived, so a client may send many requests
+ * before reading the answers.</p>
+ *
+ * <pre>
+ * NEW_GAME  -                                      SESSION  id:long
+ * PLACE     id:long layout:long                    PLACED   id:long
+ * FIRE      id:long node:byte                      RESULT   id:long node:byte outcome:byte
+ * GUESS     id:long guess:long                     SCORE    id:long score:short correct:byte rays:short markers:short
+ *                                                  ERROR    id:long message:short-length UTF-8
+ * </pre>
+ */
+public final class Protocol {
+
+    public static final byte NEW_GAME = 0x01;
+    public static final byte PLACE = 0x02;
+    public static final byte FIRE = 0x03;
+    public static final byte GUESS = 0x04;
+
+    public static final byte SESSION = (byte) 0x81;
+    public static final byte PLACED = (byte) 0x82;
+    public static final byte RESULT = (byte) 0x83;
+    public static final byte SCORE = (byte) 0x84;
+    public static final byte ERROR = (byte) 0xFF;
+
+    /**
+     * Bytes before the payload: the length and the type.
+     */
+    public static final int HEADER_BYTES = 3;
+
+    /**
+     * Largest frame, including the header.
+     */
+    public static final int MAX_FRAME_BYTES = 2 + 0xFFFF;
+
+    /**
+     * Longest error message sent, in UTF-8 bytes.
+     */
+    public static final int MAX_ERROR_BYTES = 1024;
+
+    private Protocol() {
+    }
+
+    /**
+     * Gets the size of the frame starting at the buffer's position.
+     *
+     * @param buffer a buffer in read mode.
+     * @return the frame size including the header, or -1 if the whole frame has not arrived yet.
+     */
+    public static int frameLength(ByteBuffer buffer) {
+        if (buffer.remaining() < 2) {
+            return -1;
+        }
+        int length = 2 + (buffer.getShort(buffer.position()) & 0xFFFF);
+        return buffer.remaining() >= length ? length : -1;
+    }
+
+    public static void writeNewGame(ByteBuffer out) {
+        out.putShort((short) 1).put(NEW_GAME);
+    }
+
+    public static void writePlace(ByteBuffer out, long id, long layout) {
+        out.putShort((short) 17).put(PLACE).putLong(id).putLong(layout);
+    }
+
+    public static void writeFire(ByteBuffer out, long id, int node) {
+        out.putShort((short) 10).put(FIRE).putLong(id).put((byte) node);
+    }
+
+    public static void writeGuess(ByteBuffer out, long id, long guess) {
+        out.putShort((short) 17).put(GUESS).putLong(id).putLong(guess);
+    }
+
+    public static void writeSession(ByteBuffer out, long id) {
+        out.putShort((short) 9).put(SESSION).putLong(id);
+    }
+
+    public static void writePlaced(ByteBuffer out, long id) {
+        out.putShort((short) 9).put(PLACED).putLong(id);
+    }
+
+    public static void writeResult(ByteBuffer out, long id, int node, int outcome) {
+        out.putShort((short) 11).put(RESULT).putLong(id).put((byte) node).put((byte) outcome);
+    }
+
+    public static void writeScore(ByteBuffer out, long id, ScoringEngine.Score score) {
+        out.putShort((short) 16).put(SCORE).putLong(id).putShort((short) score.score()).put((byte) score.correctAtoms())
+                .putShort((short) score.rayCount()).putShort((short) score.rayMarkers());
+    }
+
+    /**
+     * Writes an error frame, cutting the message to {@link #MAX_ERROR_BYTES} at a character boundary.
+     */
+    public static void writeError(ByteBuffer out, long id, String message) {
+        ByteBuffer text = ByteBuffer.allocate(MAX_ERROR_BYTES);
+        // the encoder stops before a character that does not fit, so no character is split
+        StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                .encode(CharBuffer.wrap(message), text, true);
+        text.flip();
+        int length = text.remaining();
+        out.putShort((short) (11 + length)).put(ERROR).putLong(id).putShort((short) length).put(text);
+    }
+
+    /**
+     * Reads a score frame's payload.
+     *
+     * @param in a buffer positioned after the SCORE frame's id.
+     */
+    public static ScoringEngine.Score readScore(ByteBuffer in) {
+        int score = in.getShort() & 0xFFFF;
+        int correct = in.get() & 0xFF;
+        int rays = in.getShort() & 0xFFFF;
+        int markers = in.getShort() & 0xFFFF;
+        return new ScoringEngine.Score(score, correct, rays, markers);
+    }
+
+    /**
+     * Reads an error frame's message.
+     *
+     * @param in a buffer positioned after the ERROR frame's id.
+     */
+    public static String readError(ByteBuffer in) {
+        byte[] text = new byte[in.getShort() & 0xFFFF];
+        in.get(text);
+        return new String(text, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,66 @@
+package Replay;
+
+import Controller.ScoringEngine;
+
+/**
+ * One step of a game as written to the {@link GameEventLog}.
+ */
+public sealed interface GameEvent {
+
+    byte LAYOUT = 1;
+    byte FIRE = 2;
+    byte GUESS = 3;
+
+    /**
+     * Gets the game the event belongs to.
+     */
+    long session();
+
+    /**
+     * Gets when the event happened, in milliseconds since the epoch.
+     */
+    long time();
+
+    /**
+     * Gets the type byte written to the log.
+     */
+    byte type();
+
+    /**
+     * The setter placed the atoms.
+     *
+     * @param layout the atom mask (see {@link Model.BoardIndex}).
+     */
+    record Layout(long session, long time, long layout) implements GameEvent {
+        @Override
+        public byte type() {
+            return LAYOUT;
+        }
+    }
+
+    /**
+     * The experimenter fired a ray.
+     *
+     * @param node    the node fired from.
+     * @param outcome the {@link Model.RayOutcome} the experimenter saw.
+     */
+    record Fire(long session, long time, int node, int outcome) implements GameEvent {
+        @Override
+        public byte type() {
+            return FIRE;
+        }
+    }
+
+    /**
+     * The experimenter guessed and the game was scored.
+     *
+     * @param guess the atom mask guessed.
+     * @param score the final score.
+     */
+    record Guess(long session, long time, long guess, ScoringEngine.Score score) implements GameEvent {
+        @Override
+        public byte type() {
+            return GUESS;
+        }
+    }
+}
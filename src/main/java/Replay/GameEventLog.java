@@ -0,0 +1,392 @@
+package Replay;
+
+import Controller.ScoringEngine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Append-only binary log of every game event, so any game can be replayed and checked later.
+ *
+ * <p>The log is a directory of numbered segment files. Each segment starts with a magic number
+ * and version, followed by records of an int length, the event type, the session id, the time
+ * and the event's fields. Game threads only copy the record into a memory buffer under a short
+ * lock. A background writer swaps the buffer for a spare one and writes it to the segment. It then
+ * forces the segment to disk once per batch, so one fsync covers every event of the last
+ * few milliseconds. A game thread only waits if both buffers are full.</p>
+ */
+public class GameEventLog implements Closeable {
+
+    public static final int MAGIC = 0x42424556;
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 8;
+
+    public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+    public static final int DEFAULT_BUFFER_BYTES = 1024 * 1024;
+    public static final long DEFAULT_SYNC_MILLIS = 20;
+
+    // length, type, session and time come before each event's own fields
+    static final int RECORD_HEADER_BYTES = 4 + 1 + 8 + 8;
+    static final int LAYOUT_BYTES = RECORD_HEADER_BYTES + 8;
+    static final int FIRE_BYTES = RECORD_HEADER_BYTES + 2;
+    static final int GUESS_BYTES = RECORD_HEADER_BYTES + 8 + 7;
+
+    private static final String SEGMENT_PREFIX = "events-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final long syncMillis;
+    private final Thread writer;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // producers wait here for the spare buffer, the writer for a batch and sync for the disk
+    private final Condition spaceFree = lock.newCondition();
+    private final Condition batchReady = lock.newCondition();
+    private final Condition written = lock.newCondition();
+    private ByteBuffer active;
+    private ByteBuffer spare;
+    private long appended;
+    private long durable;
+    private boolean closed;
+    private IOException failure;
+
+    // only touched by the writer thread
+    private FileChannel channel;
+    private int segmentIndex;
+
+    /**
+     * Opens a log with the default sizes, adding a new segment after any already in the directory.
+     *
+     * @param directory the log directory, created if missing.
+     */
+    public GameEventLog(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_BYTES, DEFAULT_BUFFER_BYTES, DEFAULT_SYNC_MILLIS);
+    }
+
+    /**
+     * Opens a log, adding a new segment after any already in the directory.
+     *
+     * @param directory    the log directory, created if missing.
+     * @param segmentBytes size after which the writer starts a new segment.
+     * @param bufferBytes  size of each of the two memory buffers.
+     * @param syncMillis   longest time an event waits before it is written and forced.
+     * @throws IllegalArgumentException if a buffer can not hold the largest record or a segment
+     *                                  has no room after its header.
+     */
+    public GameEventLog(Path directory, long segmentBytes, int bufferBytes, long syncMillis) throws IOException {
+        if (bufferBytes < GUESS_BYTES) {
+            throw new IllegalArgumentException("Buffers of " + bufferBytes + " bytes can not hold a "
+                    + GUESS_BYTES + " byte record.");
+        }
+        if (segmentBytes <= HEADER_BYTES) {
+            throw new IllegalArgumentException("Segments of " + segmentBytes + " bytes have no room after the "
+                    + HEADER_BYTES + " byte header.");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.segmentBytes = segmentBytes;
+        this.syncMillis = syncMillis;
+        this.active = ByteBuffer.allocateDirect(bufferBytes);
+        this.spare = ByteBuffer.allocateDirect(bufferBytes);
+        List<Path> existing = segments(directory);
+        this.segmentIndex = existing.isEmpty() ? 0 : segmentNumber(existing.get(existing.size() - 1)) + 1;
+        openSegment();
+        this.writer = new Thread(this::writeLoop, "game-event-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Logs the setter's atoms.
+     */
+    public void logLayout(long session, long layout) {
+        lock.lock();
+        try {
+            reserve(LAYOUT_BYTES).putInt(LAYOUT_BYTES - 4).put(GameEvent.LAYOUT).putLong(session)
+                    .putLong(System.currentTimeMillis()).putLong(layout);
+            appended++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Logs a fired ray and what the experimenter saw.
+     */
+    public void logFire(long session, int node, int outcome) {
+        lock.lock();
+        try {
+            reserve(FIRE_BYTES).putInt(FIRE_BYTES - 4).put(GameEvent.FIRE).putLong(session)
+                    .putLong(System.currentTimeMillis()).put((byte) node).put((byte) outcome);
+            appended++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Logs the experimenter's guess and the final score.
+     */
+    public void logGuess(long session, long guess, ScoringEngine.Score score) {
+        lock.lock();
+        try {
+            reserve(GUESS_BYTES).putInt(GUESS_BYTES - 4).put(GameEvent.GUESS).putLong(session)
+                    .putLong(System.currentTimeMillis()).putLong(guess).putShort((short) score.score())
+                    .put((byte) score.correctAtoms()).putShort((short) score.rayCount()).putShort((short) score.rayMarkers());
+            appended++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Logs an event read from another log, keeping its time.
+     */
+    public void log(GameEvent event) {
+        lock.lock();
+        try {
+            switch (event) {
+                case GameEvent.Layout e -> reserve(LAYOUT_BYTES).putInt(LAYOUT_BYTES - 4).put(GameEvent.LAYOUT)
+                        .putLong(e.session()).putLong(e.time()).putLong(e.layout());
+                case GameEvent.Fire e -> reserve(FIRE_BYTES).putInt(FIRE_BYTES - 4).put(GameEvent.FIRE)
+                        .putLong(e.session()).putLong(e.time()).put((byte) e.node()).put((byte) e.outcome());
+                case GameEvent.Guess e -> reserve(GUESS_BYTES).putInt(GUESS_BYTES - 4).put(GameEvent.GUESS)
+                        .putLong(e.session()).putLong(e.time()).putLong(e.guess()).putShort((short) e.score().score())
+                        .put((byte) e.score().correctAtoms()).putShort((short) e.score().rayCount())
+                        .putShort((short) e.score().rayMarkers());
+            }
+            appended++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until every event logged so far is written and forced to disk.
+     */
+    public void sync() throws IOException {
+        lock.lock();
+        try {
+            long target = appended;
+            batchReady.signal();
+            while (durable < target) {
+                if (failure != null) {
+                    throw failure;
+                }
+                written.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the event log.", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of events logged so far.
+     */
+    public long getEventCount() {
+        lock.lock();
+        try {
+            return appended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the remaining events and closes the log.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            batchReady.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // gets the active buffer with room for a record, waiting for the writer if both buffers are full
+    private ByteBuffer reserve(int bytes) {
+        if (closed) {
+            throw new IllegalStateException("The event log is closed.");
+        }
+        while (active.remaining() < bytes) {
+            if (failure != null) {
+                throw new UncheckedIOException(failure);
+            }
+            batchReady.signal();
+            spaceFree.awaitUninterruptibly();
+        }
+        // wake the writer early once the buffer is half full, so it rarely runs out
+        int half = active.capacity() / 2;
+        if (active.position() < half && active.position() + bytes >= half) {
+            batchReady.signal();
+        }
+        return active;
+    }
+
+    private void writeLoop() {
+        while (true) {
+            ByteBuffer batch;
+            long batchEnd;
+            lock.lock();
+            try {
+                if (active.position() == 0) {
+                    if (closed) {
+                        return;
+                    }
+                    batchReady.await(syncMillis, TimeUnit.MILLISECONDS);
+                    if (active.position() == 0) {
+                        continue;
+                    }
+                }
+                batch = active;
+                active = spare;
+                spare = null;
+                batchEnd = appended;
+                spaceFree.signalAll();
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                batch.flip();
+                if (channel.position() >= segmentBytes) {
+                    channel.close();
+                    segmentIndex++;
+                    openSegment();
+                }
+                while (batch.hasRemaining()) {
+                    channel.write(batch);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                lock.lock();
+                try {
+                    failure = e;
+                    spaceFree.signalAll();
+                    written.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+
+            batch.clear();
+            lock.lock();
+            try {
+                spare = batch;
+                durable = batchEnd;
+                written.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void openSegment() throws IOException {
+        Path path = directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, segmentIndex, SEGMENT_SUFFIX));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+    }
+
+    /**
+     * Gets the segment files of a log, oldest first.
+     *
+     * @param directory the log directory.
+     */
+    public static List<Path> segments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }).sorted().toList();
+        }
+    }
+
+    private static int segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Reads every event of a log in the order it was written. A record cut short at the end of
+     * a segment, as left by a crash during a write, ends that segment.
+     *
+     * @param directory the log directory.
+     * @param consumer  receives each event.
+     */
+    public static void read(Path directory, Consumer<GameEvent> consumer) throws IOException {
+        for (Path segment : segments(directory)) {
+            try (FileChannel file = FileChannel.open(segment, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+                if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                    throw new IOException(segment + " is not a game event log.");
+                }
+                while (buffer.remaining() >= 4) {
+                    int length = buffer.getInt(buffer.position());
+                    if (length < RECORD_HEADER_BYTES - 4 || buffer.remaining() < 4 + length) {
+                        break;
+                    }
+                    int end = buffer.position() + 4 + length;
+                    consumer.accept(decode(buffer.position(buffer.position() + 4)));
+                    buffer.position(end);
+                }
+            }
+        }
+    }
+
+    // reads one record, the buffer is positioned at its type byte
+    private static GameEvent decode(ByteBuffer in) throws IOException {
+        byte type = in.get();
+        long session = in.getLong();
+        long time = in.getLong();
+        return switch (type) {
+            case GameEvent.LAYOUT -> new GameEvent.Layout(session, time, in.getLong());
+            case GameEvent.FIRE -> new GameEvent.Fire(session, time, in.get() & 0xFF, in.get() & 0xFF);
+            case GameEvent.GUESS -> {
+                long guess = in.getLong();
+                int score = in.getShort() & 0xFFFF;
+                int correct = in.get() & 0xFF;
+                int rays = in.getShort() & 0xFFFF;
+                int markers = in.getShort() & 0xFFFF;
+                yield new GameEvent.Guess(session, time, guess, new ScoringEngine.Score(score, correct, rays, markers));
+            }
+            default -> throw new IOException("Unknown event type " + type + ".");
+        };
+    }
+}
@@ -0,0 +1,467 @@
+package Replay;
+
+import Controller.ScoreEstimator;
+import Model.BoardIndex;
+import Model.RayOutcome;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Statistics over archived {@link GameEventLog}s: how often the ray from each node is absorbed,
+ * reflected or passes through, rays per game, and the score distribution for each atom count.
+ *
+ * <p>Every segment is memory mapped and cut into chunks of about {@link #CHUNK_BYTES} at record
+ * boundaries, found by walking the record lengths. The chunks are counted in parallel on a
+ * fork/join pool and the partial {@link Summary}s are merged as the tasks join. Records are read
+ * with absolute gets straight from the mapping, so no event objects are made. A guess record
+ * carries everything needed for the score tables (the setter's atom count follows from the score,
+ * the correct atoms and the markers), so a chunk never needs a layout from another chunk.</p>
+ *
+ * <p>Usage: {@code LogAnalytics log=<directory> [format=csv|ndjson] [out=<directory>]} writes
+ * {@code nodes.csv} and {@code scores.csv}, or {@code analytics.ndjson}, to {@code out}
+ * (default the working directory).</p>
+ */
+public final class LogAnalytics {
+
+    /**
+     * Bytes of records counted by one task.
+     */
+    public static final int CHUNK_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * Scores at or above this are counted in the last bucket of the score distribution.
+     */
+    public static final int MAX_SCORE = 255;
+
+    private static final int NODES = 54;
+
+    // offsets of the fields after a record's length, type, session and time
+    private static final int FIELDS = GameEventLog.RECORD_HEADER_BYTES;
+
+    private LogAnalytics() {
+    }
+
+    /**
+     * Totals over a range of events. Partial summaries of different chunks are merged into one.
+     */
+    public static final class Summary {
+        private final long[] fired = new long[NODES + 1];
+        private final long[] absorbed = new long[NODES + 1];
+        private final long[] reflected = new long[NODES + 1];
+        private final long[] exited = new long[NODES + 1];
+        // indexed by the setter's atom count, a row is made when its first game is counted
+        private final long[][] scores = new long[BoardIndex.CELL_COUNT + 1][];
+        private final long[] gamesByAtoms = new long[BoardIndex.CELL_COUNT + 1];
+        private final long[] scoreTotals = new long[BoardIndex.CELL_COUNT + 1];
+        private final long[] rayTotals = new long[BoardIndex.CELL_COUNT + 1];
+        private long events;
+        private long layouts;
+        private long bytes;
+
+        private void merge(Summary other) {
+            for (int node = 1; node <= NODES; node++) {
+                fired[node] += other.fired[node];
+                absorbed[node] += other.absorbed[node];
+                reflected[node] += other.reflected[node];
+                exited[node] += other.exited[node];
+            }
+            for (int atoms = 0; atoms <= BoardIndex.CELL_COUNT; atoms++) {
+                if (other.scores[atoms] == null) {
+                    continue;
+                }
+                long[] row = scoreRow(atoms);
+                for (int score = 0; score <= MAX_SCORE; score++) {
+                    row[score] += other.scores[atoms][score];
+                }
+                gamesByAtoms[atoms] += other.gamesByAtoms[atoms];
+                scoreTotals[atoms] += other.scoreTotals[atoms];
+                rayTotals[atoms] += other.rayTotals[atoms];
+            }
+            events += other.events;
+            layouts += other.layouts;
+            bytes += other.bytes;
+        }
+
+        private long[] scoreRow(int atoms) {
+            long[] row = scores[atoms];
+            if (row == null) {
+                row = scores[atoms] = new long[MAX_SCORE + 1];
+            }
+            return row;
+        }
+
+        private void fire(int node, int outcome) {
+            if (node < 1 || node > NODES) {
+                return;
+            }
+            fired[node]++;
+            if (outcome == RayOutcome.ABSORBED) {
+                absorbed[node]++;
+            } else if (outcome == RayOutcome.REFLECTED) {
+                reflected[node]++;
+            } else {
+                exited[node]++;
+            }
+        }
+
+        // counts a guess unless its fields cannot come from ScoringEngine.score, as in a torn record
+        private void guess(long guess, int score, int correct, int rays, int markers) {
+            int missedScore = score - markers;
+            if (missedScore < 0 || missedScore % ScoreEstimator.MISSED_ATOM_PENALTY != 0
+                    || correct > Long.bitCount(guess) || markers < rays || markers > 2 * rays) {
+                return;
+            }
+            int atoms = missedScore / ScoreEstimator.MISSED_ATOM_PENALTY + correct;
+            if (atoms > BoardIndex.CELL_COUNT) {
+                return;
+            }
+            scoreRow(atoms)[Math.min(score, MAX_SCORE)]++;
+            gamesByAtoms[atoms]++;
+            scoreTotals[atoms] += score;
+            rayTotals[atoms] += rays;
+        }
+
+        /**
+         * Gets the number of events counted.
+         */
+        public long getEventCount() {
+            return events;
+        }
+
+        /**
+         * Gets the number of record bytes read, without segment headers.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Gets the number of games started with a layout.
+         */
+        public long getLayoutCount() {
+            return layouts;
+        }
+
+        /**
+         * Gets the number of games finished with a guess.
+         */
+        public long getGameCount() {
+            return Arrays.stream(gamesByAtoms).sum();
+        }
+
+        /**
+         * Gets the number of games finished with a guess against a given number of setter atoms.
+         */
+        public long getGameCount(int atoms) {
+            return gamesByAtoms[atoms];
+        }
+
+        /**
+         * Gets the average number of rays fired in a finished game.
+         */
+        public double averageRays() {
+            long games = getGameCount();
+            return games == 0 ? 0 : (double) Arrays.stream(rayTotals).sum() / games;
+        }
+
+        /**
+         * Gets the average score of the finished games with a given number of setter atoms.
+         */
+        public double averageScore(int atoms) {
+            return gamesByAtoms[atoms] == 0 ? 0 : (double) scoreTotals[atoms] / gamesByAtoms[atoms];
+        }
+
+        /**
+         * Gets the number of games with a given number of setter atoms and a given score.
+         * Scores from {@link #MAX_SCORE} up share its count.
+         */
+        public long getScoreCount(int atoms, int score) {
+            return scores[atoms] == null ? 0 : scores[atoms][Math.min(score, MAX_SCORE)];
+        }
+
+        public long getFired(int node) {
+            return fired[node];
+        }
+
+        public long getAbsorbed(int node) {
+            return absorbed[node];
+        }
+
+        public long getReflected(int node) {
+            return reflected[node];
+        }
+
+        public long getExited(int node) {
+            return exited[node];
+        }
+
+        /**
+         * Writes one CSV row per node with its ray counts and rates.
+         */
+        public void writeNodesCsv(Appendable out) throws IOException {
+            out.append("node,fired,absorbed,reflected,passed,absorption_rate,reflection_rate,pass_rate\n");
+            for (int node = 1; node <= NODES; node++) {
+                out.append(String.format(Locale.ROOT, "%d,%d,%d,%d,%d,%.6f,%.6f,%.6f\n", node, fired[node], absorbed[node],
+                        reflected[node], exited[node], rate(absorbed[node], fired[node]),
+                        rate(reflected[node], fired[node]), rate(exited[node], fired[node])));
+            }
+        }
+
+        /**
+         * Writes one CSV row per atom count and score that occurred, with its number of games.
+         */
+        public void writeScoresCsv(Appendable out) throws IOException {
+            out.append("atoms,score,games\n");
+            for (int atoms = 0; atoms <= BoardIndex.CELL_COUNT; atoms++) {
+                if (scores[atoms] == null) {
+                    continue;
+                }
+                for (int score = 0; score <= MAX_SCORE; score++) {
+                    if (scores[atoms][score] != 0) {
+                        out.append(atoms + "," + score + "," + scores[atoms][score] + "\n");
+                    }
+                }
+            }
+        }
+
+        /**
+         * Writes the totals, then one JSON object per node and one per atom count, a line each.
+         */
+        public void writeNdjson(Appendable out) throws IOException {
+            out.append(String.format(Locale.ROOT, "{\"events\":%d,\"bytes\":%d,\"layouts\":%d,\"games\":%d,\"averageRays\":%.4f}\n",
+                    events, bytes, layouts, getGameCount(), averageRays()));
+            for (int node = 1; node <= NODES; node++) {
+                out.append(String.format(Locale.ROOT, "{\"node\":%d,\"fired\":%d,\"absorbed\":%d,\"reflected\":%d,\"passed\":%d}\n",
+                        node, fired[node], absorbed[node], reflected[node], exited[node]));
+            }
+            for (int atoms = 0; atoms <= BoardIndex.CELL_COUNT; atoms++) {
+                if (scores[atoms] == null) {
+                    continue;
+                }
+                StringBuilder line = new StringBuilder();
+                line.append(String.format(Locale.ROOT, "{\"atoms\":%d,\"games\":%d,\"averageScore\":%.4f,\"averageRays\":%.4f,\"scores\":{",
+                        atoms, gamesByAtoms[atoms], averageScore(atoms), (double) rayTotals[atoms] / gamesByAtoms[atoms]));
+                String separator = "";
+                for (int score = 0; score <= MAX_SCORE; score++) {
+                    if (scores[atoms][score] != 0) {
+                        line.append(separator).append('"').append(score).append("\":").append(scores[atoms][score]);
+                        separator = ",";
+                    }
+                }
+                out.append(line).append("}}\n");
+            }
+        }
+
+        private static double rate(long count, long total) {
+            return total == 0 ? 0 : (double) count / total;
+        }
+    }
+
+    /**
+     * Counts every event of a log on the common fork/join pool.
+     *
+     * @param directory the log directory.
+     */
+    public static Summary analyze(Path directory) throws IOException {
+        return analyze(directory, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Counts every event of a log.
+     *
+     * @param directory the log directory.
+     * @param pool      the pool counting the chunks.
+     */
+    public static Summary analyze(Path directory, ForkJoinPool pool) throws IOException {
+        List<MappedByteBuffer> segments = new ArrayList<>();
+        for (Path segment : GameEventLog.segments(directory)) {
+            try (FileChannel file = FileChannel.open(segment, StandardOpenOption.READ)) {
+                if (file.size() > Integer.MAX_VALUE) {
+                    throw new IOException(segment + " is too large to map.");
+                }
+                // the mapping stays valid after the channel is closed
+                MappedByteBuffer buffer = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+                if (buffer.remaining() < GameEventLog.HEADER_BYTES || buffer.getInt(0) != GameEventLog.MAGIC
+                        || buffer.getInt(4) != GameEventLog.VERSION) {
+                    throw new IOException(segment + " is not a game event log.");
+                }
+                segments.add(buffer);
+            }
+        }
+        return pool.invoke(new SegmentsTask(segments, 0, segments.size()));
+    }
+
+    /**
+     * Finds the start of the chunks of a segment, and the end of its last whole record.
+     * A record cut short by a crash ends the segment, like in {@link GameEventLog#read}.
+     */
+    static int[] chunkBounds(ByteBuffer segment) {
+        int[] bounds = new int[8];
+        int count = 0;
+        int position = GameEventLog.HEADER_BYTES;
+        int limit = segment.limit();
+        int next = position;
+        while (limit - position >= 4) {
+            int length = segment.getInt(position);
+            if (length < FIELDS - 4 || limit - position < 4 + length) {
+                break;
+            }
+            if (position >= next) {
+                if (count == bounds.length) {
+                    bounds = Arrays.copyOf(bounds, count * 2);
+                }
+                bounds[count++] = position;
+                next = position + CHUNK_BYTES;
+            }
+            position += 4 + length;
+        }
+        bounds = Arrays.copyOf(bounds, count + 1);
+        bounds[count] = position;
+        return bounds;
+    }
+
+    // counts the whole records in [start, end) of a segment
+    private static Summary count(ByteBuffer segment, int start, int end) {
+        Summary summary = new Summary();
+        int position = start;
+        long events = 0;
+        while (position < end) {
+            int length = segment.getInt(position);
+            switch (segment.get(position + 4)) {
+                case GameEvent.LAYOUT -> summary.layouts++;
+                case GameEvent.FIRE ->
+                        summary.fire(segment.get(position + FIELDS) & 0xFF, segment.get(position + FIELDS + 1) & 0xFF);
+                case GameEvent.GUESS -> summary.guess(segment.getLong(position + FIELDS),
+                        segment.getShort(position + FIELDS + 8) & 0xFFFF,
+                        segment.get(position + FIELDS + 10) & 0xFF, segment.getShort(position + FIELDS + 11) & 0xFFFF,
+                        segment.getShort(position + FIELDS + 13) & 0xFFFF);
+                default -> {
+                }
+            }
+            events++;
+            position += 4 + length;
+        }
+        summary.events = events;
+        summary.bytes = end - start;
+        return summary;
+    }
+
+    // splits the list of segments, then the chunks of one segment; tasks are never serialized
+    @SuppressWarnings("serial")
+    private static final class SegmentsTask extends RecursiveTask<Summary> {
+        private final List<MappedByteBuffer> segments;
+        private final int from;
+        private final int to;
+
+        SegmentsTask(List<MappedByteBuffer> segments, int from, int to) {
+            this.segments = segments;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Summary compute() {
+            if (to - from == 0) {
+                return new Summary();
+            }
+            if (to - from == 1) {
+                ByteBuffer segment = segments.get(from);
+                int[] bounds = chunkBounds(segment);
+                return new ChunkTask(segment, bounds, 0, bounds.length - 1).compute();
+            }
+            int middle = (from + to) >>> 1;
+            SegmentsTask left = new SegmentsTask(segments, from, middle);
+            left.fork();
+            Summary summary = new SegmentsTask(segments, middle, to).compute();
+            summary.merge(left.join());
+            return summary;
+        }
+    }
+
+    // counts the chunks [from, to) of one segment
+    @SuppressWarnings("serial")
+    private static final class ChunkTask extends RecursiveTask<Summary> {
+        private final ByteBuffer segment;
+        private final int[] bounds;
+        private final int from;
+        private final int to;
+
+        ChunkTask(ByteBuffer segment, int[] bounds, int from, int to) {
+            this.segment = segment;
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Summary compute() {
+            if (to - from <= 1) {
+                return count(segment, bounds[from], bounds[to]);
+            }
+            int middle = (from + to) >>> 1;
+            ChunkTask left = new ChunkTask(segment, bounds, from, middle);
+            left.fork();
+            Summary summary = new ChunkTask(segment, bounds, middle, to).compute();
+            summary.merge(left.join());
+            return summary;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path logDirectory = null;
+        String format = "csv";
+        Path outDirectory = Path.of(".");
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            switch (kv[0]) {
+                case "log" -> logDirectory = Path.of(kv[1]);
+                case "format" -> format = kv[1];
+                case "out" -> outDirectory = Path.of(kv[1]);
+                default -> throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        if (logDirectory == null) {
+            throw new IllegalArgumentException("No log directory given, use log=<directory>.");
+        }
+
+        long start = System.nanoTime();
+        Summary summary = analyze(logDirectory);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Counted %d events, %.1f MB in %.3f s (%.0f MB/s)%n", summary.getEventCount(),
+                summary.getBytes() / 1e6, seconds, summary.getBytes() / 1e6 / seconds);
+
+        Files.createDirectories(outDirectory);
+        switch (format) {
+            case "csv" -> {
+                write(outDirectory.resolve("nodes.csv"), summary::writeNodesCsv);
+                write(outDirectory.resolve("scores.csv"), summary::writeScoresCsv);
+            }
+            case "ndjson" -> write(outDirectory.resolve("analytics.ndjson"), summary::writeNdjson);
+            default -> throw new IllegalArgumentException("Unknown format " + format + ", use csv or ndjson.");
+        }
+    }
+
+    private interface Table {
+        void write(Appendable out) throws IOException;
+    }
+
+    private static void write(Path file, Table table) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file)) {
+            table.write(out);
+        }
+        System.out.println("Wrote " + file);
+    }
+}
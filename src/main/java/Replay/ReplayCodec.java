@@ -0,0 +1,666 @@
+package Replay;
+
+import Controller.ScoringEngine;
+import Model.LayoutRank;
+import Model.RayOutcome;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Compact replay format for game events, with snapshots so a viewer can jump to any event.
+ *
+ * <p>Each event starts with a tag byte holding the event kind in the high nibble. For a fired ray
+ * the low nibble holds the kind of outcome, so a ray that is absorbed or reflected needs no
+ * more bytes for its outcome. The session and the time are varints of the zigzag difference to
+ * the previous event. Nodes are varints, and layouts and guesses are stored as their atom count
+ * and {@link LayoutRank} rank. A fired ray usually takes 4 or 5 bytes instead of the 23 of the
+ * {@link GameEventLog}.</p>
+ *
+ * <p>Every {@code snapshotInterval} events the encoder writes a snapshot of every game in
+ * progress: its layout, the set of nodes fired so far, and its ray counters. Together with the
+ * layout these are the whole board a viewer shows. When more games are open than the interval,
+ * the next snapshot waits for as many events as there are open games, so snapshots never take
+ * more than about one game entry per event however many games run at once. The event and offset
+ * of each snapshot are kept in a seek table at the end of the stream, so seeking to an event
+ * reads one snapshot and the events after it, fewer than {@code snapshotInterval} unless many
+ * games were open. Encoding and decoding reuse their buffers and game tables, so they do not
+ * allocate per event.</p>
+ *
+ * <pre>
+ * header   magic:int version:int interval:int
+ * event    tag:byte session-delta:varint time-delta:varint fields...
+ * snapshot tag:byte session:varint time:varint games:varint (session atoms rank fired rays markers)*
+ * table    events:long snapshots:int (event:long offset:long)*
+ * trailer  table-offset:long magic:int
+ * </pre>
+ */
+public final class ReplayCodec {
+
+    public static final int MAGIC = 0x42425243;
+    public static final int VERSION = 2;
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 1024;
+
+    private static final int HEADER_BYTES = 12;
+    private static final int TRAILER_BYTES = 12;
+
+    // event kinds in the tag's high nibble
+    private static final int KIND_LAYOUT = 1;
+    private static final int KIND_FIRE = 2;
+    private static final int KIND_GUESS = 3;
+    private static final int KIND_SNAPSHOT = 4;
+
+    // outcome kinds in a FIRE tag's low nibble
+    private static final int OUTCOME_ABSORBED = 0;
+    private static final int OUTCOME_REFLECTED = 1;
+    private static final int OUTCOME_EXIT = 2;
+
+    private ReplayCodec() {
+    }
+
+    /**
+     * Converts a {@link GameEventLog} into the compact format.
+     *
+     * @param logDirectory the event log.
+     * @param output       the replay file to write.
+     * @return the number of events converted.
+     */
+    public static long convert(Path logDirectory, Path output) throws IOException {
+        try (Encoder encoder = new Encoder(Files.newOutputStream(output), DEFAULT_SNAPSHOT_INTERVAL)) {
+            GameEventLog.read(logDirectory, event -> {
+                try {
+                    encoder.encode(event);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            return encoder.getEventCount();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Writes events in the compact format. The stream is only complete once closed, which
+     * writes the seek table.
+     */
+    public static final class Encoder implements Closeable {
+        private final OutputStream out;
+        private final int snapshotInterval;
+        private final byte[] buffer = new byte[64 * 1024];
+        private int length;
+        private long offset;
+        private long events;
+        private long previousSession;
+        private long previousTime;
+        private long[] snapshotEvents = new long[64];
+        private long[] snapshotOffsets = new long[64];
+        private int snapshots;
+        private long nextSnapshot;
+        private final GameTable games = new GameTable();
+
+        /**
+         * Starts a stream.
+         *
+         * @param out              where the stream goes, closed with the encoder.
+         * @param snapshotInterval events between snapshots.
+         */
+        public Encoder(OutputStream out, int snapshotInterval) throws IOException {
+            if (snapshotInterval < 1) {
+                throw new IllegalArgumentException("Snapshot interval must be positive, got " + snapshotInterval + ".");
+            }
+            this.out = out;
+            this.snapshotInterval = snapshotInterval;
+            writeInt(MAGIC);
+            writeInt(VERSION);
+            writeInt(snapshotInterval);
+        }
+
+        public void layout(long session, long time, long layout) throws IOException {
+            begin(KIND_LAYOUT << 4, session, time);
+            writeLayout(layout);
+            games.put(session, layout);
+        }
+
+        public void fire(long session, long time, int node, int outcome) throws IOException {
+            int kind = outcome == RayOutcome.ABSORBED ? OUTCOME_ABSORBED
+                    : outcome == RayOutcome.REFLECTED ? OUTCOME_REFLECTED : OUTCOME_EXIT;
+            begin(KIND_FIRE << 4 | kind, session, time);
+            writeVarint(node);
+            if (kind == OUTCOME_EXIT) {
+                writeVarint(outcome);
+            }
+            games.fire(session, node, RayOutcome.markers(outcome));
+        }
+
+        public void guess(long session, long time, long guess, int score, int correct, int rays, int markers) throws IOException {
+            begin(KIND_GUESS << 4, session, time);
+            writeLayout(guess);
+            writeVarint(score);
+            writeVarint(correct);
+            writeVarint(rays);
+            writeVarint(markers);
+            games.remove(session);
+        }
+
+        /**
+         * Writes an event read from a {@link GameEventLog}.
+         */
+        public void encode(GameEvent event) throws IOException {
+            switch (event) {
+                case GameEvent.Layout e -> layout(e.session(), e.time(), e.layout());
+                case GameEvent.Fire e -> fire(e.session(), e.time(), e.node(), e.outcome());
+                case GameEvent.Guess e -> guess(e.session(), e.time(), e.guess(), e.score().score(),
+                        e.score().correctAtoms(), e.score().rayCount(), e.score().rayMarkers());
+            }
+        }
+
+        public long getEventCount() {
+            return events;
+        }
+
+        @Override
+        public void close() throws IOException {
+            long tableOffset = offset + length;
+            writeLong(events);
+            writeInt(snapshots);
+            for (int i = 0; i < snapshots; i++) {
+                writeLong(snapshotEvents[i]);
+                writeLong(snapshotOffsets[i]);
+            }
+            writeLong(tableOffset);
+            writeInt(MAGIC);
+            flush();
+            out.close();
+        }
+
+        // writes a snapshot when one is due, then the tag and the deltas of the next event
+        private void begin(int tag, long session, long time) throws IOException {
+            if (events == nextSnapshot) {
+                writeSnapshot();
+                // a snapshot of n games is paid for by at least n events
+                nextSnapshot = events + Math.max(snapshotInterval, games.size);
+            }
+            ensure(64);
+            buffer[length++] = (byte) tag;
+            writeVarint(zigzag(session - previousSession));
+            writeVarint(zigzag(time - previousTime));
+            previousSession = session;
+            previousTime = time;
+            events++;
+        }
+
+        private void writeSnapshot() throws IOException {
+            if (snapshots == snapshotOffsets.length) {
+                snapshotEvents = Arrays.copyOf(snapshotEvents, snapshots * 2);
+                snapshotOffsets = Arrays.copyOf(snapshotOffsets, snapshots * 2);
+            }
+            snapshotEvents[snapshots] = events;
+            snapshotOffsets[snapshots++] = offset + length;
+            ensure(32);
+            buffer[length++] = (byte) (KIND_SNAPSHOT << 4);
+            writeVarint(zigzag(previousSession));
+            writeVarint(zigzag(previousTime));
+            writeVarint(games.size);
+            for (int slot = 0; slot < games.capacity(); slot++) {
+                if (games.used[slot]) {
+                    ensure(64);
+                    writeVarint(zigzag(games.keys[slot]));
+                    writeLayout(games.layouts[slot]);
+                    writeVarint(games.fired[slot]);
+                    writeVarint(games.rays[slot]);
+                    writeVarint(games.markers[slot]);
+                }
+            }
+        }
+
+        private void writeLayout(long layout) throws IOException {
+            ensure(24);
+            writeVarint(Long.bitCount(layout));
+            writeVarint(LayoutRank.rank(layout));
+        }
+
+        private void writeVarint(long value) throws IOException {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[length++] = (byte) value;
+        }
+
+        private void writeInt(int value) throws IOException {
+            ensure(4);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                buffer[length++] = (byte) (value >>> shift);
+            }
+        }
+
+        private void writeLong(long value) throws IOException {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (length + bytes > buffer.length) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            out.write(buffer, 0, length);
+            offset += length;
+            length = 0;
+        }
+    }
+
+    /**
+     * Reads a compact stream as a cursor: {@link #next()} moves to the next event and the getters
+     * describe it. The cursor also keeps the board of every game in progress.
+     */
+    public static final class Decoder {
+        private final ByteBuffer data;
+        private final long eventCount;
+        private final long[] snapshotEvents;
+        private final long[] snapshotOffsets;
+        private final int eventsEnd;
+        private final GameTable games = new GameTable();
+
+        private long index;
+        private int kind;
+        private long session;
+        private long time;
+        private int node;
+        private int outcome;
+        private long layout;
+        private int score;
+        private int correct;
+        private int rays;
+        private int markers;
+
+        /**
+         * Opens a replay file, mapping it into memory.
+         *
+         * @param file a file written by an {@link Encoder}.
+         * @throws IOException if the file cannot be read, is not a replay stream, or is larger
+         *                     than the 2 GiB a single mapping can hold.
+         */
+        public static Decoder open(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size > Integer.MAX_VALUE) {
+                    throw new IOException("Replay file " + file + " has " + size
+                            + " bytes, more than the 2 GiB a decoder can map.");
+                }
+                return new Decoder(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            }
+        }
+
+        /**
+         * Reads a stream held in a buffer.
+         *
+         * @param data the whole stream, from its header to its trailer.
+         */
+        public Decoder(ByteBuffer data) throws IOException {
+            this.data = data;
+            if (data.limit() < HEADER_BYTES + TRAILER_BYTES || data.getInt(0) != MAGIC
+                    || data.getInt(data.limit() - 4) != MAGIC) {
+                throw new IOException("Not a complete replay stream.");
+            }
+            if (data.getInt(4) != VERSION) {
+                throw new IOException("Unsupported replay version " + data.getInt(4) + ".");
+            }
+            long tableOffset = data.getLong(data.limit() - TRAILER_BYTES);
+            int tableEnd = data.limit() - TRAILER_BYTES;
+            if (tableOffset < HEADER_BYTES || tableOffset > tableEnd - 12) {
+                throw new IOException("Replay seek table offset " + tableOffset + " is outside the stream.");
+            }
+            this.eventsEnd = (int) tableOffset;
+            this.eventCount = data.getLong(eventsEnd);
+            int snapshots = data.getInt(eventsEnd + 8);
+            if (snapshots < 0 || snapshots != (tableEnd - eventsEnd - 12) / 16) {
+                throw new IOException("Replay seek table does not hold " + snapshots + " snapshots.");
+            }
+            this.snapshotEvents = new long[snapshots];
+            this.snapshotOffsets = new long[snapshots];
+            for (int i = 0; i < snapshots; i++) {
+                snapshotEvents[i] = data.getLong(eventsEnd + 12 + 16 * i);
+                snapshotOffsets[i] = data.getLong(eventsEnd + 20 + 16 * i);
+            }
+            rewind();
+        }
+
+        /**
+         * Moves back to before the first event.
+         */
+        public void rewind() {
+            data.position(HEADER_BYTES);
+            index = -1;
+            session = 0;
+            time = 0;
+            games.clear();
+        }
+
+        /**
+         * Moves so that the next call to {@link #next()} returns the given event, reading the
+         * last snapshot before it and the events in between.
+         *
+         * @param event the index of the event, from 0.
+         */
+        public void seek(long event) {
+            if (event < 0 || event > eventCount) {
+                throw new IllegalArgumentException("Event " + event + " is outside 0 to " + eventCount + ".");
+            }
+            int snapshot = Arrays.binarySearch(snapshotEvents, event);
+            if (snapshot < 0) {
+                snapshot = -snapshot - 2;
+            }
+            if (snapshot < 0) {
+                rewind();
+                return;
+            }
+            data.position((int) snapshotOffsets[snapshot]);
+            index = snapshotEvents[snapshot] - 1;
+            while (index + 1 < event) {
+                next();
+            }
+        }
+
+        /**
+         * Moves to the next event.
+         *
+         * @return false at the end of the stream.
+         */
+        public boolean next() {
+            while (data.position() < eventsEnd) {
+                int tag = data.get() & 0xFF;
+                if (tag >>> 4 == KIND_SNAPSHOT) {
+                    readSnapshot();
+                    continue;
+                }
+                kind = tag >>> 4;
+                session += unzigzag(readVarint());
+                time += unzigzag(readVarint());
+                index++;
+                switch (kind) {
+                    case KIND_LAYOUT -> {
+                        layout = readLayout();
+                        games.put(session, layout);
+                    }
+                    case KIND_FIRE -> {
+                        node = (int) readVarint();
+                        int outcomeKind = tag & 0xF;
+                        outcome = outcomeKind == OUTCOME_ABSORBED ? RayOutcome.ABSORBED
+                                : outcomeKind == OUTCOME_REFLECTED ? RayOutcome.REFLECTED : (int) readVarint();
+                        games.fire(session, node, RayOutcome.markers(outcome));
+                    }
+                    case KIND_GUESS -> {
+                        layout = readLayout();
+                        score = (int) readVarint();
+                        correct = (int) readVarint();
+                        rays = (int) readVarint();
+                        markers = (int) readVarint();
+                        games.remove(session);
+                    }
+                    default -> throw new IllegalStateException("Unknown replay tag " + tag + " at event " + index + ".");
+                }
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Gets the kind of the current event, {@link GameEvent#LAYOUT}, {@link GameEvent#FIRE} or
+         * {@link GameEvent#GUESS}.
+         */
+        public byte type() {
+            return (byte) kind;
+        }
+
+        public long index() {
+            return index;
+        }
+
+        public long session() {
+            return session;
+        }
+
+        public long time() {
+            return time;
+        }
+
+        /**
+         * Gets the node of the current FIRE event.
+         */
+        public int node() {
+            return node;
+        }
+
+        /**
+         * Gets the outcome of the current FIRE event.
+         */
+        public int outcome() {
+            return outcome;
+        }
+
+        /**
+         * Gets the layout of the current LAYOUT event, or the guess of the current GUESS event.
+         */
+        public long layout() {
+            return layout;
+        }
+
+        /**
+         * Gets the score of the current GUESS event; the fields are only valid until the next call.
+         */
+        public ScoringEngine.Score score() {
+            return new ScoringEngine.Score(score, correct, rays, markers);
+        }
+
+        public long getEventCount() {
+            return eventCount;
+        }
+
+        /**
+         * Checks if a game is in progress at the current event.
+         */
+        public boolean isOpen(long game) {
+            return games.find(game) >= 0;
+        }
+
+        /**
+         * Gets the layout of a game in progress.
+         */
+        public long layoutOf(long game) {
+            return games.layouts[slotOf(game)];
+        }
+
+        /**
+         * Gets the set of nodes fired so far in a game in progress, bit n - 1 for node n.
+         */
+        public long firedOf(long game) {
+            return games.fired[slotOf(game)];
+        }
+
+        public int rayCountOf(long game) {
+            return games.rays[slotOf(game)];
+        }
+
+        public int markersOf(long game) {
+            return games.markers[slotOf(game)];
+        }
+
+        private int slotOf(long game) {
+            int slot = games.find(game);
+            if (slot < 0) {
+                throw new IllegalArgumentException("Game " + game + " is not in progress at event " + index + ".");
+            }
+            return slot;
+        }
+
+        private void readSnapshot() {
+            session = unzigzag(readVarint());
+            time = unzigzag(readVarint());
+            games.clear();
+            int open = (int) readVarint();
+            for (int i = 0; i < open; i++) {
+                long game = unzigzag(readVarint());
+                int slot = games.put(game, readLayout());
+                games.fired[slot] = readVarint();
+                games.rays[slot] = (int) readVarint();
+                games.markers[slot] = (int) readVarint();
+            }
+        }
+
+        private long readLayout() {
+            int atoms = (int) readVarint();
+            long rank = readVarint();
+            return atoms == 0 ? 0L : LayoutRank.unrank(rank, atoms);
+        }
+
+        private long readVarint() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = data.get();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    // games in progress keyed by session, open addressing so lookups do not box the key
+    private static final class GameTable {
+        long[] keys = new long[16];
+        boolean[] used = new boolean[16];
+        long[] layouts = new long[16];
+        long[] fired = new long[16];
+        int[] rays = new int[16];
+        int[] markers = new int[16];
+        int size;
+
+        int capacity() {
+            return keys.length;
+        }
+
+        int find(long key) {
+            int mask = keys.length - 1;
+            for (int slot = hash(key) & mask; used[slot]; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        int put(long key, long layout) {
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+            }
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (used[slot] && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (!used[slot]) {
+                used[slot] = true;
+                keys[slot] = key;
+                size++;
+            }
+            layouts[slot] = layout;
+            fired[slot] = 0;
+            rays[slot] = 0;
+            markers[slot] = 0;
+            return slot;
+        }
+
+        void fire(long key, int node, int markerCount) {
+            int slot = find(key);
+            if (slot >= 0) {
+                fired[slot] |= 1L << (node - 1);
+                rays[slot]++;
+                markers[slot] += markerCount;
+            }
+        }
+
+        void remove(long key) {
+            int slot = find(key);
+            if (slot < 0) {
+                return;
+            }
+            // backward shift deletion keeps every probe chain unbroken
+            int mask = keys.length - 1;
+            int hole = slot;
+            for (int next = (hole + 1) & mask; used[next]; next = (next + 1) & mask) {
+                int home = hash(keys[next]) & mask;
+                boolean movable = hole <= next ? (home <= hole || home > next) : (home <= hole && home > next);
+                if (movable) {
+                    copy(next, hole);
+                    hole = next;
+                }
+            }
+            used[hole] = false;
+            size--;
+        }
+
+        void clear() {
+            Arrays.fill(used, false);
+            size = 0;
+        }
+
+        private void copy(int from, int to) {
+            keys[to] = keys[from];
+            layouts[to] = layouts[from];
+            fired[to] = fired[from];
+            rays[to] = rays[from];
+            markers[to] = markers[from];
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            boolean[] oldUsed = used;
+            long[] oldLayouts = layouts;
+            long[] oldFired = fired;
+            int[] oldRays = rays;
+            int[] oldMarkers = markers;
+            int capacity = oldKeys.length * 2;
+            keys = new long[capacity];
+            used = new boolean[capacity];
+            layouts = new long[capacity];
+            fired = new long[capacity];
+            rays = new int[capacity];
+            markers = new int[capacity];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldUsed[i]) {
+                    int slot = put(oldKeys[i], oldLayouts[i]);
+                    fired[slot] = oldFired[i];
+                    rays[slot] = oldRays[i];
+                    markers[slot] = oldMarkers[i];
+                }
+            }
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
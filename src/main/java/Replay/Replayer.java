@@ -0,0 +1,105 @@
+package Replay;
+
+import Controller.ScoringEngine;
+import Model.BlackBoxBoard;
+import Model.BoardIndex;
+import Model.Ray;
+import Model.RayOutcome;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replays a {@link GameEventLog} on real {@link BlackBoxBoard}s and checks that every logged ray
+ * outcome and score is what the game rules give.
+ *
+ * <p>Each game gets its own board with the logged layout. Every logged ray is fired again with
+ * {@link Ray}, and the guess is scored again. Like the UI, this uses Ray's shared static
+ * counters, so replay from one thread only.</p>
+ */
+public class Replayer {
+
+    /**
+     * Result of a replay.
+     *
+     * @param games      the games replayed up to their guess.
+     * @param events     the events read.
+     * @param mismatches a description of every event that did not replay as logged.
+     */
+    public record Report(long games, long events, List<String> mismatches) {
+
+        /**
+         * Checks if every event replayed as logged.
+         */
+        public boolean isConsistent() {
+            return mismatches.isEmpty();
+        }
+    }
+
+    // a game between its layout and its guess
+    private static final class Game {
+        final BlackBoxBoard board = new BlackBoxBoard();
+        final long layout;
+        int rays;
+        int markers;
+
+        Game(long layout) {
+            this.layout = layout;
+            board.placeSetterAtoms(BoardIndex.pointsOf(layout));
+        }
+    }
+
+    private final Map<Long, Game> games = new HashMap<>();
+    private final List<String> mismatches = new ArrayList<>();
+    private long finished;
+    private long events;
+
+    /**
+     * Replays every event of a log.
+     *
+     * @param directory the log directory.
+     */
+    public static Report replay(Path directory) throws IOException {
+        Replayer replayer = new Replayer();
+        GameEventLog.read(directory, replayer::apply);
+        return new Report(replayer.finished, replayer.events, replayer.mismatches);
+    }
+
+    private void apply(GameEvent event) {
+        events++;
+        switch (event) {
+            case GameEvent.Layout e -> games.put(e.session(), new Game(e.layout()));
+            case GameEvent.Fire e -> {
+                Game game = games.get(e.session());
+                if (game == null) {
+                    mismatches.add("Ray fired from node " + e.node() + " in game " + e.session() + " before its layout.");
+                    return;
+                }
+                // the replay only needs the outcome, so the ray records no path
+                int outcome = RayOutcome.of(new Ray(game.board, e.node(), null));
+                game.rays++;
+                game.markers += RayOutcome.markers(outcome);
+                if (outcome != e.outcome()) {
+                    mismatches.add("Game " + e.session() + " node " + e.node() + " logged " + RayOutcome.toString(e.outcome())
+                            + " but replays as " + RayOutcome.toString(outcome) + ".");
+                }
+            }
+            case GameEvent.Guess e -> {
+                Game game = games.remove(e.session());
+                if (game == null) {
+                    mismatches.add("Guess in game " + e.session() + " before its layout.");
+                    return;
+                }
+                ScoringEngine.Score score = ScoringEngine.score(game.layout, e.guess(), game.rays, game.markers);
+                if (!score.equals(e.score())) {
+                    mismatches.add("Game " + e.session() + " logged " + e.score() + " but replays as " + score + ".");
+                }
+                finished++;
+            }
+        }
+    }
+}
@@ -6,6 +6,8 @@ import Model.*;
 import javafx.animation.FadeTransition;
 import javafx.animation.SequentialTransition;
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
 import javafx.geometry.Point2D;
 import javafx.scene.Group;
 import javafx.scene.Node;
@@ -22,9 +24,19 @@ import javafx.stage.Stage;
 import javafx.geometry.Pos;
 import javafx.geometry.Insets;
 import javafx.util.Duration;
+import Controller.GameSession;
 import Controller.GameState;
+import Controller.ScoreEstimator;
+import Controller.SessionCheckpoint;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
 
 import static Controller.GameState.calcScore;
 
@@ -32,6 +44,12 @@ public class Main extends Application {
 
     public static List<Point2D> atomPositions;
     public static boolean isRandomGame = false;
+    public static boolean isResumedGame = false; //the setter's atoms came from a saved game.
+    private static final long MAX_ESTIMATE_LAYOUTS = 2_000_000; //largest search the ready alert runs for the expected score.
+    private static final int HARD_CLIMBS = Math.max(4, Runtime.getRuntime().availableProcessors()); //setter search size for a hard random game.
+    private static final int HARD_STEPS = 6;
+    private static final int HARD_CHOICES = 3; //a hard game is one of this many hardest layouts found.
+    private static final long MAX_RATING_WAIT_MILLIS = 100; //longest the setter's ready button waits for the difficulty rating.
     Group gridGroup = new Group();
     Group gridGroup2 = new Group();
     Group gridGroup3 = new Group();
@@ -48,6 +66,13 @@ public class Main extends Application {
 
 
     private GameState gameState;
+
+    //file holding the game in progress, so it can be resumed if the app dies mid-game.
+    private static final Path CHECKPOINT_FILE = Path.of(System.getProperty("user.home"), ".blackboxplus", "game.checkpoint");
+    private static final long SAVED_GAME_ID = 1;
+    private SessionCheckpoint checkpoint;
+    private GameSession savedGame; //mirror of the current game written to the checkpoint, null if there is none.
+
     public static void main(String[] args) {
         launch(args);
     }
@@ -55,8 +80,6 @@ public class Main extends Application {
     @Override
     public void start(Stage primaryStage) {
 
-        RayNode.initializeNodes();
-
 //------------------------start screen
 
         Button startButton = new Button("Start New Game"); //adding a start button and styling using CSS.
@@ -91,6 +114,14 @@ public class Main extends Application {
 
         VBox layout = new VBox(20);
         layout.getChildren().addAll(imageView, welcomeMessage, startButton);
+
+        GameSession unfinishedGame = openCheckpoint(CHECKPOINT_FILE);
+        if (unfinishedGame != null) { //a game was left mid-way, offering to carry on with it.
+            Button resumeButton = new Button("Resume Game");
+            resumeButton.setStyle(startButton.getStyle().replace("-fx-font-size: 50px;", "-fx-font-size: 30px;"));
+            resumeButton.setOnAction(e -> resumeGame(primaryStage, unfinishedGame));
+            layout.getChildren().add(resumeButton);
+        }
         layout.setAlignment(Pos.CENTER);
         VBox.setMargin(welcomeMessage, new Insets(50, 100, 40, 100));
         VBox.setMargin(startButton, new Insets(60, 100, 40, 100));
@@ -155,6 +186,11 @@ public class Main extends Application {
 
     //this method handles displaying the main game screen where the experimenter is playing.
     public void showExperimenterScreen(Stage primaryStage) { // TODO: change to private
+        showExperimenterScreen(primaryStage, null);
+    }
+
+    //savedAtoms are the setter's atoms of a resumed game, or null to use the setter grid or random atoms.
+    private void showExperimenterScreen(Stage primaryStage, List<BlackBoxBoard.Point3D> savedAtoms) {
         AtomGenerator.resetAtomCount();//resetting atom count
         isEBoard = true;//setting the flag to true so ray circles can have click effect functionality..
 
@@ -183,6 +219,9 @@ public class Main extends Application {
         centerStackPane2.getChildren().add(gridGroup2);
 
         translation.linkMaps();
+        if (savedAtoms != null) { //only now that the grid is linked can the saved atoms be put on it.
+            placeSavedAtoms(savedAtoms);
+        }
 
 
         Label turn2 = generateTopExptText();
@@ -203,7 +242,12 @@ public class Main extends Application {
 
 
         if (atomPositions == null) {
+            long randomLayout = BoardIndex.maskOf(BlackBoxBoard.randomAtoms);
             sBoard.placeSetterAtoms(BlackBoxBoard.randomAtoms);
+            startSavedGame(randomLayout);
+            if (randomLayout != 0) {
+                DifficultyEstimator.estimateAsync(randomLayout); //generated atoms get a rating too, the setter's are rated on READY.
+            }
             List<Point2D> temp = Translation.get2DAtomMatch(BlackBoxBoard.randomAtoms);
             atomPositions = new ArrayList<>();
             atomPositions.addAll(temp);
@@ -243,7 +287,10 @@ public class Main extends Application {
         hbox.setAlignment(Pos.CENTER);
         Label selectRole = new Label("SELECT A ROLE: ");
         selectRole.setStyle("-fx-font-family: 'Droid Sans Mono';-fx-text-fill: #ffc967; -fx-font-size: 30px; -fx-font-weight: bold");
-        hbox.getChildren().addAll(selectRole, setterButton, experimenterButton);
+        Button hardButton = new Button("hard\nexperimenter");
+        hardButton.setStyle(experimenterButton.getStyle());
+        hardButton.setTextAlignment(TextAlignment.CENTER);
+        hbox.getChildren().addAll(selectRole, setterButton, experimenterButton, hardButton);
 
 
         Scene playerChoiceScene = new Scene(hbox, primaryStage.getWidth(), primaryStage.getHeight()); // Use the primary stage's width and height for full screen
@@ -261,12 +308,52 @@ public class Main extends Application {
             primaryStage.setFullScreen(true);
         });
 
+        //random game against atoms picked by the setter search, which takes a few seconds so it runs off the UI thread.
+        hardButton.setOnAction(e -> {
+            String hardText = hardButton.getText();
+            hardButton.setDisable(true);
+            hardButton.setText("searching...");
+            Thread search = new Thread(() -> {
+                long layout;
+                try {
+                    layout = hardLayout();
+                } catch (RuntimeException | Error ex) { //give the button back so the player can try again or pick another game.
+                    System.out.println("Setter search failed: " + ex);
+                    Platform.runLater(() -> {
+                        hardButton.setText(hardText);
+                        hardButton.setDisable(false);
+                    });
+                    return;
+                }
+                Platform.runLater(() -> {
+                    BlackBoxBoard.randomAtoms = BoardIndex.pointsOf(layout);
+                    isEBoard = true;
+                    showExperimenterScreen(primaryStage);
+                    primaryStage.setFullScreen(true);
+                });
+            }, "setter-search");
+            search.setDaemon(true);
+            search.start();
+        });
+
 
         primaryStage.setScene(playerChoiceScene);
         primaryStage.setFullScreen(true);
     }
 
 
+    //picks one of the layouts the setter search found hardest, turned or mirrored at random so the same ones do not keep coming back.
+    private static long hardLayout() {
+        SplittableRandom random = new SplittableRandom();
+        List<SetterSearch.Ranked> ranked = SetterSearch.rank(6, HARD_CLIMBS, HARD_STEPS, SetterSearch.DEFAULT_EXPANSIONS, random.nextLong());
+        if (ranked.isEmpty()) {
+            return BoardIndex.randomLayout(random, 6);
+        }
+        long layout = ranked.get(random.nextInt(Math.min(HARD_CHOICES, ranked.size()))).layout();
+        return BoardSymmetry.apply(random.nextInt(BoardSymmetry.COUNT), layout);
+    }
+
+
     //this method handles displaying the intermediate screen between the setter finishing their turn and the experimenter starting their turn.
     private void showContinueToExperimenterScreen(Stage primaryStage) {
         Label chosenAtomsLabel = new Label("You have chosen your atoms! ");
@@ -346,36 +433,45 @@ public class Main extends Application {
         Tooltip.install(fireRayButton, tooltip);
 
 
-        fireRayButton.setOnAction(event -> {
-            int rayNumber = RayCircle.getCurrentlyClickedRayNumber();
-            if (rayNumber > 0 && rayNumber < 55) {
-                System.out.println("Firing ray: " + rayNumber);
-                Ray ray = new Ray(sBoard, rayNumber);
-                int[] nodeNumbers = Ray.printRayInfo(ray);
+        fireRayButton.setOnAction(event -> fireRay(RayCircle.getCurrentlyClickedRayNumber()));
+        return fireRayButton;
+    }
 
-                RayCircle entryRayCircle = RayCircle.findRayCircleByNumber(nodeNumbers[0]);
-                RayCircle exitRayCircle = RayCircle.findRayCircleByNumber(nodeNumbers[1]);
+    //fires a ray from a node and shows its ray markers, used by the fire button and when resuming a saved game.
+    private void fireRay(int rayNumber) {
+        if (rayNumber > 0 && rayNumber < 55) {
+            System.out.println("Firing ray: " + rayNumber);
+            Ray ray = new Ray(sBoard, rayNumber);
+            int[] nodeNumbers = Ray.printRayInfo(ray);
+            gameState.recordRay(rayNumber, RayOutcome.of(ray)); //keeping what the experimenter saw for the score estimate.
+            if (savedGame != null) {
+                savedGame.fire(rayNumber); //saving the ray so the game can be resumed after a crash.
+            }
 
+            RayCircle entryRayCircle = RayCircle.findRayCircleByNumber(nodeNumbers[0]);
+            RayCircle exitRayCircle = RayCircle.findRayCircleByNumber(nodeNumbers[1]);
 
-                //set random color to entry/exit pair of ray circle for ray markers
-                if (entryRayCircle != null && exitRayCircle != null && !(ray.isRayReversed())) {
-                    Color currentColorPair = RayCircle.getNextColor(); //get the next color for the pair
-                    entryRayCircle.setPermanentColor(currentColorPair);  //set same color pair for ray markers
-                    exitRayCircle.setPermanentColor(currentColorPair);
-                } else if(ray.isRayReversed()) {
-                    entryRayCircle.setPermanentColor(Color.WHITE);
-                    entryRayCircle.setTextColor(Color.BLACK); //setting number text to black so it's easier to see against white background.
-                }
-                else if(ray.isAbsorbed() || nodeNumbers[1] == -1) {
-                    entryRayCircle.setPermanentColor(Color.BLACK);
-                }
-                else {
-                    System.out.println("No ray selected!");//testing if ray is either unfounded or reversed.
-                }
 
+            //set random color to entry/exit pair of ray circle for ray markers
+            if (ray.isLooped()) {
+                entryRayCircle.setPermanentColor(Color.GRAY); //only a broken rules change can get here, grey so it is not read as a hit.
             }
-        });
-        return fireRayButton;
+            else if (entryRayCircle != null && exitRayCircle != null && !(ray.isRayReversed())) {
+                Color currentColorPair = RayCircle.getNextColor(); //get the next color for the pair
+                entryRayCircle.setPermanentColor(currentColorPair);  //set same color pair for ray markers
+                exitRayCircle.setPermanentColor(currentColorPair);
+            } else if(ray.isRayReversed()) {
+                entryRayCircle.setPermanentColor(Color.WHITE);
+                entryRayCircle.setTextColor(Color.BLACK); //setting number text to black so it's easier to see against white background.
+            }
+            else if(ray.isAbsorbed() || nodeNumbers[1] == -1) {
+                entryRayCircle.setPermanentColor(Color.BLACK);
+            }
+            else {
+                System.out.println("No ray selected!");//testing if ray is either unfounded or reversed.
+            }
+
+        }
     }
 
     private VBox generateRayMarkerKey() {
@@ -535,7 +631,11 @@ public class Main extends Application {
 
                 if (AtomGenerator.atomCount >= 4) {
                     List<BlackBoxBoard.Point3D> setterAtomList = translation.get3DAtomMatch(atomPositions);
+                    if (!confirmDifficulty(primaryStage, BoardIndex.maskOf(setterAtomList))) {
+                        return; //the setter wants to move some atoms first.
+                    }
                     sBoard.placeSetterAtoms(setterAtomList);
+                    startSavedGame(BoardIndex.maskOf(setterAtomList));
                     sBoard.printBoard();
 
                     //print the positions
@@ -585,13 +685,17 @@ public class Main extends Application {
                     readyButtonAlert2.setTitle("FINISHED GUESSING?");
                     readyButtonAlert2.setHeaderText("YOU ARE ABOUT TO FINISH EXPERIMENTING AND REVEAL THE RESULTS...🤔");
                     int atomCount = 0;
-                    if (isRandomGame) {
+                    if (isRandomGame && !isResumedGame) {
                         atomCount = 6;
                     }
                     else {
                         atomCount = atomPositions.size();
                     }
-                    readyButtonAlert2.setContentText("PLACE " + atomCount + " ATOMS STRATEGICALLY TO MAXIMISE YOUR SCORE. ANY MISSING OR EXTRA ATOMS WILL BE COUNTED AS INCORRECTLY PLACED ATOMS.");
+                    String readyText = "PLACE " + atomCount + " ATOMS STRATEGICALLY TO MAXIMISE YOUR SCORE. ANY MISSING OR EXTRA ATOMS WILL BE COUNTED AS INCORRECTLY PLACED ATOMS.";
+                    readyButtonAlert2.setContentText(readyText);
+                    //the expected score can take a while to work out, so it is filled in once the background task finishes.
+                    Task<String> expectedScore = expectedScoreTask(atomPositionsExperimenter, atomCount);
+                    expectedScore.setOnSucceeded(done -> readyButtonAlert2.setContentText(readyText + expectedScore.getValue()));
 
                     //introducing button types continue and go back for the experimenter screen ready button alert.
                     ButtonType buttonTypeContinue = new ButtonType("REVEAL RESULTS →", ButtonBar.ButtonData.YES); //setting data to yes for continue
@@ -612,10 +716,15 @@ public class Main extends Application {
                     Stage opacity = (Stage) readyButtonAlert2.getDialogPane().getScene().getWindow();
                     opacity.setOpacity(0.9);
 
+                    Thread estimate = new Thread(expectedScore, "expected-score");
+                    estimate.setDaemon(true);
+                    estimate.start();
                     Optional<ButtonType> userReadyResult = readyButtonAlert2.showAndWait();
+                    expectedScore.cancel();
                 if (userReadyResult.isPresent() && userReadyResult.get() == buttonTypeContinue) {
                     //user chose "Reveal Results", continue to the showResults screen
                     Map<String, Integer> results = calcScore(atomPositions, atomPositionsExperimenter, sBoard);
+                    finishSavedGame();
                     showResults(primaryStage, results);
                     gameState.onReadyClicked();
                 } else {
@@ -638,6 +747,182 @@ public class Main extends Application {
 
 
 
+    /**
+     * Opens the checkpoint file and finds a game left unfinished by an earlier run.
+     *
+     * @param file the checkpoint file.
+     * @return the unfinished game, or null if there is none or the file can not be used.
+     */
+    GameSession openCheckpoint(Path file) {
+        try {
+            checkpoint = new SessionCheckpoint(file);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Games will not be saved, could not open " + file + ": " + e.getMessage());
+            return null;
+        }
+        GameSession unfinished = null;
+        for (GameSession session : checkpoint.getRecovered()) {
+            if (session.getPhase() == GameSession.Phase.EXPERIMENTING && unfinished == null) {
+                unfinished = session;
+            } else {
+                checkpoint.remove(session.getId()); //nothing to resume before the atoms are placed or after the reveal.
+            }
+        }
+        return unfinished;
+    }
+
+    //starts saving the current game to the checkpoint once the setter's atoms are known.
+    private void startSavedGame(long layout) {
+        if (checkpoint == null) {
+            return;
+        }
+        checkpoint.remove(SAVED_GAME_ID);
+        savedGame = new GameSession(SAVED_GAME_ID);
+        try {
+            savedGame.setCheckpoint(checkpoint);
+            savedGame.placeSetterAtoms(layout);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Game will not be saved: " + e.getMessage());
+            checkpoint.remove(SAVED_GAME_ID);
+            savedGame = null;
+        }
+    }
+
+    //the game is over, so there is nothing left to resume.
+    private void finishSavedGame() {
+        if (checkpoint != null) {
+            checkpoint.remove(SAVED_GAME_ID);
+        }
+        savedGame = null;
+    }
+
+    //puts a saved game back on the experimenter screen, firing its rays again to restore the ray markers.
+    private void resumeGame(Stage primaryStage, GameSession game) {
+        savedGame = null; //the rays are already saved.
+        showExperimenterScreen(primaryStage, BoardIndex.pointsOf(game.getAtoms()));
+        for (int node : game.getRayLog()) {
+            fireRay(node);
+        }
+        savedGame = game;
+        game.setCheckpoint(checkpoint);
+    }
+
+    /**
+     * Puts the setter's atoms of a resumed game on the setter board and in {@link #atomPositions}.
+     * The experimenter grid must already be generated and linked, as the atoms are translated to it.
+     *
+     * @param setterAtoms the saved game's atoms.
+     */
+    void placeSavedAtoms(List<BlackBoxBoard.Point3D> setterAtoms) {
+        sBoard.placeSetterAtoms(setterAtoms);
+        atomPositions = new ArrayList<>(Translation.get2DAtomMatch(setterAtoms));
+        isRandomGame = true; //the setter's atoms do not come from the setter grid.
+        isResumedGame = true;
+    }
+
+    @Override
+    public void stop() throws IOException {
+        if (checkpoint != null) {
+            checkpoint.close();
+        }
+    }
+
+    /**
+     * Warns the setter if their atoms make a trivial or unsolvable puzzle, see {@link DifficultyEstimator}.
+     * The rating is only waited for briefly, so a slow rating never holds up the game.
+     *
+     * @param primaryStage the stage the alert belongs to.
+     * @param layout the setter's atom mask.
+     * @return true to go on with these atoms, false if the setter chose to change them.
+     */
+    private boolean confirmDifficulty(Stage primaryStage, long layout) {
+        DifficultyEstimator.Difficulty difficulty;
+        try {
+            difficulty = DifficultyEstimator.estimateAsync(layout).get(MAX_RATING_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return true;
+        }
+        String warning;
+        switch (difficulty.level()) {
+            case TRIVIAL -> warning = String.format("THESE ATOMS ARE VERY EASY TO FIND: ABOUT %.0f RAYS ARE ENOUGH TO PIN THEM ALL DOWN.",
+                    difficulty.expectedRays());
+            case UNSOLVABLE -> warning = (difficulty.ambiguity() < 0 ? "MANY" : String.valueOf(difficulty.ambiguity()))
+                    + " LAYOUTS GIVE EXACTLY THE SAME RAYS AS THESE ATOMS, SO " + difficulty.hiddenAtoms()
+                    + " OF THEM CAN NOT BE FOUND FOR SURE EVEN WITH EVERY RAY FIRED.";
+            default -> {
+                return true;
+            }
+        }
+        Alert difficultyAlert = new Alert(Alert.AlertType.WARNING);
+        difficultyAlert.initOwner(primaryStage);
+        difficultyAlert.setTitle("DIFFICULTY : Warning");
+        difficultyAlert.setHeaderText(difficulty.level() + " PUZZLE");
+        difficultyAlert.setContentText(warning);
+        ButtonType buttonTypeContinue = new ButtonType("PLAY ANYWAY →", ButtonBar.ButtonData.YES);
+        ButtonType buttonTypeGoBack = new ButtonType("← CHANGE ATOMS", ButtonBar.ButtonData.NO);
+        difficultyAlert.getButtonTypes().setAll(buttonTypeContinue, buttonTypeGoBack);
+
+        DialogPane dialogPane = difficultyAlert.getDialogPane();
+        dialogPane.setId("setterPane"); //same look as the setter's other alert.
+        dialogPane.getStylesheets().add(Objects.requireNonNull(getClass().getResource("/style.css")).toExternalForm());
+        dialogPane.lookupButton(buttonTypeContinue).getStyleClass().add("continue-button");
+        dialogPane.lookupButton(buttonTypeGoBack).getStyleClass().add("go-back-button");
+        dialogPane.setMinWidth(520);
+        dialogPane.setMinHeight(200);
+        dialogPane.setPrefWidth(600);
+        dialogPane.setPrefHeight(160);
+
+        Optional<ButtonType> choice = difficultyAlert.showAndWait();
+        return choice.isPresent() && choice.get() == buttonTypeContinue;
+    }
+
+    /**
+     * Creates the task working out the expected score line for the experimenter's ready alert,
+     * averaging the score of the current guess over every layout that matches the rays fired so far.
+     * The game state is read here on the FX thread, so the task itself can run in the background.
+     * Cancelling the task stops the layout search and the scoring, so a closed alert leaves no search running.
+     *
+     * @param guessPositions the experimenter's atom positions.
+     * @param atomCount the number of atoms the setter placed.
+     * @return the task, whose value is the text to append to the alert, empty if too many layouts are still possible to check quickly.
+     */
+    private Task<String> expectedScoreTask(List<Point2D> guessPositions, int atomCount) {
+        int[] nodes = gameState.getFiredNodes();
+        int[] outcomes = gameState.getFiredOutcomes();
+        long guess = BoardIndex.maskOf(translation.get3DAtomMatch(guessPositions));
+        int markers = sBoard.getRayMarkers();
+        return new Task<>() {
+            @Override
+            protected String call() {
+                return expectedScoreText(nodes, outcomes, guess, atomCount, markers, this::isCancelled);
+            }
+        };
+    }
+
+    //cancelled is checked by the layout search and between the phases, throwing CancellationException once it is true.
+    private static String expectedScoreText(int[] nodes, int[] outcomes, long guess, int atomCount, int markers,
+                                            BooleanSupplier cancelled) {
+        LayoutSolver solver = new LayoutSolver(nodes, outcomes, atomCount);
+        if (solver.searchSpace() == 0 || solver.searchSpace() > MAX_ESTIMATE_LAYOUTS) {
+            return "";
+        }
+        long[] candidates = solver.candidates(cancelled);
+        if (candidates.length == 0) {
+            return "";
+        }
+        if (cancelled.getAsBoolean()) {
+            throw new CancellationException("Expected score was cancelled.");
+        }
+        long bestGuess = ScoreEstimator.bestGuess(candidates, atomCount);
+        return String.format("%n%nEXPECTED SCORE: %.1f (BEST POSSIBLE GUESS: %.1f, %d LAYOUTS STILL FIT THE RAYS)",
+                ScoreEstimator.expectedScore(candidates, guess, atomCount, markers),
+                ScoreEstimator.expectedScore(candidates, bestGuess, atomCount, markers),
+                candidates.length);
+    }
+
     private List<Point2D> collectAtomPositions(Group grid) {
         List<Point2D> positions = new ArrayList<>();
         for (Node node : grid.getChildren()) {
@@ -0,0 +1,740 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed bitmap of non-negative ints in the style of Roaring bitmaps. Values are split
+ * into chunks of 65536 by their high 16 bits, and each chunk is held in whichever container
+ * is smallest for it: a sorted array for sparse chunks, a 1024 word bitmap for dense ones, or
+ * a list of runs for clustered ones (see {@link #runOptimize()}).
+ *
+ * <p>Bitmaps are not thread-safe for writes, but and/or/cardinality never modify their inputs,
+ * so a built bitmap can be shared by any number of readers.</p>
+ */
+public final class CompressedBitmap {
+
+    // an array container turns into a bitmap container above this many values
+    private static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1024;
+
+    private char[] keys;
+    private Container[] containers;
+    private int size;
+
+    /**
+     * Creates an empty bitmap.
+     */
+    public CompressedBitmap() {
+        this.keys = new char[4];
+        this.containers = new Container[4];
+    }
+
+    private CompressedBitmap(int capacity) {
+        this.keys = new char[Math.max(capacity, 1)];
+        this.containers = new Container[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Creates a bitmap holding every value from {@code from} (inclusive) to {@code to} (exclusive).
+     */
+    public static CompressedBitmap range(int from, int to) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int start = from; start < to; ) {
+            int high = start >>> 16;
+            int end = Math.min(to, (high + 1) << 16);
+            RunContainer run = new RunContainer();
+            run.appendRun((char) (start & 0xFFFF), (char) ((end - 1) & 0xFFFF));
+            bitmap.append((char) high, run);
+            start = end;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Adds a value. Adding values in increasing order is the fast path.
+     *
+     * @param value a non-negative value.
+     */
+    public void add(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value " + value);
+        }
+        char high = (char) (value >>> 16);
+        char low = (char) value;
+        int i = size > 0 && keys[size - 1] == high ? size - 1 : find(high);
+        if (i >= 0) {
+            containers[i] = containers[i].add(low);
+            return;
+        }
+        ArrayContainer container = new ArrayContainer(4);
+        container.add(low);
+        insert(-i - 1, high, container);
+    }
+
+    /**
+     * Checks if the bitmap holds a value.
+     */
+    public boolean contains(int value) {
+        if (value < 0) {
+            return false;
+        }
+        int i = find((char) (value >>> 16));
+        return i >= 0 && containers[i].contains((char) value);
+    }
+
+    /**
+     * Gets the number of values in the bitmap.
+     */
+    public long cardinality() {
+        long cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    /**
+     * Checks if the bitmap is empty.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Intersects this bitmap with another one.
+     *
+     * @return a new bitmap with the values held by both.
+     */
+    public CompressedBitmap and(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap(Math.min(size, other.size));
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container c = and(containers[i], other.containers[j]);
+                if (c != null) {
+                    result.append(keys[i], c);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Counts the values held by both bitmaps without building their intersection.
+     */
+    public long andCardinality(CompressedBitmap other) {
+        long cardinality = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                cardinality += andCardinality(containers[i], other.containers[j]);
+                i++;
+                j++;
+            }
+        }
+        return cardinality;
+    }
+
+    /**
+     * Unites this bitmap with another one.
+     *
+     * @return a new bitmap with the values held by either.
+     */
+    public CompressedBitmap or(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap(size + other.size);
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j >= other.size || (i < size && keys[i] < other.keys[j])) {
+                result.append(keys[i], containers[i].copy());
+                i++;
+            } else if (i >= size || keys[i] > other.keys[j]) {
+                result.append(other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                result.append(keys[i], or(containers[i], other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Copies this bitmap.
+     *
+     * @return a new bitmap with the same values, sharing no containers with this one.
+     */
+    public CompressedBitmap copy() {
+        CompressedBitmap copy = new CompressedBitmap(size);
+        for (int i = 0; i < size; i++) {
+            copy.append(keys[i], containers[i].copy());
+        }
+        return copy;
+    }
+
+    /**
+     * Converts every container to the smallest of the array, bitmap and run forms.
+     *
+     * @return this bitmap.
+     */
+    public CompressedBitmap runOptimize() {
+        for (int i = 0; i < size; i++) {
+            containers[i] = containers[i].optimize();
+        }
+        return this;
+    }
+
+    /**
+     * Calls an action for every value in increasing order.
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            containers[i].forEach(keys[i] << 16, action);
+        }
+    }
+
+    /**
+     * Gets all values in increasing order.
+     */
+    public int[] toArray() {
+        int[] values = new int[(int) cardinality()];
+        int[] n = {0};
+        forEach(v -> values[n[0]++] = v);
+        return values;
+    }
+
+    /**
+     * Gets an estimate of the memory held by the containers, in bytes.
+     */
+    public long sizeInBytes() {
+        long bytes = 16L + size * 10L;
+        for (int i = 0; i < size; i++) {
+            bytes += containers[i].sizeInBytes();
+        }
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "CompressedBitmap{cardinality=" + cardinality() + ", containers=" + size + ", bytes=" + sizeInBytes() + "}";
+    }
+
+    private int find(char key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void append(char key, Container container) {
+        insert(size, key, container);
+    }
+
+    private void insert(int at, char key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, at, keys, at + 1, size - at);
+        System.arraycopy(containers, at, containers, at + 1, size - at);
+        keys[at] = key;
+        containers[at] = container;
+        size++;
+    }
+
+    private static Container and(Container a, Container b) {
+        if (a instanceof ArrayContainer array) {
+            return array.filter(b);
+        }
+        if (b instanceof ArrayContainer array) {
+            return array.filter(a);
+        }
+        if (a instanceof RunContainer runA && b instanceof RunContainer runB) {
+            return runA.and(runB);
+        }
+        long[] words = a.toWords();
+        long[] other = b instanceof BitmapContainer bitmap ? bitmap.words : b.toWords();
+        for (int w = 0; w < WORDS; w++) {
+            words[w] &= other[w];
+        }
+        return fromWords(words);
+    }
+
+    private static long andCardinality(Container a, Container b) {
+        if (a instanceof ArrayContainer array) {
+            return array.countIn(b);
+        }
+        if (b instanceof ArrayContainer array) {
+            return array.countIn(a);
+        }
+        if (a instanceof RunContainer run) {
+            return run.countIn(b);
+        }
+        if (b instanceof RunContainer run) {
+            return run.countIn(a);
+        }
+        long[] x = ((BitmapContainer) a).words;
+        long[] y = ((BitmapContainer) b).words;
+        long count = 0;
+        for (int w = 0; w < WORDS; w++) {
+            count += Long.bitCount(x[w] & y[w]);
+        }
+        return count;
+    }
+
+    private static Container or(Container a, Container b) {
+        if (a instanceof ArrayContainer x && b instanceof ArrayContainer y && x.cardinality + y.cardinality <= ARRAY_MAX) {
+            return x.merge(y);
+        }
+        long[] words = a.toWords();
+        long[] other = b instanceof BitmapContainer bitmap ? bitmap.words : b.toWords();
+        for (int w = 0; w < WORDS; w++) {
+            words[w] |= other[w];
+        }
+        return fromWords(words);
+    }
+
+    // smallest of array or bitmap container for the given words, null if no bit is set
+    private static Container fromWords(long[] words) {
+        int cardinality = 0;
+        for (long word : words) {
+            cardinality += Long.bitCount(word);
+        }
+        if (cardinality == 0) {
+            return null;
+        }
+        if (cardinality > ARRAY_MAX) {
+            return new BitmapContainer(words, cardinality);
+        }
+        ArrayContainer array = new ArrayContainer(cardinality);
+        for (int w = 0; w < WORDS; w++) {
+            for (long word = words[w]; word != 0; word &= word - 1) {
+                array.values[array.cardinality++] = (char) (w * 64 + Long.numberOfTrailingZeros(word));
+            }
+        }
+        return array;
+    }
+
+    private abstract static class Container {
+        abstract int cardinality();
+
+        abstract boolean contains(char value);
+
+        // adds a value, returning the container to use from now on
+        abstract Container add(char value);
+
+        abstract void forEach(int high, IntConsumer action);
+
+        // a fresh bitmap copy of the container's values
+        abstract long[] toWords();
+
+        abstract int sizeInBytes();
+
+        abstract Container copy();
+
+        // number of runs of consecutive values
+        abstract int runCount();
+
+        Container optimize() {
+            int runs = runCount();
+            int card = cardinality();
+            int runBytes = 2 + 4 * runs;
+            if (runBytes < Math.min(2 * card, WORDS * 8)) {
+                return RunContainer.of(this, runs);
+            }
+            return this;
+        }
+    }
+
+    private static final class ArrayContainer extends Container {
+        char[] values;
+        int cardinality;
+
+        ArrayContainer(int capacity) {
+            this.values = new char[capacity];
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        Container add(char value) {
+            int at;
+            if (cardinality == 0 || values[cardinality - 1] < value) {
+                at = cardinality;
+            } else {
+                at = Arrays.binarySearch(values, 0, cardinality, value);
+                if (at >= 0) {
+                    return this;
+                }
+                at = -at - 1;
+            }
+            if (cardinality == ARRAY_MAX) {
+                return new BitmapContainer(toWords(), cardinality).add(value);
+            }
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, Math.max(4, values.length * 2)));
+            }
+            System.arraycopy(values, at, values, at + 1, cardinality - at);
+            values[at] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int i = 0; i < cardinality; i++) {
+                action.accept(high | values[i]);
+            }
+        }
+
+        @Override
+        long[] toWords() {
+            long[] words = new long[WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            return words;
+        }
+
+        @Override
+        int sizeInBytes() {
+            return 16 + 2 * values.length;
+        }
+
+        @Override
+        Container copy() {
+            ArrayContainer copy = new ArrayContainer(0);
+            copy.values = Arrays.copyOf(values, cardinality);
+            copy.cardinality = cardinality;
+            return copy;
+        }
+
+        @Override
+        int runCount() {
+            int runs = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (i == 0 || values[i] != values[i - 1] + 1) {
+                    runs++;
+                }
+            }
+            return runs;
+        }
+
+        @Override
+        Container optimize() {
+            Container best = super.optimize();
+            if (best == this && values.length != cardinality) {
+                values = Arrays.copyOf(values, cardinality);
+            }
+            return best;
+        }
+
+        // values of this array also held by the other container
+        Container filter(Container other) {
+            ArrayContainer result = new ArrayContainer(cardinality);
+            for (int i = 0; i < cardinality; i++) {
+                if (other.contains(values[i])) {
+                    result.values[result.cardinality++] = values[i];
+                }
+            }
+            return result.cardinality == 0 ? null : result;
+        }
+
+        int countIn(Container other) {
+            int count = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (other.contains(values[i])) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        ArrayContainer merge(ArrayContainer other) {
+            ArrayContainer result = new ArrayContainer(cardinality + other.cardinality);
+            int i = 0;
+            int j = 0;
+            while (i < cardinality || j < other.cardinality) {
+                char next;
+                if (j >= other.cardinality || (i < cardinality && values[i] < other.values[j])) {
+                    next = values[i++];
+                } else if (i >= cardinality || values[i] > other.values[j]) {
+                    next = other.values[j++];
+                } else {
+                    next = values[i++];
+                    j++;
+                }
+                result.values[result.cardinality++] = next;
+            }
+            return result;
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        final long[] words;
+        int cardinality;
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        Container add(char value) {
+            long bit = 1L << value;
+            if ((words[value >>> 6] & bit) == 0) {
+                words[value >>> 6] |= bit;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int w = 0; w < WORDS; w++) {
+                for (long word = words[w]; word != 0; word &= word - 1) {
+                    action.accept(high | (w * 64 + Long.numberOfTrailingZeros(word)));
+                }
+            }
+        }
+
+        @Override
+        long[] toWords() {
+            return words.clone();
+        }
+
+        @Override
+        int sizeInBytes() {
+            return 16 + 8 * WORDS;
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        @Override
+        int runCount() {
+            int runs = 0;
+            for (int w = 0; w < WORDS; w++) {
+                long word = words[w];
+                long previous = w == 0 ? 0 : words[w - 1] >>> 63;
+                // a run starts at every set bit whose lower neighbour is clear
+                runs += Long.bitCount(word & ~((word << 1) | previous));
+            }
+            return runs;
+        }
+    }
+
+    private static final class RunContainer extends Container {
+        // pairs of (start, last) values, inclusive
+        char[] runs = new char[4];
+        int count;
+        int cardinality;
+
+        static RunContainer of(Container container, int runCount) {
+            RunContainer run = new RunContainer();
+            run.runs = new char[2 * Math.max(runCount, 1)];
+            int[] state = {-2, -2};
+            container.forEach(0, value -> {
+                if (value != state[1] + 1) {
+                    if (state[0] >= 0) {
+                        run.appendRun((char) state[0], (char) state[1]);
+                    }
+                    state[0] = value;
+                }
+                state[1] = value;
+            });
+            if (state[0] >= 0) {
+                run.appendRun((char) state[0], (char) state[1]);
+            }
+            return run;
+        }
+
+        void appendRun(char start, char last) {
+            if (2 * count == runs.length) {
+                runs = Arrays.copyOf(runs, runs.length * 2);
+            }
+            runs[2 * count] = start;
+            runs[2 * count + 1] = last;
+            count++;
+            cardinality += last - start + 1;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char value) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (runs[2 * mid] > value) {
+                    high = mid - 1;
+                } else if (runs[2 * mid + 1] < value) {
+                    low = mid + 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        Container add(char value) {
+            if (contains(value)) {
+                return this;
+            }
+            if (count > 0 && runs[2 * count - 1] + 1 == value) {
+                runs[2 * count - 1] = value;
+                cardinality++;
+                return this;
+            }
+            if (count == 0 || runs[2 * count - 1] < value) {
+                appendRun(value, value);
+                return this;
+            }
+            Container container = fromWords(toWords());
+            return container.add(value);
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int r = 0; r < count; r++) {
+                for (int v = runs[2 * r]; v <= runs[2 * r + 1]; v++) {
+                    action.accept(high | v);
+                }
+            }
+        }
+
+        @Override
+        long[] toWords() {
+            long[] words = new long[WORDS];
+            for (int r = 0; r < count; r++) {
+                int start = runs[2 * r];
+                int end = runs[2 * r + 1] + 1;
+                for (int w = start >>> 6; w <= (end - 1) >>> 6; w++) {
+                    int from = Math.max(start, w * 64) - w * 64;
+                    int to = Math.min(end, w * 64 + 64) - w * 64;
+                    words[w] |= (to == 64 ? -1L : (1L << to) - 1) & (-1L << from);
+                }
+            }
+            return words;
+        }
+
+        @Override
+        int sizeInBytes() {
+            return 16 + 2 * runs.length;
+        }
+
+        @Override
+        Container copy() {
+            RunContainer copy = new RunContainer();
+            copy.runs = Arrays.copyOf(runs, 2 * count);
+            copy.count = count;
+            copy.cardinality = cardinality;
+            return copy;
+        }
+
+        @Override
+        int runCount() {
+            return count;
+        }
+
+        @Override
+        Container optimize() {
+            if (2 + 4 * count <= Math.min(2 * cardinality, WORDS * 8)) {
+                if (runs.length != 2 * count) {
+                    runs = Arrays.copyOf(runs, 2 * count);
+                }
+                return this;
+            }
+            return fromWords(toWords());
+        }
+
+        // intersection of two run lists by walking both
+        Container and(RunContainer other) {
+            RunContainer result = new RunContainer();
+            int i = 0;
+            int j = 0;
+            while (i < count && j < other.count) {
+                int start = Math.max(runs[2 * i], other.runs[2 * j]);
+                int last = Math.min(runs[2 * i + 1], other.runs[2 * j + 1]);
+                if (start <= last) {
+                    result.appendRun((char) start, (char) last);
+                }
+                if (runs[2 * i + 1] < other.runs[2 * j + 1]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            return result.count == 0 ? null : result;
+        }
+
+        long countIn(Container other) {
+            long total = 0;
+            if (other instanceof RunContainer run) {
+                int i = 0;
+                int j = 0;
+                while (i < count && j < run.count) {
+                    int start = Math.max(runs[2 * i], run.runs[2 * j]);
+                    int last = Math.min(runs[2 * i + 1], run.runs[2 * j + 1]);
+                    if (start <= last) {
+                        total += last - start + 1;
+                    }
+                    if (runs[2 * i + 1] < run.runs[2 * j + 1]) {
+                        i++;
+                    } else {
+                        j++;
+                    }
+                }
+                return total;
+            }
+            long[] words = ((BitmapContainer) other).words;
+            for (int r = 0; r < count; r++) {
+                int start = runs[2 * r];
+                int end = runs[2 * r + 1] + 1;
+                for (int w = start >>> 6; w <= (end - 1) >>> 6; w++) {
+                    int from = Math.max(start, w * 64) - w * 64;
+                    int to = Math.min(end, w * 64 + 64) - w * 64;
+                    long mask = (to == 64 ? -1L : (1L << to) - 1) & (-1L << from);
+                    total += Long.bitCount(words[w] & mask);
+                }
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package Controller;
+
+import Model.BlackBoxBoard;
+import Model.BoardIndex;
+import Model.RayOutcome;
+import Model.RayTracer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameSessionTest {
+
+    private final List<BlackBoxBoard.Point3D> atoms = List.of(new BlackBoxBoard.Point3D(0, 0, 0),
+            new BlackBoxBoard.Point3D(2, -1, -1), new BlackBoxBoard.Point3D(-3, 3, 0), new BlackBoxBoard.Point3D(1, 2, -3));
+
+    @Test
+    void playsAFullGame() {
+        GameSession session = new GameSession(1);
+        session.placeSetterAtoms(atoms);
+        assertEquals(GameSession.Phase.EXPERIMENTING, session.getPhase());
+
+        long layout = BoardIndex.maskOf(atoms);
+        int markers = 0;
+        for (int node = 1; node <= 10; node++) {
+            int outcome = session.fire(node);
+            assertEquals(RayTracer.trace(layout, node), outcome);
+            markers += RayOutcome.markers(outcome);
+        }
+        assertEquals(10, session.getRayCount());
+        assertEquals(markers, session.getRayMarkers());
+        assertArrayEquals(new int[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10}, session.getRayLog());
+
+        ScoringEngine.Score score = session.guess(atoms.subList(0, 3));
+        assertEquals(3, score.correctAtoms());
+        assertEquals(5 + markers, score.score());
+        assertEquals(GameSession.Phase.FINISHED, session.getPhase());
+        assertThrows(IllegalStateException.class, () -> session.fire(1));
+    }
+
+    @Test
+    void rejectsWrongAtomCount() {
+        GameSession session = new GameSession(2);
+        assertThrows(IllegalArgumentException.class, () -> session.placeSetterAtoms(atoms.subList(0, 2)));
+        assertThrows(IllegalStateException.class, () -> session.fire(1));
+    }
+
+    @Test
+    void raysAreCapped() {
+        GameSession session = new GameSession(3);
+        session.placeSetterAtoms(atoms);
+        for (int i = 0; i < GameSession.MAX_RAYS; i++) {
+            session.fire(1 + i % RayTracer.NODE_COUNT);
+        }
+        assertThrows(IllegalStateException.class, () -> session.fire(1));
+        assertEquals(GameSession.MAX_RAYS, session.getRayCount());
+        ScoringEngine.Score score = session.guess(BoardIndex.maskOf(atoms));
+        assertTrue(score.score() <= 0xFFFF && score.rayMarkers() <= 0xFFFF);
+    }
+
+    @Test
+    void actorKeepsDrainingAfterAnError() {
+        try (SessionManager manager = new SessionManager()) {
+            SessionActor actor = manager.create();
+            CompletableFuture<Object> failed = actor.ask(s -> {
+                throw new AssertionError("boom");
+            });
+            assertThrows(CompletionException.class, failed::join);
+            assertEquals(GameSession.Phase.EXPERIMENTING, actor.placeSetterAtoms(BoardIndex.maskOf(atoms)).join());
+        }
+    }
+
+    @Test
+    void actorRunsCallsInOrder() {
+        try (SessionManager manager = new SessionManager()) {
+            List<CompletableFuture<Integer>> fired = new ArrayList<>();
+            SessionActor actor = manager.create();
+            actor.placeSetterAtoms(BoardIndex.maskOf(atoms));
+            for (int node = 1; node <= 54; node++) {
+                fired.add(actor.fire(node));
+            }
+            ScoringEngine.Score score = actor.guess(BoardIndex.maskOf(atoms)).join();
+            assertEquals(54, score.rayCount());
+            for (int node = 1; node <= 54; node++) {
+                assertEquals(RayTracer.trace(BoardIndex.maskOf(atoms), node), fired.get(node - 1).join());
+            }
+
+            CompletableFuture<Integer> late = actor.fire(1);
+            assertThrows(CompletionException.class, late::join);
+            assertSame(actor, manager.get(actor.getId()));
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package Controller;
+
+import Model.BoardIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameSimulatorTest {
+
+    @Test
+    void randomLayoutsHaveTheAtomCount() {
+        SplittableRandom random = new SplittableRandom(3);
+        for (int atoms = 0; atoms <= BoardIndex.CELL_COUNT; atoms++) {
+            long layout = BoardIndex.randomLayout(random, atoms);
+            assertEquals(atoms, Long.bitCount(layout));
+            assertEquals(0, layout & ~BoardIndex.FULL_MASK);
+        }
+        assertThrows(IllegalArgumentException.class, () -> BoardIndex.randomLayout(random, 62));
+
+        long cells = 0x5555_0000_ffffL;
+        for (int i = 0; i < 100; i++) {
+            long picked = FiringStrategy.randomCells(cells, 7, random);
+            assertEquals(7, Long.bitCount(picked));
+            assertEquals(0, picked & ~cells);
+        }
+    }
+
+    @Test
+    void sameSeedGivesSameTotals() {
+        GameSimulator.Config config = new GameSimulator.Config(5, 8, 1000, 42);
+        GameSimulator.Result first = GameSimulator.run(new FiringStrategy.Random(), config);
+        GameSimulator.Result second = GameSimulator.run(new FiringStrategy.Random(), config);
+        assertEquals(1000, first.games());
+        assertEquals(8000, first.rays());
+        assertEquals(first.totalScore(), second.totalScore());
+        assertEquals(first.scoreSquares(), second.scoreSquares());
+        assertEquals(first.correctAtoms(), second.correctAtoms());
+        assertEquals(5 * 5 * first.games() - 5 * first.correctAtoms() + first.rayMarkers(), first.totalScore());
+    }
+
+    @Test
+    void informationGainPlaysWholeGames() {
+        GameSimulator.Result result = GameSimulator.run(new FiringStrategy.InformationGain(8),
+                new GameSimulator.Config(4, 6, 40, 7));
+        assertEquals(40, result.games());
+        assertEquals(240, result.rays());
+        assertTrue(result.meanCorrectAtoms() >= 0 && result.meanCorrectAtoms() <= 4);
+    }
+}
@@ -0,0 +1,62 @@
+package Controller;
+
+import Model.BlackBoxBoard;
+import Model.BoardIndex;
+import Model.LayoutSolver;
+import Model.RayTracer;
+import javafx.geometry.Point2D;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScoreEstimatorTest {
+
+    // calcScore only compares positions, so any one-to-one 2D stand-in for the cells will do
+    private static List<Point2D> positionsOf(long layout) {
+        List<Point2D> positions = new ArrayList<>();
+        for (BlackBoxBoard.Point3D p : BoardIndex.pointsOf(layout)) {
+            positions.add(new Point2D(p.x, p.y));
+        }
+        return positions;
+    }
+
+    @Test
+    void expectedScoreIsAverageOfCalcScore() {
+        long setter = BoardIndex.maskOf(List.of(new BlackBoxBoard.Point3D(0, 0, 0),
+                new BlackBoxBoard.Point3D(2, -1, -1), new BlackBoxBoard.Point3D(-3, 3, 0)));
+        int[] nodes = {1, 10, 19, 28, 37, 46};
+        int[] outcomes = new int[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            outcomes[i] = RayTracer.trace(setter, nodes[i]);
+        }
+        long[] candidates = new LayoutSolver(nodes, outcomes, 3).candidates();
+        assertTrue(candidates.length > 0);
+
+        BlackBoxBoard board = new BlackBoxBoard();
+        int markers = board.getRayMarkers();
+        long guess = BoardIndex.maskOf(List.of(new BlackBoxBoard.Point3D(0, 0, 0),
+                new BlackBoxBoard.Point3D(1, 0, -1), new BlackBoxBoard.Point3D(-1, 0, 1)));
+        double total = 0;
+        for (long layout : candidates) {
+            total += GameState.calcScore(positionsOf(layout), positionsOf(guess), board).get("score");
+        }
+        assertEquals(total / candidates.length, ScoreEstimator.expectedScore(candidates, guess, 3, markers), 1e-9);
+    }
+
+    @Test
+    void bestGuessBeatsEveryOtherGuess() {
+        long[] candidates = {0b0111L, 0b1011L, 0b0011L, 0b10101L};
+        long best = ScoreEstimator.bestGuess(candidates, 3);
+        assertEquals(3, Long.bitCount(best));
+        double bestScore = ScoreEstimator.expectedScore(candidates, best, 3, 0);
+        for (long guess = 0; guess < 1 << 6; guess++) {
+            if (Long.bitCount(guess) == 3) {
+                assertTrue(bestScore <= ScoreEstimator.expectedScore(candidates, guess, 3, 0));
+            }
+        }
+        assertEquals(1.0, ScoreEstimator.cellProbabilities(candidates)[0], 1e-9);
+    }
+}
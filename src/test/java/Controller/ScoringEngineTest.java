@@ -0,0 +1,100 @@
+package Controller;
+
+import Model.BlackBoxBoard;
+import Model.BoardIndex;
+import Model.LayoutRank;
+import Model.Ray;
+import Model.RayOutcome;
+import Model.RayTracer;
+import javafx.geometry.Point2D;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScoringEngineTest {
+
+    private static List<Point2D> positionsOf(long layout) {
+        List<Point2D> positions = new ArrayList<>();
+        for (BlackBoxBoard.Point3D p : BoardIndex.pointsOf(layout)) {
+            positions.add(new Point2D(p.x, p.y));
+        }
+        return positions;
+    }
+
+    @Test
+    void matchesCalcScoreWithoutChangingInputs() {
+        Random random = new Random(31);
+        for (int i = 0; i < 200; i++) {
+            long layout = LayoutRank.unrank(random.nextLong(LayoutRank.count(4)), 4);
+            long guess = LayoutRank.unrank(random.nextLong(LayoutRank.count(4)), 4) | (layout & random.nextLong());
+            List<Point2D> setter = positionsOf(layout);
+            List<Point2D> experimenter = positionsOf(guess);
+            List<Point2D> experimenterCopy = new ArrayList<>(experimenter);
+
+            // fire real rays, so the board counters calcScore reads are the ones a game leaves
+            BlackBoxBoard board = new BlackBoxBoard();
+            board.placeSetterAtoms(BoardIndex.pointsOf(layout));
+            BlackBoxBoard.rayCount = 0;
+            BlackBoxBoard.rayMarkers = 0;
+            int[] rayLog = random.ints(1 + random.nextInt(20), 1, 55).toArray();
+            for (int node : rayLog) {
+                new Ray(board, node);
+            }
+
+            Map<String, Integer> expected = GameState.calcScore(setter, experimenter, board);
+            ScoringEngine.Score score = ScoringEngine.score(layout, guess, rayLog);
+            assertEquals(expected.get("score"), score.score());
+            assertEquals(expected.get("correctAtoms"), score.correctAtoms());
+            assertEquals(expected.get("rayCount"), score.rayCount());
+            assertEquals(expected.get("rayMarkers"), score.rayMarkers());
+            assertEquals(experimenterCopy, experimenter);
+        }
+    }
+
+    @Test
+    void rayMarkersMatchTheOutcome() {
+        Random random = new Random(47);
+        int reflected = 0;
+        for (int i = 0; i < 2000; i++) {
+            long layout = LayoutRank.unrank(random.nextLong(LayoutRank.count(6)), 6);
+            BlackBoxBoard board = new BlackBoxBoard();
+            board.placeSetterAtoms(BoardIndex.pointsOf(layout));
+            int node = 1 + random.nextInt(RayTracer.NODE_COUNT);
+            int before = BlackBoxBoard.rayMarkers;
+            Ray ray = new Ray(board, node);
+            int outcome = RayTracer.trace(layout, node);
+            assertEquals(outcome, RayOutcome.of(ray));
+            assertEquals(RayOutcome.markers(outcome), BlackBoxBoard.rayMarkers - before,
+                    "node " + node + " of layout 0x" + Long.toHexString(layout));
+            if (outcome == RayOutcome.REFLECTED) {
+                reflected++;
+            }
+        }
+        assertTrue(reflected > 100, "Too few reflected rays to check: " + reflected);
+    }
+
+    @Test
+    void batchTotalsPerPlayer() {
+        long layout = BoardIndex.maskOf(List.of(new BlackBoxBoard.Point3D(0, 0, 0), new BlackBoxBoard.Point3D(1, -1, 0)));
+        int[] rays = {1, 2, 3};
+        ScoringEngine.Score perfect = ScoringEngine.score(layout, layout, rays);
+        ScoringEngine.Score blank = ScoringEngine.score(layout, 0L, rays);
+        assertEquals(perfect.score() + 10, blank.score());
+
+        Map<String, ScoringEngine.PlayerTotals> totals = ScoringEngine.scoreAll(IntStream.range(0, 10_000)
+                .mapToObj(i -> new ScoringEngine.Submission(i % 2 == 0 ? "even" : "odd", layout, i % 4 == 0 ? 0L : layout, rays)));
+        ScoringEngine.PlayerTotals even = totals.get("even");
+        ScoringEngine.PlayerTotals odd = totals.get("odd");
+        assertEquals(5000, even.games());
+        assertEquals(2500L * perfect.score() + 2500L * blank.score(), even.totalScore());
+        assertEquals(perfect.score(), even.bestScore());
+        assertEquals(5000L * perfect.score(), odd.totalScore());
+        assertEquals(15_000, odd.rayCount());
+    }
+}
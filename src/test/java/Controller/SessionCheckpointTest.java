@@ -0,0 +1,132 @@
+package Controller;
+
+import Model.LayoutRank;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionCheckpointTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void sessionsSurviveARestart() throws IOException {
+        Path path = directory.resolve("sessions.bin");
+        long layout = LayoutRank.unrank(4242, 5);
+        int[] expectedLog;
+        try (SessionCheckpoint checkpoint = new SessionCheckpoint(path);
+             SessionManager manager = new SessionManager(checkpoint)) {
+            // more sessions than one region holds, so the file grows
+            for (int i = 0; i < SessionCheckpoint.REGION_SLOTS + 10; i++) {
+                manager.create();
+            }
+            SessionActor playing = manager.get(3);
+            playing.placeSetterAtoms(layout).join();
+            for (int node = 1; node <= 20; node++) {
+                playing.fire(node).join();
+            }
+            expectedLog = playing.ask(GameSession::getRayLog).join();
+            SessionActor finished = manager.get(4);
+            finished.placeSetterAtoms(layout).join();
+            finished.fire(7).join();
+            finished.guess(layout >>> 1).join();
+            assertTrue(manager.remove(5));
+        }
+
+        try (SessionCheckpoint checkpoint = new SessionCheckpoint(path);
+             SessionManager manager = new SessionManager(checkpoint)) {
+            assertEquals(SessionCheckpoint.REGION_SLOTS + 9, checkpoint.getRecovered().size());
+            assertNull(manager.get(5));
+            GameSession playing = manager.get(3).ask(s -> s).join();
+            assertEquals(GameSession.Phase.EXPERIMENTING, playing.getPhase());
+            assertEquals(layout, playing.getAtoms());
+            assertArrayEquals(expectedLog, playing.getRayLog());
+            GameSession finished = manager.get(4).ask(s -> s).join();
+            assertEquals(ScoringEngine.score(layout, layout >>> 1, new int[]{7}), finished.getScore());
+
+            // new sessions get fresh ids and the recovered ones keep saving
+            assertEquals(SessionCheckpoint.REGION_SLOTS + 11, manager.create().getId());
+            manager.get(3).fire(21).join();
+        }
+        try (SessionCheckpoint checkpoint = new SessionCheckpoint(path)) {
+            GameSession playing = checkpoint.getRecovered().stream().filter(s -> s.getId() == 3).findFirst().orElseThrow();
+            assertEquals(21, playing.getRayCount());
+        }
+    }
+
+    @Test
+    void aCheckpointInUseIsNotOpenedTwice() throws IOException {
+        Path path = directory.resolve("sessions.bin");
+        try (SessionCheckpoint checkpoint = new SessionCheckpoint(path)) {
+            GameSession session = new GameSession(1);
+            session.setCheckpoint(checkpoint);
+            session.placeSetterAtoms(LayoutRank.unrank(77, 4));
+            assertThrows(IOException.class, () -> new SessionCheckpoint(path));
+            assertEquals(1, checkpoint.size());
+        }
+        try (SessionCheckpoint checkpoint = new SessionCheckpoint(path)) {
+            assertEquals(1, checkpoint.getRecovered().size());
+        }
+    }
+
+    @Test
+    void tornSaveFallsBackToThePreviousState() throws IOException {
+        Path path = directory.resolve("sessions.bin");
+        long layout = LayoutRank.unrank(99, 4);
+        try (SessionCheckpoint checkpoint = new SessionCheckpoint(path)) {
+            GameSession session = new GameSession(1);
+            session.setCheckpoint(checkpoint); // sequence 1
+            session.placeSetterAtoms(layout); // 2
+            session.fire(1); // 3
+            session.fire(2); // 4
+            session.fire(3); // 5, in the second half of slot 0
+        }
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // a byte of the ray counter never made it to the file
+            long counter = SessionCheckpoint.HEADER_BYTES + SessionCheckpoint.HALF_BYTES + 21;
+            file.write(ByteBuffer.wrap(new byte[]{9}), counter);
+        }
+        try (SessionCheckpoint checkpoint = new SessionCheckpoint(path)) {
+            List<GameSession> recovered = checkpoint.getRecovered();
+            assertEquals(1, recovered.size());
+            GameSession session = recovered.get(0);
+            assertArrayEquals(new int[]{1, 2}, session.getRayLog());
+            // the next save replaces the torn half
+            session.setCheckpoint(checkpoint);
+            session.fire(3);
+        }
+        try (SessionCheckpoint checkpoint = new SessionCheckpoint(path)) {
+            assertArrayEquals(new int[]{1, 2, 3}, checkpoint.getRecovered().get(0).getRayLog());
+        }
+    }
+
+    @Test
+    void longGamesKeepExactCounters() throws IOException {
+        Path path = directory.resolve("sessions.bin");
+        int rays = SessionCheckpoint.RAY_CAPACITY + 100;
+        try (SessionCheckpoint checkpoint = new SessionCheckpoint(path)) {
+            GameSession session = new GameSession(8);
+            session.setCheckpoint(checkpoint);
+            session.placeSetterAtoms(LayoutRank.unrank(7, 6));
+            for (int i = 0; i < rays; i++) {
+                session.fire(1 + i % 54);
+            }
+        }
+        try (SessionCheckpoint checkpoint = new SessionCheckpoint(path)) {
+            GameSession session = checkpoint.getRecovered().get(0);
+            assertEquals(rays, session.getRayCount());
+            int[] log = session.getRayLog();
+            assertEquals(1 + (SessionCheckpoint.RAY_CAPACITY - 1) % 54, log[SessionCheckpoint.RAY_CAPACITY - 1]);
+            assertEquals(0, log[SessionCheckpoint.RAY_CAPACITY]);
+        }
+    }
+}
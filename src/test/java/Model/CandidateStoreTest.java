@@ -0,0 +1,84 @@
+package Model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CandidateStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void filterMatchesBruteForceAcrossSpilledRuns() {
+        // two arenas of 128 layouts, so the 1830 two atom layouts have to spill
+        try (CandidateStore store = new CandidateStore(1, 2048, 1024, dir)) {
+            for (long layout = LayoutRank.first(2); layout != 0; layout = LayoutRank.next(layout)) {
+                store.add(layout);
+            }
+            CandidateStore.Metrics metrics = store.getMetrics();
+            assertEquals(LayoutRank.count(2), metrics.records());
+            assertTrue(metrics.spills() > 0, "Store should have spilled");
+            assertTrue(metrics.peakOffHeapBytes() <= 2048, "Off-heap use must stay within the budget");
+
+            long secret = BoardIndex.maskOf(java.util.List.of(new BlackBoxBoard.Point3D(0, 0, 0), new BlackBoxBoard.Point3D(2, -1, -1)));
+            int[] fired = {1, 10, 19, 28, 37, 46};
+            Set<Long> expected = new HashSet<>();
+            for (long layout = LayoutRank.first(2); layout != 0; layout = LayoutRank.next(layout)) {
+                boolean consistent = true;
+                for (int node : fired) {
+                    consistent &= RayTracer.trace(layout, node) == RayTracer.trace(secret, node);
+                }
+                if (consistent) {
+                    expected.add(layout);
+                }
+            }
+
+            for (int node : fired) {
+                store.filter(node, RayTracer.trace(secret, node));
+            }
+            Set<Long> actual = new HashSet<>();
+            store.forEach(record -> actual.add(record[0]));
+            assertEquals(expected, actual);
+            assertEquals(expected.size(), store.size());
+            assertTrue(actual.contains(secret));
+        }
+    }
+
+    @Test
+    void spilledRunsAreMerged() {
+        // 35990 three atom layouts through arenas of 128 spill over a hundred times
+        try (CandidateStore store = new CandidateStore(1, 2048, 1024, dir)) {
+            Set<Long> expected = new HashSet<>();
+            for (long layout = LayoutRank.first(3); layout != 0; layout = LayoutRank.next(layout)) {
+                store.add(layout);
+                expected.add(layout);
+            }
+            CandidateStore.Metrics metrics = store.getMetrics();
+            assertTrue(metrics.spills() > 100);
+            assertTrue(metrics.runs() <= 16, "Runs should be merged, found " + metrics.runs());
+            assertEquals(expected.size(), metrics.records());
+
+            Set<Long> actual = new HashSet<>();
+            store.forEach(record -> actual.add(record[0]));
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void multiWordRecords() {
+        try (CandidateStore store = new CandidateStore(2, 64, 32, dir)) {
+            for (long i = 0; i < 10; i++) {
+                store.add(new long[]{i, -i});
+            }
+            store.filter(record -> record[0] % 2 == 0);
+            assertEquals(5, store.size());
+            store.forEach(record -> assertEquals(-record[0], record[1]));
+        }
+    }
+}
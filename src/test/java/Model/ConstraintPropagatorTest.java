@@ -0,0 +1,75 @@
+package Model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConstraintPropagatorTest {
+
+    private static long[] bruteForce(int[] nodes, int[] outcomes, int atoms) {
+        long[] found = new long[(int) LayoutRank.count(atoms)];
+        int size = 0;
+        for (long layout = LayoutRank.first(atoms); layout != 0 && (layout & ~BoardIndex.FULL_MASK) == 0; layout = LayoutRank.next(layout)) {
+            boolean ok = true;
+            for (int i = 0; i < nodes.length && ok; i++) {
+                ok = RayTracer.trace(layout, nodes[i]) == outcomes[i];
+            }
+            if (ok) {
+                found[size++] = layout;
+            }
+        }
+        return Arrays.copyOf(found, size);
+    }
+
+    @Test
+    void straightPassEmptiesTheLine() {
+        // on an empty board every ray passes straight through
+        int[] nodes = {1};
+        int[] outcomes = {RayTracer.trace(0L, 1)};
+        ConstraintPropagator.Result result = new ConstraintPropagator().propagate(nodes, outcomes, 3);
+        assertTrue(result.consistent());
+        assertEquals(0L, result.forcedAtoms());
+        assertTrue(Long.bitCount(result.forcedEmpty()) > 5);
+    }
+
+    @Test
+    void solverMatchesBruteForce() {
+        Random random = new Random(29);
+        int atoms = 3;
+        for (int round = 0; round < 30; round++) {
+            long layout = LayoutRank.unrank(random.nextLong(LayoutRank.count(atoms)), atoms);
+            int fired = 1 + random.nextInt(8);
+            int[] nodes = new int[fired];
+            int[] outcomes = new int[fired];
+            for (int i = 0; i < fired; i++) {
+                nodes[i] = 1 + random.nextInt(RayTracer.NODE_COUNT);
+                outcomes[i] = RayTracer.trace(layout, nodes[i]);
+            }
+
+            long[] expected = bruteForce(nodes, outcomes, atoms);
+            LayoutSolver solver = new LayoutSolver(nodes, outcomes, atoms);
+            ConstraintPropagator.Result forced = solver.getPropagation();
+            assertTrue(forced.consistent());
+            for (long candidate : expected) {
+                assertEquals(forced.forcedAtoms(), candidate & forced.forcedAtoms());
+                assertEquals(0L, candidate & forced.forcedEmpty());
+            }
+            assertTrue(solver.searchSpace() <= LayoutRank.count(atoms));
+            assertArrayEquals(expected, solver.candidates());
+            assertEquals(expected.length, solver.count());
+        }
+    }
+
+    @Test
+    void contradictionIsInconsistent() {
+        // the same node cannot be absorbed and pass straight through
+        int[] nodes = {1, 1};
+        int[] outcomes = {RayOutcome.ABSORBED, RayTracer.trace(0L, 1)};
+        LayoutSolver solver = new LayoutSolver(nodes, outcomes, 2);
+        assertFalse(solver.getPropagation().consistent());
+        assertEquals(0, solver.count());
+    }
+}
@@ -0,0 +1,43 @@
+package Model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DifficultyEstimatorTest {
+
+    @Test
+    void copiesOfALayoutShareTheirRating() {
+        SplittableRandom random = new SplittableRandom(21);
+        long layout = BoardIndex.randomLayout(random, 5);
+        DifficultyEstimator.Difficulty difficulty = DifficultyEstimator.estimate(layout);
+        for (int s = 1; s < BoardSymmetry.COUNT; s++) {
+            assertSame(difficulty, DifficultyEstimator.estimate(BoardSymmetry.apply(s, layout)));
+        }
+        assertEquals(difficulty, DifficultyEstimator.compute(BoardSymmetry.canonical(layout)));
+        assertTrue(difficulty.expectedRays() >= 1 && difficulty.expectedRays() <= RayTracer.NODE_COUNT);
+    }
+
+    @Test
+    void shadowedAtomMakesLayoutUnsolvable() {
+        // one of these atoms can be on either of two cells without changing any ray
+        long layout = 0x2000000002068L;
+        DifficultyEstimator.Difficulty difficulty = DifficultyEstimator.estimate(layout);
+        assertEquals(DifficultyEstimator.Level.UNSOLVABLE, difficulty.level());
+        assertEquals(2, difficulty.ambiguity());
+        assertEquals(1, difficulty.hiddenAtoms());
+        assertTrue(difficulty.score() > difficulty.expectedRays());
+    }
+
+    @Test
+    void boardRatesItsSetterAtoms() {
+        BlackBoxBoard board = new BlackBoxBoard();
+        List<BlackBoxBoard.Point3D> atoms = BoardIndex.pointsOf(0x2000000002068L);
+        board.placeSetterAtoms(atoms);
+        assertEquals(DifficultyEstimator.Level.UNSOLVABLE, board.getDifficulty().join().level());
+        assertThrows(IllegalArgumentException.class, () -> DifficultyEstimator.estimate(0L));
+    }
+}
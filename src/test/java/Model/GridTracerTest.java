@@ -0,0 +1,141 @@
+package Model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GridTracerTest {
+
+    private static final GridTracer SQUARE = GridTracer.SQUARE;
+
+    private static long atoms(int... rowColumns) {
+        long mask = 0L;
+        for (int i = 0; i < rowColumns.length; i += 2) {
+            mask |= 1L << SquareTopology.cellOf(rowColumns[i], rowColumns[i + 1]);
+        }
+        return mask;
+    }
+
+    @Test
+    void squareGridFollowsTheClassicRules() {
+        assertEquals(32, SQUARE.nodeCount());
+        assertEquals(-1L, SQUARE.fullMask());
+        // straight through, top column 0 to bottom column 0
+        assertEquals(24, SQUARE.trace(0L, 1));
+        // hit, deflection away from a diagonal atom, reflection by two diagonal atoms
+        assertEquals(RayOutcome.ABSORBED, SQUARE.trace(atoms(3, 3), 4));
+        assertEquals(30, SQUARE.trace(atoms(3, 3), 3));
+        assertEquals(RayOutcome.REFLECTED, SQUARE.trace(atoms(3, 2, 3, 4), 4));
+        // fired next to an atom on the edge
+        assertEquals(RayOutcome.REFLECTED, SQUARE.trace(atoms(0, 4), 4));
+
+        SplittableRandom random = new SplittableRandom(46);
+        InfluenceZones zones = SQUARE.zones();
+        for (int i = 0; i < 2000; i++) {
+            long layout = random.nextLong() & random.nextLong() & random.nextLong();
+            for (int node = 1; node <= SQUARE.nodeCount(); node++) {
+                int outcome = SQUARE.trace(layout, node);
+                if (RayOutcome.isExit(outcome)) {
+                    assertEquals(node, SQUARE.trace(layout, outcome));
+                }
+                long flipped = layout ^ (random.nextLong() & ~zones.zone(layout, node));
+                assertEquals(outcome, SQUARE.trace(flipped, node));
+            }
+        }
+    }
+
+    @Test
+    void solverRunsOnTheSquareGrid() {
+        long hidden = atoms(1, 6, 4, 2, 6, 5);
+        int[] nodes = {2, 11, 20, 29};
+        int[] outcomes = new int[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            outcomes[i] = SQUARE.trace(hidden, nodes[i]);
+        }
+        long expected = 0;
+        for (int a = 0; a < 64; a++) {
+            for (int b = a + 1; b < 64; b++) {
+                for (int c = b + 1; c < 64; c++) {
+                    long layout = 1L << a | 1L << b | 1L << c;
+                    boolean fits = true;
+                    for (int i = 0; i < nodes.length && fits; i++) {
+                        fits = SQUARE.trace(layout, nodes[i]) == outcomes[i];
+                    }
+                    expected += fits ? 1 : 0;
+                }
+            }
+        }
+        LayoutSolver solver = new LayoutSolver(SQUARE, nodes, outcomes, 3);
+        assertEquals(expected, solver.count());
+        assertTrue(java.util.Arrays.binarySearch(solver.candidates(), hidden) >= 0);
+
+        int[] all = new int[SQUARE.nodeCount()];
+        int[] allOutcomes = new int[all.length];
+        for (int node = 1; node <= all.length; node++) {
+            all[node - 1] = node;
+            allOutcomes[node - 1] = SQUARE.trace(hidden, node);
+        }
+        ConstraintPropagator.Result result = new ConstraintPropagator(SQUARE, 4096).propagate(all, allOutcomes, 3);
+        assertTrue(result.consistent());
+        assertEquals(0L, result.forcedAtoms() & ~hidden);
+    }
+
+    // the square grid with opposite edges joined, so rays never reach a node
+    private static final Topology TORUS = new Topology() {
+        private final Topology square = SquareTopology.INSTANCE;
+
+        public int cellCount() { return square.cellCount(); }
+        public int directions() { return square.directions(); }
+        public int nodeCount() { return square.nodeCount(); }
+        public int frontCell(int cell, int dir, int k) { return square.frontCell(cell, dir, k); }
+        public int turn(int dir, int combo) { return square.turn(dir, combo); }
+        public int exitNode(int cell, int dir) { return 0; }
+        public int entryCell(int node) { return square.entryCell(node); }
+        public int entryDir(int node) { return square.entryDir(node); }
+        public long nextToMask(int node) { return square.nextToMask(node); }
+
+        public int neighbour(int cell, int dir) {
+            int size = SquareTopology.SIZE;
+            int row = Math.floorMod(cell / size + (dir == SquareTopology.DOWN ? 1 : dir == SquareTopology.UP ? -1 : 0), size);
+            int column = Math.floorMod(cell % size + (dir == SquareTopology.RIGHT ? 1 : dir == SquareTopology.LEFT ? -1 : 0), size);
+            return SquareTopology.cellOf(row, column);
+        }
+    };
+
+    @Test
+    void loopingRaysAreStopped() {
+        GridTracer torus = new GridTracer(TORUS);
+        assertEquals(RayOutcome.LOOPED, torus.trace(0L, 1));
+        // an atom away from the ray's column, so the ray steps all the way round until the budget runs out
+        long layout = atoms(4, 4);
+        assertEquals(RayOutcome.LOOPED, torus.trace(layout, 1));
+        assertEquals(RayOutcome.ABSORBED, torus.trace(layout, 5));
+
+        long column = 0L;
+        for (int row = 0; row < SquareTopology.SIZE; row++) {
+            column |= 1L << SquareTopology.cellOf(row, 0);
+        }
+        assertEquals(column, torus.zones().zone(layout, 1) & column);
+        ConstraintPropagator.Result result = new ConstraintPropagator(torus, 4096)
+                .propagate(new int[]{1}, new int[]{RayOutcome.LOOPED}, 1);
+        assertTrue(result.consistent());
+        assertEquals("LOOPED", RayOutcome.toString(RayOutcome.LOOPED));
+    }
+
+    @Test
+    void hexTracerIsTheGameTracer() {
+        SplittableRandom random = new SplittableRandom(5);
+        for (int i = 0; i < 500; i++) {
+            long layout = BoardIndex.randomLayout(random, 1 + random.nextInt(8));
+            BlackBoxBoard board = new BlackBoxBoard();
+            board.placeSetterAtoms(BoardIndex.pointsOf(layout));
+            int node = 1 + random.nextInt(RayTracer.NODE_COUNT);
+            Ray ray = new Ray(board, node);
+            assertFalse(ray.isLooped());
+            assertEquals(RayOutcome.of(ray), GridTracer.HEX.trace(layout, node));
+        }
+        assertEquals(BoardIndex.FULL_MASK, GridTracer.HEX.fullMask());
+    }
+}
@@ -0,0 +1,66 @@
+package Model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InfluenceZonesTest {
+
+    @Test
+    void changesOutsideTheZoneKeepTheRay() {
+        InfluenceZones zones = GridTracer.HEX.zones();
+        SplittableRandom random = new SplittableRandom(44);
+        for (int i = 0; i < 2000; i++) {
+            long layout = BoardIndex.randomLayout(random, 1 + random.nextInt(8));
+            int node = 1 + random.nextInt(RayTracer.NODE_COUNT);
+            long zone = zones.zone(layout, node);
+            long outside = BoardIndex.FULL_MASK & ~zone;
+            // flip a random set of cells the ray never looked at
+            long flipped = layout ^ (random.nextLong() & outside);
+            assertEquals(RayTracer.trace(layout, node), RayTracer.trace(flipped, node));
+            assertEquals(zone, zones.zone(flipped, node));
+        }
+    }
+
+    @Test
+    void emptyBoardZonesMatchTheStraightRuns() {
+        InfluenceZones zones = GridTracer.HEX.zones();
+        for (int node = 1; node <= RayTracer.NODE_COUNT; node++) {
+            assertEquals(zones.zone(0L, node), zones.emptyZone(node));
+            int cell = RayTracer.entryCell(node);
+            int dir = RayTracer.entryDir(node);
+            assertEquals(RayTracer.trace(0L, node), zones.runExit(cell, dir));
+            assertEquals(0L, zones.runZone(cell, dir) & ~zones.emptyZone(node));
+        }
+    }
+
+    @Test
+    void prunedSolverFindsEveryLayout() {
+        SplittableRandom random = new SplittableRandom(7);
+        long hidden = BoardIndex.randomLayout(random, 3);
+        int[] nodes = {1, 10, 19, 28, 37};
+        int[] outcomes = new int[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            outcomes[i] = RayTracer.trace(hidden, nodes[i]);
+        }
+        long expected = 0;
+        for (int a = 0; a < BoardIndex.CELL_COUNT; a++) {
+            for (int b = a + 1; b < BoardIndex.CELL_COUNT; b++) {
+                for (int c = b + 1; c < BoardIndex.CELL_COUNT; c++) {
+                    long layout = 1L << a | 1L << b | 1L << c;
+                    boolean fits = true;
+                    for (int i = 0; i < nodes.length && fits; i++) {
+                        fits = RayTracer.trace(layout, nodes[i]) == outcomes[i];
+                    }
+                    expected += fits ? 1 : 0;
+                }
+            }
+        }
+        LongAdder found = new LongAdder();
+        new LayoutSolver(nodes, outcomes, 3).forEach(layout -> found.increment());
+        assertEquals(expected, found.sum());
+    }
+}
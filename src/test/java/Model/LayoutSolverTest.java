@@ -0,0 +1,47 @@
+package Model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LayoutSolverTest {
+
+    @Test
+    void cancelledSearchStopsEarly() {
+        // no rays fired, so every one of the tens of millions of 6-atom layouts fits
+        LayoutSolver solver = new LayoutSolver(new int[0], new int[0], 6);
+        assertTrue(solver.searchSpace() > 50_000_000);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        LongAdder found = new LongAdder();
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> assertThrows(CancellationException.class,
+                () -> solver.forEach(layout -> {
+                    found.increment();
+                    if (found.sum() >= 1000) {
+                        cancelled.set(true);
+                    }
+                }, cancelled::get)));
+        assertTrue(found.sum() < solver.searchSpace() / 10, found.sum() + " layouts seen");
+    }
+
+    @Test
+    void uncancelledSearchFindsEveryLayout() {
+        long hidden = BoardIndex.maskOf(List.of(new BlackBoxBoard.Point3D(1, -1, 0),
+                new BlackBoxBoard.Point3D(-2, 0, 2), new BlackBoxBoard.Point3D(0, 3, -3)));
+        int[] nodes = {1, 10, 19, 28, 37, 46};
+        int[] outcomes = new int[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            outcomes[i] = RayTracer.trace(hidden, nodes[i]);
+        }
+        LayoutSolver solver = new LayoutSolver(nodes, outcomes, 3);
+        long[] candidates = solver.candidates(() -> false);
+        assertArrayEquals(solver.candidates(), candidates);
+        assertTrue(Arrays.binarySearch(candidates, hidden) >= 0);
+    }
+}
@@ -0,0 +1,57 @@
+package Model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ModelMainTest {
+
+    @Test
+    void evaluatesScenarioLines() {
+        long layout = BoardIndex.maskOf(List.of(new BlackBoxBoard.Point3D(0, 0, 0), new BlackBoxBoard.Point3D(2, -1, -1),
+                new BlackBoxBoard.Point3D(-3, 3, 0), new BlackBoxBoard.Point3D(1, 2, -3)));
+        StringBuilder json = new StringBuilder();
+        assertTrue(ModelMain.evaluate("opening-1; 0,0,0 2,-1,-1 -3,3,0 1,2,-3; 1 7 13 35", 1, json));
+        int markers = 0;
+        StringBuilder outcomes = new StringBuilder();
+        for (int node : new int[]{1, 7, 13, 35}) {
+            int outcome = RayTracer.trace(layout, node);
+            markers += RayOutcome.markers(outcome);
+            outcomes.append(outcomes.isEmpty() ? "" : ",").append(outcome);
+        }
+        assertEquals("{\"id\":\"opening-1\",\"layout\":\"0x" + Long.toHexString(layout) + "\",\"nodes\":[1,7,13,35],\"outcomes\":["
+                + outcomes + "],\"rays\":4,\"markers\":" + markers + "}\n", json.toString());
+
+        json.setLength(0);
+        assertTrue(ModelMain.evaluate("0x" + Long.toHexString(layout) + ";1,7 13 , 35", 9, json));
+        assertTrue(json.toString().startsWith("{\"id\":\"9\",\"layout\":\"0x" + Long.toHexString(layout) + "\",\"nodes\":[1,7,13,35]"));
+
+        json.setLength(0);
+        assertFalse(ModelMain.evaluate("  # a comment", 2, json));
+        assertFalse(ModelMain.evaluate("", 3, json));
+        assertTrue(ModelMain.evaluate("bad; 5,0,0; 1", 4, json));
+        assertTrue(ModelMain.evaluate("worse; 0,0,0; 60", 5, json));
+        assertEquals("{\"id\":\"bad\",\"error\":\"Atom 5,0,0 is not on the board.\"}\n"
+                + "{\"id\":\"worse\",\"error\":\"No ray node 60.\"}\n", json.toString());
+    }
+
+    @Test
+    void keepsInputOrderAcrossWorkers() throws IOException, InterruptedException {
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            long layout = LayoutRank.unrank(i * 4001L, 5);
+            String line = "s" + i + ";0x" + Long.toHexString(layout) + ";" + (1 + i % 54) + " " + (54 - i % 54);
+            input.append(line).append(i % 10 == 0 ? "\n# skipped\n" : "\n");
+            ModelMain.evaluate(line, 0, expected);
+        }
+        StringWriter out = new StringWriter();
+        assertEquals(1000, ModelMain.run(new StringReader(input.toString()), out, 4, 7));
+        assertEquals(expected.toString(), out.toString());
+    }
+}
@@ -0,0 +1,57 @@
+package Model;
+
+import org.junit.jupiter.api.Test;
+import utils.CompressedBitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ObservationBitmapsTest {
+
+    @Test
+    void candidatesMatchBruteForce() {
+        ObservationBitmaps bitmaps = ObservationBitmaps.build(2);
+        assertEquals(LayoutRank.count(2), bitmaps.getLayoutCount());
+        assertEquals(bitmaps.getLayoutCount(), bitmaps.candidates(new int[0], new int[0]).cardinality());
+
+        SplittableRandom random = new SplittableRandom(3);
+        for (int game = 0; game < 20; game++) {
+            long secret = BoardIndex.randomLayout(random, 2);
+            int fired = 1 + random.nextInt(6);
+            int[] nodes = new int[fired];
+            int[] outcomes = new int[fired];
+            for (int i = 0; i < fired; i++) {
+                nodes[i] = 1 + random.nextInt(RayTracer.NODE_COUNT);
+                outcomes[i] = RayTracer.trace(secret, nodes[i]);
+            }
+
+            List<Integer> expected = new ArrayList<>();
+            int rank = 0;
+            for (long layout = LayoutRank.first(2); layout != 0; layout = LayoutRank.next(layout), rank++) {
+                boolean consistent = true;
+                for (int i = 0; i < fired && consistent; i++) {
+                    consistent = RayTracer.trace(layout, nodes[i]) == outcomes[i];
+                }
+                if (consistent) {
+                    expected.add(rank);
+                }
+            }
+
+            CompressedBitmap candidates = bitmaps.candidates(nodes, outcomes);
+            assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), candidates.toArray());
+            assertTrue(expected.contains((int) LayoutRank.rank(secret)));
+        }
+    }
+
+    @Test
+    void candidatesDoNotChangeTheSharedBitmaps() {
+        ObservationBitmaps bitmaps = ObservationBitmaps.build(1);
+        long before = bitmaps.get(1, RayOutcome.ABSORBED).cardinality();
+        CompressedBitmap candidates = bitmaps.candidates(new int[]{1}, new int[]{RayOutcome.ABSORBED});
+        candidates.add(bitmaps.getLayoutCount() + 5);
+        assertEquals(before, bitmaps.get(1, RayOutcome.ABSORBED).cardinality());
+    }
+}
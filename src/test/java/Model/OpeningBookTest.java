@@ -0,0 +1,75 @@
+package Model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OpeningBookTest {
+
+    @Test
+    void writtenBookIsReadBack() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OpeningBook.write(out, new int[]{3}, 3, 20_000, 4, ForkJoinPool.commonPool());
+        OpeningBook book = OpeningBook.read(new ByteArrayInputStream(out.toByteArray()));
+        assertTrue(book.covers(3));
+        assertFalse(book.covers(4));
+        assertEquals(3, book.depth(3));
+        assertEquals(0, book.nextNode(4, new int[0], new int[0], 0));
+
+        // the root is the best first ray over the same sample
+        SplittableRandom sampler = new SplittableRandom(4).split();
+        long[] layouts = new long[20_000];
+        for (int i = 0; i < layouts.length; i++) {
+            layouts[i] = BoardIndex.randomLayout(sampler, 3);
+        }
+        int first = book.nextNode(3, new int[0], new int[0], 0);
+        assertEquals(OpeningBook.bestNode(layouts, 0L), first);
+
+        // following the book on a layout gives new rays until it runs out
+        SplittableRandom random = new SplittableRandom(8);
+        for (int g = 0; g < 200; g++) {
+            long layout = BoardIndex.randomLayout(random, 3);
+            int[] nodes = new int[4];
+            int[] outcomes = new int[4];
+            int fired = 0;
+            int node;
+            while ((node = book.nextNode(3, nodes, outcomes, fired)) != 0) {
+                assertFalse(contains(nodes, fired, node));
+                nodes[fired] = node;
+                outcomes[fired] = RayTracer.trace(layout, node);
+                fired++;
+            }
+            assertTrue(fired >= 1 && fired <= 3);
+        }
+
+        int other = first == 1 ? 2 : 1;
+        assertEquals(0, book.nextNode(3, new int[]{other}, new int[]{RayOutcome.ABSORBED}, 1));
+        assertThrows(IOException.class, () -> OpeningBook.read(new ByteArrayInputStream(new byte[16])));
+    }
+
+    @Test
+    void shippedBookCoversCommonAtomCounts() {
+        OpeningBook book = OpeningBook.get();
+        for (int atoms = 4; atoms <= 6; atoms++) {
+            assertTrue(book.covers(atoms));
+            assertTrue(book.depth(atoms) >= 3);
+            int node = book.nextNode(atoms, new int[0], new int[0], 0);
+            assertTrue(node >= 1 && node <= RayTracer.NODE_COUNT);
+        }
+    }
+
+    private static boolean contains(int[] nodes, int size, int node) {
+        for (int i = 0; i < size; i++) {
+            if (nodes[i] == node) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,84 @@
+package Model;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.IntBuffer;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PathCodeTest {
+
+    @Test
+    void pathCodesGiveTheRayPath() {
+        SplittableRandom random = new SplittableRandom(17);
+        for (int i = 0; i < 100; i++) {
+            long layout = BoardIndex.randomLayout(random, 1 + random.nextInt(8));
+            BlackBoxBoard board = new BlackBoxBoard();
+            board.placeSetterAtoms(BoardIndex.pointsOf(layout));
+            PathCode[] paths = PathCode.traceAll(layout);
+            for (int node = 1; node <= RayTracer.NODE_COUNT; node++) {
+                Ray ray = new Ray(board, node);
+                assertEquals(ray.getPathCode(), paths[node - 1]);
+                assertEquals(ray.getPath(), paths[node - 1].toString());
+                assertEquals(node, paths[node - 1].node());
+            }
+        }
+    }
+
+    @Test
+    void turnsAreCoded() {
+        // one atom next to the centre absorbs some rays and deflects others by 60 degrees
+        long layout = BoardIndex.maskOf(List.of(new BlackBoxBoard.Point3D(1, -1, 0)));
+        int absorbed = 0;
+        int deflected = 0;
+        for (int node = 1; node <= RayTracer.NODE_COUNT; node++) {
+            PathCode path = PathCode.trace(layout, node);
+            for (int i = 1; i < path.cellCount(); i++) {
+                int code = path.code(i);
+                if (code == PathCode.ABSORBED) {
+                    absorbed++;
+                    assertEquals(path.cellCount() - 1, i);
+                    assertEquals(RayOutcome.ABSORBED, RayTracer.trace(layout, node));
+                } else if (code == PathCode.LEFT_60 || code == PathCode.RIGHT_60) {
+                    deflected++;
+                }
+            }
+        }
+        assertTrue(absorbed > 0);
+        assertTrue(deflected > 0);
+        assertThrows(IndexOutOfBoundsException.class, () -> PathCode.trace(0L, 1).code(0));
+    }
+
+    @Test
+    void longPathsDecodeToTheSameStates() {
+        SplittableRandom random = new SplittableRandom(23);
+        IntBuffer states = IntBuffer.allocate(200);
+        int cell = RayTracer.entryCell(1);
+        int dir = RayTracer.entryDir(1);
+        states.put(GridTracer.state(cell, dir));
+        // a walk far longer than any ray, so the codes spill out of the first word
+        while (states.hasRemaining()) {
+            int next;
+            do {
+                dir = random.nextInt(BoardIndex.DIRECTIONS);
+                next = BoardIndex.neighbour(cell, dir);
+            } while (next < 0);
+            cell = next;
+            states.put(GridTracer.state(cell, dir));
+        }
+        states.flip();
+
+        PathCode path = PathCode.encode(1, states, 0L);
+        assertEquals(200, path.cellCount());
+        IntBuffer decoded = IntBuffer.allocate(200);
+        path.decodeTo(decoded);
+        decoded.flip();
+        states.rewind();
+        assertEquals(states, decoded);
+
+        states.put(1, GridTracer.state(RayTracer.entryCell(1), 0));
+        assertThrows(IllegalArgumentException.class, () -> PathCode.encode(1, states.rewind(), 0L));
+    }
+}
@@ -0,0 +1,69 @@
+package Model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RayNodeTest {
+
+    @Test
+    void nodesAreReadyWithoutInitializing() {
+        assertEquals(new BlackBoxBoard.Point3D(0, -4, 4), RayNode.getNodeCoordinates(1));
+        assertEquals(Direction.XU, RayNode.getNodeDirection(1));
+        assertEquals(Direction.YL, RayNode.getNodeDirection(2));
+        assertEquals(Direction.ZU, RayNode.getNodeDirection(54));
+        assertNull(RayNode.getNodeCoordinates(0));
+        assertNull(RayNode.getNodeDirection(55));
+    }
+
+    @Test
+    void lookupsGoBothWays() {
+        int nodes = 0;
+        for (int cell = 0; cell < BoardIndex.CELL_COUNT; cell++) {
+            BlackBoxBoard.Point3D point = BoardIndex.pointOf(cell);
+            for (Direction dir : Direction.values()) {
+                int node = RayNode.getNodeNumber(point, dir);
+                if (node != -1) {
+                    nodes++;
+                    assertEquals(point, RayNode.getNodeCoordinates(node));
+                    assertEquals(dir, RayNode.getNodeDirection(node));
+                }
+            }
+        }
+        assertEquals(RayTracer.NODE_COUNT, nodes);
+        assertEquals(-1, RayNode.getNodeNumber(new BlackBoxBoard.Point3D(0, 0, 0), Direction.YR));
+        assertEquals(-1, RayNode.getNodeNumber(new BlackBoxBoard.Point3D(5, -5, 0), Direction.YR));
+        assertEquals(-1, RayNode.getNodeNumber(null, Direction.YR));
+    }
+
+    @Test
+    void concurrentGamesShareTheTable() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> found = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                found.add(pool.submit(() -> {
+                    int matches = 0;
+                    for (int node = 1; node <= RayTracer.NODE_COUNT; node++) {
+                        BlackBoxBoard.Point3D point = RayNode.getNodeCoordinates(node);
+                        if (RayNode.getNodeNumber(point, RayNode.getNodeDirection(node)) == node) {
+                            matches++;
+                        }
+                    }
+                    return matches;
+                }));
+            }
+            for (Future<Integer> matches : found) {
+                assertEquals(RayTracer.NODE_COUNT, matches.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package Model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.IntBuffer;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RayPathBufferTest {
+
+    private final IntBuffer tracerPath = IntBuffer.allocate(GridTracer.HEX.maxSteps() + 2);
+    private final IntBuffer rayPath = IntBuffer.allocate(GridTracer.HEX.maxSteps() + 2);
+
+    // the path of the tracer in the format of Ray.getPath
+    private static String format(IntBuffer path) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < path.limit(); i++) {
+            BlackBoxBoard.Point3D point = BoardIndex.pointOf(GridTracer.stateCell(path.get(i)));
+            if (i > 0) {
+                sb.append(" -> ");
+            }
+            sb.append("(").append(point.x).append(", ").append(point.y).append(", ").append(point.z).append(")");
+        }
+        return sb.toString();
+    }
+
+    @Test
+    void bufferPathsMatchTheRayPath() throws IOException {
+        SplittableRandom random = new SplittableRandom(11);
+        for (int i = 0; i < 500; i++) {
+            long layout = BoardIndex.randomLayout(random, 1 + random.nextInt(8));
+            BlackBoxBoard board = new BlackBoxBoard();
+            board.placeSetterAtoms(BoardIndex.pointsOf(layout));
+            int node = 1 + random.nextInt(RayTracer.NODE_COUNT);
+
+            Ray ray = new Ray(board, node);
+            tracerPath.clear();
+            assertEquals(RayOutcome.of(ray), RayTracer.trace(layout, node, tracerPath));
+            tracerPath.flip();
+            assertEquals(ray.getPath(), format(tracerPath));
+
+            StringWriter out = new StringWriter();
+            ray.appendPathTo(out);
+            assertEquals(ray.getPath(), out.toString());
+
+            rayPath.clear();
+            Ray buffered = new Ray(board, node, rayPath);
+            rayPath.flip();
+            assertEquals(RayOutcome.of(ray), RayOutcome.of(buffered));
+            assertEquals(tracerPath, rayPath);
+            assertEquals("", buffered.getPath());
+        }
+    }
+
+    @Test
+    void pathIsOptional() {
+        long layout = BoardIndex.maskOf(List.of(new BlackBoxBoard.Point3D(0, 0, 0)));
+        BlackBoxBoard board = new BlackBoxBoard();
+        board.placeSetterAtoms(BoardIndex.pointsOf(layout));
+        for (int node = 1; node <= RayTracer.NODE_COUNT; node++) {
+            Ray ray = new Ray(board, node, null);
+            assertEquals(RayTracer.trace(layout, node), RayTracer.trace(layout, node, null));
+            assertEquals(RayTracer.trace(layout, node), RayOutcome.of(ray));
+            assertEquals("", ray.getPath());
+        }
+    }
+
+    @Test
+    void statesPackCellAndDirection() {
+        int state = GridTracer.state(60, Direction.ZD.ordinal());
+        assertEquals(60, GridTracer.stateCell(state));
+        assertEquals(Direction.ZD.ordinal(), GridTracer.stateDir(state));
+    }
+}
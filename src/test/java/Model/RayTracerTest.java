@@ -0,0 +1,72 @@
+package Model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RayTracerTest {
+
+    // the mask tracer has to give the same outcome as a Ray on a real board
+    private void assertSameAsRay(long layout) {
+        BlackBoxBoard board = new BlackBoxBoard();
+        board.placeSetterAtoms(BoardIndex.pointsOf(layout));
+        for (int node = 1; node <= RayTracer.NODE_COUNT; node++) {
+            int expected = RayOutcome.of(new Ray(board, node));
+            assertEquals(expected, RayTracer.trace(layout, node), "Node " + node + " with atoms " + BoardIndex.pointsOf(layout));
+        }
+    }
+
+    @Test
+    void cellIndexMatchesBoardOrder() {
+        BlackBoxBoard board = new BlackBoxBoard();
+        assertEquals(BoardIndex.CELL_COUNT, board.getBoardSize());
+        int cell = 0;
+        for (var it = board.getBoardIterator(); it.hasNext(); cell++) {
+            assertEquals(cell, BoardIndex.indexOf(it.next().getKey()));
+        }
+    }
+
+    @Test
+    void emptyAndSingleAtomLayouts() {
+        assertSameAsRay(0L);
+        for (int cell = 0; cell < BoardIndex.CELL_COUNT; cell++) {
+            assertSameAsRay(1L << cell);
+        }
+    }
+
+    @Test
+    void allTwoAtomLayouts() {
+        for (long layout = LayoutRank.first(2); layout != 0; layout = LayoutRank.next(layout)) {
+            assertSameAsRay(layout);
+        }
+    }
+
+    @Test
+    void randomLayouts() {
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            int atoms = 3 + random.nextInt(4);
+            assertSameAsRay(LayoutRank.unrank((long) (random.nextDouble() * LayoutRank.count(atoms)), atoms));
+        }
+    }
+
+    @Test
+    void rankRoundTrip() {
+        long rank = 0;
+        for (long layout = LayoutRank.first(3); layout != 0; layout = LayoutRank.next(layout), rank++) {
+            assertEquals(rank, LayoutRank.rank(layout));
+            assertEquals(layout, LayoutRank.unrank(rank, 3));
+        }
+        assertEquals(LayoutRank.count(3), rank);
+    }
+
+    @Test
+    void maskRoundTrip() {
+        List<BlackBoxBoard.Point3D> atoms = List.of(new BlackBoxBoard.Point3D(0, 0, 0), new BlackBoxBoard.Point3D(-3, 4, -1));
+        assertEquals(atoms.size(), Long.bitCount(BoardIndex.maskOf(atoms)));
+        assertTrue(BoardIndex.pointsOf(BoardIndex.maskOf(atoms)).containsAll(atoms));
+    }
+}
@@ -0,0 +1,62 @@
+package Model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SetterSearchTest {
+
+    @Test
+    void symmetriesTurnTheRaysWithTheLayout() {
+        SplittableRandom random = new SplittableRandom(11);
+        for (int s = 0; s < BoardSymmetry.COUNT; s++) {
+            for (int i = 0; i < 500; i++) {
+                long layout = BoardIndex.randomLayout(random, 1 + random.nextInt(8));
+                int node = 1 + random.nextInt(RayTracer.NODE_COUNT);
+                assertEquals(BoardSymmetry.outcome(s, RayTracer.trace(layout, node)),
+                        RayTracer.trace(BoardSymmetry.apply(s, layout), BoardSymmetry.node(s, node)));
+                assertEquals(BoardSymmetry.canonical(layout), BoardSymmetry.canonical(BoardSymmetry.apply(s, layout)));
+            }
+        }
+        long centre = 1L << BoardIndex.indexOf(0, 0, 0);
+        assertEquals((1 << BoardSymmetry.COUNT) - 1, BoardSymmetry.stabiliser(centre));
+    }
+
+    @Test
+    void sequencePinsTheLayout() {
+        SplittableRandom random = new SplittableRandom(5);
+        for (int i = 0; i < 5; i++) {
+            long layout = BoardIndex.randomLayout(random, 4);
+            int[] sequence = SetterSearch.shortestSequence(layout, 32);
+            if (sequence == null) {
+                continue;
+            }
+            int[] outcomes = new int[sequence.length];
+            for (int r = 0; r < sequence.length; r++) {
+                outcomes[r] = RayTracer.trace(layout, sequence[r]);
+            }
+            assertArrayEquals(new long[]{layout}, new LayoutSolver(sequence, outcomes, 4).candidates());
+        }
+    }
+
+    @Test
+    void rankingIsHardestFirstAndRepeatable() {
+        List<SetterSearch.Ranked> ranked = SetterSearch.rank(4, 2, 3, 16, 9);
+        assertFalse(ranked.isEmpty());
+        for (int i = 1; i < ranked.size(); i++) {
+            assertTrue(ranked.get(i - 1).rays() >= ranked.get(i).rays());
+        }
+        for (SetterSearch.Ranked layout : ranked) {
+            assertEquals(layout.layout(), BoardSymmetry.canonical(layout.layout()));
+        }
+        List<SetterSearch.Ranked> again = SetterSearch.rank(4, 2, 3, 16, 9);
+        assertEquals(ranked.size(), again.size());
+        for (int i = 0; i < ranked.size(); i++) {
+            assertEquals(ranked.get(i).layout(), again.get(i).layout());
+            assertArrayEquals(ranked.get(i).sequence(), again.get(i).sequence());
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package Model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SignatureIndexTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void lookupFindsEveryLayoutWithItsSignature() throws IOException {
+        Path file = dir.resolve("two-atoms.idx");
+        // small runs so the build has to merge several spilled runs
+        SignatureIndex.build(file, 2, 250);
+
+        try (SignatureIndex index = SignatureIndex.open(file)) {
+            assertEquals(2, index.getAtoms());
+            assertEquals(LayoutRank.count(2), index.size());
+
+            byte[] expected = new byte[RayTracer.NODE_COUNT];
+            byte[] actual = new byte[RayTracer.NODE_COUNT];
+            for (long rank = 0; rank < index.size(); rank += 7) {
+                long layout = LayoutRank.unrank(rank, 2);
+                RayTracer.signature(layout, expected);
+
+                long[] ranks = index.lookupRanks(expected);
+                assertTrue(Arrays.binarySearch(ranks, rank) >= 0, "Rank " + rank + " missing from its own signature");
+                for (long match : index.lookupLayouts(expected)) {
+                    RayTracer.signature(match, actual);
+                    assertArrayEquals(expected, actual);
+                }
+            }
+        }
+    }
+
+    @Test
+    void unknownSignatureHasNoLayouts() throws IOException {
+        Path file = dir.resolve("one-atom.idx");
+        SignatureIndex.build(file, 1, 1000);
+
+        byte[] outcomes = new byte[RayTracer.NODE_COUNT];
+        Arrays.fill(outcomes, (byte) RayOutcome.ABSORBED);
+        try (SignatureIndex index = SignatureIndex.open(file)) {
+            assertEquals(0, index.lookupRanks(outcomes).length);
+        }
+    }
+}
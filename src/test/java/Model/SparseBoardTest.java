@@ -0,0 +1,85 @@
+package Model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SparseBoardTest {
+
+    @Test
+    void normalSizedBoardMatchesTheTracer() {
+        SparseBoard empty = new SparseBoard(BoardIndex.RADIUS);
+        assertEquals(RayTracer.NODE_COUNT, empty.getNodeCount());
+        assertEquals(BoardIndex.CELL_COUNT, empty.getCellCount());
+        assertEquals(RayOutcome.REFLECTED, empty.getReflected());
+        for (int node = 1; node <= RayTracer.NODE_COUNT; node++) {
+            BlackBoxBoard.Point3D cell = empty.getNodeCoordinates(node);
+            assertEquals(RayNode.getNodeCoordinates(node), cell);
+            assertEquals(RayNode.getNodeDirection(node), empty.getNodeDirection(node));
+            assertEquals(node, empty.getNodeNumber(cell.x, cell.y, cell.z, empty.getNodeDirection(node).ordinal()));
+        }
+
+        SplittableRandom random = new SplittableRandom(45);
+        for (int i = 0; i < 500; i++) {
+            long layout = BoardIndex.randomLayout(random, 1 + random.nextInt(10));
+            SparseBoard board = new SparseBoard(BoardIndex.RADIUS);
+            for (BlackBoxBoard.Point3D atom : BoardIndex.pointsOf(layout)) {
+                board.placeAtom(atom);
+            }
+            for (int node = 1; node <= RayTracer.NODE_COUNT; node++) {
+                assertEquals(RayTracer.trace(layout, node), board.trace(node));
+            }
+        }
+    }
+
+    @Test
+    void memoryFollowsTheAtoms() {
+        SparseBoard board = new SparseBoard(200);
+        assertEquals(120_601, board.getCellCount());
+        SplittableRandom random = new SplittableRandom(3);
+        Set<BlackBoxBoard.Point3D> placed = new HashSet<>();
+        while (placed.size() < 40) {
+            int x = random.nextInt(-200, 201);
+            int y = random.nextInt(Math.max(-200, -200 - x), Math.min(200, 200 - x) + 1);
+            BlackBoxBoard.Point3D point = new BlackBoxBoard.Point3D(x, y, -x - y);
+            board.placeAtom(point);
+            placed.add(point);
+        }
+        assertEquals(40, board.getAtomCount());
+        assertTrue(board.getCapacity() <= 128);
+        assertEquals(placed, new HashSet<>(board.getAtoms()));
+
+        BlackBoxBoard.Point3D atom = placed.iterator().next();
+        assertTrue(board.hasCIPoint(atom.x + 1, atom.y - 1, atom.z));
+        for (BlackBoxBoard.Point3D point : placed) {
+            board.removeAtom(point.x, point.y, point.z);
+            assertFalse(board.hasAtom(point.x, point.y, point.z));
+        }
+        assertEquals(0, board.getAtomCount());
+        assertThrows(IllegalArgumentException.class, () -> board.placeAtom(201, -201, 0));
+    }
+
+    @Test
+    void raysRunBothWaysOnALargeBoard() {
+        SparseBoard board = new SparseBoard(150);
+        SplittableRandom random = new SplittableRandom(9);
+        for (int i = 0; i < 60; i++) {
+            int x = random.nextInt(-20, 21);
+            int y = random.nextInt(-20, 21);
+            board.placeAtom(x, y, -x - y);
+        }
+        for (int node = 1; node <= board.getNodeCount(); node++) {
+            int outcome = board.trace(node);
+            if (outcome != RayOutcome.ABSORBED && outcome != board.getReflected()) {
+                assertEquals(node, board.trace(outcome));
+            }
+        }
+        // a ray along the bottom edge misses the atoms in the middle
+        int node = board.getNodeNumber(-150, 150, 0, Direction.YL.ordinal());
+        assertEquals(board.getNodeNumber(0, 150, -150, Direction.YR.ordinal()), board.trace(node));
+    }
+}
@@ -0,0 +1,183 @@
+package Network;
+
+import Controller.ScoringEngine;
+import Model.LayoutRank;
+import Model.RayTracer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameServerTest {
+
+    private GameServer server;
+    private InetSocketAddress address;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new GameServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2);
+        server.start();
+        address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    void setterAndExperimenterOnSeparateConnections() throws IOException {
+        long layout = LayoutRank.unrank(12345, 5);
+        int[] nodes = new int[54];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = i + 1;
+        }
+        try (GameClient setter = GameClient.connect(address); GameClient experimenter = GameClient.connect(address)) {
+            long id = setter.newGame();
+            setter.place(id, layout);
+
+            int[] outcomes = experimenter.fire(id, nodes);
+            for (int node = 1; node <= 54; node++) {
+                assertEquals(RayTracer.trace(layout, node), outcomes[node - 1]);
+            }
+            ScoringEngine.Score score = experimenter.guess(id, layout);
+            assertEquals(ScoringEngine.score(layout, layout, nodes), score);
+            assertEquals(0, server.getSessionCount());
+        }
+    }
+
+    @Test
+    void rejectedCallsKeepTheConnectionUsable() throws IOException {
+        try (GameClient client = GameClient.connect(address)) {
+            long id = client.newGame();
+            assertThrows(IllegalStateException.class, () -> client.fire(id, 1));
+            assertThrows(IllegalStateException.class, () -> client.place(id, 0b11L));
+            client.place(id, 0b1111L);
+            assertThrows(IllegalStateException.class, () -> client.fire(id, new int[]{1, 99, 2}));
+            assertEquals(RayTracer.trace(0b1111L, 3), client.fire(id, 3));
+        }
+    }
+
+    @Test
+    void manyGamesAtOnce() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> games = new ArrayList<>();
+        for (int g = 0; g < 32; g++) {
+            int seed = g;
+            games.add(executor.submit(() -> {
+                SplittableRandom random = new SplittableRandom(seed);
+                long layout = LayoutRank.unrank(random.nextLong(LayoutRank.count(6)), 6);
+                try (GameClient client = GameClient.connect(address)) {
+                    long id = client.newGame();
+                    client.place(id, layout);
+                    int[] nodes = random.ints(5000, 1, 55).toArray();
+                    int[] outcomes = client.fire(id, nodes);
+                    for (int i = 0; i < nodes.length; i++) {
+                        if (outcomes[i] != RayTracer.trace(layout, nodes[i])) {
+                            return false;
+                        }
+                    }
+                    return client.guess(id, 0L).rayCount() == nodes.length;
+                }
+            }));
+        }
+        for (Future<Boolean> game : games) {
+            assertTrue(game.get());
+        }
+        executor.shutdown();
+    }
+
+    // sends raw bytes and reads the type byte of each answer frame
+    private byte[] rawAnswers(byte[] request, int answers) throws IOException {
+        try (Socket socket = new Socket(address.getAddress(), address.getPort())) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            out.write(request);
+            out.flush();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            byte[] types = new byte[answers];
+            for (int i = 0; i < answers; i++) {
+                byte[] frame = new byte[in.readUnsignedShort()];
+                in.readFully(frame);
+                types[i] = frame[0];
+            }
+            return types;
+        }
+    }
+
+    @Test
+    void malformedFramesAreAnsweredWithErrors() throws IOException {
+        ByteBuffer request = ByteBuffer.allocate(64);
+        // a frame with no type, then a FIRE frame too short for its id, then a good frame
+        request.putShort((short) 0);
+        request.putShort((short) 5).put(Protocol.FIRE).putInt(7);
+        Protocol.writeNewGame(request);
+        byte[] bytes = new byte[request.position()];
+        request.flip().get(bytes);
+
+        assertArrayEquals(new byte[]{Protocol.ERROR, Protocol.ERROR, Protocol.SESSION}, rawAnswers(bytes, 3));
+        // the loop that served the bad frames still answers everyone
+        for (int i = 0; i < 4; i++) {
+            try (GameClient client = GameClient.connect(address)) {
+                assertTrue(client.newGame() > 0);
+            }
+        }
+    }
+
+    @Test
+    void gamesAreDroppedWithTheirConnection() throws Exception {
+        try (GameClient client = GameClient.connect(address)) {
+            for (int i = 0; i < 3; i++) {
+                client.newGame();
+            }
+            assertEquals(3, server.getSessionCount());
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getSessionCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, server.getSessionCount());
+    }
+
+    @Test
+    void unfinishedGamesPerConnectionAreCapped() throws IOException {
+        try (GameClient client = GameClient.connect(address)) {
+            long first = client.newGame();
+            for (int i = 1; i < GameServer.MAX_GAMES_PER_CONNECTION; i++) {
+                client.newGame();
+            }
+            assertThrows(IllegalStateException.class, client::newGame);
+
+            // finishing a game frees its place
+            client.place(first, 0b1111L);
+            client.guess(first, 0b1111L);
+            assertTrue(client.newGame() > first);
+        }
+    }
+
+    @Test
+    void errorMessagesAreCutBetweenCharacters() {
+        ByteBuffer out = ByteBuffer.allocate(2 * Protocol.MAX_ERROR_BYTES);
+        String message = "a".repeat(Protocol.MAX_ERROR_BYTES - 1) + "\u00e9\u00e9";
+        Protocol.writeError(out, 5, message);
+        out.flip();
+        assertEquals(Protocol.ERROR, out.get(2));
+        out.position(Protocol.HEADER_BYTES + 8);
+        assertEquals("a".repeat(Protocol.MAX_ERROR_BYTES - 1), Protocol.readError(out));
+    }
+}
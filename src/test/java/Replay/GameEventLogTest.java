@@ -0,0 +1,127 @@
+package Replay;
+
+import Controller.ScoringEngine;
+import Model.LayoutRank;
+import Model.RayOutcome;
+import Model.RayTracer;
+import Network.GameClient;
+import Network.GameServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameEventLogTest {
+
+    @TempDir
+    Path directory;
+
+    // plays random games straight into a log
+    private static int playGames(GameEventLog log, int games, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int events = 0;
+        for (int g = 0; g < games; g++) {
+            long layout = LayoutRank.unrank(random.nextLong(LayoutRank.count(5)), 5);
+            log.logLayout(g, layout);
+            int[] rays = random.ints(8, 1, 55).toArray();
+            for (int node : rays) {
+                log.logFire(g, node, RayTracer.trace(layout, node));
+            }
+            long guess = layout & random.nextLong();
+            log.logGuess(g, guess, ScoringEngine.score(layout, guess, rays));
+            events += rays.length + 2;
+        }
+        return events;
+    }
+
+    @Test
+    void replaysWhatWasLogged() throws IOException {
+        // small segments and buffers so the log rolls and the buffers swap many times
+        int events;
+        try (GameEventLog log = new GameEventLog(directory, 4096, 1024, 5)) {
+            events = playGames(log, 300, 35);
+            log.sync();
+        }
+        assertTrue(GameEventLog.segments(directory).size() > 1);
+
+        Replayer.Report report = Replayer.replay(directory);
+        assertEquals(300, report.games());
+        assertEquals(events, report.events());
+        assertTrue(report.isConsistent(), report.mismatches().toString());
+    }
+
+    @Test
+    void detectsWrongOutcomeAndTornTail() throws IOException {
+        long layout = LayoutRank.unrank(777, 4);
+        int outcome = RayTracer.trace(layout, 1);
+        try (GameEventLog log = new GameEventLog(directory)) {
+            log.logLayout(1, layout);
+            log.log(new GameEvent.Fire(1, 0, 1, outcome == RayOutcome.ABSORBED ? RayOutcome.REFLECTED : RayOutcome.ABSORBED));
+        }
+        Path segment = GameEventLog.segments(directory).get(0);
+        try (FileChannel file = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            // half a record, as left by a crash in the middle of a write
+            file.position(file.size()).write(java.nio.ByteBuffer.wrap(new byte[]{0, 0, 0, 40, GameEvent.FIRE}));
+        }
+
+        List<GameEvent> read = new ArrayList<>();
+        GameEventLog.read(directory, read::add);
+        assertEquals(2, read.size());
+        assertEquals(new GameEvent.Layout(1, read.get(0).time(), layout), read.get(0));
+        assertEquals(1, Replayer.replay(directory).mismatches().size());
+    }
+
+    @Test
+    void sizesTooSmallForARecordAreRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new GameEventLog(directory, 8192, GameEventLog.GUESS_BYTES - 1, 5));
+        assertThrows(IllegalArgumentException.class,
+                () -> new GameEventLog(directory, GameEventLog.HEADER_BYTES, 2048, 5));
+        // a buffer of exactly one guess record still makes progress
+        List<GameEvent> replayed = new ArrayList<>();
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            try (GameEventLog log = new GameEventLog(directory, 8192, GameEventLog.GUESS_BYTES, 5)) {
+                for (int i = 0; i < 20; i++) {
+                    log.logGuess(i, 0b111L, new ScoringEngine.Score(5, 3, 1, 2));
+                }
+            }
+            GameEventLog.read(directory, replayed::add);
+        });
+        assertEquals(20, replayed.size());
+    }
+
+    @Test
+    void serverGamesReplay() throws Exception {
+        try (GameEventLog log = new GameEventLog(directory)) {
+            GameServer server = new GameServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2, log);
+            server.start();
+            try (GameClient client = GameClient.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()))) {
+                for (int g = 0; g < 20; g++) {
+                    long layout = LayoutRank.unrank(g * 1000L, 6);
+                    long id = client.newGame();
+                    client.place(id, layout);
+                    client.fire(id, new int[]{1, 7, 13, 19, 25, 31, 37, 43, 49});
+                    client.guess(id, layout >>> 1);
+                }
+            } finally {
+                server.close();
+            }
+            log.sync();
+            assertEquals(20 * 11, log.getEventCount());
+        }
+        Replayer.Report report = Replayer.replay(directory);
+        assertEquals(20, report.games());
+        assertTrue(report.isConsistent(), report.mismatches().toString());
+    }
+}
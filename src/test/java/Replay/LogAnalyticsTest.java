@@ -0,0 +1,142 @@
+package Replay;
+
+import Controller.ScoringEngine;
+import Model.LayoutRank;
+import Model.RayOutcome;
+import Model.RayTracer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogAnalyticsTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void countsMatchEventsRead() throws IOException {
+        SplittableRandom random = new SplittableRandom(37);
+        // small segments so the games are spread over many of them
+        try (GameEventLog log = new GameEventLog(directory, 8192, 2048, 5)) {
+            for (int g = 0; g < 400; g++) {
+                int atoms = 4 + random.nextInt(3);
+                long layout = LayoutRank.unrank(random.nextLong(LayoutRank.count(atoms)), atoms);
+                log.logLayout(g, layout);
+                int[] rays = random.ints(random.nextInt(15), 1, 55).toArray();
+                for (int node : rays) {
+                    log.logFire(g, node, RayTracer.trace(layout, node));
+                }
+                long guess = layout & random.nextLong();
+                log.logGuess(g, guess, ScoringEngine.score(layout, guess, rays));
+            }
+        }
+        assertTrue(GameEventLog.segments(directory).size() > 1);
+
+        long[] fired = new long[55];
+        long[] absorbed = new long[55];
+        long[] reflected = new long[55];
+        long[] gamesByAtoms = new long[7];
+        long[] scoreTotals = new long[7];
+        long[] events = new long[1];
+        long[] rays = new long[1];
+        GameEventLog.read(directory, event -> {
+            events[0]++;
+            switch (event) {
+                case GameEvent.Layout e -> {
+                }
+                case GameEvent.Fire e -> {
+                    fired[e.node()]++;
+                    if (e.outcome() == RayOutcome.ABSORBED) {
+                        absorbed[e.node()]++;
+                    } else if (e.outcome() == RayOutcome.REFLECTED) {
+                        reflected[e.node()]++;
+                    }
+                }
+                case GameEvent.Guess e -> {
+                    rays[0] += e.score().rayCount();
+                }
+            }
+        });
+        // the atom counts come from the layouts, which the analytics never look at
+        SplittableRandom again = new SplittableRandom(37);
+        for (int g = 0; g < 400; g++) {
+            int atoms = 4 + again.nextInt(3);
+            long layout = LayoutRank.unrank(again.nextLong(LayoutRank.count(atoms)), atoms);
+            int[] fires = again.ints(again.nextInt(15), 1, 55).toArray();
+            long guess = layout & again.nextLong();
+            gamesByAtoms[atoms]++;
+            scoreTotals[atoms] += ScoringEngine.score(layout, guess, fires).score();
+        }
+
+        LogAnalytics.Summary summary = LogAnalytics.analyze(directory);
+        assertEquals(events[0], summary.getEventCount());
+        assertEquals(400, summary.getLayoutCount());
+        assertEquals(400, summary.getGameCount());
+        assertEquals((double) rays[0] / 400, summary.averageRays(), 1e-9);
+        for (int node = 1; node <= 54; node++) {
+            assertEquals(fired[node], summary.getFired(node));
+            assertEquals(absorbed[node], summary.getAbsorbed(node));
+            assertEquals(reflected[node], summary.getReflected(node));
+            assertEquals(fired[node] - absorbed[node] - reflected[node], summary.getExited(node));
+        }
+        for (int atoms = 4; atoms <= 6; atoms++) {
+            assertEquals(gamesByAtoms[atoms], summary.getGameCount(atoms));
+            assertEquals((double) scoreTotals[atoms] / gamesByAtoms[atoms], summary.averageScore(atoms), 1e-9);
+        }
+
+        StringBuilder csv = new StringBuilder();
+        summary.writeNodesCsv(csv);
+        assertEquals(55, csv.toString().lines().count());
+        StringBuilder ndjson = new StringBuilder();
+        summary.writeNdjson(ndjson);
+        assertEquals(1 + 54 + 3, ndjson.toString().lines().count());
+    }
+
+    @Test
+    void inconsistentGuessesAreSkipped() throws IOException {
+        long layout = LayoutRank.unrank(12345, 5);
+        long guess = layout & ~Long.lowestOneBit(layout);
+        try (GameEventLog log = new GameEventLog(directory)) {
+            // 1 missed atom and 3 markers, with 2 rays
+            log.logGuess(1, guess, ScoringEngine.score(layout, guess, 2, 3));
+            // score not a whole number of missed atoms past the markers
+            log.logGuess(2, guess, new ScoringEngine.Score(7, 4, 2, 3));
+            // more correct atoms than the guess has
+            log.logGuess(3, guess, new ScoringEngine.Score(8, 5, 2, 3));
+            // more markers than two a ray
+            log.logGuess(4, guess, new ScoringEngine.Score(10, 4, 2, 5));
+            // fewer markers than one a ray
+            log.logGuess(5, guess, new ScoringEngine.Score(6, 4, 2, 1));
+        }
+        LogAnalytics.Summary summary = LogAnalytics.analyze(directory);
+        assertEquals(5, summary.getEventCount());
+        assertEquals(1, summary.getGameCount());
+        assertEquals(1, summary.getGameCount(5));
+        assertEquals(8.0, summary.averageScore(5), 1e-9);
+    }
+
+    @Test
+    void chunksEndAtWholeRecords() throws IOException {
+        try (GameEventLog log = new GameEventLog(directory)) {
+            for (int i = 0; i < 300_000; i++) {
+                log.logFire(i, 1 + i % 54, RayOutcome.ABSORBED);
+            }
+        }
+        Path segment = GameEventLog.segments(directory).get(0);
+        try (FileChannel file = FileChannel.open(segment)) {
+            int[] bounds = LogAnalytics.chunkBounds(file.map(FileChannel.MapMode.READ_ONLY, 0, file.size()));
+            assertTrue(bounds.length > 2);
+            for (int bound : bounds) {
+                assertEquals(0, (bound - GameEventLog.HEADER_BYTES) % GameEventLog.FIRE_BYTES);
+            }
+            assertEquals(file.size(), bounds[bounds.length - 1]);
+        }
+        assertEquals(300_000, LogAnalytics.analyze(directory).getEventCount());
+    }
+}
@@ -0,0 +1,190 @@
+package Replay;
+
+import Controller.ScoringEngine;
+import Model.LayoutRank;
+import Model.RayOutcome;
+import Model.RayTracer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplayCodecTest {
+
+    @TempDir
+    Path directory;
+
+    // interleaved games, a few running at the same time like on the server
+    private static List<GameEvent> randomEvents(int games, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<GameEvent> events = new ArrayList<>();
+        long time = 1_700_000_000_000L;
+        long[] open = new long[4];
+        long[] layouts = new long[4];
+        int[][] rays = new int[4][];
+        int[] fired = new int[4];
+        int started = 0;
+        int finished = 0;
+        while (finished < games) {
+            int lane = random.nextInt(4);
+            time += random.nextInt(50);
+            if (rays[lane] == null) {
+                if (started == games) {
+                    continue;
+                }
+                open[lane] = 1000 + started++;
+                layouts[lane] = LayoutRank.unrank(random.nextLong(LayoutRank.count(6)), 6);
+                rays[lane] = random.ints(random.nextInt(20), 1, 55).toArray();
+                fired[lane] = 0;
+                events.add(new GameEvent.Layout(open[lane], time, layouts[lane]));
+            } else if (fired[lane] < rays[lane].length) {
+                int node = rays[lane][fired[lane]++];
+                events.add(new GameEvent.Fire(open[lane], time, node, RayTracer.trace(layouts[lane], node)));
+            } else {
+                long guess = layouts[lane] & random.nextLong();
+                events.add(new GameEvent.Guess(open[lane], time, guess, ScoringEngine.score(layouts[lane], guess, rays[lane])));
+                rays[lane] = null;
+                finished++;
+            }
+        }
+        return events;
+    }
+
+    private static byte[] encode(List<GameEvent> events, int interval) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ReplayCodec.Encoder encoder = new ReplayCodec.Encoder(out, interval)) {
+            for (GameEvent event : events) {
+                encoder.encode(event);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static GameEvent current(ReplayCodec.Decoder decoder) {
+        return switch (decoder.type()) {
+            case GameEvent.LAYOUT -> new GameEvent.Layout(decoder.session(), decoder.time(), decoder.layout());
+            case GameEvent.FIRE -> new GameEvent.Fire(decoder.session(), decoder.time(), decoder.node(), decoder.outcome());
+            default -> new GameEvent.Guess(decoder.session(), decoder.time(), decoder.layout(), decoder.score());
+        };
+    }
+
+    @Test
+    void roundTripsAndIsSmall() throws IOException {
+        List<GameEvent> events = randomEvents(500, 36);
+        byte[] encoded = encode(events, 64);
+        ReplayCodec.Decoder decoder = new ReplayCodec.Decoder(ByteBuffer.wrap(encoded));
+        assertEquals(events.size(), decoder.getEventCount());
+        for (GameEvent event : events) {
+            assertTrue(decoder.next());
+            assertEquals(event, current(decoder));
+        }
+        assertFalse(decoder.next());
+
+        long rawBytes = 0;
+        for (GameEvent event : events) {
+            rawBytes += switch (event) {
+                case GameEvent.Layout e -> GameEventLog.LAYOUT_BYTES;
+                case GameEvent.Fire e -> GameEventLog.FIRE_BYTES;
+                case GameEvent.Guess e -> GameEventLog.GUESS_BYTES;
+            };
+        }
+        assertTrue(encoded.length * 3 < rawBytes, encoded.length + " bytes against " + rawBytes + " raw");
+    }
+
+    @Test
+    void seekMatchesLinearScan() throws IOException {
+        List<GameEvent> events = randomEvents(300, 37);
+        ReplayCodec.Decoder scan = new ReplayCodec.Decoder(ByteBuffer.wrap(encode(events, 50)));
+        ReplayCodec.Decoder seeker = new ReplayCodec.Decoder(ByteBuffer.wrap(encode(events, 50)));
+        SplittableRandom random = new SplittableRandom(38);
+        for (int i = 0; i < 200; i++) {
+            int target = random.nextInt(events.size());
+            seeker.seek(target);
+            assertTrue(seeker.next());
+            assertEquals(target, seeker.index());
+            assertEquals(events.get(target), current(seeker));
+
+            scan.rewind();
+            while (scan.next() && scan.index() < target) {
+                // walk to the same event
+            }
+            long game = events.get(target).session();
+            assertEquals(scan.isOpen(game), seeker.isOpen(game));
+            if (seeker.isOpen(game)) {
+                assertEquals(scan.layoutOf(game), seeker.layoutOf(game));
+                assertEquals(scan.firedOf(game), seeker.firedOf(game));
+                assertEquals(scan.rayCountOf(game), seeker.rayCountOf(game));
+                assertEquals(scan.markersOf(game), seeker.markersOf(game));
+            }
+        }
+        seeker.seek(events.size());
+        assertFalse(seeker.next());
+    }
+
+    @Test
+    void snapshotsStaySmallWithManyOpenGames() throws IOException {
+        // 2000 games open at once, then one ray each
+        List<GameEvent> events = new ArrayList<>();
+        SplittableRandom random = new SplittableRandom(40);
+        long[] layouts = new long[2000];
+        for (int game = 0; game < layouts.length; game++) {
+            layouts[game] = LayoutRank.unrank(random.nextLong(LayoutRank.count(6)), 6);
+            events.add(new GameEvent.Layout(game, game, layouts[game]));
+        }
+        for (int game = 0; game < layouts.length; game++) {
+            int node = 1 + random.nextInt(RayTracer.NODE_COUNT);
+            events.add(new GameEvent.Fire(game, layouts.length + game, node, RayTracer.trace(layouts[game], node)));
+        }
+        byte[] encoded = encode(events, 10);
+        byte[] sparse = encode(events, events.size());
+        // a snapshot every 10 events of up to 2000 games would be hundreds of times larger
+        assertTrue(encoded.length < sparse.length * 3, encoded.length + " bytes against " + sparse.length);
+
+        ReplayCodec.Decoder decoder = new ReplayCodec.Decoder(ByteBuffer.wrap(encoded));
+        for (int target : new int[]{0, 1999, 2000, 3500, 3999}) {
+            decoder.seek(target);
+            assertTrue(decoder.next());
+            assertEquals(events.get(target), current(decoder));
+            assertTrue(decoder.isOpen(events.get(target).session()));
+        }
+    }
+
+    @Test
+    void corruptSeekTablesAreRejected() throws IOException {
+        byte[] encoded = encode(randomEvents(20, 41), 8);
+        ByteBuffer.wrap(encoded).putLong(encoded.length - 12, Integer.MAX_VALUE + 1L);
+        assertThrows(IOException.class, () -> new ReplayCodec.Decoder(ByteBuffer.wrap(encoded)));
+    }
+
+    @Test
+    void convertsEventLog() throws IOException {
+        List<GameEvent> events = randomEvents(100, 39);
+        Path logDirectory = directory.resolve("log");
+        try (GameEventLog log = new GameEventLog(logDirectory)) {
+            events.forEach(log::log);
+        }
+        Path replay = directory.resolve("games.replay");
+        assertEquals(events.size(), ReplayCodec.convert(logDirectory, replay));
+        assertTrue(Files.size(replay) > 0);
+
+        ReplayCodec.Decoder decoder = ReplayCodec.Decoder.open(replay);
+        int absorbed = 0;
+        for (GameEvent event : events) {
+            assertTrue(decoder.next());
+            assertEquals(event, current(decoder));
+            if (event instanceof GameEvent.Fire fire && fire.outcome() == RayOutcome.ABSORBED) {
+                absorbed++;
+            }
+        }
+        assertTrue(absorbed > 0);
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.blackbox;
+
+import Controller.GameSession;
+import Controller.SessionCheckpoint;
+import Model.BlackBoxBoard;
+import Model.BoardIndex;
+import Model.LayoutRank;
+import javafx.geometry.Point2D;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MainTest {
+
+    @TempDir
+    Path directory;
+
+    private Main main;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Main.atomPositions = null;
+        Main.isRandomGame = false;
+        Main.isResumedGame = false;
+        if (main != null) {
+            main.stop();
+        }
+    }
+
+    // cell centres like the ones HexCellGenerator makes, without a JavaFX toolkit to draw them
+    private static Map<Integer, Point2D> gridCentres() {
+        Map<Integer, Point2D> centres = new LinkedHashMap<>();
+        for (int id = 1; id <= BoardIndex.CELL_COUNT; id++) {
+            centres.put(id, new Point2D(id * 10, id * 20));
+        }
+        return centres;
+    }
+
+    @Test
+    void savedGameIsResumedOnTheLinkedGrid() throws IOException {
+        Path file = directory.resolve("game.checkpoint");
+        long layout = LayoutRank.unrank(9876, 5);
+        try (SessionCheckpoint checkpoint = new SessionCheckpoint(file)) {
+            GameSession saved = new GameSession(1);
+            saved.setCheckpoint(checkpoint);
+            saved.placeSetterAtoms(layout);
+            saved.fire(3);
+            saved.fire(20);
+        }
+
+        main = new Main();
+        GameSession resumed = main.openCheckpoint(file);
+        assertNotNull(resumed);
+        assertEquals(GameSession.Phase.EXPERIMENTING, resumed.getPhase());
+        assertEquals(layout, resumed.getAtoms());
+        assertEquals(2, resumed.getRayCount());
+
+        // the experimenter screen links its grid before it places the saved atoms
+        main.translation.linkMaps(gridCentres());
+        List<BlackBoxBoard.Point3D> atoms = BoardIndex.pointsOf(resumed.getAtoms());
+        main.placeSavedAtoms(atoms);
+
+        assertTrue(Main.isResumedGame);
+        assertTrue(Main.isRandomGame);
+        assertEquals(5, Main.atomPositions.size());
+        assertEquals(new HashSet<>(atoms), new HashSet<>(main.translation.get3DAtomMatch(Main.atomPositions)));
+        assertEquals(layout, BoardIndex.maskOf(main.sBoard));
+    }
+
+    @Test
+    void finishedGamesAreNotResumed() throws IOException {
+        Path file = directory.resolve("game.checkpoint");
+        long layout = LayoutRank.unrank(1234, 4);
+        try (SessionCheckpoint checkpoint = new SessionCheckpoint(file)) {
+            GameSession saved = new GameSession(1);
+            saved.setCheckpoint(checkpoint);
+            saved.placeSetterAtoms(layout);
+            saved.guess(layout);
+        }
+
+        main = new Main();
+        assertNull(main.openCheckpoint(file));
+    }
+}
@@ -0,0 +1,100 @@
+package utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressedBitmapTest {
+
+    // mix of sparse values, a dense block and long runs across several containers
+    private static void fill(Random random, CompressedBitmap bitmap, BitSet expected, int offset) {
+        for (int i = 0; i < 2000; i++) {
+            int v = offset + random.nextInt(1 << 20);
+            bitmap.add(v);
+            expected.set(v);
+        }
+        for (int i = 0; i < 20000; i++) {
+            int v = offset + (3 << 16) + random.nextInt(30000);
+            bitmap.add(v);
+            expected.set(v);
+        }
+        int start = offset + (5 << 16) + random.nextInt(1000);
+        for (int v = start; v < start + 150000; v++) {
+            bitmap.add(v);
+            expected.set(v);
+        }
+    }
+
+    private static void assertSame(BitSet expected, CompressedBitmap actual) {
+        assertEquals(expected.cardinality(), actual.cardinality());
+        assertArrayEquals(expected.stream().toArray(), actual.toArray());
+    }
+
+    @Test
+    void andOrCardinalityMatchBitSet() {
+        Random random = new Random(7);
+        for (boolean optimize : new boolean[]{false, true}) {
+            CompressedBitmap a = new CompressedBitmap();
+            CompressedBitmap b = new CompressedBitmap();
+            BitSet x = new BitSet();
+            BitSet y = new BitSet();
+            fill(random, a, x, 0);
+            fill(random, b, y, 20000);
+            if (optimize) {
+                a.runOptimize();
+                b.runOptimize();
+            }
+            assertSame(x, a);
+
+            BitSet and = (BitSet) x.clone();
+            and.and(y);
+            assertSame(and, a.and(b));
+            assertEquals(and.cardinality(), a.andCardinality(b));
+
+            BitSet or = (BitSet) x.clone();
+            or.or(y);
+            assertSame(or, a.or(b));
+            assertSame(x, a);
+        }
+    }
+
+    @Test
+    void copiesAreIndependent() {
+        Random random = new Random(11);
+        for (boolean optimize : new boolean[]{false, true}) {
+            CompressedBitmap bitmap = new CompressedBitmap();
+            BitSet expected = new BitSet();
+            fill(random, bitmap, expected, 0);
+            if (optimize) {
+                bitmap.runOptimize();
+            }
+            CompressedBitmap copy = bitmap.copy();
+            assertSame(expected, copy);
+
+            // values added to the copy, inside and outside its containers, leave the original alone
+            copy.add(1 << 24);
+            for (int v = 0; v < 1 << 20; v += 7) {
+                copy.add(v);
+            }
+            assertSame(expected, bitmap);
+        }
+    }
+
+    @Test
+    void rangeIsStoredAsRuns() {
+        CompressedBitmap range = CompressedBitmap.range(10, 3_000_000);
+        assertEquals(3_000_000 - 10, range.cardinality());
+        assertTrue(range.contains(10));
+        assertTrue(range.contains(2_999_999));
+        assertFalse(range.contains(9));
+        assertFalse(range.contains(3_000_000));
+        assertTrue(range.sizeInBytes() < 2000, "A range should only need a few bytes per chunk");
+
+        range.add(3_000_005);
+        assertTrue(range.contains(3_000_005));
+        assertEquals(3_000_000 - 10 + 1, range.cardinality());
+    }
+}
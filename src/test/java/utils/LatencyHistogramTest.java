@@ -0,0 +1,48 @@
+package utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void percentilesWithinPrecision() {
+        Random random = new Random(34);
+        long[] values = new long[100_000];
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < values.length; i++) {
+            // log-normal-ish latencies from about a microsecond to tens of milliseconds
+            values[i] = (long) Math.exp(7 + random.nextGaussian() * 2);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double p : new double[]{50, 90, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(p / 100 * values.length) - 1];
+            long reported = histogram.getValueAtPercentile(p);
+            assertEquals(exact, reported, Math.max(1, exact * 0.02), "p" + p);
+        }
+        assertEquals(values.length, histogram.getTotalCount());
+        assertEquals(values[values.length - 1], histogram.getMax());
+    }
+
+    @Test
+    void addCombinesCounts() {
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            a.record(i);
+            b.record(i * 1000L);
+        }
+        a.add(b);
+        assertEquals(200, a.getTotalCount());
+        assertEquals(100, a.getValueAtPercentile(50));
+        assertEquals(1, a.getMin());
+        assertEquals(100_000, a.getMax());
+        a.reset();
+        assertEquals(0, a.getValueAtPercentile(99));
+    }
+}